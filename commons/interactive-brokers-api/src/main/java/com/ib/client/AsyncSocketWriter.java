@@ -0,0 +1,347 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.ib.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An OutputStream which hands the bytes written to it to a dedicated writer
+ * thread, so threads making requests never block on socket I/O.
+ *
+ * Callers copy the encoded fields into pooled buffers, and full buffers are
+ * placed on a multi-producer queue.  The writer thread drains the queue, along
+ * with the partially filled buffer, into one large write, so the many small
+ * fields of adjacent requests go out in as few socket writes as possible.
+ * Since the TWS protocol is a plain byte stream a request may be split across
+ * writes without affecting how it is decoded.
+ *
+ * The number of full buffers waiting to be written is bounded, once the bound is
+ * reached callers block until the writer thread has caught up, so a stalled
+ * socket can't grow the heap without limit.
+ *
+ * If a write to the socket fails the error is reported to the failure handler,
+ * and any later write to this stream throws an IOException.
+ *
+ * @author Rob Terpilowski
+ */
+public class AsyncSocketWriter extends OutputStream {
+
+    public static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    public static final int DEFAULT_MAX_WRITE_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_QUEUED_BUFFERS = 1024;
+
+    /**
+     * Notified on the writer thread when a write to the socket fails.
+     */
+    public interface FailureHandler {
+
+        void writeFailed(IOException ex);
+    }
+
+    protected final OutputStream out;
+    protected final FailureHandler failureHandler;
+    protected final int bufferSize;
+    protected final int maxQueuedBuffers;
+    protected final AtomicInteger queuedBuffers = new AtomicInteger();
+    //serializes callers, taken before the lock on this.
+    protected final Object producerLock = new Object();
+    protected final byte[] writeBuffer;
+    protected final Queue<ByteBuffer> queue = new ConcurrentLinkedQueue<>();
+    protected final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    protected final Thread writerThread;
+
+    //the buffer callers are currently appending to, guarded by this.
+    protected ByteBuffer pending;
+    //the buffer the writer thread is part way through copying, only used by the writer thread.
+    protected ByteBuffer draining;
+    protected volatile boolean waiting = false;
+    protected volatile boolean producerWaiting = false;
+    protected volatile boolean closed = false;
+    protected volatile IOException failure;
+
+    public AsyncSocketWriter(OutputStream out, FailureHandler failureHandler) {
+        this(out, failureHandler, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_WRITE_SIZE, DEFAULT_MAX_QUEUED_BUFFERS);
+    }
+
+    /**
+     * @param out The socket's output stream
+     * @param failureHandler Notified if writing to the socket fails
+     * @param bufferSize The size of each pooled buffer
+     * @param maxWriteSize The most bytes the writer thread will coalesce into a single write.
+     * @param maxQueuedBuffers The most full buffers which can wait to be written before callers block.
+     */
+    public AsyncSocketWriter(OutputStream out, FailureHandler failureHandler, int bufferSize, int maxWriteSize, int maxQueuedBuffers) {
+        if (maxQueuedBuffers < 1) {
+            throw new IllegalArgumentException("At least one buffer must be allowed to queue: " + maxQueuedBuffers);
+        }
+        this.out = out;
+        this.failureHandler = failureHandler;
+        this.bufferSize = bufferSize;
+        this.maxQueuedBuffers = maxQueuedBuffers;
+        this.writeBuffer = new byte[Math.max(bufferSize, maxWriteSize)];
+        writerThread = new Thread(this::run, "AsyncSocketWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        synchronized (producerLock) {
+            synchronized (this) {
+                checkOpen();
+                ensurePending();
+                pending.put((byte) b);
+            }
+        }
+        signalWriter();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        //the producer lock is held while waiting for queue space, so another caller's bytes can't land in the middle of these.
+        synchronized (producerLock) {
+            synchronized (this) {
+                checkOpen();
+                while (len > 0) {
+                    ensurePending();
+                    int count = Math.min(len, pending.remaining());
+                    pending.put(b, off, count);
+                    off += count;
+                    len -= count;
+                }
+            }
+        }
+        signalWriter();
+    }
+
+    /**
+     * Wakes the writer thread, it doesn't wait for the bytes to be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        signalWriter();
+    }
+
+    /**
+     * Closes the stream once everything which has already been written has been sent.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writerThread);
+        wakeProducers();
+    }
+
+    /**
+     * @return The number of full buffers waiting to be written.
+     */
+    public int getQueuedBufferCount() {
+        return queuedBuffers.get();
+    }
+
+    /**
+     * @return The number of full buffers which may be queued before callers are held back.
+     */
+    public int getMaxQueuedBuffers() {
+        return maxQueuedBuffers;
+    }
+
+    protected void checkOpen() throws IOException {
+        if (failure != null) {
+            throw new IOException("Socket write failed", failure);
+        }
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Makes sure there is a buffer with room to append to, queueing the current one
+     * if it is full.  Must hold the producer lock and the lock on this.
+     */
+    protected void ensurePending() throws IOException {
+        if (pending != null && pending.hasRemaining()) {
+            return;
+        }
+        if (pending != null) {
+            awaitQueueSpace();
+            //the writer thread may have taken the buffer while we waited
+            if (pending != null) {
+                offer(pending);
+            }
+        }
+        pending = pool.poll();
+        if (pending == null) {
+            pending = ByteBuffer.allocate(bufferSize);
+        }
+    }
+
+    /**
+     * Blocks the caller while the queue is full.  Must hold the producer lock and the
+     * lock on this, only the lock on this is released while waiting, so the writer
+     * thread can take the partially filled buffer but no other caller can append.
+     */
+    protected void awaitQueueSpace() throws IOException {
+        if (queuedBuffers.get() < maxQueuedBuffers) {
+            return;
+        }
+        boolean interrupted = false;
+        try {
+            //advertise before re-checking, so the writer can't take a buffer without waking us.
+            producerWaiting = true;
+            while (queuedBuffers.get() >= maxQueuedBuffers) {
+                checkOpen();
+                LockSupport.unpark(writerThread);
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            producerWaiting = false;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    protected void offer(ByteBuffer buffer) {
+        queuedBuffers.incrementAndGet();
+        queue.offer(buffer);
+    }
+
+    protected ByteBuffer poll() {
+        ByteBuffer buffer = queue.poll();
+        if (buffer != null) {
+            queuedBuffers.decrementAndGet();
+            if (producerWaiting) {
+                wakeProducers();
+            }
+        }
+        return buffer;
+    }
+
+    protected synchronized void wakeProducers() {
+        notifyAll();
+    }
+
+    /**
+     * Moves the partially filled buffer to the end of the queue, so it is written
+     * after the full buffers ahead of it.  The partial buffer doesn't count towards
+     * the bound, as the writer thread is about to take it.
+     */
+    protected synchronized void enqueuePartialBuffer() {
+        if (pending != null && pending.position() > 0) {
+            offer(pending);
+            pending = null;
+        }
+    }
+
+    protected synchronized boolean hasPending() {
+        return pending != null && pending.position() > 0;
+    }
+
+    protected void signalWriter() {
+        if (waiting) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    protected void run() {
+        try {
+            while (true) {
+                int length = coalesce();
+                if (length > 0) {
+                    out.write(writeBuffer, 0, length);
+                    continue;
+                }
+                if (closed) {
+                    break;
+                }
+                waiting = true;
+                //re-check after advertising we're waiting so a signal can't be missed.
+                if (queue.isEmpty() && !hasPending() && !closed) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+            }
+            out.flush();
+        } catch (IOException ex) {
+            failure = ex;
+            if (!closed && failureHandler != null) {
+                failureHandler.writeFailed(ex);
+            }
+        } finally {
+            try {
+                out.close();
+            } catch (IOException ex) {
+            }
+            if (failure == null && !closed) {
+                failure = new IOException("Writer stopped");
+            }
+            queue.clear();
+            queuedBuffers.set(0);
+            wakeProducers();
+        }
+    }
+
+    /**
+     * Copies queued buffers, followed by the partially filled buffer, into the write
+     * buffer until it is full or there is nothing left to write.  Only called from
+     * the writer thread.
+     *
+     * @return The number of bytes copied.
+     */
+    protected int coalesce() {
+        int length = 0;
+        while (length < writeBuffer.length) {
+            if (draining == null) {
+                ByteBuffer buffer = poll();
+                if (buffer == null) {
+                    enqueuePartialBuffer();
+                    buffer = poll();
+                    if (buffer == null) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                draining = buffer;
+            }
+            int count = Math.min(draining.remaining(), writeBuffer.length - length);
+            draining.get(writeBuffer, length, count);
+            length += count;
+            if (!draining.hasRemaining()) {
+                draining.clear();
+                pool.offer(draining);
+                draining = null;
+            }
+        }
+        return length;
+    }
+
+}
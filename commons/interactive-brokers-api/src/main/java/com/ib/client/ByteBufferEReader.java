@@ -0,0 +1,287 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.ib.client;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An EReader which reads the socket into a reusable ByteBuffer and parses the
+ * null terminated int, long and double fields in place, rather than building a
+ * String for every field.  Strings are only created for fields which are read as
+ * text.
+ *
+ * Messages are decoded by EReader.processMsg(), so the EWrapper callbacks are
+ * identical to those of the standard reader.  Fields the fast path doesn't
+ * handle, such as doubles in exponent notation, are parsed the same way EReader
+ * parses them.
+ *
+ * @author Rob Terpilowski
+ */
+public class ByteBufferEReader extends EReader {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    //powers of ten which are exactly representable as doubles
+    protected static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    //largest mantissa which is exactly representable as a double
+    protected static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    protected final DataInputStream input;
+    protected ByteBuffer buffer;
+    protected char[] chars = new char[256];
+
+    public ByteBufferEReader(EClientSocket parent, DataInputStream dis) {
+        this(parent, dis, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize The initial size of the read buffer, it grows if a single field doesn't fit.
+     */
+    public ByteBufferEReader(EClientSocket parent, DataInputStream dis, int bufferSize) {
+        super("ByteBufferEReader", parent, dis);
+        input = dis;
+        buffer = ByteBuffer.allocate(bufferSize);
+        buffer.flip();
+    }
+
+    @Override
+    protected String readStr() throws IOException {
+        int end = nextFieldEnd();
+        int start = buffer.position();
+        int length = end - start;
+        buffer.position(end + 1);
+        if (length == 0) {
+            return null;
+        }
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        byte[] bytes = buffer.array();
+        for (int i = 0; i < length; i++) {
+            //bytes are widened the same way EReader does it.
+            chars[i] = (char) bytes[start + i];
+        }
+        return new String(chars, 0, length);
+    }
+
+    @Override
+    protected void skipField() throws IOException {
+        buffer.position(nextFieldEnd() + 1);
+    }
+
+    @Override
+    boolean readBoolFromInt() throws IOException {
+        return readInt() != 0;
+    }
+
+    @Override
+    protected int readInt() throws IOException {
+        return readInt(0);
+    }
+
+    @Override
+    protected int readIntMax() throws IOException {
+        return readInt(Integer.MAX_VALUE);
+    }
+
+    @Override
+    protected long readLong() throws IOException {
+        int end = nextFieldEnd();
+        int start = buffer.position();
+        if (start == end) {
+            buffer.position(end + 1);
+            return 0L;
+        }
+        long value = parseLong(buffer.array(), start, end);
+        buffer.position(end + 1);
+        return value;
+    }
+
+    @Override
+    protected double readDouble() throws IOException {
+        return readDouble(0);
+    }
+
+    @Override
+    protected double readDoubleMax() throws IOException {
+        return readDouble(Double.MAX_VALUE);
+    }
+
+    protected int readInt(int emptyValue) throws IOException {
+        int end = nextFieldEnd();
+        int start = buffer.position();
+        if (start == end) {
+            buffer.position(end + 1);
+            return emptyValue;
+        }
+        long value = parseLong(buffer.array(), start, end);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            //let Integer.parseInt() report the overflow the same way EReader would.
+            Integer.parseInt(text(start, end));
+        }
+        buffer.position(end + 1);
+        return (int) value;
+    }
+
+    protected double readDouble(double emptyValue) throws IOException {
+        int end = nextFieldEnd();
+        int start = buffer.position();
+        if (start == end) {
+            buffer.position(end + 1);
+            return emptyValue;
+        }
+        double value = parseDouble(buffer.array(), start, end);
+        buffer.position(end + 1);
+        return value;
+    }
+
+    /**
+     * Parses a decimal integer, falling back to Long.parseLong() for anything
+     * other than an optional sign followed by up to 18 digits.
+     */
+    protected long parseLong(byte[] bytes, int start, int end) {
+        int index = start;
+        boolean negative = false;
+        if (bytes[index] == '-' || bytes[index] == '+') {
+            negative = bytes[index] == '-';
+            index++;
+        }
+        if (index == end || end - index > 18) {
+            return Long.parseLong(text(start, end));
+        }
+        long value = 0;
+        for (; index < end; index++) {
+            int digit = bytes[index] - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(text(start, end));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a plain decimal number such as -123.4500.  When the digits fit in the
+     * 53 bit mantissa of a double and there are at most 22 decimal places, dividing
+     * by an exact power of ten gives the same correctly rounded result as
+     * Double.parseDouble(), which is used for everything else.
+     */
+    protected double parseDouble(byte[] bytes, int start, int end) {
+        int index = start;
+        boolean negative = false;
+        if (bytes[index] == '-' || bytes[index] == '+') {
+            negative = bytes[index] == '-';
+            index++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimalPlaces = -1;
+        for (; index < end; index++) {
+            byte b = bytes[index];
+            if (b == '.' && decimalPlaces < 0) {
+                decimalPlaces = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || ++digits > 18) {
+                return Double.parseDouble(text(start, end));
+            }
+            mantissa = mantissa * 10 + digit;
+            if (decimalPlaces >= 0) {
+                decimalPlaces++;
+            }
+        }
+        if (digits == 0 || mantissa > MAX_EXACT_MANTISSA || decimalPlaces >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(text(start, end));
+        }
+        double value = decimalPlaces > 0 ? mantissa / POWERS_OF_TEN[decimalPlaces] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Finds the null terminating the field at the buffer's position, reading from
+     * the socket until it arrives.
+     *
+     * @return The index of the terminating null.
+     */
+    protected int nextFieldEnd() throws IOException {
+        int scanned = buffer.position();
+        while (true) {
+            byte[] bytes = buffer.array();
+            int limit = buffer.limit();
+            for (int i = scanned; i < limit; i++) {
+                if (bytes[i] == 0) {
+                    return i;
+                }
+            }
+            scanned = limit - buffer.position();
+            fill();
+            scanned += buffer.position();
+        }
+    }
+
+    /**
+     * Moves any unread bytes to the start of the buffer and reads as many bytes as
+     * are available from the socket, blocking until at least one arrives.
+     */
+    protected void fill() throws IOException {
+        prepareForRead();
+        int read = input.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (read < 0) {
+            buffer.flip();
+            throw new EOFException();
+        }
+        buffer.position(buffer.position() + read);
+        buffer.flip();
+    }
+
+    /**
+     * Compacts the buffer, growing it if it is full of unread bytes, and leaves it
+     * ready for bytes to be added.  The caller must flip the buffer afterwards.
+     */
+    protected void prepareForRead() {
+        if (buffer.position() == 0) {
+            //nothing has been read since the last compact, so there is nothing to move
+            int unread = buffer.limit();
+            buffer.limit(buffer.capacity());
+            buffer.position(unread);
+        } else {
+            buffer.compact();
+        }
+        if (!buffer.hasRemaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+
+    protected String text(int start, int end) {
+        return new String(buffer.array(), start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.ib.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Passes every chunk read from the socket to a SessionRecorder before returning it.
+ *
+ * EReader reads one byte at a time, so single byte reads are served from a chunk
+ * read in bulk, rather than recording each byte separately.  Bulk reads, which
+ * the ByteBufferEReader uses, go straight to the socket once any such chunk is
+ * used up, so nothing is read ahead of what the caller asked for.
+ *
+ * @author Rob Terpilowski
+ */
+public class CapturingInputStream extends FilterInputStream {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+
+    protected final SessionRecorder recorder;
+    protected final byte[] chunk = new byte[DEFAULT_CHUNK_SIZE];
+    protected int position = 0;
+    protected int limit = 0;
+
+    public CapturingInputStream(InputStream in, SessionRecorder recorder) {
+        super(in);
+        this.recorder = recorder;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit) {
+            int read = in.read(chunk, 0, chunk.length);
+            if (read < 0) {
+                return -1;
+            }
+            recorder.record(chunk, 0, read);
+            position = 0;
+            limit = read;
+        }
+        return chunk[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (position < limit) {
+            int count = Math.min(length, limit - position);
+            System.arraycopy(chunk, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+        int read = in.read(bytes, offset, length);
+        if (read > 0) {
+            recorder.record(bytes, offset, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count && read() >= 0) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (limit - position) + in.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
@@ -7,7 +7,10 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Vector;
 
@@ -211,6 +214,10 @@ public class EClientSocket {
     private String m_TwsTime;
     private int m_clientId;
     private boolean m_extraAuth;
+    private boolean m_useByteBufferReader;
+    private boolean m_useAsyncWriter;
+    private volatile SessionRecorder m_sessionRecorder;
+    private volatile BitSet m_skippedMessages;
 
     public int serverVersion()          { return m_serverVersion;   }
     public String TwsConnectionTime()   { return m_TwsTime; }
@@ -273,9 +280,77 @@ public class EClientSocket {
     }
 
     public EReader createReader(EClientSocket socket, DataInputStream dis) {
+        if (m_useByteBufferReader) {
+            return new ByteBufferEReader(socket, dis);
+        }
         return new EReader(socket, dis);
     }
 
+    /** Selects the ByteBufferEReader, which parses numeric fields without creating Strings, for future connections. */
+    public void setUseByteBufferReader(boolean useByteBufferReader) {
+        m_useByteBufferReader = useByteBufferReader;
+    }
+
+    public boolean isUseByteBufferReader() {
+        return m_useByteBufferReader;
+    }
+
+    /** Sends requests from a dedicated writer thread for future connections, so callers never block on the socket. */
+    public void setUseAsyncWriter(boolean useAsyncWriter) {
+        m_useAsyncWriter = useAsyncWriter;
+    }
+
+    public boolean isUseAsyncWriter() {
+        return m_useAsyncWriter;
+    }
+
+    /** Records the raw bytes received by future connections, see SessionReplay.  Null turns recording off. */
+    public void setSessionRecorder(SessionRecorder sessionRecorder) {
+        m_sessionRecorder = sessionRecorder;
+    }
+
+    public SessionRecorder getSessionRecorder() {
+        return m_sessionRecorder;
+    }
+
+    /**
+     * Messages with these ids are skipped by the reader rather than decoded, when
+     * none of the wrapper's delegates consume them.  Only the messages
+     * EReader.skipMsg() knows the layout of are skipped, any others are still decoded.
+     * Null or an empty set decodes every message.
+     */
+    public void setSkippedMessages(BitSet skippedMessages) {
+        m_skippedMessages = skippedMessages == null || skippedMessages.isEmpty() ? null : (BitSet) skippedMessages.clone();
+    }
+
+    public BitSet getSkippedMessages() {
+        BitSet skippedMessages = m_skippedMessages;
+        return skippedMessages == null ? new BitSet() : (BitSet) skippedMessages.clone();
+    }
+
+    boolean isSkipped(int msgId) {
+        BitSet skippedMessages = m_skippedMessages;
+        return skippedMessages != null && skippedMessages.get(msgId);
+    }
+
+    protected InputStream createInputStream(Socket socket) throws IOException {
+        SessionRecorder recorder = m_sessionRecorder;
+        if (recorder != null) {
+            return new CapturingInputStream(socket.getInputStream(), recorder);
+        }
+        return socket.getInputStream();
+    }
+
+    protected OutputStream createOutputStream(Socket socket) throws IOException {
+        if (m_useAsyncWriter) {
+            return new AsyncSocketWriter(socket.getOutputStream(), ex -> {
+                error( EClientErrors.NO_VALID_ID, EClientErrors.FAIL_SEND, "" + ex);
+                close();
+            });
+        }
+        return socket.getOutputStream();
+    }
+
     public synchronized void eConnect(Socket socket, int clientId) throws IOException {
         m_clientId = clientId;
         eConnect(socket);
@@ -284,14 +359,14 @@ public class EClientSocket {
     public synchronized void eConnect(Socket socket) throws IOException {
 
         // create io streams
-        m_dos = new DataOutputStream( socket.getOutputStream() );
+        m_dos = new DataOutputStream( createOutputStream( socket) );
 
         // set client version
         send( CLIENT_VERSION);
 
         // start reader thread
         m_reader = createReader(this, new DataInputStream(
-        		socket.getInputStream()));
+        		createInputStream( socket)));
 
         // check server version
         m_serverVersion = m_reader.readInt();
@@ -358,6 +433,11 @@ public class EClientSocket {
         }
         catch( Exception e) {
         }
+
+        SessionRecorder recorder = m_sessionRecorder;
+        if( recorder != null) {
+            recorder.flush();
+        }
     }
 
     protected synchronized void startAPI() {
@@ -95,6 +95,10 @@ public class EReader extends Thread {
     protected boolean processMsg(int msgId) throws IOException{
         if( msgId == -1) return false;
 
+        if (m_parent.isSkipped(msgId) && skipMsg(msgId)) {
+            return true;
+        }
+
         switch( msgId) {
             case TICK_PRICE: {
                 int version = readInt();
@@ -1168,6 +1172,83 @@ public class EReader extends Thread {
     }
 
 
+    /**
+     * Skips a message none of the wrapper's delegates consume, by scanning to the
+     * end of each of its fields rather than decoding them.
+     *
+     * @return false if the message can't be skipped, and nothing has been read.
+     */
+    protected boolean skipMsg(int msgId) throws IOException {
+        switch (msgId) {
+            case TICK_SNAPSHOT_END:
+            case SCANNER_PARAMETERS:
+                skipFields(2);
+                return true;
+            case RECEIVE_FA:
+            case FUNDAMENTAL_DATA:
+            case MARKET_DATA_TYPE:
+            case DISPLAY_GROUP_LIST:
+            case DISPLAY_GROUP_UPDATED:
+                skipFields(3);
+                return true;
+            case TICK_GENERIC:
+            case TICK_STRING:
+                skipFields(4);
+                return true;
+            case NEWS_BULLETINS:
+            case DELTA_NEUTRAL_VALIDATION:
+                skipFields(5);
+                return true;
+            case TICK_EFP:
+            case REAL_TIME_BARS:
+                skipFields(10);
+                return true;
+            case TICK_OPTION_COMPUTATION: {
+                int version = readInt();
+                skipField();
+                int tickType = readInt();
+                int fields = 2;
+                if (version >= 6 || tickType == TickType.MODEL_OPTION) {
+                    fields += 2;
+                }
+                if (version >= 6) {
+                    fields += 4;
+                }
+                skipFields(fields);
+                return true;
+            }
+            case SCANNER_DATA: {
+                int version = readInt();
+                skipField();
+                int numberOfElements = readInt();
+                //rank, contract, distance, benchmark and projection
+                int fields = 14;
+                if (version >= 3) {
+                    fields++;
+                }
+                if (version >= 2) {
+                    fields++;
+                }
+                skipFields(numberOfElements * fields);
+                return true;
+            }
+            default:
+                return false;
+        }
+    }
+
+    protected void skipFields(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            skipField();
+        }
+    }
+
+    protected void skipField() throws IOException {
+        while (m_dis.readByte() != 0) {
+            //scan to the terminating null
+        }
+    }
+
     protected String readStr() throws IOException {
         StringBuffer buf = new StringBuffer();
         while( true) {
@@ -0,0 +1,141 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.ib.client;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the raw bytes received from TWS to an append only capture file, along
+ * with the time each read returned, so a session can later be fed back through
+ * an EReader by SessionReplay.
+ *
+ * The file starts with a header holding the magic number, the format version
+ * and the wall clock time of the first byte in milliseconds.  Each read is
+ * stored as a record of the nanoseconds since the recorder was created, the
+ * number of bytes and the bytes themselves.  Records are written through a
+ * buffer and flushed at most once per FLUSH_INTERVAL_NANOS, or when flush() or
+ * close() is called.
+ *
+ * A failure to write the capture never affects the connection, recording stops
+ * and the exception is available from getError().
+ *
+ * @author Rob Terpilowski
+ */
+public class SessionRecorder {
+
+    public static final int MAGIC = 0x49424350; //"IBCP"
+    public static final int FORMAT_VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_HEADER_SIZE = 12;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final long FLUSH_INTERVAL_NANOS = 1000000000L;
+
+    protected final DataOutputStream out;
+    protected final long startNanos;
+    protected long lastFlushNanos;
+    protected long recordCount = 0;
+    protected long byteCount = 0;
+    protected IOException error;
+    protected boolean closed = false;
+
+    public SessionRecorder(File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+    public SessionRecorder(OutputStream stream) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(stream, DEFAULT_BUFFER_SIZE));
+        startNanos = System.nanoTime();
+        lastFlushNanos = startNanos;
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.flush();
+    }
+
+    /**
+     * Appends the bytes of a single read, time stamped with the current time.
+     */
+    public synchronized void record(byte[] bytes, int offset, int length) {
+        if (closed || error != null || length <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        try {
+            out.writeLong(now - startNanos);
+            out.writeInt(length);
+            out.write(bytes, offset, length);
+            recordCount++;
+            byteCount += length;
+            if (now - lastFlushNanos >= FLUSH_INTERVAL_NANOS) {
+                out.flush();
+                lastFlushNanos = now;
+            }
+        } catch (IOException ex) {
+            error = ex;
+        }
+    }
+
+    public synchronized void flush() {
+        if (closed || error != null) {
+            return;
+        }
+        try {
+            out.flush();
+            lastFlushNanos = System.nanoTime();
+        } catch (IOException ex) {
+            error = ex;
+        }
+    }
+
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException ex) {
+            if (error == null) {
+                error = ex;
+            }
+        }
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    public synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * @return The exception which stopped recording, or null if there wasn't one.
+     */
+    public synchronized IOException getError() {
+        return error;
+    }
+}
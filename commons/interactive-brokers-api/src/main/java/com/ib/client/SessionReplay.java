@@ -0,0 +1,319 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.ib.client;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds a session captured by a SessionRecorder back through an EClientSocket,
+ * so its EReader decodes the messages and calls the EWrapper exactly as it did
+ * when the session was live.
+ *
+ * The capture is handed to EClientSocket.eConnect() as the input of a socket,
+ * so the handshake is read from the capture and whichever reader the
+ * EClientSocket is configured with is used.  Requests sent by the client are
+ * discarded.  Each chunk of bytes is released at the pace it was originally
+ * received, scaled by the speed, or immediately when the speed is MAX_SPEED.
+ *
+ * replay() returns once the reader has asked for bytes beyond the end of the
+ * capture, which means every complete message has been decoded, and then
+ * disconnects the EClientSocket without calling connectionClosed().
+ *
+ * @author Rob Terpilowski
+ */
+public class SessionReplay {
+
+    public static final double MAX_SPEED = 0;
+
+    protected final File file;
+    protected double speed = 1.0;
+    protected long bytesReplayed = 0;
+    protected long recordsReplayed = 0;
+    protected long elapsedNanos = 0;
+    protected long captureDurationNanos = 0;
+    protected long captureStartMillis = 0;
+
+    public SessionReplay(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param speed 1.0 for the original pace, 2.0 for twice as fast and so on, or
+     * MAX_SPEED to replay as fast as the reader can decode.
+     */
+    public void setSpeed(double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Speed can't be negative: " + speed);
+        }
+        this.speed = speed;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Replays the whole capture through the client, which must not be connected.
+     */
+    public void replay(EClientSocket client) throws IOException, InterruptedException {
+        ReplayInputStream input = new ReplayInputStream(file, speed);
+        try {
+            client.eConnect(new ReplaySocket(input));
+            if (!client.isConnected()) {
+                throw new IOException("The client did not accept the handshake in " + file);
+            }
+            input.awaitFinished();
+            EReader reader = client.reader();
+            client.eDisconnect();
+            if (reader != null && reader != Thread.currentThread()) {
+                reader.join();
+            }
+        } finally {
+            input.close();
+            bytesReplayed = input.bytes;
+            recordsReplayed = input.records;
+            elapsedNanos = input.getElapsedNanos();
+            captureDurationNanos = input.lastTimestamp - input.firstTimestamp;
+            captureStartMillis = input.captureStartMillis;
+        }
+    }
+
+    public long getBytesReplayed() {
+        return bytesReplayed;
+    }
+
+    public long getRecordsReplayed() {
+        return recordsReplayed;
+    }
+
+    /**
+     * @return The time from the first byte being released to the reader asking for
+     * bytes beyond the end of the capture.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return The time between the first and last chunks of the capture being received.
+     */
+    public long getCaptureDurationNanos() {
+        return captureDurationNanos;
+    }
+
+    /**
+     * @return The wall clock time the capture started, in milliseconds.
+     */
+    public long getCaptureStartMillis() {
+        return captureStartMillis;
+    }
+
+    /**
+     * Releases the records of a capture file as a stream of bytes, then blocks
+     * until it is closed or the reading thread is interrupted.
+     */
+    protected static class ReplayInputStream extends InputStream {
+
+        protected final DataInputStream capture;
+        protected final double speed;
+        protected final long captureStartMillis;
+        protected byte[] chunk = new byte[8 * 1024];
+        protected int position = 0;
+        protected int limit = 0;
+        protected long firstTimestamp = -1;
+        protected long lastTimestamp = -1;
+        protected long replayStartNanos;
+        protected long drainedNanos;
+        protected long bytes = 0;
+        protected long records = 0;
+        protected boolean drained = false;
+        protected boolean closed = false;
+
+        public ReplayInputStream(File file, double speed) throws IOException {
+            capture = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            this.speed = speed;
+            try {
+                if (capture.readInt() != SessionRecorder.MAGIC) {
+                    throw new IOException(file + " is not an IB session capture");
+                }
+                int version = capture.readInt();
+                if (version != SessionRecorder.FORMAT_VERSION) {
+                    throw new IOException("Unsupported capture format version " + version + " in " + file);
+                }
+                captureStartMillis = capture.readLong();
+            } catch (IOException ex) {
+                capture.close();
+                throw ex;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position == limit && !nextRecord()) {
+                return -1;
+            }
+            return chunk[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (position == limit && !nextRecord()) {
+                return -1;
+            }
+            int count = Math.min(length, limit - position);
+            System.arraycopy(chunk, position, b, offset, count);
+            position += count;
+            return count;
+        }
+
+        /**
+         * Loads the next record, waiting until it is due.  At the end of the
+         * capture this marks the stream as drained and blocks until it is closed.
+         *
+         * @return false if the stream was closed.
+         */
+        protected boolean nextRecord() throws IOException {
+            long timestamp;
+            int length;
+            try {
+                timestamp = capture.readLong();
+                length = capture.readInt();
+            } catch (EOFException ex) {
+                awaitClose();
+                return false;
+            }
+            if (length > chunk.length) {
+                chunk = new byte[Math.max(length, chunk.length * 2)];
+            }
+            capture.readFully(chunk, 0, length);
+            if (firstTimestamp < 0) {
+                firstTimestamp = timestamp;
+                replayStartNanos = System.nanoTime();
+            } else if (speed != MAX_SPEED) {
+                pace(replayStartNanos + (long) ((timestamp - firstTimestamp) / speed));
+            }
+            lastTimestamp = timestamp;
+            position = 0;
+            limit = length;
+            bytes += length;
+            records++;
+            return true;
+        }
+
+        protected void pace(long dueNanos) throws IOException {
+            long remaining;
+            while ((remaining = dueNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+
+        protected synchronized void awaitClose() throws IOException {
+            if (!drained) {
+                drained = true;
+                drainedNanos = System.nanoTime();
+                notifyAll();
+            }
+            try {
+                while (!closed) {
+                    wait();
+                }
+            } catch (InterruptedException ex) {
+                throw new InterruptedIOException();
+            }
+        }
+
+        /**
+         * Waits until the reader has consumed the whole capture, or has stopped reading.
+         */
+        public synchronized void awaitFinished() throws InterruptedException {
+            while (!drained && !closed) {
+                wait();
+            }
+        }
+
+        public synchronized long getElapsedNanos() {
+            return drained && firstTimestamp >= 0 ? drainedNanos - replayStartNanos : 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                notifyAll();
+            }
+            capture.close();
+        }
+    }
+
+    /**
+     * An unconnected socket whose input is the capture and whose output is discarded.
+     */
+    protected static class ReplaySocket extends Socket {
+
+        protected final InputStream input;
+        protected final OutputStream output = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int offset, int length) {
+            }
+        };
+
+        public ReplaySocket(InputStream input) {
+            this.input = input;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return input;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return output;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            input.close();
+        }
+    }
+}
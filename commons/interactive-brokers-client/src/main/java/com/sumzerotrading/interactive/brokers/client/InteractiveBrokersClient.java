@@ -35,6 +35,7 @@ import com.sumzerotrading.ib.historical.IBHistoricalDataProvider;
 import com.sumzerotrading.marketdata.Level1QuoteListener;
 import com.sumzerotrading.marketdata.Level2QuoteListener;
 import com.sumzerotrading.marketdata.QuoteEngine;
+import com.sumzerotrading.marketdata.dispatch.ListenerStats;
 import com.sumzerotrading.marketdata.ib.IBQuoteEngine;
 import com.sumzerotrading.realtime.bar.IRealtimeBarEngine;
 import com.sumzerotrading.realtime.bar.RealtimeBarListener;
@@ -125,6 +126,11 @@ public class InteractiveBrokersClient implements InteractiveBrokersClientInterfa
     public void unsubscribeMarketDepth( Ticker ticker, Level2QuoteListener listener ) {
         quoteEngine.unsubscribeMarketDepth(ticker, listener);
     }
+    
+    @Override
+    public ListenerStats getLevel1ListenerStats( Level1QuoteListener listener ) {
+        return quoteEngine.getLevel1ListenerStats(listener);
+    }
 
     @Override
     public void addBrokerErrorListener(BrokerErrorListener listener) {
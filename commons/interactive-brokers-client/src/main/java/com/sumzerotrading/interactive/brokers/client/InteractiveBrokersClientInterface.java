@@ -15,6 +15,7 @@ import com.sumzerotrading.historicaldata.IHistoricalDataProvider;
 import com.sumzerotrading.historicaldata.IHistoricalDataProvider.ShowProperty;
 import com.sumzerotrading.marketdata.Level1QuoteListener;
 import com.sumzerotrading.marketdata.Level2QuoteListener;
+import com.sumzerotrading.marketdata.dispatch.ListenerStats;
 import com.sumzerotrading.realtime.bar.RealtimeBarListener;
 import com.sumzerotrading.realtime.bar.RealtimeBarRequest;
 import java.io.IOException;
@@ -54,6 +55,8 @@ public interface InteractiveBrokersClientInterface {
     void unsubscribeLevel1(Ticker ticker, Level1QuoteListener listener);
 
     void unsubscribeMarketDepth(Ticker ticker, Level2QuoteListener listener);
+
+    ListenerStats getLevel1ListenerStats(Level1QuoteListener listener);
     
     void addBrokerErrorListener( BrokerErrorListener listener );
     
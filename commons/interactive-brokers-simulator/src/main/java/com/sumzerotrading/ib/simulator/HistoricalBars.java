@@ -0,0 +1,99 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.simulator;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Parses the duration, bar size and end date strings of a reqHistoricalData
+ * request.
+ *
+ * @author Rob Terpilowski
+ */
+public class HistoricalBars {
+
+    public static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+    protected static final DateTimeFormatter END_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd HH:mm:ss");
+
+    /**
+     * @param duration A duration such as "5 D", units are S, D, W, M or Y.
+     * @return The duration in seconds
+     */
+    public static long parseDuration(String duration) {
+        String[] parts = duration.trim().split("\\s+");
+        long amount = Long.parseLong(parts[0]);
+        switch (parts[1].toUpperCase()) {
+            case "S":
+                return amount;
+            case "D":
+                return amount * SECONDS_PER_DAY;
+            case "W":
+                return amount * 7 * SECONDS_PER_DAY;
+            case "M":
+                return amount * 30 * SECONDS_PER_DAY;
+            case "Y":
+                return amount * 365 * SECONDS_PER_DAY;
+            default:
+                throw new IllegalArgumentException("Unknown duration: " + duration);
+        }
+    }
+
+    /**
+     * @param barSize A bar size setting such as "1 secs", "5 mins", "1 hour"
+     * or "1 day".
+     * @return The length of a bar in seconds
+     */
+    public static long parseBarSize(String barSize) {
+        String[] parts = barSize.trim().split("\\s+");
+        long amount = Long.parseLong(parts[0]);
+        String unit = parts[1].toLowerCase();
+        if (unit.startsWith("sec")) {
+            return amount;
+        } else if (unit.startsWith("min")) {
+            return amount * 60;
+        } else if (unit.startsWith("hour")) {
+            return amount * 60 * 60;
+        } else if (unit.startsWith("day")) {
+            return amount * SECONDS_PER_DAY;
+        } else if (unit.startsWith("week")) {
+            return amount * 7 * SECONDS_PER_DAY;
+        } else if (unit.startsWith("month")) {
+            return amount * 30 * SECONDS_PER_DAY;
+        }
+        throw new IllegalArgumentException("Unknown bar size: " + barSize);
+    }
+
+    /**
+     * @param endDateTime The end of the request, "yyyyMMdd HH:mm:ss" optionally
+     * followed by a time zone which is ignored, or empty for now.
+     */
+    public static LocalDateTime parseEndDateTime(String endDateTime) {
+        String trimmed = endDateTime.trim();
+        if (trimmed.isEmpty()) {
+            return LocalDateTime.now().withNano(0);
+        }
+        if (trimmed.length() > 17) {
+            trimmed = trimmed.substring(0, 17);
+        }
+        return LocalDateTime.parse(trimmed, END_DATE_FORMAT);
+    }
+}
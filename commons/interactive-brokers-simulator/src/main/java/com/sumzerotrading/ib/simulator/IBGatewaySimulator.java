@@ -0,0 +1,340 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.simulator;
+
+import com.ib.client.Contract;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * A stand-in for TWS or the IB Gateway which accepts EClientSocket
+ * connections, so the quote engine, broker and historical data provider can be
+ * driven without a live connection. Market data, depth and order fills are
+ * synthetic and published at the configured rates.
+ *
+ * <pre>
+ *  IBGatewaySimulator simulator = new IBGatewaySimulator();
+ *  simulator.setPort(7999);
+ *  simulator.setTicksPerSecond(1000);
+ *  simulator.start();
+ * </pre>
+ *
+ * @author Rob Terpilowski
+ */
+public class IBGatewaySimulator {
+
+    protected static final Logger logger = Logger.getLogger(IBGatewaySimulator.class);
+
+    protected int port = 0;
+    protected String account = "DU000001";
+    protected double ticksPerSecond = 10;
+    protected double depthUpdatesPerSecond = 10;
+    protected long publishIntervalMicros = 1000;
+    protected long fillDelayMillis = 0;
+    protected int depthRows = 10;
+    protected int maxHistoricalBars = 5000;
+    protected double defaultStartingPrice = 100;
+    protected double tickSize = 0.01;
+    protected boolean latencyProbes = false;
+    protected long seed = 1;
+
+    protected final Map<String, SimulatedInstrument> instruments = new ConcurrentHashMap<>();
+    protected final Map<String, Double> startingPrices = new ConcurrentHashMap<>();
+    protected final List<SimulatorSession> sessions = new CopyOnWriteArrayList<>();
+    protected final AtomicInteger nextConId = new AtomicInteger(1000);
+    protected final AtomicInteger nextOrderId = new AtomicInteger(1);
+    protected final AtomicInteger nextPermId = new AtomicInteger(1000000);
+    protected ServerSocket serverSocket;
+    protected ScheduledExecutorService scheduler;
+    protected Thread acceptThread;
+    protected volatile boolean running = false;
+    protected double tickCredit = 0;
+    protected double depthCredit = 0;
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        serverSocket = new ServerSocket(port);
+        running = true;
+        scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "IBGatewaySimulator-Scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::publish, publishIntervalMicros, publishIntervalMicros, TimeUnit.MICROSECONDS);
+        acceptThread = new Thread(this::acceptConnections, "IBGatewaySimulator-Accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        logger.info("IB gateway simulator listening on port " + getPort());
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+        for (SimulatorSession session : sessions) {
+            session.close();
+        }
+        scheduler.shutdownNow();
+    }
+
+    protected void acceptConnections() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                SimulatorSession session = new SimulatorSession(this, socket);
+                sessions.add(session);
+                Thread thread = new Thread(session, "IBGatewaySimulator-Session-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (SocketException ex) {
+                if (running) {
+                    logger.error(ex.getMessage(), ex);
+                }
+            } catch (IOException ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * Called every publish interval, works out how many ticks and depth
+     * updates are due per subscription, carrying fractions over to the next
+     * interval so low rates are still honored.
+     */
+    protected void publish() {
+        try {
+            tickCredit += ticksPerSecond * publishIntervalMicros / 1000000.0;
+            depthCredit += depthUpdatesPerSecond * publishIntervalMicros / 1000000.0;
+            int ticks = (int) tickCredit;
+            int depthUpdates = (int) depthCredit;
+            tickCredit -= ticks;
+            depthCredit -= depthUpdates;
+            if (ticks == 0 && depthUpdates == 0) {
+                return;
+            }
+            for (SimulatorSession session : sessions) {
+                session.publish(ticks, depthUpdates, latencyProbes);
+            }
+        } catch (RuntimeException ex) {
+            //an exception would cancel the scheduled task
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    protected void sessionClosed(SimulatorSession session) {
+        sessions.remove(session);
+    }
+
+    /**
+     * @return The instrument for the contract, created at the starting price
+     * for the symbol the first time it is requested.
+     */
+    public SimulatedInstrument getInstrument(Contract contract) {
+        String key = contract.m_symbol + ":" + contract.m_secType + ":" + contract.m_expiry;
+        return instruments.computeIfAbsent(key, k -> {
+            double startingPrice = startingPrices.getOrDefault(contract.m_symbol, defaultStartingPrice);
+            return new SimulatedInstrument(contract.m_symbol, contract.m_secType, contract.m_exchange,
+                    contract.m_currency, nextConId.getAndIncrement(), startingPrice, tickSize, seed + k.hashCode());
+        });
+    }
+
+    public void setStartingPrice(String symbol, double price) {
+        startingPrices.put(symbol, price);
+    }
+
+    public int getNextOrderId() {
+        return nextOrderId.get();
+    }
+
+    protected int getNextPermId() {
+        return nextPermId.getAndIncrement();
+    }
+
+    public List<SimulatorSession> getSessions() {
+        return sessions;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return The port being listened on, which is chosen by the OS if the
+     * port was set to 0.
+     */
+    public int getPort() {
+        if (serverSocket != null) {
+            return serverSocket.getLocalPort();
+        }
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getAccount() {
+        return account;
+    }
+
+    public void setAccount(String account) {
+        this.account = account;
+    }
+
+    public double getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    /**
+     * @param ticksPerSecond The number of price ticks sent per second for each
+     * market data subscription.
+     */
+    public void setTicksPerSecond(double ticksPerSecond) {
+        this.ticksPerSecond = ticksPerSecond;
+    }
+
+    public double getDepthUpdatesPerSecond() {
+        return depthUpdatesPerSecond;
+    }
+
+    /**
+     * @param depthUpdatesPerSecond The number of book updates sent per second
+     * for each market depth subscription.
+     */
+    public void setDepthUpdatesPerSecond(double depthUpdatesPerSecond) {
+        this.depthUpdatesPerSecond = depthUpdatesPerSecond;
+    }
+
+    public long getPublishIntervalMicros() {
+        return publishIntervalMicros;
+    }
+
+    /**
+     * @param publishIntervalMicros How often market data is published, must be
+     * set before the simulator is started.
+     */
+    public void setPublishIntervalMicros(long publishIntervalMicros) {
+        this.publishIntervalMicros = publishIntervalMicros;
+    }
+
+    public long getFillDelayMillis() {
+        return fillDelayMillis;
+    }
+
+    /**
+     * @param fillDelayMillis How long after being submitted an order is filled,
+     * 0 fills the order immediately.
+     */
+    public void setFillDelayMillis(long fillDelayMillis) {
+        this.fillDelayMillis = fillDelayMillis;
+    }
+
+    public int getDepthRows() {
+        return depthRows;
+    }
+
+    public void setDepthRows(int depthRows) {
+        this.depthRows = depthRows;
+    }
+
+    public int getMaxHistoricalBars() {
+        return maxHistoricalBars;
+    }
+
+    public void setMaxHistoricalBars(int maxHistoricalBars) {
+        this.maxHistoricalBars = maxHistoricalBars;
+    }
+
+    public double getDefaultStartingPrice() {
+        return defaultStartingPrice;
+    }
+
+    public void setDefaultStartingPrice(double defaultStartingPrice) {
+        this.defaultStartingPrice = defaultStartingPrice;
+    }
+
+    public double getTickSize() {
+        return tickSize;
+    }
+
+    public void setTickSize(double tickSize) {
+        this.tickSize = tickSize;
+    }
+
+    public boolean isLatencyProbes() {
+        return latencyProbes;
+    }
+
+    /**
+     * @param latencyProbes When set a tickString of type LAST_TIMESTAMP
+     * carrying System.nanoTime() follows each batch of ticks, which a client in
+     * the same JVM can use to measure end to end latency.
+     */
+    public void setLatencyProbes(boolean latencyProbes) {
+        this.latencyProbes = latencyProbes;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Runs the simulator until the process is killed.
+     *
+     * @param args port, ticks per second per subscription and fill delay in
+     * milliseconds, all optional.
+     */
+    public static void main(String[] args) throws Exception {
+        IBGatewaySimulator simulator = new IBGatewaySimulator();
+        simulator.setPort(args.length > 0 ? Integer.parseInt(args[0]) : 7999);
+        if (args.length > 1) {
+            simulator.setTicksPerSecond(Double.parseDouble(args[1]));
+        }
+        if (args.length > 2) {
+            simulator.setFillDelayMillis(Long.parseLong(args[2]));
+        }
+        simulator.start();
+        Thread.currentThread().join();
+    }
+}
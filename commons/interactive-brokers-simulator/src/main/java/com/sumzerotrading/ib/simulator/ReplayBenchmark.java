@@ -0,0 +1,140 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.simulator;
+
+import com.ib.client.Contract;
+import com.ib.client.EClientSocket;
+import com.ib.client.SessionRecorder;
+import com.ib.client.SessionReplay;
+import com.ib.client.TagValue;
+import com.sumzerotrading.ib.BaseIBConnectionDelegate;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Vector;
+import org.apache.log4j.Logger;
+
+/**
+ * Measures how fast each EReader decodes a captured session, without the
+ * socket or the simulator in the way.  A capture of the simulator is recorded
+ * once, then replayed as fast as possible, so runs are repeatable across
+ * builds and machines.
+ *
+ * <pre>
+ *  java com.sumzerotrading.ib.simulator.ReplayBenchmark record [file] [subscriptions] [ticksPerSecond] [seconds]
+ *  java com.sumzerotrading.ib.simulator.ReplayBenchmark replay [file] [reader] [iterations] [speed]
+ * </pre>
+ *
+ * Where reader is either standard (EReader) or buffered (ByteBufferEReader), and
+ * a speed of 0 replays as fast as possible.
+ *
+ * @author Rob Terpilowski
+ */
+public class ReplayBenchmark extends BaseIBConnectionDelegate {
+
+    protected static final Logger logger = Logger.getLogger(ReplayBenchmark.class);
+
+    protected long messages = 0;
+
+    @Override
+    public void tickPrice(int tickerId, int field, double price, int canAutoExecute) {
+        messages++;
+    }
+
+    @Override
+    public void tickSize(int tickerId, int field, int size) {
+        messages++;
+    }
+
+    @Override
+    public void tickString(int tickerId, int tickType, String value) {
+        messages++;
+    }
+
+    @Override
+    public void updateMktDepth(int tickerId, int position, int operation, int side, double price, int size) {
+        messages++;
+    }
+
+    /**
+     * Records a session of market data and depth from the simulator.
+     */
+    public static void record(File file, int subscriptions, double ticksPerSecond, int seconds) throws Exception {
+        IBGatewaySimulator simulator = new IBGatewaySimulator();
+        simulator.setSeed(1);
+        simulator.setTicksPerSecond(ticksPerSecond);
+        simulator.setDepthUpdatesPerSecond(ticksPerSecond);
+        simulator.start();
+
+        SessionRecorder recorder = new SessionRecorder(file);
+        EClientSocket clientSocket = new EClientSocket(new BaseIBConnectionDelegate());
+        clientSocket.setUseByteBufferReader(true);
+        clientSocket.setSessionRecorder(recorder);
+        clientSocket.eConnect("127.0.0.1", simulator.getPort(), 1);
+        for (int i = 0; i < subscriptions; i++) {
+            Contract contract = new Contract();
+            contract.m_symbol = "SYM" + i;
+            contract.m_secType = "STK";
+            contract.m_exchange = "SMART";
+            contract.m_currency = "USD";
+            clientSocket.reqMktData(i + 1, contract, "", false, new ArrayList<TagValue>());
+            clientSocket.reqMktDepth(subscriptions + i + 1, contract, 5, new Vector<TagValue>());
+        }
+        Thread.sleep(seconds * 1000L);
+
+        clientSocket.eDisconnect();
+        simulator.stop();
+        recorder.close();
+        logger.info(String.format("recorded %d bytes in %d reads to %s",
+                recorder.getByteCount(), recorder.getRecordCount(), file));
+    }
+
+    public void replay(File file, String reader, int iterations, double speed) throws Exception {
+        SessionReplay replay = new SessionReplay(file);
+        replay.setSpeed(speed);
+        for (int i = 0; i < iterations; i++) {
+            EClientSocket clientSocket = new EClientSocket(this);
+            clientSocket.setUseByteBufferReader("buffered".equals(reader));
+            messages = 0;
+            replay.replay(clientSocket);
+
+            double seconds = replay.getElapsedNanos() / 1e9;
+            logger.info(String.format("reader=%s iteration=%d %.1f MB/s %.0f messages/s (%d messages in %.3f s)",
+                    reader, i, replay.getBytesReplayed() / seconds / (1024 * 1024), messages / seconds,
+                    messages, seconds));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "replay";
+        File file = new File(args.length > 1 ? args[1] : "ib-session.cap");
+        if ("record".equals(mode)) {
+            int subscriptions = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+            double ticksPerSecond = args.length > 3 ? Double.parseDouble(args[3]) : 1000;
+            int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+            record(file, subscriptions, ticksPerSecond, seconds);
+        } else {
+            String reader = args.length > 2 ? args[2] : "buffered";
+            int iterations = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+            double speed = args.length > 4 ? Double.parseDouble(args[4]) : SessionReplay.MAX_SPEED;
+            new ReplayBenchmark().replay(file, reader, iterations, speed);
+        }
+        System.exit(0);
+    }
+}
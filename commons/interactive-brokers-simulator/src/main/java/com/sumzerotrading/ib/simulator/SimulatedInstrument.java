@@ -0,0 +1,125 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.simulator;
+
+import java.util.Random;
+
+/**
+ * The synthetic market for one symbol. The last price takes a random walk of
+ * at most one tick per update, with the bid and ask one tick either side.
+ *
+ * @author Rob Terpilowski
+ */
+public class SimulatedInstrument {
+
+    protected final String symbol;
+    protected final String secType;
+    protected final String exchange;
+    protected final String currency;
+    protected final int conId;
+    protected final double tickSize;
+    protected final double ticksPerUnit;
+    protected final Random random;
+    protected volatile double last;
+
+    public SimulatedInstrument(String symbol, String secType, String exchange, String currency, int conId, double startingPrice, double tickSize, long seed) {
+        this.symbol = symbol;
+        this.secType = secType;
+        this.exchange = exchange;
+        this.currency = currency;
+        this.conId = conId;
+        this.tickSize = tickSize;
+        this.ticksPerUnit = Math.rint(1 / tickSize);
+        this.last = round(startingPrice);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Moves the last price up or down a tick, or leaves it unchanged.
+     *
+     * @return The new last price
+     */
+    public synchronized double nextPrice() {
+        double next = round(last + ((random.nextInt(3) - 1) * tickSize));
+        if (next < tickSize) {
+            next = tickSize;
+        }
+        last = next;
+        return next;
+    }
+
+    public synchronized int nextSize() {
+        return 100 * (1 + random.nextInt(10));
+    }
+
+    public synchronized int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+
+    public double getLast() {
+        return last;
+    }
+
+    public double getBid() {
+        return round(last - tickSize);
+    }
+
+    public double getAsk() {
+        return round(last + tickSize);
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public String getSecType() {
+        return secType;
+    }
+
+    public String getExchange() {
+        return exchange;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public int getConId() {
+        return conId;
+    }
+
+    public double getTickSize() {
+        return tickSize;
+    }
+
+    /**
+     * Rounds to the tick size. Dividing by the number of ticks per unit
+     * rather than multiplying by the tick size keeps prices such as 100.01
+     * free of floating point noise when they are sent as text.
+     */
+    public double round(double price) {
+        return Math.round(price * ticksPerUnit) / ticksPerUnit;
+    }
+
+    @Override
+    public String toString() {
+        return "SimulatedInstrument{" + "symbol=" + symbol + ", secType=" + secType + ", conId=" + conId + ", last=" + last + '}';
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.simulator;
+
+import com.ib.client.Contract;
+import com.ib.client.EClientSocket;
+import com.ib.client.TagValue;
+import com.ib.client.TickType;
+import com.sumzerotrading.ib.BaseIBConnectionDelegate;
+import com.sumzerotrading.ib.nio.IBEventLoop;
+import com.sumzerotrading.ib.nio.NioEClientSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * Measures end to end market data throughput and latency of an EClientSocket
+ * against an in-process simulator. Latency is measured from the simulator
+ * writing a batch of ticks to the client decoding the probe which follows it.
+ *
+ * <pre>
+ *  java com.sumzerotrading.ib.simulator.SimulatorBenchmark [transport] [subscriptions] [ticksPerSecond] [seconds]
+ * </pre>
+ *
+ * Where transport is one of blocking, buffered (ByteBufferEReader with the
+ * async writer) or nio.
+ *
+ * @author Rob Terpilowski
+ */
+public class SimulatorBenchmark extends BaseIBConnectionDelegate {
+
+    protected static final Logger logger = Logger.getLogger(SimulatorBenchmark.class);
+    protected static final int MAX_SAMPLES = 1 << 20;
+
+    protected final AtomicLong ticks = new AtomicLong();
+    protected final long[] latencies = new long[MAX_SAMPLES];
+    protected volatile int sampleCount = 0;
+
+    @Override
+    public void tickPrice(int tickerId, int field, double price, int canAutoExecute) {
+        ticks.incrementAndGet();
+    }
+
+    @Override
+    public void tickString(int tickerId, int tickType, String value) {
+        if (tickType == TickType.LAST_TIMESTAMP) {
+            long latency = System.nanoTime() - Long.parseLong(value);
+            //all callbacks arrive on the single reader thread
+            int count = sampleCount;
+            if (count < MAX_SAMPLES) {
+                latencies[count] = latency;
+                sampleCount = count + 1;
+            }
+        }
+    }
+
+    public void run(String transport, int subscriptions, double ticksPerSecond, int seconds) throws Exception {
+        IBGatewaySimulator simulator = new IBGatewaySimulator();
+        simulator.setTicksPerSecond(ticksPerSecond);
+        simulator.setLatencyProbes(true);
+        simulator.start();
+
+        EClientSocket clientSocket = createClientSocket(transport);
+        clientSocket.eConnect("127.0.0.1", simulator.getPort(), 1);
+        for (int i = 0; i < subscriptions; i++) {
+            Contract contract = new Contract();
+            contract.m_symbol = "SYM" + i;
+            contract.m_secType = "STK";
+            contract.m_exchange = "SMART";
+            contract.m_currency = "USD";
+            clientSocket.reqMktData(i + 1, contract, "", false, new ArrayList<TagValue>());
+        }
+
+        //let the JIT settle before measuring
+        Thread.sleep(2000);
+        ticks.set(0);
+        sampleCount = 0;
+        long start = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        long received = ticks.get();
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        int count = sampleCount;
+
+        clientSocket.eDisconnect();
+        simulator.stop();
+
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        logger.info(String.format("transport=%s subscriptions=%d offered=%.0f ticks/s received=%.0f ticks/s",
+                transport, subscriptions, subscriptions * ticksPerSecond, received / elapsedSeconds));
+        if (count > 0) {
+            logger.info(String.format("latency us: p50=%.1f p99=%.1f p99.9=%.1f max=%.1f (%d samples)",
+                    percentile(sorted, 0.5) / 1e3, percentile(sorted, 0.99) / 1e3,
+                    percentile(sorted, 0.999) / 1e3, sorted[count - 1] / 1e3, count));
+        }
+    }
+
+    protected EClientSocket createClientSocket(String transport) {
+        switch (transport) {
+            case "nio":
+                return new NioEClientSocket(this, IBEventLoop.getInstance());
+            case "buffered": {
+                EClientSocket clientSocket = new EClientSocket(this);
+                clientSocket.setUseByteBufferReader(true);
+                clientSocket.setUseAsyncWriter(true);
+                return clientSocket;
+            }
+            default:
+                return new EClientSocket(this);
+        }
+    }
+
+    protected static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(sorted.length * percentile))];
+    }
+
+    public static void main(String[] args) throws Exception {
+        String transport = args.length > 0 ? args[0] : "buffered";
+        int subscriptions = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        double ticksPerSecond = args.length > 2 ? Double.parseDouble(args[2]) : 1000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        new SimulatorBenchmark().run(transport, subscriptions, ticksPerSecond, seconds);
+        System.exit(0);
+    }
+}
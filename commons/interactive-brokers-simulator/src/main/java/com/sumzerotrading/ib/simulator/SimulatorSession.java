@@ -0,0 +1,642 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.simulator;
+
+import com.ib.client.Contract;
+import com.ib.client.TickType;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+
+/**
+ * One client connection to the simulator. Requests are decoded on the
+ * session's own thread using the field layouts EClientSocket sends for
+ * SERVER_VERSION, responses and market data are encoded with the layouts
+ * EReader expects.
+ *
+ * @author Rob Terpilowski
+ */
+public class SimulatorSession implements Runnable {
+
+    /**
+     * The last server version before the API handshake changed to START_API,
+     * requests include conId and tradingClass but no options strings.
+     */
+    public static final int SERVER_VERSION = 69;
+
+    protected static final Logger logger = Logger.getLogger(SimulatorSession.class);
+
+    //requests, as sent by EClientSocket
+    protected static final int REQ_MKT_DATA = 1;
+    protected static final int CANCEL_MKT_DATA = 2;
+    protected static final int PLACE_ORDER = 3;
+    protected static final int CANCEL_ORDER = 4;
+    protected static final int REQ_OPEN_ORDERS = 5;
+    protected static final int REQ_ACCOUNT_DATA = 6;
+    protected static final int REQ_EXECUTIONS = 7;
+    protected static final int REQ_IDS = 8;
+    protected static final int REQ_CONTRACT_DATA = 9;
+    protected static final int REQ_MKT_DEPTH = 10;
+    protected static final int CANCEL_MKT_DEPTH = 11;
+    protected static final int REQ_AUTO_OPEN_ORDERS = 15;
+    protected static final int REQ_ALL_OPEN_ORDERS = 16;
+    protected static final int REQ_MANAGED_ACCTS = 17;
+    protected static final int REQ_HISTORICAL_DATA = 20;
+    protected static final int CANCEL_HISTORICAL_DATA = 25;
+    protected static final int REQ_CURRENT_TIME = 49;
+    protected static final int REQ_GLOBAL_CANCEL = 58;
+    protected static final int REQ_MARKET_DATA_TYPE = 59;
+    protected static final int REQ_POSITIONS = 61;
+    protected static final int CANCEL_POSITIONS = 64;
+
+    //responses, as read by EReader
+    protected static final int TICK_PRICE = 1;
+    protected static final int ORDER_STATUS = 3;
+    protected static final int ERR_MSG = 4;
+    protected static final int NEXT_VALID_ID = 9;
+    protected static final int CONTRACT_DATA = 10;
+    protected static final int MARKET_DEPTH = 12;
+    protected static final int MANAGED_ACCTS = 15;
+    protected static final int HISTORICAL_DATA = 17;
+    protected static final int TICK_STRING = 46;
+    protected static final int CURRENT_TIME = 49;
+    protected static final int CONTRACT_DATA_END = 52;
+    protected static final int OPEN_ORDER_END = 53;
+    protected static final int ACCT_DOWNLOAD_END = 54;
+    protected static final int EXECUTION_DATA_END = 55;
+    protected static final int MARKET_DATA_TYPE = 58;
+    protected static final int POSITION_END = 62;
+
+    protected static final int DEPTH_INSERT = 0;
+    protected static final int DEPTH_UPDATE = 1;
+    protected static final int DEPTH_ASK = 0;
+    protected static final int DEPTH_BID = 1;
+
+    protected static final String BAG_SEC_TYPE = "BAG";
+    protected static final DateTimeFormatter TWS_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd HH:mm:ss z");
+    protected static final DateTimeFormatter INTRADAY_BAR_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd HH:mm:ss");
+    protected static final DateTimeFormatter DAILY_BAR_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    public static class MarketDataSubscription {
+
+        protected final int requestId;
+        protected final SimulatedInstrument instrument;
+        protected final int rows;
+
+        public MarketDataSubscription(int requestId, SimulatedInstrument instrument, int rows) {
+            this.requestId = requestId;
+            this.instrument = instrument;
+            this.rows = rows;
+        }
+
+        public int getRequestId() {
+            return requestId;
+        }
+
+        public SimulatedInstrument getInstrument() {
+            return instrument;
+        }
+    }
+
+    public static class SimulatedOrder {
+
+        protected final int orderId;
+        protected final SimulatedInstrument instrument;
+        protected final String action;
+        protected final int quantity;
+        protected final String orderType;
+        protected final double limitPrice;
+        protected final int parentId;
+        protected final int permId;
+        protected String status = "Submitted";
+        protected int filled;
+        protected double fillPrice;
+
+        public SimulatedOrder(int orderId, SimulatedInstrument instrument, String action, int quantity, String orderType, double limitPrice, int parentId, int permId) {
+            this.orderId = orderId;
+            this.instrument = instrument;
+            this.action = action;
+            this.quantity = quantity;
+            this.orderType = orderType;
+            this.limitPrice = limitPrice;
+            this.parentId = parentId;
+            this.permId = permId;
+        }
+
+        public boolean isWorking() {
+            return "Submitted".equals(status);
+        }
+    }
+
+    protected final IBGatewaySimulator simulator;
+    protected final Socket socket;
+    protected WireInput input;
+    protected WireOutput output;
+    protected int clientId;
+    protected volatile boolean running = true;
+    protected final Map<Integer, MarketDataSubscription> marketData = new ConcurrentHashMap<>();
+    protected final Map<Integer, MarketDataSubscription> marketDepth = new ConcurrentHashMap<>();
+    protected final Map<Integer, SimulatedOrder> orders = new ConcurrentHashMap<>();
+
+    public SimulatorSession(IBGatewaySimulator simulator, Socket socket) {
+        this.simulator = simulator;
+        this.socket = socket;
+    }
+
+    @Override
+    public void run() {
+        try {
+            input = new WireInput(new BufferedInputStream(socket.getInputStream()));
+            output = new WireOutput(socket.getOutputStream());
+            handshake();
+            while (running) {
+                processRequest(input.readInt());
+            }
+        } catch (EOFException ex) {
+            logger.info("Client " + clientId + " disconnected");
+        } catch (Exception ex) {
+            if (running) {
+                logger.error("Closing session for client " + clientId, ex);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    protected void handshake() throws IOException {
+        int clientVersion = input.readInt();
+        synchronized (this) {
+            output.add(SERVER_VERSION).add(ZonedDateTime.now().format(TWS_TIME_FORMAT));
+            output.flush();
+        }
+        clientId = input.readInt();
+        logger.info("Client " + clientId + " connected with client version " + clientVersion);
+        synchronized (this) {
+            writeNextValidId(simulator.getNextOrderId());
+            output.add(MANAGED_ACCTS).add(1).add(simulator.getAccount());
+            output.flush();
+        }
+    }
+
+    protected void processRequest(int requestType) throws IOException {
+        switch (requestType) {
+            case REQ_MKT_DATA:
+                reqMktData();
+                break;
+            case CANCEL_MKT_DATA:
+                input.skip(1);
+                marketData.remove(input.readInt());
+                break;
+            case PLACE_ORDER:
+                placeOrder();
+                break;
+            case CANCEL_ORDER:
+                input.skip(1);
+                cancelOrder(input.readInt());
+                break;
+            case REQ_OPEN_ORDERS:
+            case REQ_ALL_OPEN_ORDERS:
+                input.skip(1);
+                sendEndMessage(OPEN_ORDER_END);
+                break;
+            case REQ_ACCOUNT_DATA:
+                input.skip(3);
+                synchronized (this) {
+                    output.add(ACCT_DOWNLOAD_END).add(1).add(simulator.getAccount());
+                    output.flush();
+                }
+                break;
+            case REQ_EXECUTIONS: {
+                input.skip(1);
+                int requestId = input.readInt();
+                input.skip(7);
+                synchronized (this) {
+                    output.add(EXECUTION_DATA_END).add(1).add(requestId);
+                    output.flush();
+                }
+                break;
+            }
+            case REQ_IDS:
+                input.skip(2);
+                synchronized (this) {
+                    writeNextValidId(simulator.getNextOrderId());
+                    output.flush();
+                }
+                break;
+            case REQ_CONTRACT_DATA:
+                reqContractDetails();
+                break;
+            case REQ_MKT_DEPTH:
+                reqMktDepth();
+                break;
+            case CANCEL_MKT_DEPTH:
+                input.skip(1);
+                marketDepth.remove(input.readInt());
+                break;
+            case REQ_AUTO_OPEN_ORDERS:
+                input.skip(2);
+                break;
+            case REQ_MANAGED_ACCTS:
+                input.skip(1);
+                synchronized (this) {
+                    output.add(MANAGED_ACCTS).add(1).add(simulator.getAccount());
+                    output.flush();
+                }
+                break;
+            case REQ_HISTORICAL_DATA:
+                reqHistoricalData();
+                break;
+            case CANCEL_HISTORICAL_DATA:
+                input.skip(2);
+                break;
+            case REQ_CURRENT_TIME:
+                input.skip(1);
+                synchronized (this) {
+                    output.add(CURRENT_TIME).add(1).add(System.currentTimeMillis() / 1000);
+                    output.flush();
+                }
+                break;
+            case REQ_GLOBAL_CANCEL:
+                input.skip(1);
+                for (SimulatedOrder order : orders.values()) {
+                    cancelOrder(order.orderId);
+                }
+                break;
+            case REQ_MARKET_DATA_TYPE:
+                input.skip(2);
+                break;
+            case REQ_POSITIONS:
+                input.skip(1);
+                sendEndMessage(POSITION_END);
+                break;
+            case CANCEL_POSITIONS:
+                input.skip(1);
+                break;
+            default:
+                //without the field layout there's no way to find the start of the next request
+                throw new IllegalStateException("Unsupported request type: " + requestType);
+        }
+    }
+
+    protected void reqMktData() throws IOException {
+        input.skip(1);
+        int requestId = input.readInt();
+        Contract contract = readContract(true, true);
+        if (BAG_SEC_TYPE.equalsIgnoreCase(contract.m_secType)) {
+            input.skip(input.readInt() * 4);
+        }
+        if (input.readBoolean()) {
+            input.skip(3);
+        }
+        input.skip(1);
+        boolean snapshot = input.readBoolean();
+
+        SimulatedInstrument instrument = simulator.getInstrument(contract);
+        synchronized (this) {
+            writeTickPrice(requestId, TickType.BID, instrument.getBid(), instrument.nextSize());
+            writeTickPrice(requestId, TickType.ASK, instrument.getAsk(), instrument.nextSize());
+            writeTickPrice(requestId, TickType.LAST, instrument.getLast(), instrument.nextSize());
+            output.flush();
+        }
+        if (!snapshot) {
+            marketData.put(requestId, new MarketDataSubscription(requestId, instrument, 0));
+        }
+    }
+
+    protected void reqMktDepth() throws IOException {
+        input.skip(1);
+        int requestId = input.readInt();
+        Contract contract = readContract(false, true);
+        int rows = Math.min(input.readInt(), simulator.getDepthRows());
+
+        SimulatedInstrument instrument = simulator.getInstrument(contract);
+        MarketDataSubscription subscription = new MarketDataSubscription(requestId, instrument, rows);
+        synchronized (this) {
+            for (int position = 0; position < rows; position++) {
+                writeDepth(subscription, DEPTH_INSERT, DEPTH_BID, position);
+                writeDepth(subscription, DEPTH_INSERT, DEPTH_ASK, position);
+            }
+            output.flush();
+        }
+        marketDepth.put(requestId, subscription);
+    }
+
+    protected void reqContractDetails() throws IOException {
+        input.skip(1);
+        int requestId = input.readInt();
+        Contract contract = readContract(false, true);
+        input.skip(3);
+
+        SimulatedInstrument instrument = simulator.getInstrument(contract);
+        synchronized (this) {
+            output.add(CONTRACT_DATA).add(8).add(requestId)
+                    .add(instrument.getSymbol()).add(instrument.getSecType()).add(contract.m_expiry)
+                    .add(contract.m_strike).add(contract.m_right).add(instrument.getExchange())
+                    .add(instrument.getCurrency()).add(instrument.getSymbol()).add(instrument.getSymbol())
+                    .add(instrument.getSymbol()).add(instrument.getConId()).add(instrument.getTickSize())
+                    .add(contract.m_multiplier).add("LMT,MKT,STP").add(instrument.getExchange())
+                    //priceMagnifier, underConId, longName, primaryExch
+                    .add(1).add(0).add(instrument.getSymbol()).add(instrument.getExchange())
+                    //contractMonth, industry, category, subcategory, timeZoneId, tradingHours, liquidHours
+                    .add(contract.m_expiry).add("").add("").add("").add("EST").add("").add("")
+                    //evRule, evMultiplier, secIdList count
+                    .add("").add(0).add(0);
+            output.add(CONTRACT_DATA_END).add(1).add(requestId);
+            output.flush();
+        }
+    }
+
+    protected void reqHistoricalData() throws IOException {
+        input.skip(1);
+        int requestId = input.readInt();
+        Contract contract = readContract(true, true);
+        input.skip(1);
+        String endDateTime = input.readStr();
+        String barSize = input.readStr();
+        String duration = input.readStr();
+        input.skip(3);
+        if (BAG_SEC_TYPE.equalsIgnoreCase(contract.m_secType)) {
+            input.skip(input.readInt() * 4);
+        }
+
+        SimulatedInstrument instrument = simulator.getInstrument(contract);
+        long barSeconds = HistoricalBars.parseBarSize(barSize);
+        int count = (int) Math.max(1, Math.min(simulator.getMaxHistoricalBars(), HistoricalBars.parseDuration(duration) / barSeconds));
+        LocalDateTime end = HistoricalBars.parseEndDateTime(endDateTime);
+        DateTimeFormatter format = barSeconds >= HistoricalBars.SECONDS_PER_DAY ? DAILY_BAR_FORMAT : INTRADAY_BAR_FORMAT;
+        LocalDateTime start = end.minusSeconds(barSeconds * count);
+
+        synchronized (this) {
+            output.add(HISTORICAL_DATA).add(3).add(requestId)
+                    .add(start.format(INTRADAY_BAR_FORMAT)).add(end.format(INTRADAY_BAR_FORMAT)).add(count);
+            double price = instrument.getLast();
+            for (int i = 0; i < count; i++) {
+                double open = price;
+                double high = open;
+                double low = open;
+                for (int step = 0; step < 4; step++) {
+                    price = instrument.round(price + ((instrument.nextInt(3) - 1) * instrument.getTickSize()));
+                    high = Math.max(high, price);
+                    low = Math.min(low, price);
+                }
+                LocalDateTime barTime = start.plusSeconds(barSeconds * i);
+                output.add(barTime.format(format)).add(open).add(high).add(low).add(price)
+                        .add(instrument.nextSize()).add(instrument.round((high + low + price) / 3))
+                        .add("false").add(1 + instrument.nextInt(100));
+            }
+            output.flush();
+        }
+    }
+
+    protected void placeOrder() throws IOException {
+        input.skip(1);
+        int orderId = input.readInt();
+        Contract contract = readContract(true, true);
+        input.skip(2);
+        String action = input.readStr();
+        int quantity = input.readInt();
+        String orderType = input.readStr();
+        double limitPrice = input.readDoubleMax();
+        //auxPrice, tif, ocaGroup, account, openClose, origin, orderRef, transmit
+        input.skip(8);
+        int parentId = input.readInt();
+        //blockOrder, sweepToFill, displaySize, triggerMethod, outsideRth, hidden
+        input.skip(6);
+        if (BAG_SEC_TYPE.equalsIgnoreCase(contract.m_secType)) {
+            input.skip(input.readInt() * 8);
+            input.skip(input.readInt());
+            input.skip(input.readInt() * 2);
+        }
+        //sharesAllocation through volatilityType
+        input.skip(29);
+        if (!input.readStr().isEmpty()) {
+            //delta neutral order fields
+            input.skip(9);
+        } else {
+            input.skip(1);
+        }
+        //continuousUpdate, referencePriceType, trailStopPrice, trailingPercent,
+        //scaleInitLevelSize, scaleSubsLevelSize
+        input.skip(6);
+        double scalePriceIncrement = input.readDoubleMax();
+        if (scalePriceIncrement > 0 && scalePriceIncrement != Double.MAX_VALUE) {
+            input.skip(7);
+        }
+        //scaleTable, activeStartTime, activeStopTime
+        input.skip(3);
+        if (!input.readStr().isEmpty()) {
+            //hedgeParam
+            input.skip(1);
+        }
+        //optOutSmartRouting, clearingAccount, clearingIntent, notHeld
+        input.skip(4);
+        if (input.readBoolean()) {
+            input.skip(3);
+        }
+        if (!input.readStr().isEmpty()) {
+            input.skip(input.readInt() * 2);
+        }
+        //whatIf
+        input.skip(1);
+
+        SimulatedOrder order = new SimulatedOrder(orderId, simulator.getInstrument(contract), action, quantity,
+                orderType, limitPrice, parentId, simulator.getNextPermId());
+        orders.put(orderId, order);
+        synchronized (this) {
+            writeOrderStatus(order);
+            output.flush();
+        }
+        //child orders such as stops and targets stay working until cancelled
+        if (parentId == 0) {
+            if (simulator.getFillDelayMillis() > 0) {
+                simulator.getScheduler().schedule(() -> fillOrder(order), simulator.getFillDelayMillis(), TimeUnit.MILLISECONDS);
+            } else {
+                fillOrder(order);
+            }
+        }
+    }
+
+    protected void fillOrder(SimulatedOrder order) {
+        try {
+            synchronized (this) {
+                if (!running || !order.isWorking()) {
+                    return;
+                }
+                order.status = "Filled";
+                order.filled = order.quantity;
+                order.fillPrice = "LMT".equalsIgnoreCase(order.orderType) ? order.limitPrice : order.instrument.getLast();
+                writeOrderStatus(order);
+                output.flush();
+            }
+        } catch (IOException ex) {
+            logger.error("Unable to send fill for order " + order.orderId, ex);
+            close();
+        }
+    }
+
+    protected void cancelOrder(int orderId) throws IOException {
+        SimulatedOrder order = orders.get(orderId);
+        synchronized (this) {
+            if (order == null || !order.isWorking()) {
+                output.add(ERR_MSG).add(2).add(orderId).add(135).add("Can't find order with id = " + orderId);
+            } else {
+                order.status = "Cancelled";
+                writeOrderStatus(order);
+            }
+            output.flush();
+        }
+    }
+
+    /**
+     * Sends the number of ticks to each market data subscription and depth
+     * updates to each depth subscription, called by the simulator's publishing
+     * thread.
+     */
+    public void publish(int ticks, int depthUpdates, boolean latencyProbe) {
+        try {
+            synchronized (this) {
+                if (!running) {
+                    return;
+                }
+                for (MarketDataSubscription subscription : marketData.values()) {
+                    SimulatedInstrument instrument = subscription.instrument;
+                    for (int i = 0; i < ticks; i++) {
+                        instrument.nextPrice();
+                        switch (instrument.nextInt(3)) {
+                            case 0:
+                                writeTickPrice(subscription.requestId, TickType.BID, instrument.getBid(), instrument.nextSize());
+                                break;
+                            case 1:
+                                writeTickPrice(subscription.requestId, TickType.ASK, instrument.getAsk(), instrument.nextSize());
+                                break;
+                            default:
+                                writeTickPrice(subscription.requestId, TickType.LAST, instrument.getLast(), instrument.nextSize());
+                        }
+                    }
+                    if (latencyProbe && ticks > 0) {
+                        output.add(TICK_STRING).add(6).add(subscription.requestId).add(TickType.LAST_TIMESTAMP).add(System.nanoTime());
+                    }
+                    output.endMessage();
+                }
+                for (MarketDataSubscription subscription : marketDepth.values()) {
+                    for (int i = 0; i < depthUpdates; i++) {
+                        subscription.instrument.nextPrice();
+                        int side = subscription.instrument.nextInt(2);
+                        writeDepth(subscription, DEPTH_UPDATE, side, subscription.instrument.nextInt(subscription.rows));
+                    }
+                    output.endMessage();
+                }
+                output.flush();
+            }
+        } catch (IOException ex) {
+            logger.error("Unable to publish market data to client " + clientId, ex);
+            close();
+        }
+    }
+
+    public void close() {
+        if (running) {
+            running = false;
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+            simulator.sessionClosed(this);
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    public int getMarketDataSubscriptionCount() {
+        return marketData.size();
+    }
+
+    public int getMarketDepthSubscriptionCount() {
+        return marketDepth.size();
+    }
+
+    /**
+     * Reads the contract fields shared by the market data, depth, contract
+     * details, historical data and order requests.
+     */
+    protected Contract readContract(boolean hasPrimaryExchange, boolean hasTradingClass) throws IOException {
+        Contract contract = new Contract();
+        contract.m_conId = input.readInt();
+        contract.m_symbol = input.readStr();
+        contract.m_secType = input.readStr();
+        contract.m_expiry = input.readStr();
+        contract.m_strike = input.readDouble();
+        contract.m_right = input.readStr();
+        contract.m_multiplier = input.readStr();
+        contract.m_exchange = input.readStr();
+        if (hasPrimaryExchange) {
+            contract.m_primaryExch = input.readStr();
+        }
+        contract.m_currency = input.readStr();
+        contract.m_localSymbol = input.readStr();
+        if (hasTradingClass) {
+            contract.m_tradingClass = input.readStr();
+        }
+        return contract;
+    }
+
+    protected void writeTickPrice(int requestId, int tickType, double price, int size) {
+        output.add(TICK_PRICE).add(6).add(requestId).add(tickType).add(price).add(size).add(1);
+    }
+
+    protected void writeDepth(MarketDataSubscription subscription, int operation, int side, int position) {
+        SimulatedInstrument instrument = subscription.instrument;
+        double price = side == DEPTH_BID
+                ? instrument.round(instrument.getBid() - (position * instrument.getTickSize()))
+                : instrument.round(instrument.getAsk() + (position * instrument.getTickSize()));
+        output.add(MARKET_DEPTH).add(1).add(subscription.requestId).add(position).add(operation)
+                .add(side).add(price).add(instrument.nextSize());
+    }
+
+    protected void writeOrderStatus(SimulatedOrder order) {
+        output.add(ORDER_STATUS).add(6).add(order.orderId).add(order.status).add(order.filled)
+                .add(order.quantity - order.filled).add(order.fillPrice).add(order.permId)
+                .add(order.parentId).add(order.fillPrice).add(clientId).add("");
+    }
+
+    protected void writeNextValidId(int orderId) {
+        output.add(NEXT_VALID_ID).add(1).add(orderId);
+    }
+
+    protected synchronized void sendEndMessage(int messageType) throws IOException {
+        output.add(messageType).add(1);
+        output.flush();
+    }
+}
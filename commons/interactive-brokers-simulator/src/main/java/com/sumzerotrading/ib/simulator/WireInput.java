@@ -0,0 +1,128 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.simulator;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the null terminated fields of requests sent by an EClientSocket.
+ *
+ * @author Rob Terpilowski
+ */
+public class WireInput {
+
+    protected final InputStream in;
+    protected byte[] field = new byte[256];
+    protected int length;
+
+    public WireInput(InputStream in) {
+        this.in = in;
+    }
+
+    public String readStr() throws IOException {
+        readField();
+        return new String(field, 0, length, "US-ASCII");
+    }
+
+    /**
+     * @return The value of the field, or 0 for an empty field.
+     */
+    public int readInt() throws IOException {
+        readField();
+        if (length == 0) {
+            return 0;
+        }
+        return (int) parseLong();
+    }
+
+    /**
+     * @return The value of the field, or Integer.MAX_VALUE for an empty field
+     * sent by EClientSocket.sendMax.
+     */
+    public int readIntMax() throws IOException {
+        readField();
+        if (length == 0) {
+            return Integer.MAX_VALUE;
+        }
+        return (int) parseLong();
+    }
+
+    public double readDouble() throws IOException {
+        String value = readStr();
+        return value.isEmpty() ? 0 : Double.parseDouble(value);
+    }
+
+    /**
+     * @return The value of the field, or Double.MAX_VALUE for an empty field
+     * sent by EClientSocket.sendMax.
+     */
+    public double readDoubleMax() throws IOException {
+        String value = readStr();
+        return value.isEmpty() ? Double.MAX_VALUE : Double.parseDouble(value);
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readInt() != 0;
+    }
+
+    /**
+     * Skips over fields the simulator doesn't use.
+     */
+    public void skip(int fields) throws IOException {
+        for (int i = 0; i < fields; i++) {
+            readField();
+        }
+    }
+
+    protected void readField() throws IOException {
+        length = 0;
+        int b;
+        while ((b = in.read()) != 0) {
+            if (b == -1) {
+                throw new EOFException("Client closed the connection");
+            }
+            if (length == field.length) {
+                byte[] bigger = new byte[field.length * 2];
+                System.arraycopy(field, 0, bigger, 0, length);
+                field = bigger;
+            }
+            field[length++] = (byte) b;
+        }
+    }
+
+    protected long parseLong() {
+        int i = 0;
+        boolean negative = field[0] == '-';
+        if (negative) {
+            i++;
+        }
+        long value = 0;
+        for (; i < length; i++) {
+            int digit = field[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid integer field: " + new String(field, 0, length));
+            }
+            value = (value * 10) + digit;
+        }
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.simulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes messages in the null terminated field format read by EReader. Fields
+ * are accumulated in a buffer and written to the socket on flush, so a burst
+ * of ticks costs a single write. Not thread safe, callers synchronize on the
+ * session.
+ *
+ * @author Rob Terpilowski
+ */
+public class WireOutput {
+
+    protected static final int FLUSH_THRESHOLD = 32 * 1024;
+
+    protected final OutputStream out;
+    protected byte[] buffer = new byte[64 * 1024];
+    protected int position;
+    protected final char[] digits = new char[20];
+
+    public WireOutput(OutputStream out) {
+        this.out = out;
+    }
+
+    public WireOutput add(String value) {
+        if (value != null) {
+            int length = value.length();
+            ensureCapacity(length + 1);
+            for (int i = 0; i < length; i++) {
+                buffer[position++] = (byte) value.charAt(i);
+            }
+        } else {
+            ensureCapacity(1);
+        }
+        buffer[position++] = 0;
+        return this;
+    }
+
+    public WireOutput add(int value) {
+        return add((long) value);
+    }
+
+    public WireOutput add(long value) {
+        ensureCapacity(21);
+        if (value == 0) {
+            buffer[position++] = '0';
+        } else {
+            if (value < 0) {
+                buffer[position++] = '-';
+            }
+            int count = 0;
+            long remaining = value;
+            while (remaining != 0) {
+                digits[count++] = (char) ('0' + Math.abs(remaining % 10));
+                remaining /= 10;
+            }
+            while (count > 0) {
+                buffer[position++] = (byte) digits[--count];
+            }
+        }
+        buffer[position++] = 0;
+        return this;
+    }
+
+    public WireOutput add(double value) {
+        return add(String.valueOf(value));
+    }
+
+    public WireOutput add(boolean value) {
+        return add(value ? 1 : 0);
+    }
+
+    /**
+     * Writes the buffer to the socket once enough has accumulated, called at
+     * the end of each message.
+     */
+    public void endMessage() throws IOException {
+        if (position >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    public void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            out.flush();
+            position = 0;
+        }
+    }
+
+    public int getBufferedBytes() {
+        return position;
+    }
+
+    protected void ensureCapacity(int bytes) {
+        if (position + bytes > buffer.length) {
+            byte[] bigger = new byte[Math.max(buffer.length * 2, position + bytes)];
+            System.arraycopy(buffer, 0, bigger, 0, position);
+            buffer = bigger;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.simulator;
+
+import java.time.LocalDateTime;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class HistoricalBarsTest {
+
+    @Test
+    public void testParseDuration() {
+        assertEquals(60, HistoricalBars.parseDuration("60 S"));
+        assertEquals(2 * 86400, HistoricalBars.parseDuration("2 D"));
+        assertEquals(7 * 86400, HistoricalBars.parseDuration("1 W"));
+        assertEquals(365 * 86400, HistoricalBars.parseDuration("1 Y"));
+    }
+
+    @Test
+    public void testParseBarSize() {
+        assertEquals(1, HistoricalBars.parseBarSize("1 secs"));
+        assertEquals(300, HistoricalBars.parseBarSize("5 mins"));
+        assertEquals(3600, HistoricalBars.parseBarSize("1 hour"));
+        assertEquals(86400, HistoricalBars.parseBarSize("1 day"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseBarSize_Unknown() {
+        HistoricalBars.parseBarSize("1 fortnight");
+    }
+
+    @Test
+    public void testParseEndDateTime() {
+        assertEquals(LocalDateTime.of(2016, 3, 1, 16, 0, 0), HistoricalBars.parseEndDateTime("20160301 16:00:00"));
+        assertEquals(LocalDateTime.of(2016, 3, 1, 16, 0, 0), HistoricalBars.parseEndDateTime("20160301 16:00:00 EST"));
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.simulator;
+
+import com.ib.client.Contract;
+import com.ib.client.ContractDetails;
+import com.ib.client.EClientSocket;
+import com.ib.client.Order;
+import com.ib.client.TagValue;
+import com.ib.client.TickType;
+import com.sumzerotrading.ib.BaseIBConnectionDelegate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class IBGatewaySimulatorTest {
+
+    protected IBGatewaySimulator simulator;
+    protected RecordingWrapper wrapper;
+    protected EClientSocket clientSocket;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new IBGatewaySimulator();
+        simulator.setTicksPerSecond(1000);
+        simulator.setDepthUpdatesPerSecond(1000);
+        simulator.setStartingPrice("ABC", 50);
+        simulator.start();
+
+        wrapper = new RecordingWrapper();
+        clientSocket = new EClientSocket(wrapper);
+        clientSocket.eConnect("127.0.0.1", simulator.getPort(), 1);
+        assertTrue(clientSocket.isConnected());
+        assertEquals(SimulatorSession.SERVER_VERSION, clientSocket.serverVersion());
+    }
+
+    @After
+    public void tearDown() {
+        clientSocket.eDisconnect();
+        simulator.stop();
+    }
+
+    @Test
+    public void testNextValidIdAndCurrentTime() throws Exception {
+        assertEquals("nextValidId 1", wrapper.events.poll(5, TimeUnit.SECONDS));
+        assertEquals("managedAccounts DU000001", wrapper.events.poll(5, TimeUnit.SECONDS));
+
+        clientSocket.reqIds(1);
+        assertEquals("nextValidId 1", wrapper.events.poll(5, TimeUnit.SECONDS));
+
+        long now = System.currentTimeMillis() / 1000;
+        clientSocket.reqCurrentTime();
+        String event = wrapper.events.poll(5, TimeUnit.SECONDS);
+        assertTrue(event, event.startsWith("currentTime "));
+        assertTrue(Math.abs(Long.parseLong(event.substring(12)) - now) <= 1);
+    }
+
+    @Test
+    public void testMarketData() throws Exception {
+        wrapper.tickLatch = new CountDownLatch(500);
+        clientSocket.reqMktData(100002, stock("ABC"), "", false, new ArrayList<TagValue>());
+        assertTrue(wrapper.tickLatch.await(5, TimeUnit.SECONDS));
+
+        for (double[] tick : wrapper.ticks) {
+            assertEquals(100002, (int) tick[0]);
+            assertTrue(tick[1] == TickType.BID || tick[1] == TickType.ASK || tick[1] == TickType.LAST);
+            assertEquals(50, tick[2], 5);
+        }
+
+        clientSocket.cancelMktData(100002);
+        waitFor(() -> simulator.getSessions().get(0).getMarketDataSubscriptionCount() == 0);
+    }
+
+    @Test
+    public void testMarketDepth() throws Exception {
+        wrapper.depthLatch = new CountDownLatch(100);
+        clientSocket.reqMktDepth(100003, stock("ABC"), 5, new Vector<TagValue>());
+        assertTrue(wrapper.depthLatch.await(5, TimeUnit.SECONDS));
+
+        //the book is built with inserts on both sides before any updates
+        for (int i = 0; i < 10; i++) {
+            int[] update = wrapper.depth.get(i);
+            assertEquals(100003, update[0]);
+            assertEquals(i / 2, update[1]);
+            assertEquals(0, update[2]);
+        }
+        for (int i = 10; i < 100; i++) {
+            int[] update = wrapper.depth.get(i);
+            assertTrue(update[1] < 5);
+            assertEquals(1, update[2]);
+        }
+    }
+
+    @Test
+    public void testPlaceOrder_Filled() throws Exception {
+        clientSocket.placeOrder(10, stock("ABC"), order("BUY", 100, "MKT", 0));
+        assertEquals("orderStatus 10 Submitted 0 100", nextOrderStatus());
+        assertEquals("orderStatus 10 Filled 100 0", nextOrderStatus());
+    }
+
+    @Test
+    public void testPlaceOrder_ChildOrderWorkingUntilCancelled() throws Exception {
+        Order stop = order("SELL", 100, "STP", 9);
+        stop.m_auxPrice = 45;
+        clientSocket.placeOrder(11, stock("ABC"), stop);
+        assertEquals("orderStatus 11 Submitted 0 100", nextOrderStatus());
+
+        clientSocket.cancelOrder(11);
+        assertEquals("orderStatus 11 Cancelled 0 100", nextOrderStatus());
+    }
+
+    @Test
+    public void testPlaceOrder_DelayedFill() throws Exception {
+        simulator.setFillDelayMillis(200);
+        Order order = order("BUY", 100, "LMT", 0);
+        order.m_lmtPrice = 49.5;
+        long start = System.currentTimeMillis();
+        clientSocket.placeOrder(12, stock("ABC"), order);
+        assertEquals("orderStatus 12 Submitted 0 100", nextOrderStatus());
+        assertEquals("orderStatus 12 Filled 100 0", nextOrderStatus());
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        assertEquals(49.5, wrapper.lastFillPrice, 0);
+    }
+
+    @Test
+    public void testRequestsAfterOrderStayFramed() throws Exception {
+        clientSocket.placeOrder(13, stock("ABC"), order("BUY", 100, "MKT", 0));
+        clientSocket.reqContractDetails(5, stock("XYZ"));
+        ContractDetails details = wrapper.contractDetails.poll(5, TimeUnit.SECONDS);
+        assertNotNull(details);
+        assertEquals("XYZ", details.m_summary.m_symbol);
+    }
+
+    @Test
+    public void testContractDetails() throws Exception {
+        clientSocket.reqContractDetails(7, stock("ABC"));
+        ContractDetails details = wrapper.contractDetails.poll(5, TimeUnit.SECONDS);
+        assertEquals("ABC", details.m_summary.m_symbol);
+        assertEquals("STK", details.m_summary.m_secType);
+        assertEquals("USD", details.m_summary.m_currency);
+        assertEquals(0.01, details.m_minTick, 0);
+        assertTrue(details.m_summary.m_conId > 0);
+        assertTrue(wrapper.contractDetailsEnd.await(5, TimeUnit.SECONDS));
+
+        clientSocket.reqContractDetails(8, stock("ABC"));
+        assertEquals(details.m_summary.m_conId, wrapper.contractDetails.poll(5, TimeUnit.SECONDS).m_summary.m_conId);
+    }
+
+    @Test
+    public void testHistoricalData() throws Exception {
+        clientSocket.reqHistoricalData(9, stock("ABC"), "20160301 16:00:00", "2 D", "1 hour", "TRADES", 1, 1, new ArrayList<TagValue>());
+        assertTrue(wrapper.historicalFinished.await(5, TimeUnit.SECONDS));
+
+        assertEquals(48, wrapper.bars.size());
+        assertEquals("20160228 16:00:00", wrapper.bars.get(0));
+        assertEquals("20160301 15:00:00", wrapper.bars.get(47));
+    }
+
+    @Test
+    public void testDisconnectClosesSession() throws Exception {
+        waitFor(() -> simulator.getSessions().size() == 1);
+        clientSocket.eDisconnect();
+        waitFor(() -> simulator.getSessions().isEmpty());
+        assertFalse(clientSocket.isConnected());
+    }
+
+    protected String nextOrderStatus() throws Exception {
+        String event;
+        do {
+            event = wrapper.events.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event);
+        } while (!event.startsWith("orderStatus"));
+        return event;
+    }
+
+    protected static Contract stock(String symbol) {
+        Contract contract = new Contract();
+        contract.m_symbol = symbol;
+        contract.m_secType = "STK";
+        contract.m_exchange = "SMART";
+        contract.m_currency = "USD";
+        return contract;
+    }
+
+    protected static Order order(String action, int quantity, String orderType, int parentId) {
+        Order order = new Order();
+        order.m_action = action;
+        order.m_totalQuantity = quantity;
+        order.m_orderType = orderType;
+        order.m_parentId = parentId;
+        order.m_transmit = true;
+        return order;
+    }
+
+    protected static void waitFor(Condition condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.isTrue()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    protected interface Condition {
+
+        boolean isTrue();
+    }
+
+    protected static class RecordingWrapper extends BaseIBConnectionDelegate {
+
+        protected BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        protected BlockingQueue<ContractDetails> contractDetails = new LinkedBlockingQueue<>();
+        protected List<double[]> ticks = new CopyOnWriteArrayList<>();
+        protected List<int[]> depth = new CopyOnWriteArrayList<>();
+        protected List<String> bars = new CopyOnWriteArrayList<>();
+        protected CountDownLatch tickLatch = new CountDownLatch(0);
+        protected CountDownLatch depthLatch = new CountDownLatch(0);
+        protected CountDownLatch contractDetailsEnd = new CountDownLatch(1);
+        protected CountDownLatch historicalFinished = new CountDownLatch(1);
+        protected volatile double lastFillPrice;
+
+        @Override
+        public void nextValidId(int orderId) {
+            events.add("nextValidId " + orderId);
+        }
+
+        @Override
+        public void managedAccounts(String accountsList) {
+            events.add("managedAccounts " + accountsList);
+        }
+
+        @Override
+        public void currentTime(long time) {
+            events.add("currentTime " + time);
+        }
+
+        @Override
+        public void tickPrice(int tickerId, int field, double price, int canAutoExecute) {
+            ticks.add(new double[]{tickerId, field, price});
+            tickLatch.countDown();
+        }
+
+        @Override
+        public void updateMktDepth(int tickerId, int position, int operation, int side, double price, int size) {
+            depth.add(new int[]{tickerId, position, operation, side});
+            depthLatch.countDown();
+        }
+
+        @Override
+        public void orderStatus(int orderId, String status, int filled, int remaining, double avgFillPrice, int permId, int parentId, double lastFillPrice, int clientId, String whyHeld) {
+            this.lastFillPrice = lastFillPrice;
+            events.add("orderStatus " + orderId + " " + status + " " + filled + " " + remaining);
+        }
+
+        @Override
+        public void contractDetails(int reqId, ContractDetails contractDetails) {
+            this.contractDetails.add(contractDetails);
+        }
+
+        @Override
+        public void contractDetailsEnd(int reqId) {
+            contractDetailsEnd.countDown();
+        }
+
+        @Override
+        public void historicalData(int reqId, String date, double open, double high, double low, double close, int volume, int count, double WAP, boolean hasGaps) {
+            if (date.startsWith("finished")) {
+                historicalFinished.countDown();
+            } else {
+                assertTrue(low <= open && open <= high && low <= close && close <= high);
+                bars.add(date);
+            }
+        }
+
+        @Override
+        public void error(int id, int errorCode, String errorMsg) {
+            events.add("error " + id + " " + errorCode + " " + errorMsg);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.simulator;
+
+import com.sumzerotrading.ib.BaseIBConnectionDelegate;
+import com.sumzerotrading.ib.nio.IBEventLoop;
+import com.sumzerotrading.ib.nio.NioEClientSocket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class NioEventLoopTest {
+
+    protected IBGatewaySimulator simulator;
+    protected IBEventLoop eventLoop;
+    protected NioEClientSocket clientSocket;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new IBGatewaySimulator();
+        simulator.start();
+        eventLoop = new IBEventLoop("TestEventLoop");
+        eventLoop.start();
+    }
+
+    @After
+    public void tearDown() {
+        clientSocket.eDisconnect();
+        eventLoop.stop();
+        simulator.stop();
+    }
+
+    @Test
+    public void testRequestSentFromCallback() throws Exception {
+        //each request is sent from the callback of the previous response, on a line with no other traffic
+        CountDownLatch responses = new CountDownLatch(3);
+        clientSocket = new NioEClientSocket(new BaseIBConnectionDelegate() {
+            @Override
+            public void managedAccounts(String accountsList) {
+                clientSocket.reqCurrentTime();
+            }
+
+            @Override
+            public void currentTime(long time) {
+                responses.countDown();
+                if (responses.getCount() > 0) {
+                    clientSocket.reqCurrentTime();
+                }
+            }
+        }, eventLoop);
+        clientSocket.eConnect("127.0.0.1", simulator.getPort(), 1);
+        assertTrue(clientSocket.isConnected());
+
+        assertTrue(responses.await(5, TimeUnit.SECONDS));
+    }
+}
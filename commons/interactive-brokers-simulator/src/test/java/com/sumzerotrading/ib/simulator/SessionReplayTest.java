@@ -0,0 +1,191 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.simulator;
+
+import com.ib.client.Contract;
+import com.ib.client.EClientSocket;
+import com.ib.client.EReader;
+import com.ib.client.EWrapper;
+import com.ib.client.SessionRecorder;
+import com.ib.client.SessionReplay;
+import com.ib.client.TagValue;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Records sessions with the simulator and checks that replaying them through
+ * either reader reproduces the callbacks received live.
+ *
+ * @author Rob Terpilowski
+ */
+public class SessionReplayTest {
+
+    protected IBGatewaySimulator simulator;
+    protected File file;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new IBGatewaySimulator();
+        simulator.setSeed(7);
+        simulator.setTicksPerSecond(1000);
+        simulator.setDepthUpdatesPerSecond(1000);
+        simulator.start();
+        file = Files.createTempFile("SessionReplayTest", ".cap").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        simulator.stop();
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @Test
+    public void testReplay_MatchesLiveSession() throws Exception {
+        List<String> live = record(new FileOutputStream(file), 2000);
+
+        List<String> standard = replay(false, SessionReplay.MAX_SPEED);
+        List<String> buffered = replay(true, SessionReplay.MAX_SPEED);
+
+        assertTrue(live.size() >= 2000);
+        assertEquals(live, standard.subList(0, live.size()));
+        assertEquals(standard, buffered);
+        assertTrue(standard.contains("contractDetailsEnd 5"));
+    }
+
+    @Test
+    public void testReplay_AtScaledPace() throws Exception {
+        record(new FileOutputStream(file), 500);
+
+        SessionReplay replay = new SessionReplay(file);
+        replay.setSpeed(2.0);
+        replay.replay(new EClientSocket(recordingWrapper(new ArrayList<String>())));
+
+        assertTrue(replay.getCaptureDurationNanos() > 0);
+        assertTrue(replay.getElapsedNanos() >= replay.getCaptureDurationNanos() / 2);
+        assertEquals(file.length() - SessionRecorder.HEADER_SIZE,
+                replay.getBytesReplayed() + replay.getRecordsReplayed() * SessionRecorder.RECORD_HEADER_SIZE);
+
+        replay.setSpeed(SessionReplay.MAX_SPEED);
+        replay.replay(new EClientSocket(recordingWrapper(new ArrayList<String>())));
+        assertTrue(replay.getElapsedNanos() < replay.getCaptureDurationNanos());
+    }
+
+    @Test
+    public void testReplay_NotACapture() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("not a capture file".getBytes());
+        }
+        try {
+            new SessionReplay(file).replay(new EClientSocket(recordingWrapper(new ArrayList<String>())));
+            fail();
+        } catch (IOException ex) {
+            //expected
+        }
+    }
+
+    /**
+     * Records a live session until the given number of callbacks have arrived.
+     *
+     * @return The callbacks received live.
+     */
+    protected List<String> record(FileOutputStream out, int events) throws Exception {
+        List<String> live = new CopyOnWriteArrayList<>();
+        SessionRecorder recorder = new SessionRecorder(out);
+        EClientSocket clientSocket = new EClientSocket(recordingWrapper(live));
+        clientSocket.setSessionRecorder(recorder);
+        clientSocket.eConnect("127.0.0.1", simulator.getPort(), 1);
+        assertTrue(clientSocket.isConnected());
+
+        clientSocket.reqContractDetails(5, stock("ABC"));
+        clientSocket.reqMktData(1, stock("ABC"), "", false, new ArrayList<TagValue>());
+        clientSocket.reqMktDepth(2, stock("XYZ"), 5, new Vector<TagValue>());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (live.size() < events && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        EReader reader = clientSocket.reader();
+        clientSocket.eDisconnect();
+        reader.join(5000);
+        recorder.close();
+        assertEquals(null, recorder.getError());
+        return new ArrayList<>(live);
+    }
+
+    protected List<String> replay(boolean byteBufferReader, double speed) throws Exception {
+        List<String> events = new ArrayList<>();
+        EClientSocket clientSocket = new EClientSocket(recordingWrapper(events));
+        clientSocket.setUseByteBufferReader(byteBufferReader);
+        SessionReplay replay = new SessionReplay(file);
+        replay.setSpeed(speed);
+        replay.replay(clientSocket);
+        assertTrue(!clientSocket.isConnected());
+        return events;
+    }
+
+    /**
+     * An EWrapper which records each callback with its arguments, objects such as
+     * ContractDetails are recorded by class since they don't implement toString().
+     */
+    protected static EWrapper recordingWrapper(List<String> events) {
+        return (EWrapper) Proxy.newProxyInstance(EWrapper.class.getClassLoader(), new Class<?>[]{EWrapper.class},
+                (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return method.getName().equals("equals") ? proxy == args[0] : method.invoke(events, args);
+                    }
+                    StringBuilder event = new StringBuilder(method.getName());
+                    for (Object arg : args == null ? new Object[0] : args) {
+                        event.append(' ');
+                        if (arg == null || arg instanceof Number || arg instanceof String || arg instanceof Boolean) {
+                            event.append(arg);
+                        } else if (arg instanceof Object[]) {
+                            event.append(Arrays.toString((Object[]) arg));
+                        } else {
+                            event.append(arg.getClass().getSimpleName());
+                        }
+                    }
+                    events.add(event.toString());
+                    return null;
+                });
+    }
+
+    protected static Contract stock(String symbol) {
+        Contract contract = new Contract();
+        contract.m_symbol = symbol;
+        contract.m_secType = "STK";
+        contract.m_exchange = "SMART";
+        contract.m_currency = "USD";
+        return contract;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.data;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns tickers and assigns each one a dense int id, starting at 0.  Once a
+ * ticker has an id, state kept per ticker on the quote path can be stored in an
+ * array indexed by the id instead of a map keyed by the ticker, which avoids
+ * hashing the ticker's fields on every tick.
+ *
+ * Ids are never reused, and a ticker must not be modified once it has been registered.
+ *
+ * @author Rob Terpilowski
+ */
+public class TickerRegistry {
+
+    public static final int UNKNOWN_ID = -1;
+
+    protected static final TickerRegistry instance = new TickerRegistry();
+
+    protected final Map<Ticker, Integer> idMap = new ConcurrentHashMap<>();
+    protected volatile Ticker[] tickers = new Ticker[64];
+    protected int size = 0;
+
+    /**
+     * @return The registry shared by the quote engines in this VM.
+     */
+    public static TickerRegistry getInstance() {
+        return instance;
+    }
+
+    /**
+     * Registers the ticker if it hasn't been seen before.
+     *
+     * @param ticker The ticker to register
+     * @return The id of the ticker.
+     */
+    public int register(Ticker ticker) {
+        Integer id = idMap.get(ticker);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = idMap.get(ticker);
+            if (id != null) {
+                return id;
+            }
+            Ticker[] current = tickers;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[size] = ticker;
+            //publish the array before the id so a reader given the id can always find the ticker.
+            tickers = current;
+            idMap.put(ticker, size);
+            return size++;
+        }
+    }
+
+    /**
+     * @param ticker The ticker to intern
+     * @return The registered instance equal to the ticker, registering it if needed.
+     */
+    public Ticker intern(Ticker ticker) {
+        return getTicker(register(ticker));
+    }
+
+    /**
+     * @param ticker The ticker to look up
+     * @return The id of the ticker, or UNKNOWN_ID if it hasn't been registered.
+     */
+    public int getId(Ticker ticker) {
+        if (ticker == null) {
+            return UNKNOWN_ID;
+        }
+        Integer id = idMap.get(ticker);
+        return id == null ? UNKNOWN_ID : id;
+    }
+
+    /**
+     * @param id The id to look up
+     * @return The ticker with the id, or null if no ticker has the id.
+     */
+    public Ticker getTicker(int id) {
+        Ticker[] current = tickers;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    /**
+     * @return The number of tickers registered.
+     */
+    public int size() {
+        return idMap.size();
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.data;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A table of values indexed by the ids assigned by a TickerRegistry.  Reads are
+ * a volatile array lookup and never lock; writes are serialized and grow the
+ * table as new ids are used.
+ *
+ * @author Rob Terpilowski
+ * @param <V> The type of value held for each ticker
+ */
+public class TickerTable<V> {
+
+    protected volatile AtomicReferenceArray<V> values;
+
+    public TickerTable() {
+        this(64);
+    }
+
+    /**
+     * @param initialCapacity The number of ids the table can hold before it needs to grow.
+     */
+    public TickerTable(int initialCapacity) {
+        values = new AtomicReferenceArray<>(Math.max(1, initialCapacity));
+    }
+
+    /**
+     * @param id The ticker id
+     * @return The value for the id, or null if there isn't one.
+     */
+    public V get(int id) {
+        AtomicReferenceArray<V> current = values;
+        return id >= 0 && id < current.length() ? current.get(id) : null;
+    }
+
+    /**
+     * @param id The ticker id
+     * @param value The value to store, or null to clear it.
+     */
+    public synchronized void set(int id, V value) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Invalid ticker id: " + id);
+        }
+        AtomicReferenceArray<V> current = values;
+        if (id >= current.length()) {
+            int length = current.length();
+            while (id >= length) {
+                length *= 2;
+            }
+            AtomicReferenceArray<V> grown = new AtomicReferenceArray<>(length);
+            for (int i = 0; i < current.length(); i++) {
+                grown.lazySet(i, current.get(i));
+            }
+            grown.set(id, value);
+            values = grown;
+        } else {
+            current.set(id, value);
+        }
+    }
+
+    /**
+     * Clears every value in the table.
+     */
+    public synchronized void clear() {
+        values = new AtomicReferenceArray<>(values.length());
+    }
+
+}
@@ -0,0 +1,67 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.time;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * A source of timestamps for quotes, bars and orders.  Events are stamped with the
+ * number of nanoseconds since the epoch, which is cheap to get and store, and are
+ * only converted to a ZonedDateTime when something asks for one.
+ *
+ * @author Rob Terpilowski
+ */
+public interface IClock {
+
+    /**
+     * The current time.
+     *
+     * @return The number of nanoseconds since 1970-01-01T00:00:00Z
+     */
+    public long epochNanos();
+
+    /**
+     * The zone timestamps are converted to when a ZonedDateTime is created.
+     *
+     * @return The zone of this clock.
+     */
+    public ZoneId getZone();
+
+    /**
+     * Converts a timestamp from this clock into a ZonedDateTime in the clock's zone.
+     *
+     * @param epochNanos The number of nanoseconds since the epoch
+     * @return The timestamp as a ZonedDateTime
+     */
+    public default ZonedDateTime toZonedDateTime(long epochNanos) {
+        return ZonedDateTime.ofInstant(ClockUtil.toInstant(epochNanos), getZone());
+    }
+
+    /**
+     * The current time as a ZonedDateTime.  Prefer epochNanos() on hot paths.
+     *
+     * @return The current time.
+     */
+    public default ZonedDateTime now() {
+        return toZonedDateTime(epochNanos());
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.time;
+
+import java.time.ZoneId;
+
+/**
+ * A clock which reads System.nanoTime() and adds an offset, measured against the
+ * system clock at calibration, to turn it into the time since the epoch.  Reading
+ * the clock doesn't allocate and is unaffected by adjustments to the system clock,
+ * so timestamps never go backwards between calibrations.
+ *
+ * The offset is measured when the clock is created.  Over long sessions the monotonic
+ * source can drift from the wall clock by a few parts per million; calibrate() can
+ * be called at a convenient point, such as the start of a trading session, to
+ * re-measure it.
+ *
+ * @author Rob Terpilowski
+ */
+public class MonotonicClock implements IClock {
+
+    protected static final MonotonicClock INSTANCE = new MonotonicClock();
+
+    protected final ZoneId zone;
+    protected volatile long offsetNanos;
+
+    /**
+     * Builds a clock which materializes timestamps in the system default zone.
+     */
+    public MonotonicClock() {
+        this(ZoneId.systemDefault());
+    }
+
+    public MonotonicClock(ZoneId zone) {
+        this.zone = zone;
+        calibrate();
+    }
+
+    /**
+     * @return A shared clock in the system default zone.
+     */
+    public static MonotonicClock getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Measures the offset between the monotonic source and the system clock.  The system
+     * clock only has millisecond resolution, so this waits for it to tick over to the
+     * next millisecond and pairs that instant with the monotonic reading, which puts the
+     * offset within a few microseconds of the system clock.
+     */
+    public void calibrate() {
+        long startMillis = System.currentTimeMillis();
+        long millis = startMillis;
+        long nanos = System.nanoTime();
+        long deadline = nanos + 2 * ClockUtil.NANOS_PER_MILLI;
+        while (millis == startMillis && nanos - deadline < 0) {
+            nanos = System.nanoTime();
+            millis = System.currentTimeMillis();
+        }
+        offsetNanos = millis * ClockUtil.NANOS_PER_MILLI - nanos;
+    }
+
+    @Override
+    public long epochNanos() {
+        return System.nanoTime() + offsetNanos;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+}
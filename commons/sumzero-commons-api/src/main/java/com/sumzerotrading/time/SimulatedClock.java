@@ -0,0 +1,75 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.time;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * A clock whose time is set by the caller, used when replaying recorded data so that
+ * events are stamped with the recorded time instead of the time of the replay.
+ *
+ * @author Rob Terpilowski
+ */
+public class SimulatedClock implements IClock {
+
+    protected final ZoneId zone;
+    protected volatile long epochNanos;
+
+    public SimulatedClock(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    public SimulatedClock(ZonedDateTime startTime) {
+        this(startTime.getZone());
+        setTime(startTime);
+    }
+
+    @Override
+    public long epochNanos() {
+        return epochNanos;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * @param epochNanos The new time, in nanoseconds since the epoch.
+     */
+    public void setTime(long epochNanos) {
+        this.epochNanos = epochNanos;
+    }
+
+    public void setTime(ZonedDateTime time) {
+        setTime(ClockUtil.toEpochNanos(time));
+    }
+
+    /**
+     * Moves the clock forward.
+     *
+     * @param nanos The number of nanoseconds to advance the clock by.
+     */
+    public synchronized void advance(long nanos) {
+        epochNanos += nanos;
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.data;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class TickerRegistryTest {
+
+    public TickerRegistryTest() {
+    }
+
+    @Test
+    public void testRegister() {
+        TickerRegistry registry = new TickerRegistry();
+        StockTicker abc = new StockTicker("ABC");
+        StockTicker xyz = new StockTicker("XYZ");
+
+        assertEquals(TickerRegistry.UNKNOWN_ID, registry.getId(abc));
+        assertEquals(0, registry.register(abc));
+        assertEquals(1, registry.register(xyz));
+        assertEquals(0, registry.register(new StockTicker("ABC")));
+
+        assertEquals(1, registry.getId(xyz));
+        assertSame(abc, registry.getTicker(0));
+        assertSame(abc, registry.intern(new StockTicker("ABC")));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void testGetTicker_UnknownId() {
+        TickerRegistry registry = new TickerRegistry();
+        assertNull(registry.getTicker(TickerRegistry.UNKNOWN_ID));
+        assertNull(registry.getTicker(5000));
+        assertEquals(TickerRegistry.UNKNOWN_ID, registry.getId(null));
+    }
+
+    @Test
+    public void testRegister_Grows() {
+        TickerRegistry registry = new TickerRegistry();
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, registry.register(new StockTicker("T" + i)));
+        }
+        assertEquals(new StockTicker("T150"), registry.getTicker(150));
+    }
+
+    @Test
+    public void testTickerTable() {
+        TickerTable<String> table = new TickerTable<>(2);
+        table.set(0, "zero");
+        table.set(100, "hundred");
+
+        assertEquals("zero", table.get(0));
+        assertEquals("hundred", table.get(100));
+        assertNull(table.get(50));
+        assertNull(table.get(-1));
+
+        table.set(0, null);
+        assertNull(table.get(0));
+        table.clear();
+        assertNull(table.get(100));
+    }
+
+}
@@ -0,0 +1,65 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.time;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class MonotonicClockTest {
+
+    public MonotonicClockTest() {
+    }
+
+    @Test
+    public void testEpochNanosMatchesSystemClock() {
+        MonotonicClock clock = new MonotonicClock();
+        long systemNanos = System.currentTimeMillis() * ClockUtil.NANOS_PER_MILLI;
+        long difference = Math.abs(clock.epochNanos() - systemNanos);
+        assertTrue("Difference was " + difference, difference < 50 * ClockUtil.NANOS_PER_MILLI);
+    }
+
+    @Test
+    public void testEpochNanosNeverGoesBackwards() {
+        MonotonicClock clock = new MonotonicClock();
+        long last = clock.epochNanos();
+        for (int i = 0; i < 100000; i++) {
+            long next = clock.epochNanos();
+            assertTrue(next >= last);
+            last = next;
+        }
+    }
+
+    @Test
+    public void testToZonedDateTime() {
+        ZoneId zone = ZoneId.of("America/New_York");
+        MonotonicClock clock = new MonotonicClock(zone);
+        ZonedDateTime expected = ZonedDateTime.of(2016, 3, 1, 9, 30, 0, 123456789, zone);
+
+        assertEquals(expected, clock.toZonedDateTime(ClockUtil.toEpochNanos(expected)));
+        assertEquals(zone, clock.now().getZone());
+    }
+
+}
@@ -0,0 +1,58 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.time;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class SimulatedClockTest {
+
+    public SimulatedClockTest() {
+    }
+
+    @Test
+    public void testSetAndAdvance() {
+        ZonedDateTime start = ZonedDateTime.of(2016, 3, 1, 9, 30, 0, 0, ZoneId.of("UTC"));
+        SimulatedClock clock = new SimulatedClock(start);
+        assertEquals(start, clock.now());
+
+        clock.advance(1_500_000_000L);
+        assertEquals(start.plusNanos(1_500_000_000L), clock.now());
+
+        clock.setTime(0);
+        assertEquals(0, clock.epochNanos());
+        assertEquals(ZonedDateTime.of(1970, 1, 1, 0, 0, 0, 0, ZoneId.of("UTC")), clock.now());
+    }
+
+    @Test
+    public void testNegativeEpochNanos() {
+        ZonedDateTime time = ZonedDateTime.of(1969, 12, 31, 23, 59, 59, 500, ZoneId.of("UTC"));
+        SimulatedClock clock = new SimulatedClock(time);
+        assertTrue(clock.epochNanos() < 0);
+        assertEquals(time, clock.now());
+    }
+
+}
@@ -31,21 +31,25 @@ public class BaseIBConnectionDelegate implements EWrapper {
     }
 
     @Override
+    @IgnoredCallback
     public void tickOptionComputation(int tickerId, int field, double impliedVol, double delta, double optPrice, double pvDividend, double gamma, double vega, double theta, double undPrice) {
         //not implemented
     }
 
     @Override
+    @IgnoredCallback
     public void tickGeneric(int tickerId, int tickType, double value) {
         //not implemented
     }
 
     @Override
+    @IgnoredCallback
     public void tickString(int tickerId, int tickType, String value) {
         //not implemented
     }
 
     @Override
+    @IgnoredCallback
     public void tickEFP(int tickerId, int tickType, double basisPoints, String formattedBasisPoints, double impliedFuture, int holdDays, String futureExpiry, double dividendImpact, double dividendsToExpiry) {
         //not implemented
     }
@@ -126,6 +130,7 @@ public class BaseIBConnectionDelegate implements EWrapper {
     }
 
     @Override
+    @IgnoredCallback
     public void updateNewsBulletin(int msgId, int msgType, String message, String origExchange) {
         //not implemented
     }
@@ -136,6 +141,7 @@ public class BaseIBConnectionDelegate implements EWrapper {
     }
 
     @Override
+    @IgnoredCallback
     public void receiveFA(int faDataType, String xml) {
         //not implemented
     }
@@ -146,21 +152,25 @@ public class BaseIBConnectionDelegate implements EWrapper {
     }
 
     @Override
+    @IgnoredCallback
     public void scannerParameters(String xml) {
         //not implemented
     }
 
     @Override
+    @IgnoredCallback
     public void scannerData(int reqId, int rank, ContractDetails contractDetails, String distance, String benchmark, String projection, String legsStr) {
         //not implemented
     }
 
     @Override
+    @IgnoredCallback
     public void scannerDataEnd(int reqId) {
         //not implemented
     }
 
     @Override
+    @IgnoredCallback
     public void realtimeBar(int reqId, long time, double open, double high, double low, double close, long volume, double wap, int count) {
         //not implemented
     }
@@ -171,21 +181,25 @@ public class BaseIBConnectionDelegate implements EWrapper {
     }
 
     @Override
+    @IgnoredCallback
     public void fundamentalData(int reqId, String data) {
         //not implemented
     }
 
     @Override
+    @IgnoredCallback
     public void deltaNeutralValidation(int reqId, UnderComp underComp) {
         //not implemented
     }
 
     @Override
+    @IgnoredCallback
     public void tickSnapshotEnd(int reqId) {
         //not implemented
     }
 
     @Override
+    @IgnoredCallback
     public void marketDataType(int reqId, int marketDataType) {
         //not implemented
     }
@@ -226,11 +240,13 @@ public class BaseIBConnectionDelegate implements EWrapper {
     }
 
     @Override
+    @IgnoredCallback
     public void displayGroupList(int reqId, String groups) {
         //not implemented
     }
 
     @Override
+    @IgnoredCallback
     public void displayGroupUpdated(int reqId, String contractInfo) {
         //not implemented
     }
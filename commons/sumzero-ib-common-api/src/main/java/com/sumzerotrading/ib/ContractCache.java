@@ -0,0 +1,388 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import com.ib.client.Contract;
+import com.ib.client.ContractDetails;
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
+import com.sumzerotrading.data.TickerTable;
+import com.sumzerotrading.time.IClock;
+import com.sumzerotrading.time.MonotonicClock;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.apache.log4j.Logger;
+
+/**
+ * Caches the IB Contract built for each ticker, and the ContractDetails IB
+ * resolved it to, so neither has to be rebuilt or requested again every time a
+ * ticker is subscribed to, ordered or backfilled.  Entries are indexed by the
+ * TickerRegistry id of the ticker, so a lookup is an array read once the ticker
+ * has been interned.
+ *
+ * Details are dropped once they are older than the maximum age, since the
+ * trading hours they hold only cover the next few days, or once the contract
+ * has expired, so a futures or options ticker which rolls is resolved again.
+ * The details can be saved to a file and loaded on the next start, and the
+ * details of a list of tickers resolved in bulk with warm().
+ *
+ * The Contracts and ContractDetails returned are shared, and must not be modified.
+ *
+ * @author Rob Terpilowski
+ */
+public class ContractCache {
+
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    protected static final int FILE_VERSION = 1;
+    protected static final long NO_EXPIRY = Long.MAX_VALUE;
+    protected static final Logger logger = Logger.getLogger(ContractCache.class);
+    protected static final ContractCache instance = new ContractCache(TickerRegistry.getInstance());
+
+    protected final TickerRegistry tickerRegistry;
+    protected final TickerTable<Contract> contracts = new TickerTable<>();
+    protected final TickerTable<ResolvedContract> resolved = new TickerTable<>();
+    protected volatile IClock clock = MonotonicClock.getInstance();
+    protected volatile long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+
+    public ContractCache(TickerRegistry tickerRegistry) {
+        this.tickerRegistry = tickerRegistry;
+    }
+
+    /**
+     * @return The cache shared by the IB components in this VM.
+     */
+    public static ContractCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return The contract for the ticker, built the first time it is asked for.
+     */
+    public Contract getContract(Ticker ticker) {
+        int id = tickerRegistry.register(ticker);
+        Contract contract = contracts.get(id);
+        if (contract == null) {
+            //building is idempotent, so two threads building the same contract is harmless
+            contract = ContractBuilderFactory.getContractBuilder(ticker).buildContract(ticker);
+            contracts.set(id, contract);
+        }
+        return contract;
+    }
+
+    /**
+     * @return The details of the ticker's contract, or null if they haven't been
+     * resolved, or are stale or the contract has expired.
+     */
+    public ContractDetails getContractDetails(Ticker ticker) {
+        int id = tickerRegistry.getId(ticker);
+        ResolvedContract entry = resolved.get(id);
+        if (entry == null) {
+            return null;
+        }
+        if (!isValid(entry, clock.epochNanos() / 1000000L)) {
+            invalidate(ticker);
+            return null;
+        }
+        return entry.details;
+    }
+
+    public void putContractDetails(Ticker ticker, ContractDetails details) {
+        put(ticker, details, clock.epochNanos() / 1000000L);
+    }
+
+    protected void put(Ticker ticker, ContractDetails details, long resolvedMillis) {
+        int id = tickerRegistry.register(ticker);
+        resolved.set(id, new ResolvedContract(tickerRegistry.getTicker(id), details, resolvedMillis, expiryEpochDay(details)));
+    }
+
+    /**
+     * Removes the ticker's contract and details, so both are built and resolved again.
+     */
+    public void invalidate(Ticker ticker) {
+        int id = tickerRegistry.getId(ticker);
+        if (id != TickerRegistry.UNKNOWN_ID) {
+            contracts.set(id, null);
+            resolved.set(id, null);
+        }
+    }
+
+    /**
+     * Removes the details which are stale or whose contracts have expired.
+     *
+     * @return The number of tickers invalidated.
+     */
+    public int invalidateExpired() {
+        long nowMillis = clock.epochNanos() / 1000000L;
+        int invalidated = 0;
+        for (ResolvedContract entry : getResolved()) {
+            if (!isValid(entry, nowMillis)) {
+                invalidate(entry.ticker);
+                invalidated++;
+            }
+        }
+        return invalidated;
+    }
+
+    public void clear() {
+        contracts.clear();
+        resolved.clear();
+    }
+
+    /**
+     * Builds the contracts of the tickers, and resolves the details of those which
+     * aren't cached.  Tickers which can't be resolved are logged and skipped.
+     *
+     * @param resolver Requests the details of a ticker, usually through the RequestScheduler.
+     * @return Completes with the number of tickers resolved once every request has finished.
+     */
+    public CompletableFuture<Integer> warm(Collection<? extends Ticker> tickers,
+            Function<Ticker, CompletableFuture<List<ContractDetails>>> resolver) {
+        List<CompletableFuture<Integer>> requests = new ArrayList<>();
+        for (Ticker ticker : tickers) {
+            getContract(ticker);
+            if (getContractDetails(ticker) != null) {
+                continue;
+            }
+            requests.add(resolver.apply(ticker).handle((details, ex) -> {
+                if (ex != null) {
+                    logger.error("Unable to resolve the contract of " + ticker, ex);
+                    return 0;
+                }
+                if (details.isEmpty()) {
+                    logger.error("No contract found for " + ticker);
+                    return 0;
+                }
+                putContractDetails(ticker, details.get(0));
+                return 1;
+            }));
+        }
+        return CompletableFuture.allOf(requests.toArray(new CompletableFuture[requests.size()]))
+                .thenApply(done -> requests.stream().mapToInt(CompletableFuture::join).sum());
+    }
+
+    /**
+     * Saves the details which are still valid, replacing the file once it has been written.
+     */
+    public void save(File file) throws IOException {
+        long nowMillis = clock.epochNanos() / 1000000L;
+        List<ResolvedContract> entries = new ArrayList<>();
+        for (ResolvedContract entry : getResolved()) {
+            if (isValid(entry, nowMillis)) {
+                entries.add(entry);
+            }
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            output.writeInt(FILE_VERSION);
+            output.writeInt(entries.size());
+            for (ResolvedContract entry : entries) {
+                output.writeObject(entry.ticker);
+                output.writeLong(entry.resolvedMillis);
+                writeDetails(output, entry.details);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the details saved by save(), skipping those which are no longer valid.
+     * A file written by another version of the cache is ignored.
+     *
+     * @return The number of tickers loaded.
+     */
+    public int load(File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        long nowMillis = clock.epochNanos() / 1000000L;
+        int loaded = 0;
+        try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = input.readInt();
+            if (version != FILE_VERSION) {
+                logger.info("Ignoring contract cache " + file + " written by version " + version);
+                return 0;
+            }
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                Ticker ticker = (Ticker) input.readObject();
+                long resolvedMillis = input.readLong();
+                ContractDetails details = readDetails(input);
+                if (isValid(resolvedMillis, expiryEpochDay(details), nowMillis)) {
+                    put(ticker, details, resolvedMillis);
+                    loaded++;
+                }
+            }
+        } catch (ClassNotFoundException ex) {
+            throw new IOException("Unable to read contract cache " + file, ex);
+        }
+        return loaded;
+    }
+
+    public void setMaxAge(long maxAge, TimeUnit unit) {
+        maxAgeMillis = unit.toMillis(maxAge);
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * @param clock The clock used to age the details and decide when contracts have expired.
+     */
+    public void setClock(IClock clock) {
+        this.clock = clock;
+    }
+
+    protected List<ResolvedContract> getResolved() {
+        List<ResolvedContract> entries = new ArrayList<>();
+        for (int id = 0; id < tickerRegistry.size(); id++) {
+            ResolvedContract entry = resolved.get(id);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    protected boolean isValid(ResolvedContract entry, long nowMillis) {
+        return isValid(entry.resolvedMillis, entry.expiryEpochDay, nowMillis);
+    }
+
+    protected boolean isValid(long resolvedMillis, long expiryEpochDay, long nowMillis) {
+        if (nowMillis - resolvedMillis >= maxAgeMillis) {
+            return false;
+        }
+        //a contract can be traded until the end of its expiry date
+        return expiryEpochDay == NO_EXPIRY || clock.now().toLocalDate().toEpochDay() <= expiryEpochDay;
+    }
+
+    /**
+     * @return The epoch day the contract expires on, or NO_EXPIRY if it doesn't.
+     * Contracts with only an expiry month are treated as expiring at the end of it.
+     */
+    protected static long expiryEpochDay(ContractDetails details) {
+        String expiry = details.m_summary == null ? null : details.m_summary.m_expiry;
+        if (expiry == null || expiry.length() < 6) {
+            return NO_EXPIRY;
+        }
+        try {
+            if (expiry.length() >= 8) {
+                return LocalDate.parse(expiry.substring(0, 8), DateTimeFormatter.BASIC_ISO_DATE).toEpochDay();
+            }
+            return YearMonth.parse(expiry.substring(0, 6), DateTimeFormatter.ofPattern("yyyyMM")).atEndOfMonth().toEpochDay();
+        } catch (DateTimeParseException ex) {
+            logger.error("Unable to parse contract expiry " + expiry, ex);
+            return NO_EXPIRY;
+        }
+    }
+
+    /**
+     * Writes the fields of the details which are used to trade the contract, ContractDetails isn't Serializable.
+     */
+    protected static void writeDetails(ObjectOutputStream output, ContractDetails details) throws IOException {
+        Contract summary = details.m_summary == null ? new Contract() : details.m_summary;
+        output.writeInt(summary.m_conId);
+        output.writeObject(summary.m_symbol);
+        output.writeObject(summary.m_secType);
+        output.writeObject(summary.m_expiry);
+        output.writeDouble(summary.m_strike);
+        output.writeObject(summary.m_right);
+        output.writeObject(summary.m_multiplier);
+        output.writeObject(summary.m_exchange);
+        output.writeObject(summary.m_primaryExch);
+        output.writeObject(summary.m_currency);
+        output.writeObject(summary.m_localSymbol);
+        output.writeObject(summary.m_tradingClass);
+        output.writeObject(details.m_marketName);
+        output.writeDouble(details.m_minTick);
+        output.writeInt(details.m_priceMagnifier);
+        output.writeObject(details.m_orderTypes);
+        output.writeObject(details.m_validExchanges);
+        output.writeInt(details.m_underConId);
+        output.writeObject(details.m_longName);
+        output.writeObject(details.m_contractMonth);
+        output.writeObject(details.m_timeZoneId);
+        output.writeObject(details.m_tradingHours);
+        output.writeObject(details.m_liquidHours);
+    }
+
+    protected static ContractDetails readDetails(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        ContractDetails details = new ContractDetails();
+        Contract summary = details.m_summary;
+        summary.m_conId = input.readInt();
+        summary.m_symbol = (String) input.readObject();
+        summary.m_secType = (String) input.readObject();
+        summary.m_expiry = (String) input.readObject();
+        summary.m_strike = input.readDouble();
+        summary.m_right = (String) input.readObject();
+        summary.m_multiplier = (String) input.readObject();
+        summary.m_exchange = (String) input.readObject();
+        summary.m_primaryExch = (String) input.readObject();
+        summary.m_currency = (String) input.readObject();
+        summary.m_localSymbol = (String) input.readObject();
+        summary.m_tradingClass = (String) input.readObject();
+        details.m_marketName = (String) input.readObject();
+        details.m_minTick = input.readDouble();
+        details.m_priceMagnifier = input.readInt();
+        details.m_orderTypes = (String) input.readObject();
+        details.m_validExchanges = (String) input.readObject();
+        details.m_underConId = input.readInt();
+        details.m_longName = (String) input.readObject();
+        details.m_contractMonth = (String) input.readObject();
+        details.m_timeZoneId = (String) input.readObject();
+        details.m_tradingHours = (String) input.readObject();
+        details.m_liquidHours = (String) input.readObject();
+        return details;
+    }
+
+    protected static class ResolvedContract {
+
+        protected final Ticker ticker;
+        protected final ContractDetails details;
+        protected final long resolvedMillis;
+        protected final long expiryEpochDay;
+
+        public ResolvedContract(Ticker ticker, ContractDetails details, long resolvedMillis, long expiryEpochDay) {
+            this.ticker = ticker;
+            this.details = details;
+            this.resolvedMillis = resolvedMillis;
+            this.expiryEpochDay = expiryEpochDay;
+        }
+    }
+}
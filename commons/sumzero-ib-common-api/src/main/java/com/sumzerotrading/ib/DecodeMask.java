@@ -0,0 +1,123 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import com.ib.client.EWrapper;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out which of the messages the reader is able to skip none of a
+ * connection's delegates consume.  A delegate consumes a message unless its
+ * implementations of all the message's callbacks are marked with IgnoredCallback,
+ * so delegates which implement EWrapper themselves, mocks and proxies always
+ * have their messages decoded.
+ *
+ * @author Rob Terpilowski
+ */
+public class DecodeMask {
+
+    //message ids from EReader
+    protected static final int NEWS_BULLETINS = 14;
+    protected static final int RECEIVE_FA = 16;
+    protected static final int SCANNER_PARAMETERS = 19;
+    protected static final int SCANNER_DATA = 20;
+    protected static final int TICK_OPTION_COMPUTATION = 21;
+    protected static final int TICK_GENERIC = 45;
+    protected static final int TICK_STRING = 46;
+    protected static final int TICK_EFP = 47;
+    protected static final int REAL_TIME_BARS = 50;
+    protected static final int FUNDAMENTAL_DATA = 51;
+    protected static final int DELTA_NEUTRAL_VALIDATION = 56;
+    protected static final int TICK_SNAPSHOT_END = 57;
+    protected static final int MARKET_DATA_TYPE = 58;
+    protected static final int DISPLAY_GROUP_LIST = 67;
+    protected static final int DISPLAY_GROUP_UPDATED = 68;
+
+    protected static final Map<Integer, List<Method>> callbacks = new LinkedHashMap<>();
+
+    static {
+        addCallbacks(NEWS_BULLETINS, "updateNewsBulletin");
+        addCallbacks(RECEIVE_FA, "receiveFA");
+        addCallbacks(SCANNER_PARAMETERS, "scannerParameters");
+        addCallbacks(SCANNER_DATA, "scannerData", "scannerDataEnd");
+        addCallbacks(TICK_OPTION_COMPUTATION, "tickOptionComputation");
+        addCallbacks(TICK_GENERIC, "tickGeneric");
+        addCallbacks(TICK_STRING, "tickString");
+        addCallbacks(TICK_EFP, "tickEFP");
+        addCallbacks(REAL_TIME_BARS, "realtimeBar");
+        addCallbacks(FUNDAMENTAL_DATA, "fundamentalData");
+        addCallbacks(DELTA_NEUTRAL_VALIDATION, "deltaNeutralValidation");
+        addCallbacks(TICK_SNAPSHOT_END, "tickSnapshotEnd");
+        addCallbacks(MARKET_DATA_TYPE, "marketDataType");
+        addCallbacks(DISPLAY_GROUP_LIST, "displayGroupList");
+        addCallbacks(DISPLAY_GROUP_UPDATED, "displayGroupUpdated");
+    }
+
+    /**
+     * @return The ids of the messages which can be skipped.
+     */
+    public static BitSet build(Collection<? extends EWrapper> delegates) {
+        BitSet skipped = new BitSet();
+        for (Map.Entry<Integer, List<Method>> entry : callbacks.entrySet()) {
+            if (!isConsumed(delegates, entry.getValue())) {
+                skipped.set(entry.getKey());
+            }
+        }
+        return skipped;
+    }
+
+    protected static boolean isConsumed(Collection<? extends EWrapper> delegates, List<Method> methods) {
+        for (EWrapper delegate : delegates) {
+            for (Method method : methods) {
+                if (isConsumed(delegate, method)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    protected static boolean isConsumed(EWrapper delegate, Method method) {
+        try {
+            Method implementation = delegate.getClass().getMethod(method.getName(), method.getParameterTypes());
+            return !implementation.isAnnotationPresent(IgnoredCallback.class);
+        } catch (NoSuchMethodException ex) {
+            return true;
+        }
+    }
+
+    protected static void addCallbacks(int msgId, String... names) {
+        List<Method> methods = new ArrayList<>();
+        for (String name : names) {
+            for (Method method : EWrapper.class.getMethods()) {
+                if (method.getName().equals(name)) {
+                    methods.add(method);
+                }
+            }
+        }
+        callbacks.put(msgId, methods);
+    }
+}
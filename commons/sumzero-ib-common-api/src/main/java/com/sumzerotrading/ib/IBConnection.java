@@ -28,8 +28,9 @@ import com.ib.client.Execution;
 import com.ib.client.Order;
 import com.ib.client.OrderState;
 import com.ib.client.UnderComp;
-import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.apache.log4j.Logger;
 
 /**
@@ -42,7 +43,8 @@ public class IBConnection implements IBConnectionInterface {
     protected static IBConnection connection = null;
 
     protected EClientSocket eclientSocket;
-    protected List<EWrapper> ibConnectionDelegates = new ArrayList<>();
+    protected List<EWrapper> ibConnectionDelegates = new CopyOnWriteArrayList<>();
+    protected RequestRoutingTable[] routes = new RequestRoutingTable[IBMessageFamily.values().length];
     protected int clientId;
     protected String host;
     protected int port;
@@ -56,16 +58,60 @@ public class IBConnection implements IBConnectionInterface {
 
     public IBConnection() {
         eclientSocket = new EClientSocket(this);
+        for (int i = 0; i < routes.length; i++) {
+            routes[i] = new RequestRoutingTable();
+        }
     }
 
     @Override
     public void addIbConnectionDelegate(EWrapper delegate) {
         ibConnectionDelegates.add(delegate);
+        updateDecodeMask();
     }
 
     @Override
     public void removeIbConnectionDelegate(EWrapper delegate) {
         ibConnectionDelegates.remove(delegate);
+        for (RequestRoutingTable table : routes) {
+            table.removeOwner(delegate);
+        }
+        updateDecodeMask();
+    }
+
+    /**
+     * Sets the socket whose reader calls this connection, so the reader can skip
+     * messages none of the delegates consume.
+     */
+    public void setClientSocket(EClientSocket clientSocket) {
+        eclientSocket = clientSocket;
+        updateDecodeMask();
+    }
+
+    /**
+     * Has the reader skip the messages whose callbacks all of the delegates ignore.
+     */
+    protected synchronized void updateDecodeMask() {
+        BitSet skipped = DecodeMask.build(ibConnectionDelegates);
+        eclientSocket.setSkippedMessages(skipped);
+        logger.debug("Skipping messages " + skipped);
+    }
+
+    @Override
+    public void addRequestRoute(IBMessageFamily family, int requestId, EWrapper delegate) {
+        routes[family.ordinal()].put(requestId, delegate);
+    }
+
+    @Override
+    public void removeRequestRoute(IBMessageFamily family, int requestId) {
+        routes[family.ordinal()].remove(requestId);
+    }
+
+    /**
+     * @return The delegate which made the request, or null if the callback
+     * should be broadcast to all delegates.
+     */
+    protected EWrapper getRoute(IBMessageFamily family, int requestId) {
+        return routes[family.ordinal()].get(requestId);
     }
 
     @Override
@@ -104,331 +150,466 @@ public class IBConnection implements IBConnectionInterface {
 
     @Override
     public void tickPrice(int tickerId, int field, double price, int canAutoExecute) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.MARKET_DATA, tickerId);
+        if (owner != null) {
+            owner.tickPrice(tickerId, field, price, canAutoExecute);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.tickPrice(tickerId, field, price, canAutoExecute);
-        });
+        }
     }
 
     @Override
     public void tickSize(int tickerId, int field, int size) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.MARKET_DATA, tickerId);
+        if (owner != null) {
+            owner.tickSize(tickerId, field, size);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.tickSize(tickerId, field, size);
-        });
+        }
     }
 
     @Override
     public void tickOptionComputation(int tickerId, int field, double impliedVol, double delta, double optPrice, double pvDividend, double gamma, double vega, double theta, double undPrice) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.MARKET_DATA, tickerId);
+        if (owner != null) {
+            owner.tickOptionComputation(tickerId, field, impliedVol, delta, optPrice, pvDividend, gamma, vega, theta, undPrice);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.tickOptionComputation(tickerId, field, impliedVol, delta, optPrice, pvDividend, gamma, vega, theta, undPrice);
-        });
+        }
     }
 
     @Override
     public void tickGeneric(int tickerId, int tickType, double value) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.MARKET_DATA, tickerId);
+        if (owner != null) {
+            owner.tickGeneric(tickerId, tickType, value);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.tickGeneric(tickerId, tickType, value);
-        });
+        }
     }
 
     @Override
     public void tickString(int tickerId, int tickType, String value) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.MARKET_DATA, tickerId);
+        if (owner != null) {
+            owner.tickString(tickerId, tickType, value);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.tickString(tickerId, tickType, value);
-        });
+        }
     }
 
     @Override
     public void tickEFP(int tickerId, int tickType, double basisPoints, String formattedBasisPoints, double impliedFuture, int holdDays, String futureExpiry, double dividendImpact, double dividendsToExpiry) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.MARKET_DATA, tickerId);
+        if (owner != null) {
+            owner.tickEFP(tickerId, tickType, basisPoints, formattedBasisPoints, impliedFuture, holdDays, futureExpiry, dividendImpact, dividendsToExpiry);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.tickEFP(tickerId, tickType, basisPoints, formattedBasisPoints, impliedFuture, holdDays, futureExpiry, dividendImpact, dividendsToExpiry);
-        });
+        }
     }
 
     @Override
     public void orderStatus(int orderId, String status, int filled, int remaining, double avgFillPrice, int permId, int parentId, double lastFillPrice, int clientId, String whyHeld) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.ORDER, orderId);
+        if (owner != null) {
+            owner.orderStatus(orderId, status, filled, remaining, avgFillPrice, permId, parentId, lastFillPrice, clientId, whyHeld);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.orderStatus(orderId, status, filled, remaining, avgFillPrice, permId, parentId, lastFillPrice, clientId, whyHeld);
-        });
+        }
     }
 
     @Override
     public void openOrder(int orderId, Contract contract, Order order, OrderState orderState) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.ORDER, orderId);
+        if (owner != null) {
+            owner.openOrder(orderId, contract, order, orderState);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.openOrder(orderId, contract, order, orderState);
-        });
+        }
     }
 
     @Override
     public void openOrderEnd() {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.openOrderEnd();
-        });
+        }
     }
 
     @Override
     public void updateAccountValue(String key, String value, String currency, String accountName) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.updateAccountValue(key, value, currency, accountName);
-        });
+        }
     }
 
     @Override
     public void updatePortfolio(Contract contract, int position, double marketPrice, double marketValue, double averageCost, double unrealizedPNL, double realizedPNL, String accountName) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.updatePortfolio(contract, position, marketPrice, marketValue, averageCost, unrealizedPNL, realizedPNL, accountName);
-        });
+        }
     }
 
     @Override
     public void updateAccountTime(String timeStamp) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.updateAccountTime(timeStamp);
-        });
+        }
     }
 
     @Override
     public void accountDownloadEnd(String accountName) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.accountDownloadEnd(accountName);
-        });
+        }
     }
 
     @Override
     public void nextValidId(int orderId) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.nextValidId(orderId);
-        });
+        }
     }
 
     @Override
     public void contractDetails(int reqId, ContractDetails contractDetails) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.CONTRACT_DETAILS, reqId);
+        if (owner != null) {
+            owner.contractDetails(reqId, contractDetails);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.contractDetails(reqId, contractDetails);
-        });
+        }
     }
 
     @Override
     public void bondContractDetails(int reqId, ContractDetails contractDetails) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.CONTRACT_DETAILS, reqId);
+        if (owner != null) {
+            owner.bondContractDetails(reqId, contractDetails);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.bondContractDetails(reqId, contractDetails);
-        });
+        }
     }
 
     @Override
     public void contractDetailsEnd(int reqId) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.CONTRACT_DETAILS, reqId);
+        if (owner != null) {
+            owner.contractDetailsEnd(reqId);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.contractDetailsEnd(reqId);
-        });
+        }
     }
 
     @Override
     public void execDetails(int reqId, Contract contract, Execution execution) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.EXECUTION, reqId);
+        if (owner != null) {
+            owner.execDetails(reqId, contract, execution);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.execDetails(reqId, contract, execution);
-        });
+        }
     }
 
     @Override
     public void execDetailsEnd(int reqId) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.EXECUTION, reqId);
+        if (owner != null) {
+            owner.execDetailsEnd(reqId);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.execDetailsEnd(reqId);
-        });
+        }
     }
 
     @Override
     public void updateMktDepth(int tickerId, int position, int operation, int side, double price, int size) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.MARKET_DEPTH, tickerId);
+        if (owner != null) {
+            owner.updateMktDepth(tickerId, position, operation, side, price, size);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.updateMktDepth(tickerId, position, operation, side, price, size);
-        });
+        }
     }
 
     @Override
     public void updateMktDepthL2(int tickerId, int position, String marketMaker, int operation, int side, double price, int size) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.MARKET_DEPTH, tickerId);
+        if (owner != null) {
+            owner.updateMktDepthL2(tickerId, position, marketMaker, operation, side, price, size);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.updateMktDepthL2(tickerId, position, marketMaker, operation, side, price, size);
-        });
+        }
     }
 
     @Override
     public void updateNewsBulletin(int msgId, int msgType, String message, String origExchange) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.updateNewsBulletin(msgId, msgType, message, origExchange);
-        });
+        }
     }
 
     @Override
     public void managedAccounts(String accountsList) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.managedAccounts(accountsList);
-        });
+        }
     }
 
     @Override
     public void receiveFA(int faDataType, String xml) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.receiveFA(faDataType, xml);
-        });
+        }
     }
 
     @Override
     public void historicalData(int reqId, String date, double open, double high, double low, double close, int volume, int count, double WAP, boolean hasGaps) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.HISTORICAL_DATA, reqId);
+        if (owner != null) {
+            owner.historicalData(reqId, date, open, high, low, close, volume, count, WAP, hasGaps);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.historicalData(reqId, date, open, high, low, close, volume, count, WAP, hasGaps);
-        });
+        }
     }
 
     @Override
     public void scannerParameters(String xml) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.scannerParameters(xml);
-        });
+        }
     }
 
     @Override
     public void scannerData(int reqId, int rank, ContractDetails contractDetails, String distance, String benchmark, String projection, String legsStr) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.SCANNER, reqId);
+        if (owner != null) {
+            owner.scannerData(reqId, rank, contractDetails, distance, benchmark, projection, legsStr);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.scannerData(reqId, rank, contractDetails, distance, benchmark, projection, legsStr);
-        });
+        }
     }
 
     @Override
     public void scannerDataEnd(int reqId) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.SCANNER, reqId);
+        if (owner != null) {
+            owner.scannerDataEnd(reqId);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.scannerDataEnd(reqId);
-        });
+        }
     }
 
     @Override
     public void realtimeBar(int reqId, long time, double open, double high, double low, double close, long volume, double wap, int count) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.REAL_TIME_BARS, reqId);
+        if (owner != null) {
+            owner.realtimeBar(reqId, time, open, high, low, close, volume, wap, count);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.realtimeBar(reqId, time, open, high, low, close, volume, wap, count);
-        });
+        }
     }
 
     @Override
     public void currentTime(long time) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.currentTime(time);
-        });
+        }
     }
 
     @Override
     public void fundamentalData(int reqId, String data) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.FUNDAMENTAL_DATA, reqId);
+        if (owner != null) {
+            owner.fundamentalData(reqId, data);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.fundamentalData(reqId, data);
-        });
+        }
     }
 
     @Override
     public void deltaNeutralValidation(int reqId, UnderComp underComp) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.ORDER, reqId);
+        if (owner != null) {
+            owner.deltaNeutralValidation(reqId, underComp);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.deltaNeutralValidation(reqId, underComp);
-        });
+        }
     }
 
     @Override
     public void tickSnapshotEnd(int reqId) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.MARKET_DATA, reqId);
+        if (owner != null) {
+            owner.tickSnapshotEnd(reqId);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.tickSnapshotEnd(reqId);
-        });
+        }
     }
 
     @Override
     public void marketDataType(int reqId, int marketDataType) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.MARKET_DATA, reqId);
+        if (owner != null) {
+            owner.marketDataType(reqId, marketDataType);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.marketDataType(reqId, marketDataType);
-        });
+        }
     }
 
     @Override
     public void commissionReport(CommissionReport commissionReport) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.commissionReport(commissionReport);
-        });
+        }
     }
 
     @Override
     public void position(String account, Contract contract, int pos, double avgCost) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.position(account, contract, pos, avgCost);
-        });
+        }
     }
 
     @Override
     public void positionEnd() {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.positionEnd();
-        });
+        }
     }
 
     @Override
     public void accountSummary(int reqId, String account, String tag, String value, String currency) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.ACCOUNT_SUMMARY, reqId);
+        if (owner != null) {
+            owner.accountSummary(reqId, account, tag, value, currency);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.accountSummary(reqId, account, tag, value, currency);
-        });
+        }
     }
 
     @Override
     public void accountSummaryEnd(int reqId) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.ACCOUNT_SUMMARY, reqId);
+        if (owner != null) {
+            owner.accountSummaryEnd(reqId);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.accountSummaryEnd(reqId);
-        });
+        }
     }
 
     @Override
     public void verifyMessageAPI(String apiData) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.verifyMessageAPI(apiData);
-        });
+        }
     }
 
     @Override
     public void verifyCompleted(boolean isSuccessful, String errorText) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.verifyCompleted(isSuccessful, errorText);
-        });
+        }
     }
 
     @Override
     public void displayGroupList(int reqId, String groups) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.DISPLAY_GROUP, reqId);
+        if (owner != null) {
+            owner.displayGroupList(reqId, groups);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.displayGroupList(reqId, groups);
-        });
+        }
     }
 
     @Override
     public void displayGroupUpdated(int reqId, String contractInfo) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        EWrapper owner = getRoute(IBMessageFamily.DISPLAY_GROUP, reqId);
+        if (owner != null) {
+            owner.displayGroupUpdated(reqId, contractInfo);
+            return;
+        }
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.displayGroupUpdated(reqId, contractInfo);
-        });
+        }
     }
 
     @Override
     public void error(Exception e) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.error(e);
-        });
+        }
     }
 
     @Override
     public void error(String str) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.error(str);
-        });
+        }
     }
 
     @Override
     public void error(int id, int errorCode, String errorMsg) {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.error(id, errorCode, errorMsg);
-        });
+        }
     }
 
     @Override
     public void connectionClosed() {
-        ibConnectionDelegates.stream().forEach((delegate) -> {
+        for (EWrapper delegate : ibConnectionDelegates) {
             delegate.connectionClosed();
-        });
+        }
     }
 
 }
@@ -44,4 +44,12 @@ public interface IBConnectionInterface extends EWrapper {
 
     public void removeIbConnectionDelegate(EWrapper delegate);
 
+    /**
+     * Callbacks in the family carrying the request id will only be sent to the
+     * delegate rather than to every registered delegate.
+     */
+    public void addRequestRoute(IBMessageFamily family, int requestId, EWrapper delegate);
+
+    public void removeRequestRoute(IBMessageFamily family, int requestId);
+
 }
@@ -22,8 +22,14 @@ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 package com.sumzerotrading.ib;
 
 import com.ib.client.EClientSocket;
+import com.ib.client.SessionRecorder;
+import com.sumzerotrading.ib.nio.IBEventLoop;
+import com.sumzerotrading.ib.nio.NioEClientSocket;
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import org.apache.log4j.Logger;
 
 /**
  *
@@ -32,6 +38,10 @@ import java.util.Map;
 public class IBConnectionRegistry {
 
     protected static final Map<IBConnectionInfo, IBSocket> connectionMap = new HashMap<IBConnectionInfo, IBSocket>();
+    protected static final Logger logger = Logger.getLogger(IBConnectionRegistry.class);
+    protected static volatile boolean useNioTransport = false;
+    protected static volatile boolean useAsyncWriter = false;
+    protected static volatile File captureDirectory = null;
 
     public static IBSocket getIBSocket(IBConnectionInfo info) {
 
@@ -43,8 +53,27 @@ public class IBConnectionRegistry {
                 connection.setHost(info.getHost());
                 connection.setPort(info.getPort());
 
-                EClientSocket clientSocket = new EClientSocket(connection);
-
+                EClientSocket clientSocket;
+                if (useNioTransport) {
+                    clientSocket = new NioEClientSocket(connection, IBEventLoop.getInstance());
+                } else {
+                    clientSocket = new EClientSocket(connection);
+                    clientSocket.setUseByteBufferReader(true);
+                    clientSocket.setUseAsyncWriter(useAsyncWriter);
+                }
+
+                File directory = captureDirectory;
+                if (directory != null) {
+                    File file = new File(directory, "ib-" + info.getHost() + "-" + info.getPort() + "-"
+                            + info.getClientId() + "-" + System.currentTimeMillis() + ".cap");
+                    try {
+                        clientSocket.setSessionRecorder(new SessionRecorder(file));
+                    } catch (IOException ex) {
+                        logger.error("Unable to capture the session to " + file, ex);
+                    }
+                }
+
+                connection.setClientSocket(clientSocket);
                 savedSocket = new IBSocket(connection, clientSocket);
 
                 connectionMap.put(info, savedSocket);
@@ -56,6 +85,45 @@ public class IBConnectionRegistry {
     }
     
     
+    /**
+     * When set, connections created after this call share a single selector
+     * thread instead of each running its own reader and writer threads.
+     */
+    public static void setUseNioTransport(boolean useNio) {
+        useNioTransport = useNio;
+    }
+
+    public static boolean isUseNioTransport() {
+        return useNioTransport;
+    }
+    
+    
+    /**
+     * When set, connections created after this call write requests to the socket
+     * from a dedicated writer thread rather than the requesting thread.  Off by default.
+     */
+    public static void setUseAsyncWriter(boolean useAsync) {
+        useAsyncWriter = useAsync;
+    }
+
+    public static boolean isUseAsyncWriter() {
+        return useAsyncWriter;
+    }
+    
+    
+    /**
+     * When set, the bytes received by connections created after this call are
+     * captured to a file in the directory, which can be replayed with SessionReplay.
+     * Null turns capturing off.
+     */
+    public static void setCaptureDirectory(File directory) {
+        captureDirectory = directory;
+    }
+
+    public static File getCaptureDirectory() {
+        return captureDirectory;
+    }
+
     public static void setTestIBSocket(IBConnectionInfo connectionInfo, IBSocket ibSocket) {
         connectionMap.put(connectionInfo, ibSocket);
     }
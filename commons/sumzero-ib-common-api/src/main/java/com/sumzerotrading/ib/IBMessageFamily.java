@@ -0,0 +1,59 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+/**
+ * The groups of EWrapper callbacks which are correlated to a request or order
+ * id, used by the IBConnection to route each callback to the delegate which
+ * made the request.
+ *
+ * @author Rob Terpilowski
+ */
+public enum IBMessageFamily {
+
+    /**
+     * tickPrice, tickSize, tickString, tickGeneric, tickOptionComputation,
+     * tickEFP, tickSnapshotEnd and marketDataType, keyed by the reqMktData id.
+     */
+    MARKET_DATA,
+    /**
+     * updateMktDepth and updateMktDepthL2, keyed by the reqMktDepth id.
+     */
+    MARKET_DEPTH,
+    /**
+     * orderStatus, openOrder and deltaNeutralValidation, keyed by order id.
+     */
+    ORDER,
+    /**
+     * execDetails and execDetailsEnd, keyed by the reqExecutions id.
+     */
+    EXECUTION,
+    /**
+     * contractDetails, bondContractDetails and contractDetailsEnd, keyed by
+     * the reqContractDetails id.
+     */
+    CONTRACT_DETAILS,
+    HISTORICAL_DATA,
+    REAL_TIME_BARS,
+    SCANNER,
+    FUNDAMENTAL_DATA,
+    ACCOUNT_SUMMARY,
+    DISPLAY_GROUP
+}
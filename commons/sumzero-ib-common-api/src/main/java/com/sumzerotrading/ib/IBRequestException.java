@@ -0,0 +1,47 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import com.sumzerotrading.data.SumZeroException;
+
+/**
+ * Completes a pending request which IB reported an error for.
+ *
+ * @author Rob Terpilowski
+ */
+public class IBRequestException extends SumZeroException {
+
+    protected final int requestId;
+    protected final int errorCode;
+
+    public IBRequestException(int requestId, int errorCode, String message) {
+        super("Request " + requestId + " failed with error " + errorCode + ": " + message);
+        this.requestId = requestId;
+        this.errorCode = errorCode;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+}
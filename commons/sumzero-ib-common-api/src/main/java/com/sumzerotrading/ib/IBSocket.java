@@ -34,6 +34,7 @@ public class IBSocket {
     protected EClientSocket clientSocket;
     protected int clientId;
     protected boolean connected = false;
+    protected RequestScheduler requestScheduler = RequestScheduler.createDefault();
 
     public IBSocket(IBConnectionInterface connection, EClientSocket clientSocket) {
         this.connection = connection;
@@ -48,6 +49,21 @@ public class IBSocket {
     public EClientSocket getClientSocket() {
         return clientSocket;
     }
+
+    /**
+     * @return The scheduler which paces the requests sent over this socket, shared by
+     * every component using it.  Never null.
+     */
+    public RequestScheduler getRequestScheduler() {
+        return requestScheduler;
+    }
+
+    public void setRequestScheduler(RequestScheduler requestScheduler) {
+        if (requestScheduler == null) {
+            throw new IllegalArgumentException("requestScheduler can not be null");
+        }
+        this.requestScheduler = requestScheduler;
+    }
     
     
     
@@ -184,6 +184,8 @@ public class IbUtils {
             return OrderStatus.Status.CANCELED;
         } else if ("Filled".equalsIgnoreCase(status)) {
             return OrderStatus.Status.FILLED;
+        } else if ("ApiCancelled".equalsIgnoreCase(status)) {
+            return OrderStatus.Status.CANCELED;
         } else if ("Inactive".equalsIgnoreCase(status)) {
             return OrderStatus.Status.CANCELED;
         } else {
@@ -191,6 +193,17 @@ public class IbUtils {
         }
     }
 
+    /**
+     * Returns true if IB will send no further status updates for an order in
+     * the given state.
+     */
+    public static boolean isFinalOrderStatus(String status) {
+        return "Filled".equalsIgnoreCase(status)
+                || "Cancelled".equalsIgnoreCase(status)
+                || "ApiCancelled".equalsIgnoreCase(status)
+                || "Inactive".equalsIgnoreCase(status);
+    }
+
     public static String getExpiryString(int expiryMonth, int expiryYear) {
         StringBuilder sb = new StringBuilder();
 
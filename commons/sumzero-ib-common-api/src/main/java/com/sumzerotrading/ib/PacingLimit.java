@@ -0,0 +1,92 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import java.util.Arrays;
+
+/**
+ * Allows a number of requests in any rolling window of time.
+ *
+ * This is a token bucket whose tokens are each returned a full window after
+ * they were spent, rather than being refilled at a steady rate, since a steadily
+ * refilled bucket allows up to twice its capacity in a window, which IB counts
+ * as a pacing violation.  The times the tokens were spent are kept in a ring, so
+ * checking and spending a token are constant time.
+ *
+ * Not thread safe, the RequestScheduler only uses it while holding its lock.
+ *
+ * @author Rob Terpilowski
+ */
+public class PacingLimit {
+
+    protected static final long NEVER_SPENT = Long.MIN_VALUE / 2;
+
+    protected final long[] spent;
+    protected final long windowNanos;
+    //index of the token which was spent longest ago
+    protected int oldest = 0;
+    protected long lastSpent = NEVER_SPENT;
+
+    public PacingLimit(int requests, long windowNanos) {
+        if (requests < 1) {
+            throw new IllegalArgumentException("A limit must allow at least one request: " + requests);
+        }
+        if (windowNanos <= 0) {
+            throw new IllegalArgumentException("The window must be positive: " + windowNanos);
+        }
+        this.spent = new long[requests];
+        this.windowNanos = windowNanos;
+        Arrays.fill(spent, NEVER_SPENT);
+    }
+
+    /**
+     * @param reserve The number of tokens which must be left once one has been spent.
+     * @return 0 if a token can be spent now, otherwise the nanoseconds until one can
+     * be, or Long.MAX_VALUE if the reserve uses every token.
+     */
+    public long nanosUntilAvailable(long now, int reserve) {
+        if (reserve >= spent.length) {
+            return Long.MAX_VALUE;
+        }
+        long available = spent[(oldest + reserve) % spent.length] + windowNanos;
+        return available <= now ? 0 : available - now;
+    }
+
+    public void spend(long now) {
+        spent[oldest] = now;
+        oldest = (oldest + 1) % spent.length;
+        lastSpent = now;
+    }
+
+    /**
+     * @return true if every token has been returned, so the limit can be discarded.
+     */
+    public boolean isIdle(long now) {
+        return lastSpent + windowNanos <= now;
+    }
+
+    public int getRequests() {
+        return spent.length;
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * One of IB's pacing limits, such as no more than 60 historical data requests
+ * in 10 minutes, or no more than 5 for the same contract in 2 seconds.  A rule
+ * keeps a single PacingLimit for the requests it covers, or one per contract or
+ * per request, depending on its scope.
+ *
+ * @author Rob Terpilowski
+ */
+public class PacingRule {
+
+    public enum Scope {
+        /**
+         * Every request counts towards the limit, whatever its family.
+         */
+        ALL_REQUESTS,
+        /**
+         * Every request of the rule's family counts towards the limit.
+         */
+        FAMILY,
+        /**
+         * Requests of the rule's family for the same contract count towards the limit.
+         */
+        CONTRACT,
+        /**
+         * Identical requests of the rule's family count towards the limit.
+         */
+        IDENTICAL_REQUEST
+    }
+
+    protected final Scope scope;
+    protected final IBMessageFamily family;
+    protected final int requests;
+    protected final long windowNanos;
+    protected final PacingLimit limit;
+    protected final Map<String, PacingLimit> keyedLimits = new HashMap<>();
+
+    /**
+     * @param family The family of requests the rule covers, ignored for ALL_REQUESTS.
+     */
+    public PacingRule(Scope scope, IBMessageFamily family, int requests, long windowNanos) {
+        if (scope != Scope.ALL_REQUESTS && family == null) {
+            throw new IllegalArgumentException("A family is required for a " + scope + " rule");
+        }
+        this.scope = scope;
+        this.family = scope == Scope.ALL_REQUESTS ? null : family;
+        this.requests = requests;
+        this.windowNanos = windowNanos;
+        this.limit = new PacingLimit(requests, windowNanos);
+    }
+
+    /**
+     * @return The limit the request counts towards, or null if the rule doesn't cover it.
+     */
+    public PacingLimit getLimit(IBMessageFamily requestFamily, String contractKey, String requestKey) {
+        if (scope == Scope.ALL_REQUESTS) {
+            return limit;
+        }
+        if (family != requestFamily) {
+            return null;
+        }
+        switch (scope) {
+            case CONTRACT:
+                return getKeyedLimit(contractKey);
+            case IDENTICAL_REQUEST:
+                return getKeyedLimit(requestKey);
+            default:
+                return limit;
+        }
+    }
+
+    protected PacingLimit getKeyedLimit(String key) {
+        if (key == null) {
+            return null;
+        }
+        PacingLimit keyedLimit = keyedLimits.get(key);
+        if (keyedLimit == null) {
+            keyedLimit = new PacingLimit(requests, windowNanos);
+            keyedLimits.put(key, keyedLimit);
+        }
+        return keyedLimit;
+    }
+
+    /**
+     * Discards the per contract and per request limits whose tokens have all been
+     * returned, they behave the same as a new limit.
+     */
+    public void purgeIdle(long now) {
+        for (Iterator<PacingLimit> iterator = keyedLimits.values().iterator(); iterator.hasNext();) {
+            if (iterator.next().isIdle(now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    public IBMessageFamily getFamily() {
+        return family;
+    }
+
+    public int getRequests() {
+        return requests;
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "PacingRule{" + "scope=" + scope + ", family=" + family + ", requests=" + requests
+                + ", windowNanos=" + windowNanos + '}';
+    }
+}
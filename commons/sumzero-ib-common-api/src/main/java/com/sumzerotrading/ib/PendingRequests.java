@@ -0,0 +1,153 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntConsumer;
+
+/**
+ * The futures of requests which are waiting for IB to respond, keyed by the
+ * request id which the response callbacks carry, so concurrent callers each
+ * receive the response to their own request.
+ *
+ * A future which isn't completed within its timeout fails with a
+ * TimeoutException.  Once a future is complete, however that happens, it is
+ * removed, and if it was cancelled or timed out the abandoned handler is called
+ * so the request can be cleaned up or cancelled at IB.
+ *
+ * @author Rob Terpilowski
+ */
+public class PendingRequests<T> {
+
+    protected static final ScheduledThreadPoolExecutor timeouts = createTimeoutExecutor();
+
+    protected final ConcurrentHashMap<Integer, CompletableFuture<T>> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param onAbandoned Called with the request id if the future is cancelled or times out, may be null.
+     * @throws IllegalStateException If a request with the id is already pending.
+     */
+    public CompletableFuture<T> register(int requestId, long timeout, TimeUnit unit, IntConsumer onAbandoned) {
+        CompletableFuture<T> future = register(requestId, onAbandoned);
+        startTimeout(requestId, timeout, unit);
+        return future;
+    }
+
+    /**
+     * Registers a request which doesn't time out until startTimeout() is called, for
+     * requests which may wait a while to be sent, eg. behind others in the RequestScheduler.
+     *
+     * @param onAbandoned Called with the request id if the future is cancelled or times out, may be null.
+     * @throws IllegalStateException If a request with the id is already pending.
+     */
+    public CompletableFuture<T> register(int requestId, IntConsumer onAbandoned) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (pending.putIfAbsent(requestId, future) != null) {
+            throw new IllegalStateException("Request " + requestId + " is already pending");
+        }
+        future.whenComplete((result, ex) -> {
+            pending.remove(requestId, future);
+            if (onAbandoned != null && (future.isCancelled() || ex instanceof TimeoutException)) {
+                onAbandoned.accept(requestId);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Fails the request with a TimeoutException if it isn't completed within the timeout.
+     *
+     * @return false if the request wasn't pending.
+     */
+    public boolean startTimeout(int requestId, long timeout, TimeUnit unit) {
+        CompletableFuture<T> future = pending.get(requestId);
+        if (future == null) {
+            return false;
+        }
+        ScheduledFuture<?> timeoutTask = timeouts.schedule(() -> future.completeExceptionally(
+                new TimeoutException("No response to request " + requestId + " after " + timeout + " " + unit)),
+                timeout, unit);
+        future.whenComplete((result, ex) -> timeoutTask.cancel(false));
+        return true;
+    }
+
+    /**
+     * @return The future of the request, or null if it isn't pending.
+     */
+    public CompletableFuture<T> get(int requestId) {
+        return pending.get(requestId);
+    }
+
+    public boolean isPending(int requestId) {
+        return pending.containsKey(requestId);
+    }
+
+    /**
+     * @return false if the request wasn't pending.
+     */
+    public boolean complete(int requestId, T result) {
+        CompletableFuture<T> future = pending.get(requestId);
+        return future != null && future.complete(result);
+    }
+
+    /**
+     * @return false if the request wasn't pending.
+     */
+    public boolean fail(int requestId, Throwable ex) {
+        CompletableFuture<T> future = pending.get(requestId);
+        return future != null && future.completeExceptionally(ex);
+    }
+
+    /**
+     * Completes every pending request, for responses which don't carry a request id.
+     */
+    public void completeAll(T result) {
+        for (CompletableFuture<T> future : new ArrayList<>(pending.values())) {
+            future.complete(result);
+        }
+    }
+
+    public void failAll(Throwable ex) {
+        for (CompletableFuture<T> future : new ArrayList<>(pending.values())) {
+            future.completeExceptionally(ex);
+        }
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    protected static ScheduledThreadPoolExecutor createTimeoutExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "PendingRequests-Timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //requests are usually answered well before they time out
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import com.ib.client.EWrapper;
+
+/**
+ * Maps request ids to the EWrapper which owns the request. Lookups are lock
+ * free and don't box the id, routes are added and removed far less often than
+ * callbacks arrive so each change copies the table.
+ *
+ * @author Rob Terpilowski
+ */
+public class RequestRoutingTable {
+
+    protected static final int INITIAL_CAPACITY = 16;
+
+    protected static class Table {
+
+        protected final int[] ids;
+        protected final EWrapper[] owners;
+        protected final int mask;
+        protected final int size;
+
+        protected Table(int capacity, int size) {
+            ids = new int[capacity];
+            owners = new EWrapper[capacity];
+            mask = capacity - 1;
+            this.size = size;
+        }
+    }
+
+    protected volatile Table table = new Table(INITIAL_CAPACITY, 0);
+
+    /**
+     * @return The owner of the request, or null if no route has been added for
+     * the id.
+     */
+    public EWrapper get(int id) {
+        Table current = table;
+        int index = hash(id) & current.mask;
+        EWrapper owner;
+        while ((owner = current.owners[index]) != null) {
+            if (current.ids[index] == id) {
+                return owner;
+            }
+            index = (index + 1) & current.mask;
+        }
+        return null;
+    }
+
+    public synchronized void put(int id, EWrapper owner) {
+        if (owner == null) {
+            throw new IllegalArgumentException("Owner of request " + id + " can't be null");
+        }
+        Table current = table;
+        int size = current.size;
+        if (get(id) == null) {
+            size++;
+        }
+        int capacity = current.ids.length;
+        while (size * 2 > capacity) {
+            capacity <<= 1;
+        }
+        Table copy = new Table(capacity, size);
+        copyInto(current, copy, id);
+        insert(copy, id, owner);
+        table = copy;
+    }
+
+    /**
+     * @return The owner the route pointed to, or null if there was no route for
+     * the id.
+     */
+    public synchronized EWrapper remove(int id) {
+        EWrapper owner = get(id);
+        if (owner != null) {
+            Table current = table;
+            Table copy = new Table(current.ids.length, current.size - 1);
+            copyInto(current, copy, id);
+            table = copy;
+        }
+        return owner;
+    }
+
+    /**
+     * Removes every route pointing to the owner.
+     */
+    public synchronized void removeOwner(EWrapper owner) {
+        Table current = table;
+        int remaining = 0;
+        for (EWrapper existing : current.owners) {
+            if (existing != null && existing != owner) {
+                remaining++;
+            }
+        }
+        if (remaining == current.size) {
+            return;
+        }
+        Table copy = new Table(current.ids.length, remaining);
+        for (int i = 0; i < current.owners.length; i++) {
+            if (current.owners[i] != null && current.owners[i] != owner) {
+                insert(copy, current.ids[i], current.owners[i]);
+            }
+        }
+        table = copy;
+    }
+
+    public synchronized void clear() {
+        table = new Table(INITIAL_CAPACITY, 0);
+    }
+
+    public int size() {
+        return table.size;
+    }
+
+    protected static void copyInto(Table from, Table to, int skipId) {
+        for (int i = 0; i < from.owners.length; i++) {
+            if (from.owners[i] != null && from.ids[i] != skipId) {
+                insert(to, from.ids[i], from.owners[i]);
+            }
+        }
+    }
+
+    protected static void insert(Table to, int id, EWrapper owner) {
+        int index = hash(id) & to.mask;
+        while (to.owners[index] != null) {
+            index = (index + 1) & to.mask;
+        }
+        to.ids[index] = id;
+        to.owners[index] = owner;
+    }
+
+    protected static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,379 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import com.ib.client.Contract;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import org.apache.log4j.Logger;
+
+/**
+ * Paces the requests sent to IB so they stay within its pacing limits, instead
+ * of being rejected with pacing violations.
+ *
+ * Each request is submitted with the family it belongs to, its priority and,
+ * optionally, keys identifying its contract and the request itself, which the
+ * per contract and identical request rules use.  A request is sent as soon as
+ * every rule covering it has a token, on the caller's thread if nothing of the
+ * same or a higher priority is waiting, otherwise it is queued and sent by the
+ * scheduler's dispatcher thread once it is allowed.  Queued requests are sent
+ * highest priority first, and in the order they were submitted within a
+ * priority, although a request held back by a per contract rule doesn't hold up
+ * those for other contracts.
+ *
+ * Requests of other than HIGH priority can't take the last few tokens of the
+ * ALL_REQUESTS rules, so live orders never wait behind a backfill.
+ *
+ * The returned future completes once the request has been sent, exceptionally
+ * if sending it threw, and cancelling it before then withdraws the request.
+ *
+ * @author Rob Terpilowski
+ */
+public class RequestScheduler {
+
+    //IB disconnects clients which send more than 50 messages a second, requests which
+    //aren't scheduled, such as reqIds(), share what is left over.
+    public static final int DEFAULT_MESSAGES_PER_SECOND = 40;
+    public static final int DEFAULT_HIGH_PRIORITY_RESERVE = 5;
+    protected static final long PURGE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    protected static final Logger logger = Logger.getLogger(RequestScheduler.class);
+
+    protected final LongSupplier clock;
+    protected final List<PacingRule> rules = new ArrayList<>();
+    protected final ArrayDeque<ScheduledRequest>[] queues;
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected final Condition changed = lock.newCondition();
+    protected int highPriorityReserve = DEFAULT_HIGH_PRIORITY_RESERVE;
+    protected int queuedCount = 0;
+    //priority of the request the dispatcher is sending, or -1
+    protected int sendingPriority = -1;
+    protected long nextWaitNanos = Long.MAX_VALUE;
+    protected long lastPurge;
+    protected Thread dispatcher;
+    protected boolean shutdown = false;
+
+    /**
+     * Creates a scheduler without any rules, which sends every request immediately
+     * until rules are added.
+     */
+    public RequestScheduler() {
+        this(System::nanoTime);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected RequestScheduler(LongSupplier clock) {
+        this.clock = clock;
+        queues = new ArrayDeque[RequestPriority.values().length];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayDeque<>();
+        }
+        lastPurge = clock.getAsLong();
+    }
+
+    /**
+     * Creates a scheduler with IB's documented limits, an overall message rate and
+     * the historical data limits of 60 requests in 10 minutes, 5 for the same
+     * contract and data type in 2 seconds, and no identical requests within 15 seconds.
+     */
+    public static RequestScheduler createDefault() {
+        RequestScheduler scheduler = new RequestScheduler();
+        scheduler.addRule(new PacingRule(PacingRule.Scope.ALL_REQUESTS, null,
+                DEFAULT_MESSAGES_PER_SECOND, TimeUnit.SECONDS.toNanos(1)));
+        scheduler.addRule(new PacingRule(PacingRule.Scope.FAMILY, IBMessageFamily.HISTORICAL_DATA,
+                60, TimeUnit.MINUTES.toNanos(10)));
+        scheduler.addRule(new PacingRule(PacingRule.Scope.CONTRACT, IBMessageFamily.HISTORICAL_DATA,
+                5, TimeUnit.SECONDS.toNanos(2)));
+        scheduler.addRule(new PacingRule(PacingRule.Scope.IDENTICAL_REQUEST, IBMessageFamily.HISTORICAL_DATA,
+                1, TimeUnit.SECONDS.toNanos(15)));
+        return scheduler;
+    }
+
+    /**
+     * @return A key identifying the contract for the per contract rules.
+     */
+    public static String contractKey(Contract contract) {
+        return contract.m_symbol + ":" + contract.m_secType + ":" + contract.m_exchange + ":"
+                + contract.m_currency + ":" + contract.m_expiry + ":" + contract.m_strike + ":" + contract.m_right;
+    }
+
+    public void addRule(PacingRule rule) {
+        lock.lock();
+        try {
+            rules.add(rule);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param reserve The number of tokens of each ALL_REQUESTS rule which only HIGH
+     * priority requests may use.
+     */
+    public void setHighPriorityReserve(int reserve) {
+        lock.lock();
+        try {
+            highPriorityReserve = reserve;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public CompletableFuture<Void> submit(IBMessageFamily family, RequestPriority priority, Runnable request) {
+        return submit(family, priority, null, null, request);
+    }
+
+    /**
+     * @param contractKey Identifies the contract for CONTRACT rules, or null if they don't apply.
+     * @param requestKey Identifies the request for IDENTICAL_REQUEST rules, or null if they don't apply.
+     * @param request Sends the request.
+     */
+    public CompletableFuture<Void> submit(IBMessageFamily family, RequestPriority priority, String contractKey,
+            String requestKey, Runnable request) {
+        ScheduledRequest scheduled = new ScheduledRequest(family, priority, contractKey, requestKey, request);
+        boolean sendNow = false;
+        lock.lock();
+        try {
+            if (shutdown) {
+                scheduled.future.completeExceptionally(new RejectedExecutionException("The scheduler has been shut down"));
+                return scheduled.future;
+            }
+            if (!isWaitingAtOrAbove(priority.ordinal()) && tryAcquire(scheduled, clock.getAsLong())) {
+                sendNow = true;
+            } else {
+                queues[priority.ordinal()].add(scheduled);
+                queuedCount++;
+                startDispatcher();
+                changed.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (sendNow) {
+            scheduled.send();
+        }
+        return scheduled.future;
+    }
+
+    /**
+     * @return The number of requests waiting to be sent.
+     */
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queuedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the dispatcher thread and cancels the requests which haven't been sent.
+     */
+    public void shutdown() {
+        List<ScheduledRequest> cancelled = new ArrayList<>();
+        lock.lock();
+        try {
+            shutdown = true;
+            for (ArrayDeque<ScheduledRequest> queue : queues) {
+                cancelled.addAll(queue);
+                queue.clear();
+            }
+            queuedCount = 0;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        for (ScheduledRequest request : cancelled) {
+            request.future.cancel(false);
+        }
+    }
+
+    protected boolean isWaitingAtOrAbove(int priority) {
+        if (sendingPriority >= 0 && sendingPriority <= priority) {
+            return true;
+        }
+        for (int i = 0; i <= priority; i++) {
+            if (!queues[i].isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Spends a token from every limit covering the request, if they all have one.
+     * Otherwise nextWaitNanos is lowered to the time until they might.
+     */
+    protected boolean tryAcquire(ScheduledRequest request, long now) {
+        long wait = 0;
+        for (PacingRule rule : rules) {
+            PacingLimit limit = rule.getLimit(request.family, request.contractKey, request.requestKey);
+            if (limit != null) {
+                int reserve = rule.getScope() == PacingRule.Scope.ALL_REQUESTS
+                        && request.priority != RequestPriority.HIGH ? highPriorityReserve : 0;
+                wait = Math.max(wait, limit.nanosUntilAvailable(now, reserve));
+            }
+        }
+        if (wait > 0) {
+            nextWaitNanos = Math.min(nextWaitNanos, wait);
+            return false;
+        }
+        for (PacingRule rule : rules) {
+            PacingLimit limit = rule.getLimit(request.family, request.contractKey, request.requestKey);
+            if (limit != null) {
+                limit.spend(now);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the first queued request which is allowed to be sent now.  If there
+     * isn't one nextWaitNanos holds the time until one might be.
+     */
+    protected ScheduledRequest nextReady(long now) {
+        nextWaitNanos = Long.MAX_VALUE;
+        if (now - lastPurge >= PURGE_INTERVAL_NANOS) {
+            for (PacingRule rule : rules) {
+                rule.purgeIdle(now);
+            }
+            lastPurge = now;
+        }
+        for (ArrayDeque<ScheduledRequest> queue : queues) {
+            for (Iterator<ScheduledRequest> iterator = queue.iterator(); iterator.hasNext();) {
+                ScheduledRequest request = iterator.next();
+                if (request.future.isDone()) {
+                    //cancelled by the caller
+                    iterator.remove();
+                    queuedCount--;
+                } else if (tryAcquire(request, now)) {
+                    iterator.remove();
+                    queuedCount--;
+                    return request;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sends every queued request which is allowed to go now.
+     *
+     * @return The nanoseconds until another request might be allowed, or
+     * Long.MAX_VALUE if none are queued.
+     */
+    protected long dispatchReady() {
+        lock.lock();
+        try {
+            return sendReady();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called holding the lock once, which is released while each request is sent.
+     */
+    protected long sendReady() {
+        ScheduledRequest request;
+        while ((request = nextReady(clock.getAsLong())) != null) {
+            sendingPriority = request.priority.ordinal();
+            lock.unlock();
+            try {
+                request.send();
+            } finally {
+                lock.lock();
+                sendingPriority = -1;
+            }
+        }
+        return nextWaitNanos;
+    }
+
+    protected void startDispatcher() {
+        if (dispatcher == null) {
+            dispatcher = new Thread(this::runDispatcher, "RequestScheduler");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+    }
+
+    protected void runDispatcher() {
+        lock.lock();
+        try {
+            while (!shutdown) {
+                long wait = sendReady();
+                if (shutdown) {
+                    break;
+                }
+                //the lock is still held, so nothing submitted since can be missed
+                if (wait == Long.MAX_VALUE) {
+                    changed.await();
+                } else {
+                    changed.awaitNanos(wait);
+                }
+            }
+        } catch (InterruptedException ex) {
+            logger.error("Request scheduler interrupted", ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    protected static class ScheduledRequest {
+
+        protected final IBMessageFamily family;
+        protected final RequestPriority priority;
+        protected final String contractKey;
+        protected final String requestKey;
+        protected final Runnable request;
+        protected final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        public ScheduledRequest(IBMessageFamily family, RequestPriority priority, String contractKey,
+                String requestKey, Runnable request) {
+            this.family = family;
+            this.priority = priority;
+            this.contractKey = contractKey;
+            this.requestKey = requestKey;
+            this.request = request;
+        }
+
+        protected void send() {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                request.run();
+                future.complete(null);
+            } catch (RuntimeException ex) {
+                logger.error("Failed to send " + family + " request", ex);
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+}
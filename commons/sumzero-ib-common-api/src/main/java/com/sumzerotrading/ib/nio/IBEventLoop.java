@@ -0,0 +1,195 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.nio;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.log4j.Logger;
+
+/**
+ * A single thread which services the sockets of any number of IB connections
+ * using a Selector, rather than each connection having its own blocking reader
+ * thread.
+ *
+ * Connections register a NioConnection, which is called on the event loop's
+ * thread when its socket can be read from or written to.  Other threads hand
+ * work to the loop with execute().
+ *
+ * @author Rob Terpilowski
+ */
+public class IBEventLoop implements Runnable {
+
+    protected static IBEventLoop instance;
+
+    protected Logger logger = Logger.getLogger(IBEventLoop.class);
+    protected final Selector selector;
+    protected final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    protected final String name;
+    protected volatile Thread thread;
+    protected volatile boolean running = false;
+
+    public IBEventLoop() throws IOException {
+        this("IBEventLoop");
+    }
+
+    /**
+     * @param name The name of the event loop's thread.
+     */
+    public IBEventLoop(String name) throws IOException {
+        this.name = name;
+        selector = Selector.open();
+    }
+
+    /**
+     * @return The event loop shared by connections in this VM, started on first use.
+     */
+    public static synchronized IBEventLoop getInstance() {
+        if (instance == null) {
+            try {
+                instance = new IBEventLoop();
+            } catch (IOException ex) {
+                throw new IllegalStateException("Unable to open selector", ex);
+            }
+            instance.start();
+        }
+        return instance;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the event loop and closes the sockets of the connections registered with it.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return true if called from the event loop's thread.
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Runs the task on the event loop's thread.
+     *
+     * @param task The task to run
+     */
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Registers the connection's channel for reads.  Must be called from the event
+     * loop's thread.
+     *
+     * @param connection The connection to register
+     * @return The key the channel was registered with.
+     */
+    protected SelectionKey register(NioConnection connection) throws IOException {
+        return connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                //tasks queued from the loop's own thread don't wake the selector, so
+                //don't block while there are any waiting.
+                if (tasks.isEmpty()) {
+                    selector.select();
+                } else {
+                    selector.selectNow();
+                }
+                runTasks();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    processKey(key);
+                }
+            }
+        } catch (Throwable ex) {
+            logger.error("Event loop " + name + " failed", ex);
+        } finally {
+            running = false;
+            closeAll();
+        }
+    }
+
+    protected void processKey(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isValid() && key.isReadable()) {
+                connection.onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.onWritable();
+            }
+        } catch (Exception ex) {
+            connection.onFailure(ex);
+        }
+    }
+
+    protected void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+        }
+    }
+
+    protected void closeAll() {
+        runTasks();
+        for (SelectionKey key : selector.keys()) {
+            ((NioConnection) key.attachment()).onFailure(new IOException("Event loop " + name + " stopped"));
+        }
+        try {
+            selector.close();
+        } catch (IOException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+}
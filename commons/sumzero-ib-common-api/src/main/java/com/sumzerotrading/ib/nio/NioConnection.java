@@ -0,0 +1,348 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.nio;
+
+import com.ib.client.EClientSocket;
+import com.ib.client.EReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.log4j.Logger;
+
+/**
+ * The socket of a single IB connection serviced by an IBEventLoop.
+ *
+ * While EClientSocket performs its connection handshake the channel is used in
+ * blocking mode from the connecting thread.  When EClientSocket starts its reader
+ * the channel is switched to non-blocking mode and registered with the event loop,
+ * which from then on decodes incoming messages and writes outgoing requests.
+ *
+ * Requests are appended to a buffer by the calling thread and written from the
+ * event loop, so requests made in quick succession are sent together and callers
+ * don't block on the socket.  The buffer grows up to maxPendingBytes, once it is
+ * full callers block until the event loop has written it, so a stalled socket
+ * can't grow the heap without limit.  A caller on the event loop's own thread
+ * can't wait for it, so its write fails instead.
+ *
+ * @author Rob Terpilowski
+ */
+public class NioConnection {
+
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+    public static final int DEFAULT_MAX_PENDING_BYTES = 16 * 1024 * 1024;
+
+    protected Logger logger = Logger.getLogger(NioConnection.class);
+    protected final SocketChannel channel;
+    protected final IBEventLoop eventLoop;
+    protected final ChannelOutputStream outputStream = new ChannelOutputStream();
+    protected final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    protected final Object writeLock = new Object();
+    //serializes callers, taken before writeLock, so a caller waiting for space can't have another caller's bytes land in the middle of its request.
+    protected final Object producerLock = new Object();
+    protected final int maxPendingBytes;
+    protected NioEReader reader;
+    protected SelectionKey key;
+    //requests waiting to be written, guarded by writeLock.
+    protected ByteBuffer pending = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+    //the requests currently being written, only used from the event loop.
+    protected ByteBuffer outbound = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+    protected volatile boolean registered = false;
+    protected volatile boolean producerWaiting = false;
+    protected volatile boolean closed = false;
+
+    public NioConnection(SocketChannel channel, IBEventLoop eventLoop) {
+        this(channel, eventLoop, DEFAULT_MAX_PENDING_BYTES);
+    }
+
+    /**
+     * @param maxPendingBytes The most bytes of requests which can wait to be written before callers block.
+     */
+    public NioConnection(SocketChannel channel, IBEventLoop eventLoop, int maxPendingBytes) {
+        if (maxPendingBytes < DEFAULT_BUFFER_SIZE) {
+            throw new IllegalArgumentException("At least " + DEFAULT_BUFFER_SIZE + " bytes must be allowed to wait: " + maxPendingBytes);
+        }
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.maxPendingBytes = maxPendingBytes;
+        outbound.flip();
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    public boolean isRegistered() {
+        return registered;
+    }
+
+    public int getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    /**
+     * Creates the reader EClientSocket uses for the connection handshake, and which
+     * decodes messages on the event loop once it has been started.
+     */
+    public EReader createReader(EClientSocket parent, DataInputStream dis) {
+        reader = new NioEReader(parent, dis, this);
+        return reader;
+    }
+
+    /**
+     * Switches the channel to non-blocking mode and hands it to the event loop.
+     * Called when EClientSocket starts its reader.
+     */
+    protected void register() {
+        try {
+            synchronized (writeLock) {
+                channel.configureBlocking(false);
+                registered = true;
+            }
+        } catch (IOException ex) {
+            onFailure(ex);
+            return;
+        }
+        eventLoop.execute(() -> {
+            try {
+                if (closed) {
+                    return;
+                }
+                key = eventLoop.register(this);
+                //the handshake may have read messages which followed it.
+                reader.decodeAvailable();
+                flush();
+            } catch (Exception ex) {
+                onFailure(ex);
+            }
+        });
+    }
+
+    protected void onReadable() throws IOException {
+        reader.readFromChannel();
+    }
+
+    protected void onWritable() throws IOException {
+        flush();
+    }
+
+    protected void onFailure(Exception ex) {
+        if (!closed) {
+            reader.failed(ex);
+        }
+        closeChannel();
+    }
+
+    /**
+     * Writes as much of the pending requests as the socket will accept, and waits
+     * for the socket to become writable if it couldn't take them all.  Only called
+     * from the event loop.
+     */
+    protected void flush() throws IOException {
+        flushScheduled.set(false);
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        while (true) {
+            if (!outbound.hasRemaining()) {
+                synchronized (writeLock) {
+                    if (pending.position() == 0) {
+                        break;
+                    }
+                    ByteBuffer written = outbound;
+                    outbound = pending;
+                    pending = written;
+                    pending.clear();
+                    if (producerWaiting) {
+                        writeLock.notifyAll();
+                    }
+                }
+                outbound.flip();
+            }
+            channel.write(outbound);
+            if (outbound.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    protected void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(() -> {
+                try {
+                    flush();
+                } catch (Exception ex) {
+                    onFailure(ex);
+                }
+            });
+        }
+    }
+
+    /**
+     * Closes the channel once the requests already made have been written, if the socket will accept them.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!registered) {
+            closeChannel();
+            return;
+        }
+        eventLoop.execute(() -> {
+            try {
+                flush();
+            } catch (IOException ex) {
+                logger.debug(ex.getMessage(), ex);
+            }
+            closeChannel();
+        });
+    }
+
+    protected void closeChannel() {
+        closed = true;
+        synchronized (writeLock) {
+            writeLock.notifyAll();
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Makes room in the pending buffer, growing it towards the length of the request
+     * up to maxPendingBytes, and blocking the caller while it is full.  Must hold the
+     * producer lock and writeLock, only writeLock is released while waiting so the
+     * event loop can take the buffer but no other caller can append.
+     */
+    protected void awaitPendingSpace(int len) throws IOException {
+        if (pending.remaining() >= len) {
+            return;
+        }
+        if (pending.capacity() < maxPendingBytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.min(maxPendingBytes, Math.max(pending.capacity() * 2, pending.position() + len)));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        if (pending.hasRemaining()) {
+            return;
+        }
+        if (eventLoop.inEventLoop()) {
+            throw new IOException("Requests waiting to be written have reached the limit of " + maxPendingBytes + " bytes");
+        }
+        boolean interrupted = false;
+        try {
+            //advertise before re-checking, so the event loop can't take the buffer without waking us.
+            producerWaiting = true;
+            while (!pending.hasRemaining()) {
+                checkOpen();
+                scheduleFlush();
+                try {
+                    writeLock.wait();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            producerWaiting = false;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    protected void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+    }
+
+    /**
+     * Writes to the channel from the connecting thread, while EClientSocket is still
+     * performing the handshake.
+     */
+    protected void writeBlocking(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    protected class ChannelOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            synchronized (producerLock) {
+                synchronized (writeLock) {
+                    checkOpen();
+                    if (!registered) {
+                        writeBlocking(ByteBuffer.wrap(new byte[]{(byte) b}));
+                        return;
+                    }
+                    awaitPendingSpace(1);
+                    pending.put((byte) b);
+                }
+            }
+            scheduleFlush();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (producerLock) {
+                synchronized (writeLock) {
+                    checkOpen();
+                    if (!registered) {
+                        writeBlocking(ByteBuffer.wrap(b, off, len));
+                        return;
+                    }
+                    while (len > 0) {
+                        awaitPendingSpace(len);
+                        int count = Math.min(len, pending.remaining());
+                        pending.put(b, off, count);
+                        off += count;
+                        len -= count;
+                    }
+                }
+            }
+            scheduleFlush();
+        }
+
+        @Override
+        public void close() {
+            NioConnection.this.close();
+        }
+    }
+
+}
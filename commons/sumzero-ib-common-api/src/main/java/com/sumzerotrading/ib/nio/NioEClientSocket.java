@@ -0,0 +1,93 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.nio;
+
+import com.ib.client.AnyWrapper;
+import com.ib.client.EClientSocket;
+import com.ib.client.EReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+
+/**
+ * An EClientSocket whose socket is serviced by an IBEventLoop, so several
+ * connections can share one thread instead of each running its own reader thread.
+ *
+ * @author Rob Terpilowski
+ */
+public class NioEClientSocket extends EClientSocket {
+
+    protected final IBEventLoop eventLoop;
+    protected NioConnection nioConnection;
+
+    public NioEClientSocket(AnyWrapper anyWrapper) {
+        this(anyWrapper, IBEventLoop.getInstance());
+    }
+
+    public NioEClientSocket(AnyWrapper anyWrapper, IBEventLoop eventLoop) {
+        super(anyWrapper);
+        this.eventLoop = eventLoop;
+    }
+
+    @Override
+    public synchronized void eConnect(String host, int port, int clientId, boolean extraAuth) {
+        host = checkConnected(host);
+        if (host == null) {
+            return;
+        }
+        setExtraAuth(extraAuth);
+        try {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.socket().setTcpNoDelay(true);
+            eConnect(channel.socket(), clientId);
+        } catch (Exception e) {
+            eDisconnect();
+            connectionError();
+        }
+    }
+
+    @Override
+    protected OutputStream createOutputStream(Socket socket) throws IOException {
+        SocketChannel channel = socket.getChannel();
+        if (channel == null) {
+            //a plain socket was passed to eConnect(), so it has to be read with a thread.
+            nioConnection = null;
+            return super.createOutputStream(socket);
+        }
+        nioConnection = new NioConnection(channel, eventLoop);
+        return nioConnection.getOutputStream();
+    }
+
+    @Override
+    public EReader createReader(EClientSocket socket, DataInputStream dis) {
+        if (nioConnection == null) {
+            return super.createReader(socket, dis);
+        }
+        return nioConnection.createReader(socket, dis);
+    }
+
+    public IBEventLoop getEventLoop() {
+        return eventLoop;
+    }
+
+}
@@ -0,0 +1,219 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.nio;
+
+import com.ib.client.ByteBufferEReader;
+import com.ib.client.EClientSocket;
+import com.ib.client.EWrapper;
+import com.ib.client.SessionRecorder;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * Decodes the messages of a NioConnection on its event loop.  Bytes are added to
+ * the buffer as they arrive, and each complete message is passed to
+ * EReader.processMsg(), which calls the connection's EWrapper exactly as the
+ * blocking reader would.
+ *
+ * The protocol doesn't include message lengths, so if a message runs past the
+ * bytes received so far, decoding stops and restarts from the beginning of the
+ * message once more bytes arrive.  Scanner and historical data messages call the
+ * EWrapper for each row as it is decoded, and can be large, so they are framed
+ * first: their row counts give the number of fields, and the nulls terminating
+ * them are counted as bytes arrive, so each byte is only scanned once.  They
+ * are only decoded once they have arrived in full.
+ *
+ * @author Rob Terpilowski
+ */
+public class NioEReader extends ByteBufferEReader {
+
+    protected static final int HISTORICAL_DATA = 17;
+    protected static final int SCANNER_DATA = 20;
+    protected static final Underflow UNDERFLOW = new Underflow();
+
+    protected final NioConnection connection;
+    //progress framing a scanner or historical data message, relative to its start as the buffer is compacted between reads
+    protected int framedBytes = 0;
+    protected int fieldsToFrame = -1;
+
+    public NioEReader(EClientSocket parent, DataInputStream dis, NioConnection connection) {
+        super(parent, dis);
+        this.connection = connection;
+    }
+
+    /**
+     * Registers the connection with its event loop rather than starting a reader thread.
+     */
+    @Override
+    public synchronized void start() {
+        connection.register();
+    }
+
+    /**
+     * Closes the connection, EClientSocket interrupts its reader when disconnecting.
+     */
+    @Override
+    public void interrupt() {
+        connection.close();
+    }
+
+    /**
+     * Blocks for more bytes during the handshake, once the connection is registered
+     * with the event loop the current message is abandoned until more bytes arrive.
+     */
+    @Override
+    protected void fill() throws IOException {
+        if (!connection.isRegistered()) {
+            super.fill();
+            return;
+        }
+        throw UNDERFLOW;
+    }
+
+    /**
+     * Reads whatever is available from the channel and decodes the complete messages.
+     * The handshake is read through the socket's stream, which EClientSocket taps
+     * itself, so only reads from the channel are passed to the session recorder here.
+     */
+    protected void readFromChannel() throws IOException {
+        prepareForRead();
+        int read = connection.getChannel().read(buffer);
+        buffer.flip();
+        if (read < 0) {
+            throw new EOFException();
+        }
+        SessionRecorder recorder = parent().getSessionRecorder();
+        if (recorder != null) {
+            recorder.record(buffer.array(), buffer.limit() - read, read);
+        }
+        decodeAvailable();
+    }
+
+    protected void decodeAvailable() throws IOException {
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            try {
+                int msgId = readInt();
+                if ((msgId == SCANNER_DATA || msgId == HISTORICAL_DATA) && !frame(msgId, start)) {
+                    buffer.position(start);
+                    return;
+                }
+                if (!processMsg(msgId)) {
+                    failed(null);
+                    connection.closeChannel();
+                    return;
+                }
+            } catch (Underflow ex) {
+                buffer.position(start);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the whole of a scanner or historical data message has arrived,
+     * continuing from where the last check ran out of bytes.
+     *
+     * @param start The index of the message's first byte, its id has been read.
+     * @return true if the message is complete, the buffer is then positioned after its id.
+     */
+    protected boolean frame(int msgId, int start) throws IOException {
+        int bodyStart = buffer.position();
+        if (fieldsToFrame < 0) {
+            //the header is only a few fields, so it is just read again if it hasn't all arrived
+            fieldsToFrame = countRowFields(msgId);
+            framedBytes = buffer.position() - start;
+        }
+        byte[] bytes = buffer.array();
+        int limit = buffer.limit();
+        int index = start + framedBytes;
+        while (fieldsToFrame > 0 && index < limit) {
+            if (bytes[index++] == 0) {
+                fieldsToFrame--;
+            }
+        }
+        if (fieldsToFrame > 0) {
+            framedBytes = index - start;
+            return false;
+        }
+        fieldsToFrame = -1;
+        framedBytes = 0;
+        buffer.position(bodyStart);
+        return true;
+    }
+
+    /**
+     * Reads the header of a scanner or historical data message.
+     *
+     * @return The number of fields in its rows.
+     */
+    protected int countRowFields(int msgId) throws IOException {
+        int version = readInt();
+        skipField();
+        if (msgId == SCANNER_DATA) {
+            int numberOfElements = readInt();
+            //rank, contract, distance, benchmark and projection, as EReader.skipMsg()
+            int fields = 14;
+            if (version >= 3) {
+                fields++;
+            }
+            if (version >= 2) {
+                fields++;
+            }
+            return numberOfElements * fields;
+        }
+        if (version >= 2) {
+            //start and end dates
+            skipFields(2);
+        }
+        int itemCount = readInt();
+        //date, open, high, low, close, volume, WAP, hasGaps and barCount
+        return itemCount * (version >= 3 ? 9 : 8);
+    }
+
+    /**
+     * Reports the failure and closes the connection, the same way the blocking reader does when its thread exits.
+     *
+     * @param ex The failure, or null if the reader stopped because of the message received.
+     */
+    protected void failed(Exception ex) {
+        EClientSocket parent = parent();
+        if (ex != null && parent.isConnected()) {
+            ((EWrapper) parent.wrapper()).error(ex);
+        }
+        if (parent.isConnected()) {
+            parent.eDisconnect();
+            parent.wrapper().connectionClosed();
+        }
+    }
+
+    /**
+     * Thrown when a message runs past the bytes received, it is preallocated since it
+     * is part of normal operation.
+     */
+    protected static class Underflow extends RuntimeException {
+
+        public Underflow() {
+            super("Incomplete message", null, false, false);
+        }
+    }
+
+}
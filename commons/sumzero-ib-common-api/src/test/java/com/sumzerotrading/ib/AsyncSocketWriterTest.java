@@ -0,0 +1,321 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import com.ib.client.AsyncSocketWriter;
+import com.ib.client.EClientSocket;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author RobTerpilowski
+ */
+public class AsyncSocketWriterTest {
+
+    @Test
+    public void testBytesWrittenInOrder() throws Exception {
+        RecordingStream out = new RecordingStream();
+        AsyncSocketWriter writer = new AsyncSocketWriter(out, null, 16, 64, 1024);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+
+        for (int i = 0; i < 2000; i++) {
+            if (i % 3 == 0) {
+                writer.write(i);
+                expected.write(i);
+            } else {
+                byte[] bytes = ("field" + i).getBytes(StandardCharsets.US_ASCII);
+                writer.write(bytes);
+                expected.write(bytes);
+            }
+        }
+        writer.close();
+
+        assertTrue(out.closed.await(5, TimeUnit.SECONDS));
+        assertArrayEquals(expected.toByteArray(), out.toByteArray());
+    }
+
+    @Test
+    public void testCloseSendsEverythingAlreadyWritten() throws Exception {
+        RecordingStream out = new RecordingStream();
+        out.writeDelayMillis = 5;
+        AsyncSocketWriter writer = new AsyncSocketWriter(out, null, 16, 32, 1024);
+        byte[] bytes = new byte[5000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+
+        writer.write(bytes);
+        writer.close();
+
+        assertTrue(out.closed.await(10, TimeUnit.SECONDS));
+        assertArrayEquals(bytes, out.toByteArray());
+        try {
+            writer.write(1);
+            fail();
+        } catch (IOException ex) {
+            //this should happen
+        }
+    }
+
+    @Test
+    public void testDisconnectSendsQueuedRequests() throws Exception {
+        int requests = 500;
+        AtomicInteger received = new AtomicInteger();
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            Thread server = new Thread(() -> {
+                try (Socket socket = serverSocket.accept()) {
+                    InputStream in = socket.getInputStream();
+                    OutputStream out = socket.getOutputStream();
+                    readField(in);
+                    out.write("60\u000020160301 09:30:00 EST\u0000".getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                    String field;
+                    while ((field = readField(in)) != null) {
+                        if (field.equals("49")) {
+                            received.incrementAndGet();
+                        }
+                    }
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            });
+            server.start();
+
+            EClientSocket clientSocket = new EClientSocket(new BaseIBConnectionDelegate());
+            clientSocket.setUseAsyncWriter(true);
+            clientSocket.eConnect("127.0.0.1", serverSocket.getLocalPort(), 1);
+            assertTrue(clientSocket.isConnected());
+            for (int i = 0; i < requests; i++) {
+                clientSocket.reqCurrentTime();
+            }
+            clientSocket.eDisconnect();
+
+            server.join(5000);
+            assertEquals(requests, received.get());
+        }
+    }
+
+    @Test
+    public void testWriteFailureReportedThroughError() throws Exception {
+        ErrorRecorder wrapper = new ErrorRecorder();
+        FailingClientSocket clientSocket = new FailingClientSocket(wrapper);
+        clientSocket.setUseAsyncWriter(true);
+        OutputStream writer = clientSocket.openOutputStream();
+
+        writer.write(new byte[]{1, 2, 3});
+
+        assertTrue(wrapper.errorLatch.await(5, TimeUnit.SECONDS));
+        //509 - failed to send message
+        assertEquals(509, wrapper.errorCodes.get(0).intValue());
+        assertTrue(wrapper.closedLatch.await(5, TimeUnit.SECONDS));
+        try {
+            writer.write(4);
+            fail();
+        } catch (IOException ex) {
+            //this should happen
+        }
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        int threads = 4;
+        int records = 2000;
+        RecordingStream out = new RecordingStream();
+        //a small queue so the producers are regularly held back
+        AsyncSocketWriter writer = new AsyncSocketWriter(out, null, 64, 256, 4);
+        List<Thread> producers = new ArrayList<>();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int threadId = t;
+            Thread producer = new Thread(() -> {
+                try {
+                    for (int i = 0; i < records; i++) {
+                        writer.write(ByteBuffer.allocate(12).putInt(threadId).putInt(i).putInt(-1).array());
+                    }
+                } catch (Throwable ex) {
+                    failures.add(ex);
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join(10000);
+        }
+        writer.close();
+
+        assertTrue(out.closed.await(10, TimeUnit.SECONDS));
+        assertTrue(failures.toString(), failures.isEmpty());
+        ByteBuffer written = ByteBuffer.wrap(out.toByteArray());
+        assertEquals(threads * records * 12, written.remaining());
+        int[] nextRecord = new int[threads];
+        while (written.hasRemaining()) {
+            int threadId = written.getInt();
+            assertEquals(nextRecord[threadId]++, written.getInt());
+            assertEquals(-1, written.getInt());
+        }
+        for (int next : nextRecord) {
+            assertEquals(records, next);
+        }
+    }
+
+    @Test
+    public void testFullQueueBlocksCallers() throws Exception {
+        RecordingStream out = new RecordingStream();
+        out.gate = new CountDownLatch(1);
+        AsyncSocketWriter writer = new AsyncSocketWriter(out, null, 8, 8, 2);
+        byte[] bytes = new byte[200];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        Thread producer = new Thread(() -> {
+            try {
+                writer.write(bytes);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        });
+        producer.start();
+
+        //the socket is stalled, so the producer is held back rather than queueing everything
+        long deadline = System.currentTimeMillis() + 5000;
+        while (producer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, producer.getState());
+        assertTrue(writer.getQueuedBufferCount() <= writer.getMaxQueuedBuffers());
+
+        out.gate.countDown();
+        producer.join(5000);
+        writer.close();
+        assertTrue(out.closed.await(5, TimeUnit.SECONDS));
+        assertArrayEquals(bytes, out.toByteArray());
+    }
+
+    protected static String readField(InputStream in) throws IOException {
+        ByteArrayOutputStream field = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) > 0) {
+            field.write(b);
+        }
+        if (b < 0 && field.size() == 0) {
+            return null;
+        }
+        return new String(field.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    protected static class RecordingStream extends OutputStream {
+
+        protected final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        protected final CountDownLatch closed = new CountDownLatch(1);
+        protected volatile CountDownLatch gate;
+        protected volatile long writeDelayMillis = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                if (gate != null) {
+                    gate.await();
+                }
+                if (writeDelayMillis > 0) {
+                    Thread.sleep(writeDelayMillis);
+                }
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            synchronized (bytes) {
+                bytes.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+
+        public byte[] toByteArray() {
+            synchronized (bytes) {
+                return bytes.toByteArray();
+            }
+        }
+    }
+
+    protected static class FailingClientSocket extends EClientSocket {
+
+        public FailingClientSocket(ErrorRecorder wrapper) {
+            super(wrapper);
+        }
+
+        public OutputStream openOutputStream() throws IOException {
+            return createOutputStream(new Socket() {
+                @Override
+                public OutputStream getOutputStream() {
+                    return new OutputStream() {
+                        @Override
+                        public void write(int b) throws IOException {
+                            throw new IOException("Broken pipe");
+                        }
+                    };
+                }
+            });
+        }
+    }
+
+    protected static class ErrorRecorder extends BaseIBConnectionDelegate {
+
+        protected final List<Integer> errorCodes = new CopyOnWriteArrayList<>();
+        protected final CountDownLatch errorLatch = new CountDownLatch(1);
+        protected final CountDownLatch closedLatch = new CountDownLatch(1);
+
+        @Override
+        public void error(int id, int errorCode, String errorMsg) {
+            errorCodes.add(errorCode);
+            errorLatch.countDown();
+        }
+
+        @Override
+        public void connectionClosed() {
+            closedLatch.countDown();
+        }
+    }
+}
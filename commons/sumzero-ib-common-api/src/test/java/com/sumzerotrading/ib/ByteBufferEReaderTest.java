@@ -0,0 +1,253 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import com.ib.client.ByteBufferEReader;
+import com.ib.client.EClientSocket;
+import com.ib.client.EReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Checks ByteBufferEReader parses every field exactly as EReader does, doubles are
+ * compared bit for bit and failures by their exception.
+ *
+ * @author RobTerpilowski
+ */
+public class ByteBufferEReaderTest {
+
+    protected static final List<String> INT_FIELDS = Arrays.asList(
+            "0", "5", "+5", "-5", "-0", "+0", "007", "-007",
+            "2147483647", "-2147483648", "2147483648", "-2147483649",
+            "123456789012345678", "-123456789012345678", "1234567890123456789", "-1234567890123456789",
+            "9223372036854775807", "-9223372036854775808", "9223372036854775808", "12345678901234567890",
+            "", "-", "+", "+-5", "--5", "abc", "5a", " 5", "5 ", "1.5", "1e3");
+
+    protected static final List<String> DOUBLE_FIELDS = Arrays.asList(
+            "0", "-0", "+0", "0.0", "-0.0", "5", "+5", "-5", "1.5", "-1.5", "12.25", "0.1", "0.2", "0.3",
+            "-0.05", "100.5", "1.", ".5", "-.5", "+.5", "00001.2500",
+            "123456789012345678", "1234567890123456789", "123456789.123456789", "1234567890.123456789",
+            "9007199254740992", "9007199254740993", "9007199254740993.5", "0.9007199254740993",
+            "0.0000000000000000000001", "0.00000000000000000000001", "1.00000000000000000000001",
+            "-0.0000000000000000000001", "1e10", "1E-5", "-2.5e3", "2.5e+3", "1.7976931348623157E308",
+            "4.9E-324", "1e400", "Infinity", "-Infinity", "NaN",
+            "", "-", "+", ".", "-.", "1.2.3", "1,5", " 1", "1 ", "0x10", "abc");
+
+    @Test
+    public void testInts() throws Exception {
+        for (FieldType type : new FieldType[]{FieldType.INT, FieldType.INT_MAX, FieldType.LONG}) {
+            for (String field : INT_FIELDS) {
+                assertSameAsEReader(type, field);
+            }
+        }
+    }
+
+    @Test
+    public void testDoubles() throws Exception {
+        for (FieldType type : new FieldType[]{FieldType.DOUBLE, FieldType.DOUBLE_MAX}) {
+            for (String field : DOUBLE_FIELDS) {
+                assertSameAsEReader(type, field);
+            }
+        }
+    }
+
+    @Test
+    public void testStrings() throws Exception {
+        for (String field : Arrays.asList("", "ABC", "a b", "caf\u00e9", "\u00ff\u0080\u0001")) {
+            assertSameAsEReader(FieldType.STRING, field);
+        }
+    }
+
+    @Test
+    public void testEmptyFields() throws Exception {
+        assertEquals(Arrays.asList(0, Integer.MAX_VALUE, 0L, "double:0", "double:" + Long.toHexString(Double.doubleToRawLongBits(Double.MAX_VALUE)), null),
+                read(true, bytes("", "", "", "", "", ""), ByteBufferEReader.DEFAULT_BUFFER_SIZE, Integer.MAX_VALUE,
+                        FieldType.INT, FieldType.INT_MAX, FieldType.LONG, FieldType.DOUBLE, FieldType.DOUBLE_MAX, FieldType.STRING));
+    }
+
+    @Test
+    public void testFieldsSplitAcrossReadsAndBufferGrowth() throws Exception {
+        List<String> fields = new ArrayList<>();
+        List<FieldType> types = new ArrayList<>();
+        for (String field : DOUBLE_FIELDS) {
+            fields.add(field);
+            types.add(FieldType.DOUBLE);
+        }
+        for (String field : Arrays.asList("0", "-5", "2147483647", "-2147483648", "", "123456")) {
+            fields.add(field);
+            types.add(FieldType.INT);
+        }
+        //longer than the initial buffer, so the buffer has to grow to hold it
+        StringBuilder longField = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longField.append((char) ('a' + i % 26));
+        }
+        fields.add(longField.toString());
+        types.add(FieldType.STRING);
+        fields.add("1234567890.123456789");
+        types.add(FieldType.DOUBLE);
+        fields.add("9223372036854775807");
+        types.add(FieldType.LONG);
+
+        byte[] bytes = bytes(fields.toArray(new String[fields.size()]));
+        FieldType[] typeArray = types.toArray(new FieldType[types.size()]);
+        List<Object> expected = read(false, bytes, 0, Integer.MAX_VALUE, typeArray);
+        for (int bufferSize : new int[]{4, 7, 16}) {
+            for (int maxChunk : new int[]{1, 2, 3, 5}) {
+                assertEquals("buffer " + bufferSize + " chunk " + maxChunk, expected, read(true, bytes, bufferSize, maxChunk, typeArray));
+            }
+        }
+    }
+
+    protected void assertSameAsEReader(FieldType type, String field) throws Exception {
+        byte[] bytes = bytes(field);
+        Object expected = read(false, bytes, 0, Integer.MAX_VALUE, type).get(0);
+        assertEquals(type + " \"" + field + "\"", expected, read(true, bytes, ByteBufferEReader.DEFAULT_BUFFER_SIZE, Integer.MAX_VALUE, type).get(0));
+        assertEquals(type + " \"" + field + "\"", expected, read(true, bytes, 2, 1, type).get(0));
+    }
+
+    /**
+     * Reads the fields, stopping at the first which fails.
+     */
+    protected List<Object> read(boolean byteBufferReader, byte[] bytes, int bufferSize, int maxChunk, FieldType... types) {
+        DataInputStream input = new DataInputStream(new ChunkedInputStream(bytes, maxChunk));
+        EClientSocket parent = new EClientSocket(new BaseIBConnectionDelegate());
+        FieldReader reader = byteBufferReader ? new BufferFieldReader(parent, input, bufferSize) : new StandardFieldReader(parent, input);
+        List<Object> results = new ArrayList<>();
+        for (FieldType type : types) {
+            try {
+                Object value = reader.read(type);
+                if (value instanceof Double) {
+                    value = "double:" + Long.toHexString(Double.doubleToRawLongBits((Double) value));
+                }
+                results.add(value);
+            } catch (Exception ex) {
+                results.add(ex.getClass().getName() + ": " + ex.getMessage());
+                break;
+            }
+        }
+        return results;
+    }
+
+    protected static byte[] bytes(String... fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String field : fields) {
+            byte[] bytes = field.getBytes(StandardCharsets.ISO_8859_1);
+            out.write(bytes, 0, bytes.length);
+            out.write(0);
+        }
+        return out.toByteArray();
+    }
+
+    protected static enum FieldType {
+        INT, INT_MAX, LONG, DOUBLE, DOUBLE_MAX, STRING
+    };
+
+    protected static interface FieldReader {
+
+        public Object read(FieldType type) throws IOException;
+    }
+
+    protected static class StandardFieldReader extends EReader implements FieldReader {
+
+        public StandardFieldReader(EClientSocket parent, DataInputStream input) {
+            super(parent, input);
+        }
+
+        @Override
+        public Object read(FieldType type) throws IOException {
+            switch (type) {
+                case INT:
+                    return readInt();
+                case INT_MAX:
+                    return readIntMax();
+                case LONG:
+                    return readLong();
+                case DOUBLE:
+                    return readDouble();
+                case DOUBLE_MAX:
+                    return readDoubleMax();
+                default:
+                    return readStr();
+            }
+        }
+    }
+
+    protected static class BufferFieldReader extends ByteBufferEReader implements FieldReader {
+
+        public BufferFieldReader(EClientSocket parent, DataInputStream input, int bufferSize) {
+            super(parent, input, bufferSize);
+        }
+
+        @Override
+        public Object read(FieldType type) throws IOException {
+            switch (type) {
+                case INT:
+                    return readInt();
+                case INT_MAX:
+                    return readIntMax();
+                case LONG:
+                    return readLong();
+                case DOUBLE:
+                    return readDouble();
+                case DOUBLE_MAX:
+                    return readDoubleMax();
+                default:
+                    return readStr();
+            }
+        }
+    }
+
+    /**
+     * Returns at most maxChunk bytes from each read, as a socket may.
+     */
+    protected static class ChunkedInputStream extends InputStream {
+
+        protected final ByteArrayInputStream input;
+        protected final int maxChunk;
+        protected int nextChunk = 1;
+
+        public ChunkedInputStream(byte[] bytes, int maxChunk) {
+            this.input = new ByteArrayInputStream(bytes);
+            this.maxChunk = maxChunk;
+        }
+
+        @Override
+        public int read() {
+            return input.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int chunk = Math.min(len, nextChunk);
+            nextChunk = nextChunk >= maxChunk ? 1 : nextChunk + 1;
+            return input.read(b, off, chunk);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import com.ib.client.Contract;
+import com.ib.client.ContractDetails;
+import com.sumzerotrading.data.Exchange;
+import com.sumzerotrading.data.StockTicker;
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
+import com.sumzerotrading.time.SimulatedClock;
+import java.io.File;
+import java.nio.file.Files;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author RobTerpilowski
+ */
+public class ContractCacheTest {
+
+    protected SimulatedClock clock;
+    protected ContractCache cache;
+    protected StockTicker ticker;
+
+    @Before
+    public void setUp() {
+        clock = new SimulatedClock(ZonedDateTime.of(2016, 3, 10, 9, 30, 0, 0, ZoneId.of("America/New_York")));
+        cache = new ContractCache(new TickerRegistry());
+        cache.setClock(clock);
+        ticker = new StockTicker("ABC");
+        ticker.setExchange(Exchange.NYSE);
+    }
+
+    @Test
+    public void testGetContract_BuiltOnce() {
+        Contract contract = cache.getContract(ticker);
+
+        StockTicker sameTicker = new StockTicker("ABC");
+        sameTicker.setExchange(Exchange.NYSE);
+        assertSame(contract, cache.getContract(sameTicker));
+        assertEquals("ABC", contract.m_symbol);
+
+        cache.invalidate(ticker);
+        Contract rebuilt = cache.getContract(ticker);
+        assertEquals(contract, rebuilt);
+        assertEquals(false, contract == rebuilt);
+    }
+
+    @Test
+    public void testGetContractDetails() {
+        assertNull(cache.getContractDetails(ticker));
+
+        ContractDetails details = buildDetails(1234, null);
+        cache.putContractDetails(ticker, details);
+
+        assertSame(details, cache.getContractDetails(ticker));
+    }
+
+    @Test
+    public void testGetContractDetails_MaxAge() {
+        cache.setMaxAge(1, TimeUnit.HOURS);
+        cache.putContractDetails(ticker, buildDetails(1234, null));
+
+        clock.advance(TimeUnit.MINUTES.toNanos(59));
+        assertEquals(1234, cache.getContractDetails(ticker).m_summary.m_conId);
+
+        clock.advance(TimeUnit.MINUTES.toNanos(1));
+        assertNull(cache.getContractDetails(ticker));
+    }
+
+    @Test
+    public void testInvalidateExpired() {
+        cache.setMaxAge(90, TimeUnit.DAYS);
+        StockTicker march = new StockTicker("MAR");
+        StockTicker april = new StockTicker("APR");
+        cache.putContractDetails(ticker, buildDetails(1, null));
+        cache.putContractDetails(march, buildDetails(2, "20160318"));
+        cache.putContractDetails(april, buildDetails(3, "201604"));
+
+        //tradeable until the end of the expiry date
+        clock.setTime(ZonedDateTime.of(2016, 3, 18, 23, 0, 0, 0, ZoneId.of("America/New_York")));
+        assertEquals(0, cache.invalidateExpired());
+
+        clock.setTime(ZonedDateTime.of(2016, 3, 19, 0, 0, 0, 0, ZoneId.of("America/New_York")));
+        assertEquals(1, cache.invalidateExpired());
+        assertNull(cache.getContractDetails(march));
+        assertEquals(3, cache.getContractDetails(april).m_summary.m_conId);
+
+        clock.setTime(ZonedDateTime.of(2016, 5, 1, 0, 0, 0, 0, ZoneId.of("America/New_York")));
+        assertNull(cache.getContractDetails(april));
+        assertEquals(1, cache.getContractDetails(ticker).m_summary.m_conId);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        ContractDetails details = buildDetails(1234, "20160318");
+        details.m_minTick = 0.25;
+        details.m_summary.m_multiplier = "50";
+        details.m_tradingHours = "20160310:1700-1515";
+        cache.putContractDetails(ticker, details);
+        StockTicker expired = new StockTicker("OLD");
+        cache.putContractDetails(expired, buildDetails(99, "20160309"));
+
+        File file = Files.createTempFile("contracts", ".ser").toFile();
+        try {
+            cache.save(file);
+
+            ContractCache loaded = new ContractCache(new TickerRegistry());
+            loaded.setClock(clock);
+            assertEquals(1, loaded.load(file));
+
+            ContractDetails loadedDetails = loaded.getContractDetails(ticker);
+            assertEquals(1234, loadedDetails.m_summary.m_conId);
+            assertEquals(0.25, loadedDetails.m_minTick, 0);
+            assertEquals("50", loadedDetails.m_summary.m_multiplier);
+            assertEquals("20160318", loadedDetails.m_summary.m_expiry);
+            assertEquals("20160310:1700-1515", loadedDetails.m_tradingHours);
+            assertNull(loaded.getContractDetails(expired));
+
+            //stale by the time the cache is next loaded
+            clock.advance(TimeUnit.DAYS.toNanos(1));
+            loaded = new ContractCache(new TickerRegistry());
+            loaded.setClock(clock);
+            assertEquals(0, loaded.load(file));
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    @Test
+    public void testLoad_MissingFile() throws Exception {
+        assertEquals(0, cache.load(new File("does-not-exist.ser")));
+    }
+
+    @Test
+    public void testWarm() throws Exception {
+        StockTicker cached = new StockTicker("XYZ");
+        StockTicker missing = new StockTicker("NONE");
+        StockTicker failed = new StockTicker("ERR");
+        cache.putContractDetails(cached, buildDetails(1, null));
+        List<Ticker> requested = new ArrayList<>();
+
+        CompletableFuture<Integer> warmed = cache.warm(Arrays.asList(ticker, cached, missing, failed), t -> {
+            requested.add(t);
+            if (t == missing) {
+                return CompletableFuture.completedFuture(Collections.<ContractDetails>emptyList());
+            }
+            CompletableFuture<List<ContractDetails>> future = new CompletableFuture<>();
+            if (t == failed) {
+                future.completeExceptionally(new IBRequestException(1, 200, "No security definition"));
+            } else {
+                future.complete(Arrays.asList(buildDetails(1234, null)));
+            }
+            return future;
+        });
+
+        assertEquals(Integer.valueOf(1), warmed.get(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(ticker, missing, failed), requested);
+        assertEquals(1234, cache.getContractDetails(ticker).m_summary.m_conId);
+        assertNull(cache.getContractDetails(failed));
+    }
+
+    protected ContractDetails buildDetails(int conId, String expiry) {
+        ContractDetails details = new ContractDetails();
+        details.m_summary.m_conId = conId;
+        details.m_summary.m_expiry = expiry;
+        return details;
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import com.ib.client.ByteBufferEReader;
+import com.ib.client.ContractDetails;
+import com.ib.client.EClientSocket;
+import com.ib.client.EReader;
+import com.ib.client.EWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author RobTerpilowski
+ */
+public class DecodeMaskTest {
+
+    @Test
+    public void testBuild_NoOpDelegate() {
+        BitSet skipped = DecodeMask.build(Collections.singletonList(new BaseIBConnectionDelegate()));
+
+        assertEquals(DecodeMask.callbacks.size(), skipped.cardinality());
+        assertTrue(skipped.get(DecodeMask.TICK_STRING));
+        assertTrue(skipped.get(DecodeMask.SCANNER_DATA));
+    }
+
+    @Test
+    public void testBuild_OverriddenCallbackIsConsumed() {
+        RecordingDelegate recording = new RecordingDelegate();
+        BitSet skipped = DecodeMask.build(Arrays.asList(new BaseIBConnectionDelegate(), recording));
+
+        assertFalse(skipped.get(DecodeMask.TICK_STRING));
+        //scannerDataEnd is overridden, so the whole message is needed
+        assertFalse(skipped.get(DecodeMask.SCANNER_DATA));
+        assertTrue(skipped.get(DecodeMask.TICK_GENERIC));
+    }
+
+    @Test
+    public void testBuild_ProxyConsumesEverything() {
+        EWrapper proxy = (EWrapper) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{EWrapper.class},
+                (target, method, args) -> null);
+
+        assertTrue(DecodeMask.build(Collections.singletonList(proxy)).isEmpty());
+    }
+
+    @Test
+    public void testIBConnection_UpdatesClientSocket() {
+        IBConnection connection = new IBConnection();
+        EClientSocket clientSocket = new EClientSocket(connection);
+        connection.setClientSocket(clientSocket);
+        assertEquals(DecodeMask.callbacks.size(), clientSocket.getSkippedMessages().cardinality());
+
+        RecordingDelegate recording = new RecordingDelegate();
+        connection.addIbConnectionDelegate(new BaseIBConnectionDelegate());
+        connection.addIbConnectionDelegate(recording);
+        assertFalse(clientSocket.getSkippedMessages().get(DecodeMask.TICK_STRING));
+
+        connection.removeIbConnectionDelegate(recording);
+        assertTrue(clientSocket.getSkippedMessages().get(DecodeMask.TICK_STRING));
+    }
+
+    @Test
+    public void testSkippedMessagesAreNotDecoded() throws Exception {
+        for (boolean byteBufferReader : new boolean[]{false, true}) {
+            RecordingDelegate recording = new RecordingDelegate();
+            assertEquals(7, read(recording, new BitSet(), byteBufferReader).size());
+
+            recording = new RecordingDelegate();
+            BitSet skipped = DecodeMask.build(Collections.singletonList(new BaseIBConnectionDelegate()));
+            assertEquals(Arrays.asList("tickPrice 5 10.25", "tickPrice 6 11.5"), read(recording, skipped, byteBufferReader));
+        }
+    }
+
+    protected List<String> read(RecordingDelegate recording, BitSet skipped, boolean byteBufferReader) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        write(bytes, "1", "2", "5", "1", "10.25", "0");
+        write(bytes, "46", "6", "5", "45", "1456842600");
+        write(bytes, "21", "6", "5", "13", "0.25", "0.5", "1.25", "0", "0.1", "0.2", "-0.05", "100.5");
+        write(bytes, "20", "3", "9", "1", "0", "1234", "ABC", "STK", "", "0", "", "SMART", "USD", "ABC", "NMS", "ABC", "", "", "", "");
+        write(bytes, "14", "1", "3", "1", "Exchange halted", "NYSE");
+        write(bytes, "57", "1", "5");
+        write(bytes, "1", "2", "6", "1", "11.5", "0");
+
+        EClientSocket parent = new EClientSocket(recording);
+        parent.setSkippedMessages(skipped);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        EReader reader = byteBufferReader ? new ByteBufferEReader(parent, input) : new EReader(parent, input);
+        reader.run();
+        return recording.calls;
+    }
+
+    protected static void write(ByteArrayOutputStream out, String... fields) throws Exception {
+        for (String field : fields) {
+            out.write(field.getBytes(StandardCharsets.US_ASCII));
+            out.write(0);
+        }
+    }
+
+    protected static class RecordingDelegate extends BaseIBConnectionDelegate {
+
+        protected final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void tickPrice(int tickerId, int field, double price, int canAutoExecute) {
+            calls.add("tickPrice " + tickerId + " " + price);
+        }
+
+        @Override
+        public void tickString(int tickerId, int tickType, String value) {
+            calls.add("tickString " + tickerId + " " + value);
+        }
+
+        @Override
+        public void tickOptionComputation(int tickerId, int field, double impliedVol, double delta, double optPrice, double pvDividend, double gamma, double vega, double theta, double undPrice) {
+            calls.add("tickOptionComputation " + tickerId + " " + undPrice);
+        }
+
+        @Override
+        public void scannerDataEnd(int reqId) {
+            calls.add("scannerDataEnd " + reqId);
+        }
+
+        @Override
+        public void updateNewsBulletin(int msgId, int msgType, String message, String origExchange) {
+            calls.add("updateNewsBulletin " + message);
+        }
+
+        @Override
+        public void tickSnapshotEnd(int reqId) {
+            calls.add("tickSnapshotEnd " + reqId);
+        }
+    }
+}
@@ -27,7 +27,9 @@ import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import com.ib.client.EWrapper;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 /**
@@ -68,4 +70,73 @@ public class IBConnectionTest {
         
     }
 
+    @Test
+    public void testRoutedCallbackOnlySentToOwner() {
+        EWrapper quoteDelegate = mock(EWrapper.class);
+        EWrapper historicalDelegate = mock(EWrapper.class);
+        ibConnection.addIbConnectionDelegate(quoteDelegate);
+        ibConnection.addIbConnectionDelegate(historicalDelegate);
+        ibConnection.addRequestRoute(IBMessageFamily.MARKET_DATA, 100002, quoteDelegate);
+        ibConnection.addRequestRoute(IBMessageFamily.HISTORICAL_DATA, 7, historicalDelegate);
+
+        ibConnection.tickPrice(100002, 1, 10.5, 0);
+        ibConnection.historicalData(7, "20160301", 1, 2, 0.5, 1.5, 100, 10, 1.2, false);
+
+        verify(quoteDelegate).tickPrice(100002, 1, 10.5, 0);
+        verify(historicalDelegate, never()).tickPrice(100002, 1, 10.5, 0);
+        verify(historicalDelegate).historicalData(7, "20160301", 1, 2, 0.5, 1.5, 100, 10, 1.2, false);
+        verify(quoteDelegate, never()).historicalData(7, "20160301", 1, 2, 0.5, 1.5, 100, 10, 1.2, false);
+    }
+
+    @Test
+    public void testUnroutedCallbackBroadcast() {
+        EWrapper delegate1 = mock(EWrapper.class);
+        EWrapper delegate2 = mock(EWrapper.class);
+        ibConnection.addIbConnectionDelegate(delegate1);
+        ibConnection.addIbConnectionDelegate(delegate2);
+        //routes are per family, the same id in another family isn't routed.
+        ibConnection.addRequestRoute(IBMessageFamily.MARKET_DEPTH, 5, delegate1);
+
+        ibConnection.tickSize(5, 0, 100);
+        ibConnection.error(5, 200, "No security definition");
+        ibConnection.connectionClosed();
+
+        verify(delegate1).tickSize(5, 0, 100);
+        verify(delegate2).tickSize(5, 0, 100);
+        verify(delegate1).error(5, 200, "No security definition");
+        verify(delegate2).error(5, 200, "No security definition");
+        verify(delegate1).connectionClosed();
+        verify(delegate2).connectionClosed();
+    }
+
+    @Test
+    public void testRemoveRoute() {
+        EWrapper delegate1 = mock(EWrapper.class);
+        EWrapper delegate2 = mock(EWrapper.class);
+        ibConnection.addIbConnectionDelegate(delegate1);
+        ibConnection.addIbConnectionDelegate(delegate2);
+        ibConnection.addRequestRoute(IBMessageFamily.ORDER, 12, delegate1);
+        ibConnection.removeRequestRoute(IBMessageFamily.ORDER, 12);
+
+        ibConnection.orderStatus(12, "Filled", 100, 0, 1.5, 0, 0, 1.5, 1, "");
+
+        verify(delegate1).orderStatus(12, "Filled", 100, 0, 1.5, 0, 0, 1.5, 1, "");
+        verify(delegate2).orderStatus(12, "Filled", 100, 0, 1.5, 0, 0, 1.5, 1, "");
+    }
+
+    @Test
+    public void testRemoveDelegateRemovesRoutes() {
+        EWrapper delegate1 = mock(EWrapper.class);
+        EWrapper delegate2 = mock(EWrapper.class);
+        ibConnection.addIbConnectionDelegate(delegate1);
+        ibConnection.addIbConnectionDelegate(delegate2);
+        ibConnection.addRequestRoute(IBMessageFamily.MARKET_DATA, 3, delegate1);
+        ibConnection.removeIbConnectionDelegate(delegate1);
+
+        ibConnection.tickPrice(3, 1, 10.5, 0);
+
+        verify(delegate1, never()).tickPrice(3, 1, 10.5, 0);
+        verify(delegate2).tickPrice(3, 1, 10.5, 0);
+    }
+
 }
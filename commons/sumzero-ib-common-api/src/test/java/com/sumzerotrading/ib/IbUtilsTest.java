@@ -156,9 +156,21 @@ public class IbUtilsTest {
         assertEquals(OrderStatus.Status.NEW, IbUtils.getOrderStatus("Submitted"));
         assertEquals(OrderStatus.Status.CANCELED, IbUtils.getOrderStatus("Cancelled"));
         assertEquals(OrderStatus.Status.FILLED, IbUtils.getOrderStatus("Filled"));
+        assertEquals(OrderStatus.Status.CANCELED, IbUtils.getOrderStatus("ApiCancelled"));
         assertEquals(OrderStatus.Status.CANCELED, IbUtils.getOrderStatus("Inactive"));
         assertEquals(OrderStatus.Status.UNKNOWN, IbUtils.getOrderStatus("foo"));
     }
+
+    @Test
+    public void testIsFinalOrderStatus() {
+        assertTrue(IbUtils.isFinalOrderStatus("Filled"));
+        assertTrue(IbUtils.isFinalOrderStatus("Cancelled"));
+        assertTrue(IbUtils.isFinalOrderStatus("ApiCancelled"));
+        assertTrue(IbUtils.isFinalOrderStatus("Inactive"));
+        assertFalse(IbUtils.isFinalOrderStatus("PendingCancel"));
+        assertFalse(IbUtils.isFinalOrderStatus("Submitted"));
+        assertFalse(IbUtils.isFinalOrderStatus(null));
+    }
     
     @Test
     public void testGetExpiryString_MonthYear() {
@@ -0,0 +1,72 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author RobTerpilowski
+ */
+public class PacingLimitTest {
+
+    @Test
+    public void testRollingWindow() {
+        PacingLimit limit = new PacingLimit(3, 1000);
+
+        limit.spend(0);
+        limit.spend(100);
+        assertEquals(0, limit.nanosUntilAvailable(200, 0));
+        limit.spend(200);
+
+        //a steadily refilled bucket would allow another request here
+        assertEquals(500, limit.nanosUntilAvailable(500, 0));
+        assertEquals(0, limit.nanosUntilAvailable(1000, 0));
+        limit.spend(1000);
+        assertEquals(100, limit.nanosUntilAvailable(1000, 0));
+    }
+
+    @Test
+    public void testReserve() {
+        PacingLimit limit = new PacingLimit(3, 1000);
+        limit.spend(0);
+
+        assertEquals(0, limit.nanosUntilAvailable(10, 1));
+        assertEquals(990, limit.nanosUntilAvailable(10, 2));
+        assertEquals(Long.MAX_VALUE, limit.nanosUntilAvailable(10, 3));
+    }
+
+    @Test
+    public void testIdle() {
+        PacingLimit limit = new PacingLimit(2, 1000);
+        assertTrue(limit.isIdle(0));
+        limit.spend(50);
+        assertFalse(limit.isIdle(1049));
+        assertTrue(limit.isIdle(1050));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoRequestsAllowed() {
+        new PacingLimit(0, 1000);
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author RobTerpilowski
+ */
+public class PendingRequestsTest {
+
+    protected PendingRequests<String> requests = new PendingRequests<>();
+    protected List<Integer> abandoned = new ArrayList<>();
+
+    @Test
+    public void testCompleteByRequestId() throws Exception {
+        CompletableFuture<String> first = requests.register(1, 5, TimeUnit.SECONDS, abandoned::add);
+        CompletableFuture<String> second = requests.register(2, 5, TimeUnit.SECONDS, abandoned::add);
+
+        assertTrue(requests.complete(2, "two"));
+        assertFalse(requests.complete(3, "three"));
+        assertFalse(first.isDone());
+        assertEquals("two", second.get());
+        assertFalse(requests.isPending(2));
+        assertEquals(1, requests.size());
+        assertTrue(abandoned.isEmpty());
+    }
+
+    @Test
+    public void testFail() throws Exception {
+        CompletableFuture<String> future = requests.register(1, 5, TimeUnit.SECONDS, abandoned::add);
+
+        requests.fail(1, new IBRequestException(1, 200, "No security definition"));
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException ex) {
+            assertEquals(200, ((IBRequestException) ex.getCause()).getErrorCode());
+        }
+        assertEquals(0, requests.size());
+        assertTrue(abandoned.isEmpty());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        CompletableFuture<String> future = requests.register(1, 10, TimeUnit.MILLISECONDS, abandoned::add);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+        assertEquals(0, requests.size());
+        assertEquals(Arrays.asList(1), abandoned);
+    }
+
+    @Test
+    public void testCancel() {
+        CompletableFuture<String> future = requests.register(7, 5, TimeUnit.SECONDS, abandoned::add);
+        future.cancel(false);
+
+        assertFalse(requests.isPending(7));
+        assertFalse(requests.complete(7, "late"));
+        assertEquals(Arrays.asList(7), abandoned);
+    }
+
+    @Test
+    public void testCompleteAll() throws Exception {
+        CompletableFuture<String> first = requests.register(1, 5, TimeUnit.SECONDS, null);
+        CompletableFuture<String> second = requests.register(2, 5, TimeUnit.SECONDS, null);
+
+        requests.completeAll("now");
+        assertEquals("now", first.get());
+        assertEquals("now", second.get());
+        assertEquals(0, requests.size());
+    }
+
+    @Test
+    public void testNoTimeoutUntilStarted() throws Exception {
+        CompletableFuture<String> future = requests.register(1, abandoned::add);
+        Thread.sleep(50);
+        assertFalse(future.isDone());
+
+        assertTrue(requests.startTimeout(1, 10, TimeUnit.MILLISECONDS));
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+        assertEquals(Arrays.asList(1), abandoned);
+        assertFalse(requests.startTimeout(1, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDuplicateRequestId() {
+        requests.register(1, 5, TimeUnit.SECONDS, null);
+        requests.register(1, 5, TimeUnit.SECONDS, null);
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import com.ib.client.EWrapper;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+
+/**
+ *
+ * @author RobTerpilowski
+ */
+public class RequestRoutingTableTest {
+
+    @Test
+    public void testPutGetRemove() {
+        RequestRoutingTable table = new RequestRoutingTable();
+        EWrapper owner1 = mock(EWrapper.class);
+        EWrapper owner2 = mock(EWrapper.class);
+
+        assertNull(table.get(100001));
+        table.put(100001, owner1);
+        table.put(5, owner2);
+        assertSame(owner1, table.get(100001));
+        assertSame(owner2, table.get(5));
+        assertEquals(2, table.size());
+
+        table.put(5, owner1);
+        assertSame(owner1, table.get(5));
+        assertEquals(2, table.size());
+
+        assertSame(owner1, table.remove(100001));
+        assertNull(table.get(100001));
+        assertNull(table.remove(100001));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testGrowsPastInitialCapacity() {
+        RequestRoutingTable table = new RequestRoutingTable();
+        EWrapper[] owners = new EWrapper[1000];
+        for (int i = 0; i < owners.length; i++) {
+            owners[i] = mock(EWrapper.class);
+            table.put(100000 + (i * 2), owners[i]);
+        }
+        assertEquals(owners.length, table.size());
+        for (int i = 0; i < owners.length; i++) {
+            assertSame(owners[i], table.get(100000 + (i * 2)));
+            assertNull(table.get(100001 + (i * 2)));
+        }
+        for (int i = 0; i < owners.length; i += 2) {
+            table.remove(100000 + (i * 2));
+        }
+        for (int i = 1; i < owners.length; i += 2) {
+            assertSame(owners[i], table.get(100000 + (i * 2)));
+        }
+    }
+
+    @Test
+    public void testRemoveOwner() {
+        RequestRoutingTable table = new RequestRoutingTable();
+        EWrapper owner1 = mock(EWrapper.class);
+        EWrapper owner2 = mock(EWrapper.class);
+        table.put(1, owner1);
+        table.put(2, owner2);
+        table.put(3, owner1);
+
+        table.removeOwner(owner1);
+        assertNull(table.get(1));
+        assertNull(table.get(3));
+        assertSame(owner2, table.get(2));
+        assertEquals(1, table.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPutNullOwner() {
+        new RequestRoutingTable().put(1, null);
+    }
+}
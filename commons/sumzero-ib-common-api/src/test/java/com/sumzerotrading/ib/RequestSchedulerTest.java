@@ -0,0 +1,255 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author RobTerpilowski
+ */
+public class RequestSchedulerTest {
+
+    protected long now = 0;
+    protected List<String> sent;
+    protected TestScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        sent = new ArrayList<>();
+        scheduler = new TestScheduler();
+    }
+
+    @Test
+    public void testSendsImmediatelyWithoutRules() {
+        CompletableFuture<Void> future = submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "a");
+
+        assertTrue(future.isDone());
+        assertEquals(Arrays.asList("a"), sent);
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void testFamilyLimit() {
+        scheduler.addRule(new PacingRule(PacingRule.Scope.FAMILY, IBMessageFamily.HISTORICAL_DATA, 2, 1000));
+
+        CompletableFuture<Void> first = submit(IBMessageFamily.HISTORICAL_DATA, RequestPriority.LOW, null, "h1");
+        now = 100;
+        submit(IBMessageFamily.HISTORICAL_DATA, RequestPriority.LOW, null, "h2");
+        CompletableFuture<Void> third = submit(IBMessageFamily.HISTORICAL_DATA, RequestPriority.LOW, null, "h3");
+        submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "m1");
+
+        assertTrue(first.isDone());
+        assertFalse(third.isDone());
+        assertEquals(Arrays.asList("h1", "h2", "m1"), sent);
+        assertEquals(900, scheduler.dispatchReady());
+
+        now = 1000;
+        assertEquals(Long.MAX_VALUE, scheduler.dispatchReady());
+        assertTrue(third.isDone());
+        assertEquals(Arrays.asList("h1", "h2", "m1", "h3"), sent);
+    }
+
+    @Test
+    public void testContractLimitOnlyHoldsBackThatContract() {
+        scheduler.addRule(new PacingRule(PacingRule.Scope.CONTRACT, IBMessageFamily.HISTORICAL_DATA, 1, 2000));
+
+        submit(IBMessageFamily.HISTORICAL_DATA, RequestPriority.LOW, "ABC", "abc1");
+        submit(IBMessageFamily.HISTORICAL_DATA, RequestPriority.LOW, "ABC", "abc2");
+        submit(IBMessageFamily.HISTORICAL_DATA, RequestPriority.LOW, "XYZ", "xyz1");
+        assertEquals(Arrays.asList("abc1"), sent);
+
+        scheduler.dispatchReady();
+        assertEquals(Arrays.asList("abc1", "xyz1"), sent);
+
+        now = 2000;
+        scheduler.dispatchReady();
+        assertEquals(Arrays.asList("abc1", "xyz1", "abc2"), sent);
+    }
+
+    @Test
+    public void testIdenticalRequests() {
+        scheduler.addRule(new PacingRule(PacingRule.Scope.IDENTICAL_REQUEST, IBMessageFamily.HISTORICAL_DATA, 1,
+                TimeUnit.SECONDS.toNanos(15)));
+
+        scheduler.submit(IBMessageFamily.HISTORICAL_DATA, RequestPriority.LOW, "ABC", "1 D", () -> sent.add("a"));
+        scheduler.submit(IBMessageFamily.HISTORICAL_DATA, RequestPriority.LOW, "ABC", "2 D", () -> sent.add("b"));
+        scheduler.submit(IBMessageFamily.HISTORICAL_DATA, RequestPriority.LOW, "ABC", "1 D", () -> sent.add("c"));
+        assertEquals(Arrays.asList("a", "b"), sent);
+
+        now = TimeUnit.SECONDS.toNanos(15);
+        scheduler.dispatchReady();
+        assertEquals(Arrays.asList("a", "b", "c"), sent);
+    }
+
+    @Test
+    public void testHighPriorityJumpsTheQueue() {
+        scheduler.setHighPriorityReserve(0);
+        scheduler.addRule(new PacingRule(PacingRule.Scope.ALL_REQUESTS, null, 1, 1000));
+
+        submit(IBMessageFamily.HISTORICAL_DATA, RequestPriority.LOW, null, "low1");
+        submit(IBMessageFamily.HISTORICAL_DATA, RequestPriority.LOW, null, "low2");
+        submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "normal");
+        submit(IBMessageFamily.ORDER, RequestPriority.HIGH, null, "order");
+
+        for (int i = 1; i <= 3; i++) {
+            now = i * 1000;
+            scheduler.dispatchReady();
+        }
+        assertEquals(Arrays.asList("low1", "order", "normal", "low2"), sent);
+    }
+
+    @Test
+    public void testHighPriorityReserve() {
+        scheduler.setHighPriorityReserve(1);
+        scheduler.addRule(new PacingRule(PacingRule.Scope.ALL_REQUESTS, null, 3, 1000));
+
+        submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "m1");
+        submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "m2");
+        submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "m3");
+        CompletableFuture<Void> order = submit(IBMessageFamily.ORDER, RequestPriority.HIGH, null, "order");
+
+        assertTrue(order.isDone());
+        assertEquals(Arrays.asList("m1", "m2", "order"), sent);
+    }
+
+    @Test
+    public void testQueuedRequestsDontWaitForUnrelatedLimits() {
+        scheduler.addRule(new PacingRule(PacingRule.Scope.ALL_REQUESTS, null, 10, 1000));
+        scheduler.addRule(new PacingRule(PacingRule.Scope.FAMILY, IBMessageFamily.MARKET_DATA, 1, 1000));
+
+        submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "subscribe1");
+        submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "subscribe2");
+        //queued behind subscribe2 rather than sent on the caller's thread, but the
+        //market data limit holding subscribe2 back doesn't apply to it
+        submit(IBMessageFamily.MARKET_DEPTH, RequestPriority.NORMAL, null, "depth");
+        assertEquals(Arrays.asList("subscribe1"), sent);
+
+        scheduler.dispatchReady();
+        assertEquals(Arrays.asList("subscribe1", "depth"), sent);
+        now = 1000;
+        scheduler.dispatchReady();
+        assertEquals(Arrays.asList("subscribe1", "depth", "subscribe2"), sent);
+    }
+
+    @Test
+    public void testCancelledRequestIsNotSent() {
+        scheduler.addRule(new PacingRule(PacingRule.Scope.ALL_REQUESTS, null, 1, 1000));
+        scheduler.setHighPriorityReserve(0);
+
+        submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "a");
+        CompletableFuture<Void> cancelled = submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "b");
+        submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "c");
+        cancelled.cancel(false);
+
+        now = 1000;
+        scheduler.dispatchReady();
+        assertEquals(Arrays.asList("a", "c"), sent);
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void testFailedRequest() {
+        CompletableFuture<Void> future = scheduler.submit(IBMessageFamily.ORDER, RequestPriority.HIGH, () -> {
+            throw new IllegalStateException("Not connected");
+        });
+
+        try {
+            future.join();
+            fail();
+        } catch (CompletionException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testShutdown() {
+        scheduler.addRule(new PacingRule(PacingRule.Scope.ALL_REQUESTS, null, 1, 1000));
+        scheduler.setHighPriorityReserve(0);
+        submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "a");
+        CompletableFuture<Void> queued = submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "b");
+
+        scheduler.shutdown();
+        assertTrue(queued.isCancelled());
+
+        CompletableFuture<Void> rejected = submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL, null, "c");
+        try {
+            rejected.join();
+            fail();
+        } catch (CompletionException ex) {
+            assertTrue(ex.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(Arrays.asList("a"), sent);
+    }
+
+    @Test
+    public void testDispatcherThread() throws Exception {
+        RequestScheduler threaded = new RequestScheduler();
+        threaded.setHighPriorityReserve(0);
+        threaded.addRule(new PacingRule(PacingRule.Scope.ALL_REQUESTS, null, 5, TimeUnit.MILLISECONDS.toNanos(100)));
+        List<String> threadedSent = new ArrayList<>();
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            String name = "r" + i;
+            futures.add(threaded.submit(IBMessageFamily.MARKET_DATA, RequestPriority.NORMAL,
+                    () -> threadedSent.add(name)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(12, threadedSent.size());
+        assertEquals("r0", threadedSent.get(0));
+        assertEquals("r11", threadedSent.get(11));
+        threaded.shutdown();
+    }
+
+    protected CompletableFuture<Void> submit(IBMessageFamily family, RequestPriority priority, String contractKey,
+            String name) {
+        return scheduler.submit(family, priority, contractKey, null, () -> sent.add(name));
+    }
+
+    /**
+     * Runs on the test's clock, with the test dispatching the queued requests.
+     */
+    protected class TestScheduler extends RequestScheduler {
+
+        public TestScheduler() {
+            super(() -> now);
+        }
+
+        @Override
+        protected void startDispatcher() {
+        }
+    }
+}
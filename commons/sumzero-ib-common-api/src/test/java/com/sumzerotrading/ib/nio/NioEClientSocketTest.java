@@ -0,0 +1,262 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.ib.nio;
+
+import com.ib.client.ContractDetails;
+import com.sumzerotrading.ib.BaseIBConnectionDelegate;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class NioEClientSocketTest {
+
+    protected IBEventLoop eventLoop;
+    protected ServerSocket serverSocket;
+
+    @Before
+    public void setUp() throws Exception {
+        eventLoop = new IBEventLoop("TestEventLoop");
+        eventLoop.start();
+        serverSocket = new ServerSocket(0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        eventLoop.stop();
+        serverSocket.close();
+    }
+
+    @Test
+    public void testMessagesSplitAcrossReads() throws Exception {
+        RecordingWrapper wrapper = new RecordingWrapper(5);
+        List<String> request = new CopyOnWriteArrayList<>();
+        NioEClientSocket clientSocket = new NioEClientSocket(wrapper, eventLoop);
+
+        Thread server = new Thread(() -> {
+            try (Socket socket = serverSocket.accept()) {
+                InputStream in = socket.getInputStream();
+                OutputStream out = socket.getOutputStream();
+                assertEquals("63", readField(in));
+                write(out, "60", "20160301 09:30:00 EST");
+                assertEquals("1", readField(in));
+
+                //a tick price message followed by part of a historical data message
+                write(out, "1", "3", "5", "1", "10.25", "100", "0", "17", "3", "9", "start", "end", "2",
+                        "20160301", "1.5", "2.5", "1.0", "2.0", "100", "1.75", "false", "10", "20160302", "2.0");
+                out.flush();
+                Thread.sleep(200);
+                write(out, "3.0", "1.5", "2.5", "200", "2.25", "false", "12");
+                out.flush();
+                request.add(readField(in));
+                request.add(readField(in));
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        });
+        server.start();
+
+        clientSocket.eConnect("127.0.0.1", serverSocket.getLocalPort(), 1);
+        assertTrue(clientSocket.isConnected());
+        assertTrue(wrapper.latch.await(5, TimeUnit.SECONDS));
+
+        assertEquals("tickPrice 5 1 10.25", wrapper.calls.get(0));
+        assertEquals("tickSize 5 0 100", wrapper.calls.get(1));
+        assertEquals("historicalData 9 20160301 1.5 2.0", wrapper.calls.get(2));
+        assertEquals("historicalData 9 20160302 2.0 2.5", wrapper.calls.get(3));
+        assertEquals("historicalData 9 finished-start-end -1.0 -1.0", wrapper.calls.get(4));
+
+        //requests are written from the event loop
+        clientSocket.reqCurrentTime();
+        server.join(5000);
+        assertFalse(server.isAlive());
+        assertEquals(Arrays.asList("49", "1"), request);
+
+        clientSocket.eDisconnect();
+        assertFalse(clientSocket.isConnected());
+    }
+
+    @Test
+    public void testScannerDataArrivingInPieces() throws Exception {
+        int rows = 50;
+        RecordingWrapper wrapper = new RecordingWrapper(rows + 2);
+        NioEClientSocket clientSocket = new NioEClientSocket(wrapper, eventLoop);
+
+        Thread server = new Thread(() -> {
+            try (Socket socket = serverSocket.accept()) {
+                InputStream in = socket.getInputStream();
+                OutputStream out = socket.getOutputStream();
+                readField(in);
+                write(out, "60", "20160301 09:30:00 EST");
+                readField(in);
+
+                ByteArrayOutputStream message = new ByteArrayOutputStream();
+                write(message, "20", "3", "7", String.valueOf(rows));
+                for (int i = 0; i < rows; i++) {
+                    write(message, String.valueOf(i), "1234", "SYM" + i, "STK", "", "0", "", "SMART", "USD", "SYM" + i,
+                            "NMS", "SYM" + i, "", "", "", "");
+                }
+                write(message, "1", "3", "5", "1", "10.25", "100", "0");
+                byte[] bytes = message.toByteArray();
+                //the first piece ends part way through the header
+                for (int offset = 0; offset < bytes.length; offset += 97) {
+                    out.write(bytes, offset, Math.min(97, bytes.length - offset));
+                    out.flush();
+                    Thread.sleep(2);
+                }
+                Thread.sleep(500);
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        });
+        server.start();
+
+        clientSocket.eConnect("127.0.0.1", serverSocket.getLocalPort(), 1);
+        assertTrue(wrapper.latch.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < rows; i++) {
+            assertEquals("scannerData 7 " + i + " SYM" + i, wrapper.calls.get(i));
+        }
+        assertEquals("scannerDataEnd 7", wrapper.calls.get(rows));
+        assertEquals("tickPrice 5 1 10.25", wrapper.calls.get(rows + 1));
+        clientSocket.eDisconnect();
+        server.join(5000);
+    }
+
+    @Test
+    public void testPendingRequestsBounded() throws Exception {
+        SocketChannel channel = SocketChannel.open();
+        NioConnection connection = new NioConnection(channel, eventLoop, NioConnection.DEFAULT_BUFFER_SIZE);
+        //registered without a selection key, so nothing is written and the requests stay pending.
+        connection.registered = true;
+        OutputStream out = connection.getOutputStream();
+        out.write(new byte[NioConnection.DEFAULT_BUFFER_SIZE - 1]);
+        out.write(1);
+        assertEquals(NioConnection.DEFAULT_BUFFER_SIZE, connection.pending.position());
+        assertEquals(NioConnection.DEFAULT_BUFFER_SIZE, connection.pending.capacity());
+
+        //the event loop can't wait for itself to write the requests
+        AtomicReference<IOException> loopFailure = new AtomicReference<>();
+        CountDownLatch loopDone = new CountDownLatch(1);
+        eventLoop.execute(() -> {
+            try {
+                out.write(2);
+            } catch (IOException ex) {
+                loopFailure.set(ex);
+            }
+            loopDone.countDown();
+        });
+        assertTrue(loopDone.await(5, TimeUnit.SECONDS));
+        assertNotNull(loopFailure.get());
+
+        //other callers wait for space, until the connection is closed
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                out.write(new byte[10]);
+            } catch (IOException ex) {
+                failure.set(ex);
+            }
+        });
+        writer.start();
+        writer.join(200);
+        assertTrue(writer.isAlive());
+
+        connection.close();
+        writer.join(5000);
+        assertFalse(writer.isAlive());
+        assertNotNull(failure.get());
+    }
+
+    protected static String readField(InputStream in) throws IOException {
+        ByteArrayOutputStream field = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) > 0) {
+            field.write(b);
+        }
+        return new String(field.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    protected static void write(OutputStream out, String... fields) throws IOException {
+        for (String field : fields) {
+            out.write(field.getBytes(StandardCharsets.US_ASCII));
+            out.write(0);
+        }
+    }
+
+    protected static class RecordingWrapper extends BaseIBConnectionDelegate {
+
+        protected final List<String> calls = new CopyOnWriteArrayList<>();
+        protected final CountDownLatch latch;
+
+        public RecordingWrapper(int expectedCalls) {
+            latch = new CountDownLatch(expectedCalls);
+        }
+
+        @Override
+        public void tickPrice(int tickerId, int field, double price, int canAutoExecute) {
+            record("tickPrice " + tickerId + " " + field + " " + price);
+        }
+
+        @Override
+        public void tickSize(int tickerId, int field, int size) {
+            record("tickSize " + tickerId + " " + field + " " + size);
+        }
+
+        @Override
+        public void historicalData(int reqId, String date, double open, double high, double low, double close, int volume, int count, double WAP, boolean hasGaps) {
+            record("historicalData " + reqId + " " + date + " " + open + " " + close);
+        }
+
+        @Override
+        public void scannerData(int reqId, int rank, ContractDetails contractDetails, String distance, String benchmark, String projection, String legsStr) {
+            record("scannerData " + reqId + " " + rank + " " + contractDetails.m_summary.m_symbol);
+        }
+
+        @Override
+        public void scannerDataEnd(int reqId) {
+            record("scannerDataEnd " + reqId);
+        }
+
+        protected void record(String call) {
+            calls.add(call);
+            latch.countDown();
+        }
+    }
+
+}
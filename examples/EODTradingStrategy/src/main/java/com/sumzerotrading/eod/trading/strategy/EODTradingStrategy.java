@@ -18,6 +18,7 @@ import com.sumzerotrading.interactive.brokers.client.InteractiveBrokersClientInt
 import com.sumzerotrading.marketdata.ILevel1Quote;
 import com.sumzerotrading.marketdata.Level1QuoteListener;
 import com.sumzerotrading.marketdata.QuoteType;
+import com.sumzerotrading.marketdata.dispatch.ListenerStats;
 import java.io.IOException;
 import java.time.DayOfWeek;
 import java.time.LocalTime;
@@ -135,6 +136,16 @@ public class EODTradingStrategy implements Level1QuoteListener, OrderEventListen
         logger.info("Received order event: " + event);
     }
 
+    /**
+     * How far behind the market the quotes delivered to this strategy are running.
+     * 
+     * @return The lag of the last quote delivered, in nanoseconds, or 0 if it isn't known.
+     */
+    public long getQuoteLagNanos() {
+        ListenerStats stats = ibClient.getLevel1ListenerStats(this);
+        return stats == null ? 0 : stats.getLagNanos();
+    }
+
     @Override
     public void quoteRecieved(ILevel1Quote quote) {
         if (quote.containsType(QuoteType.LAST)) {
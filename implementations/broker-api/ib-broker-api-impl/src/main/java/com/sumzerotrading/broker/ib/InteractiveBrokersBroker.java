@@ -40,11 +40,18 @@ import com.sumzerotrading.data.InstrumentType;
 import com.sumzerotrading.data.SumZeroException;
 import com.sumzerotrading.data.Ticker;
 import com.sumzerotrading.ib.BaseIBConnectionDelegate;
-import com.sumzerotrading.ib.ContractBuilderFactory;
+import com.sumzerotrading.ib.ContractCache;
 import com.sumzerotrading.ib.ContractWrapper;
 import com.sumzerotrading.ib.IBConnectionInterface;
+import com.sumzerotrading.ib.IBMessageFamily;
 import com.sumzerotrading.ib.IBSocket;
+import com.sumzerotrading.ib.IBRequestException;
 import com.sumzerotrading.ib.IbUtils;
+import com.sumzerotrading.ib.PendingRequests;
+import com.sumzerotrading.ib.RequestPriority;
+import com.sumzerotrading.ib.RequestScheduler;
+import com.sumzerotrading.time.IClock;
+import com.sumzerotrading.time.MonotonicClock;
 import com.sumzerotrading.time.TimeUpdatedListener;
 import com.sumzerotrading.util.QuoteUtil;
 import java.io.File;
@@ -56,15 +63,19 @@ import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.collections4.map.PassiveExpiringMap;
 import org.apache.log4j.Logger;
 
@@ -77,18 +88,26 @@ import org.apache.log4j.Logger;
  */
 public class InteractiveBrokersBroker extends BaseIBConnectionDelegate implements IBroker {
 
-    protected static int contractRequestId = 1;
+    //contract details ids are kept clear of order, market data and historical data ids,
+    //since IB reports errors for all of them the same way.
+    public static final int CONTRACT_DETAILS_REQUEST_ID_BASE = 1 << 30;
+    public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 2000;
+    protected static final AtomicInteger contractRequestId = new AtomicInteger(CONTRACT_DETAILS_REQUEST_ID_BASE);
     protected static int executionRequestId = 1;
     protected static Logger logger = Logger.getLogger(InteractiveBrokersBroker.class);
     protected EClientSocket ibConnection;
     protected IBSocket ibSocket;
     protected IBConnectionInterface callbackInterface;
+    protected RequestScheduler requestScheduler;
     protected Set<TradeOrder> currencyOrderList = new HashSet<>();
     protected BlockingQueue<Integer> nextIdQueue = new LinkedBlockingQueue<>();
-    protected BlockingQueue<ZonedDateTime> brokerTimeQueue = new LinkedBlockingQueue<>();
+    protected final PendingRequests<List<ContractDetails>> contractDetailsRequests = new PendingRequests<>();
+    protected final Map<Integer, List<ContractDetails>> contractDetailsResults = new ConcurrentHashMap<>();
+    //IB's current time responses don't carry a request id, so each one answers every pending request
+    protected final PendingRequests<ZonedDateTime> currentTimeRequests = new PendingRequests<>();
+    protected final AtomicInteger currentTimeRequestId = new AtomicInteger();
     protected BlockingQueue<BrokerError> brokerErrorQueue = new LinkedBlockingQueue<>();
     protected BlockingQueue<OrderEvent> orderEventQueue = new LinkedBlockingQueue<>();
-    protected BlockingQueue<ContractDetails> contractDetailsQueue = new LinkedBlockingDeque<>();
     protected int nextOrderId = -1;
     protected SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyyMMdd HH:mm:ss");
     protected DateTimeFormatter zonedDateFormatter = DateTimeFormatter.ofPattern("yyyyMMdd HH:mm:ss");
@@ -106,6 +125,8 @@ public class InteractiveBrokersBroker extends BaseIBConnectionDelegate implement
     protected Map<String, OrderEvent> orderEventMap;
     protected CountDownLatch getPositionsCountdownLatch = null;
     protected List<Position> positionsList = new ArrayList<>();
+    protected IClock clock = MonotonicClock.getInstance();
+    protected ContractCache contractCache = ContractCache.getInstance();
 
     /**
      * Used by Unit tests
@@ -122,12 +143,14 @@ public class InteractiveBrokersBroker extends BaseIBConnectionDelegate implement
         } catch (Exception ex) {
             throw new SumZeroException(ex);
         }
+        loadContractCache();
 
         orderEventMap = new PassiveExpiringMap<>(30, TimeUnit.SECONDS);
         callbackInterface = ibSocket.getConnection();
         callbackInterface.addIbConnectionDelegate(this);
 
         ibConnection = ibSocket.getClientSocket();
+        requestScheduler = ibSocket.getRequestScheduler();
         orderProcessor = new IBOrderEventProcessor(orderEventQueue, this);
         currencyOrderTimer = new Timer(true);
         currencyOrderTimer.schedule(getCurrencyOrderMonitor(), 0, 1000 * 60);
@@ -166,6 +189,7 @@ public class InteractiveBrokersBroker extends BaseIBConnectionDelegate implement
             orderProcessor.stopProcessor();
             started = false;
         }
+        saveContractCache();
     }
 
     @Override
@@ -188,17 +212,12 @@ public class InteractiveBrokersBroker extends BaseIBConnectionDelegate implement
         
     }
 
-    public void timeReceived(ZonedDateTime time) {
-        try {
-            brokerTimeQueue.put(time);
-        } catch (Exception ex) {
-            ex.printStackTrace();
-        }
-    }
-
     @Override
     public void orderStatus(int orderId, String status, int filled, int remaining, double avgFillPrice, int permId, int parentId, double lastFillPrice, int clientId, String whyHeld) {
         logger.debug("OrderStatus(): orderId: " + orderId + " Status: " + status + " filled: " + filled + " remaining: " + remaining + " avgFillPrice: " + avgFillPrice + " permId: " + permId + " parentId: " + parentId + " lastFillePrice: " + lastFillPrice + " clientId: " + clientId + " whyHeld: " + whyHeld);
+        if (IbUtils.isFinalOrderStatus(status)) {
+            callbackInterface.removeRequestRoute(IBMessageFamily.ORDER, orderId);
+        }
         TradeOrder order = orderMap.get(Integer.toString(orderId));
 
         if (order == null) {
@@ -267,9 +286,19 @@ public class InteractiveBrokersBroker extends BaseIBConnectionDelegate implement
 
     public void error(int id, int errorCode, String errorMsg) {
         logger.error("BrokerError: ID:" + id + " errorCode:" + errorCode + " errorMessage: " + errorMsg);
+        contractDetailsRequests.fail(id, new IBRequestException(id, errorCode, errorMsg));
         putOnErrorQueue(new BrokerError(id, errorCode, errorMsg));
     }
 
+    @Override
+    public void connectionClosed() {
+        SumZeroException closed = new SumZeroException("The connection to IB was closed");
+        contractDetailsRequests.failAll(closed);
+        synchronized (currentTimeRequests) {
+            currentTimeRequests.failAll(closed);
+        }
+    }
+
     protected void putOnErrorQueue(BrokerError error) {
         try {
              brokerErrorQueue.put(error);
@@ -280,22 +309,59 @@ public class InteractiveBrokersBroker extends BaseIBConnectionDelegate implement
 
     public void cancelOrder(String idString) {
         int id = Integer.parseInt(idString);
-        ibConnection.cancelOrder(id);
+        sendOrderRequest(() -> ibConnection.cancelOrder(id));
     }
 
     public void cancelOrder(TradeOrder order) {
         int id = Integer.parseInt(order.getOrderId());
-        ibConnection.cancelOrder(id);
+        sendOrderRequest(() -> ibConnection.cancelOrder(id));
+    }
+
+    /**
+     * Order requests go ahead of any queued market data or historical data requests,
+     * and are sent on the caller's thread unless IB's message rate has been reached.
+     */
+    protected void sendOrderRequest(Runnable request) {
+        requestScheduler.submit(IBMessageFamily.ORDER, RequestPriority.HIGH, request).whenComplete((sent, ex) -> {
+            if (ex != null) {
+                logger.error("Unable to send order request", ex);
+            }
+        });
     }
 
     public ZonedDateTime getCurrentTime() {
-        ibConnection.reqCurrentTime();
         try {
-            return brokerTimeQueue.poll(2, TimeUnit.SECONDS);
-        } catch (InterruptedException ex) {
-            logger.error(directory);
-            System.out.println("Time Out waiting to get current time from broker, returning local current time");
-            return ZonedDateTime.now();
+            return requestCurrentTime(DEFAULT_REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).join();
+        } catch (CompletionException ex) {
+            logger.error("Unable to get the current time from the broker, returning local current time", ex.getCause());
+            return getZoneDateTime();
+        }
+    }
+
+    /**
+     * Requests IB's current time.  Requests made while one is outstanding share its
+     * response rather than sending another.  The future is completed on the
+     * connection's reader thread, so any real work should be done with the async
+     * CompletableFuture methods.
+     */
+    public CompletableFuture<ZonedDateTime> requestCurrentTime(long timeout, TimeUnit unit) {
+        CompletableFuture<ZonedDateTime> future;
+        boolean send;
+        synchronized (currentTimeRequests) {
+            send = currentTimeRequests.size() == 0;
+            future = currentTimeRequests.register(currentTimeRequestId.incrementAndGet(), timeout, unit, null);
+        }
+        if (send) {
+            ibConnection.reqCurrentTime();
+        }
+        return future;
+    }
+
+    @Override
+    public void currentTime(long time) {
+        ZonedDateTime brokerTime = ZonedDateTime.ofInstant(Instant.ofEpochSecond(time), clock.getZone());
+        synchronized (currentTimeRequests) {
+            currentTimeRequests.completeAll(brokerTime);
         }
     }
 
@@ -331,7 +397,8 @@ public class InteractiveBrokersBroker extends BaseIBConnectionDelegate implement
         logger.debug("Order converted to " + orders.size() + " IB Order(s)");
         orders.get(orders.size() - 1).getOrder().m_transmit = true;
         for (IbOrderAndContract ibOrder : orders) {
-            ibConnection.placeOrder(ibOrder.getOrder().m_orderId, ibOrder.getContract(), ibOrder.getOrder());
+            callbackInterface.addRequestRoute(IBMessageFamily.ORDER, ibOrder.getOrder().m_orderId, this);
+            sendOrderRequest(() -> ibConnection.placeOrder(ibOrder.getOrder().m_orderId, ibOrder.getContract(), ibOrder.getOrder()));
         }
         logger.debug("Orders placed at IB");
     }
@@ -354,33 +421,131 @@ public class InteractiveBrokersBroker extends BaseIBConnectionDelegate implement
 
     @Override
     public ComboTicker buildComboTicker(Ticker ticker1, int ratio1, Ticker ticker2, int ratio2) {
-        ContractDetails details1 = getContractDetails(ticker1);
-        ContractDetails details2 = getContractDetails(ticker2);
+        //both legs are requested before waiting for either
+        CompletableFuture<ContractDetails> details1 = resolveContractDetails(ticker1);
+        CompletableFuture<ContractDetails> details2 = resolveContractDetails(ticker2);
 
-        ComboTicker combo = new ComboTicker(ticker1, ticker2);
-        combo.setContractId1(details1.m_summary.m_conId);
-        combo.setFirstTickerRatio(ratio1);
-        combo.setContractId2(details2.m_summary.m_conId);
-        combo.setSecondTickerRatio(ratio2);
+        return join(details1.thenCombine(details2, (leg1, leg2) -> {
+            ComboTicker combo = new ComboTicker(ticker1, ticker2);
+            combo.setContractId1(leg1.m_summary.m_conId);
+            combo.setFirstTickerRatio(ratio1);
+            combo.setContractId2(leg2.m_summary.m_conId);
+            combo.setSecondTickerRatio(ratio2);
+            return combo;
+        }));
+    }
 
-        return combo;
+    /**
+     * @return The first contract matching the ticker.
+     * @throws SumZeroException If IB doesn't respond in time or reports an error.
+     */
+    public ContractDetails getContractDetails(Ticker ticker) {
+        return join(resolveContractDetails(ticker));
     }
 
-    public void contractDetailsReceived(ContractDetails details) {
-        try {
-            contractDetailsQueue.put(details);
-        } catch (Exception ex) {
-            ex.printStackTrace();
+    /**
+     * @return The first contract matching the ticker, from the contract cache if
+     * it has already been resolved.
+     */
+    public CompletableFuture<ContractDetails> resolveContractDetails(Ticker ticker) {
+        ContractDetails cached = contractCache.getContractDetails(ticker);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
         }
+        return requestContractDetails(ticker).thenApply(details -> {
+            ContractDetails contractDetails = first(ticker, details);
+            contractCache.putContractDetails(ticker, contractDetails);
+            return contractDetails;
+        });
     }
 
-    public ContractDetails getContractDetails(Ticker ticker) {
-        final Contract contract = ContractBuilderFactory.getContractBuilder(ticker).buildContract(ticker);
-        ibConnection.reqContractDetails(contractRequestId++, contract);
+    /**
+     * Resolves the contracts of the tickers which aren't already cached, so trading
+     * them doesn't wait on IB, and saves the cache once they have all been resolved.
+     *
+     * @return Completes with the number of tickers resolved.
+     */
+    public CompletableFuture<Integer> warmContractCache(Collection<? extends Ticker> tickers) {
+        return contractCache.warm(tickers, this::requestContractDetails).whenComplete((resolved, ex) -> saveContractCache());
+    }
+
+    public CompletableFuture<List<ContractDetails>> requestContractDetails(Ticker ticker) {
+        return requestContractDetails(ticker, DEFAULT_REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Requests the details of every contract matching the ticker.  The future fails
+     * with an IBRequestException if IB reports an error for the request, or with a
+     * TimeoutException if the details aren't all received within the timeout of the
+     * request being sent.
+     * Cancelling it discards the response.  It is completed on the connection's
+     * reader thread, so any real work should be done with the async
+     * CompletableFuture methods.
+     */
+    public CompletableFuture<List<ContractDetails>> requestContractDetails(Ticker ticker, long timeout, TimeUnit unit) {
+        Contract contract = contractCache.getContract(ticker);
+        int requestId = contractRequestId.incrementAndGet();
+        contractDetailsResults.put(requestId, new ArrayList<>());
+        callbackInterface.addRequestRoute(IBMessageFamily.CONTRACT_DETAILS, requestId, this);
+        CompletableFuture<List<ContractDetails>> future = contractDetailsRequests.register(requestId, null);
+
+        CompletableFuture<Void> sent = requestScheduler.submit(IBMessageFamily.CONTRACT_DETAILS, RequestPriority.NORMAL,
+                () -> ibConnection.reqContractDetails(requestId, contract));
+        sent.whenComplete((result, ex) -> {
+            if (ex != null) {
+                contractDetailsRequests.fail(requestId, ex);
+            } else {
+                //the time spent queued behind other requests doesn't count against the timeout
+                contractDetailsRequests.startTimeout(requestId, timeout, unit);
+            }
+        });
+        future.whenComplete((result, ex) -> {
+            //withdraws the request if it is still waiting to be sent
+            sent.cancel(false);
+            contractDetailsResults.remove(requestId);
+            callbackInterface.removeRequestRoute(IBMessageFamily.CONTRACT_DETAILS, requestId);
+        });
+        return future;
+    }
+
+    @Override
+    public void contractDetails(int reqId, ContractDetails contractDetails) {
+        //callbacks all arrive on the reader thread, which also completes the request
+        List<ContractDetails> results = contractDetailsResults.get(reqId);
+        if (results != null) {
+            results.add(contractDetails);
+        }
+    }
+
+    @Override
+    public void bondContractDetails(int reqId, ContractDetails contractDetails) {
+        contractDetails(reqId, contractDetails);
+    }
+
+    @Override
+    public void contractDetailsEnd(int reqId) {
+        List<ContractDetails> results = contractDetailsResults.get(reqId);
+        if (results != null) {
+            contractDetailsRequests.complete(reqId, results);
+        }
+    }
+
+    protected static ContractDetails first(Ticker ticker, List<ContractDetails> details) {
+        if (details.isEmpty()) {
+            throw new SumZeroException("No contract found for " + ticker);
+        }
+        return details.get(0);
+    }
+
+    protected static <T> T join(CompletableFuture<T> future) {
         try {
-            return contractDetailsQueue.poll(2, TimeUnit.SECONDS);
-        } catch (InterruptedException ex) {
-            throw new IllegalStateException(ex);
+            return future.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof SumZeroException) {
+                throw (SumZeroException) cause;
+            }
+            throw new SumZeroException(cause);
         }
     }
 
@@ -454,6 +619,23 @@ public class InteractiveBrokersBroker extends BaseIBConnectionDelegate implement
         }
     }
 
+    protected void saveContractCache() {
+        try {
+            contractCache.save(new File(getDirName() + "contracts.ser"));
+        } catch (IOException ex) {
+            logger.error("Unable to save the contract cache", ex);
+        }
+    }
+
+    protected void loadContractCache() {
+        try {
+            int loaded = contractCache.load(new File(getDirName() + "contracts.ser"));
+            logger.info("Loaded " + loaded + " contracts from the contract cache");
+        } catch (IOException ex) {
+            logger.error("Unable to load the contract cache", ex);
+        }
+    }
+
     protected void createDir() {
         try {
             Files.createDirectories(Paths.get(getDirName()));
@@ -487,7 +669,18 @@ public class InteractiveBrokersBroker extends BaseIBConnectionDelegate implement
     }
 
     protected ZonedDateTime getZoneDateTime() {
-        return ZonedDateTime.now();
+        return clock.now();
+    }
+
+    public IClock getClock() {
+        return clock;
+    }
+
+    /**
+     * @param clock The clock used to timestamp order events, for example a SimulatedClock when replaying data.
+     */
+    public void setClock(IClock clock) {
+        this.clock = clock;
     }
 
     protected boolean isIdealProClosed() {
@@ -515,7 +708,7 @@ public class InteractiveBrokersBroker extends BaseIBConnectionDelegate implement
         List<IbOrderAndContract> orderList = new ArrayList<>();
         orderMap.put(order.getOrderId(), order);
 
-        Contract contract = ContractBuilderFactory.getContractBuilder(order.getTicker()).buildContract(order.getTicker());
+        Contract contract = contractCache.getContract(order.getTicker());
 
         Order ibOrder = new Order();
         if (order.getType() == TradeOrder.Type.MARKET_ON_OPEN) {
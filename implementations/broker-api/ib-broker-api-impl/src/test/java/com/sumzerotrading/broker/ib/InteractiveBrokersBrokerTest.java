@@ -5,6 +5,8 @@
  */
 package com.sumzerotrading.broker.ib;
 
+import com.ib.client.Contract;
+import com.ib.client.ContractDetails;
 import com.ib.client.EClientSocket;
 import com.sumzerotrading.broker.order.OrderEvent;
 import com.sumzerotrading.broker.order.TradeDirection;
@@ -12,27 +14,47 @@ import com.sumzerotrading.broker.order.TradeOrder;
 import com.sumzerotrading.data.StockTicker;
 import com.sumzerotrading.data.SumZeroException;
 import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
+import com.sumzerotrading.ib.ContractCache;
 import com.sumzerotrading.ib.IBConnectionInterface;
+import com.sumzerotrading.ib.IBMessageFamily;
+import com.sumzerotrading.ib.IBRequestException;
 import com.sumzerotrading.ib.IBSocket;
+import com.sumzerotrading.ib.RequestPriority;
+import com.sumzerotrading.ib.RequestScheduler;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.apache.log4j.Logger;
 import static org.jmock.Expectations.any;
 import org.junit.After;
 import org.junit.AfterClass;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -69,10 +91,12 @@ public class InteractiveBrokersBrokerTest {
         
         when(mockIbSocket.getClientSocket()).thenReturn(mockClientSocketInterface);
         when(mockIbSocket.getConnection()).thenReturn(mockConnectionInterface);
+        when(mockIbSocket.getRequestScheduler()).thenReturn(new RequestScheduler());
         
         InteractiveBrokersBroker.logger = mockLogger;
         broker  = new InteractiveBrokersBroker(mockIbSocket);
         broker.orderEventQueue = mockOrderEventQueue;
+        broker.contractCache = new ContractCache(new TickerRegistry());
          
        
     }
@@ -122,6 +146,18 @@ public class InteractiveBrokersBrokerTest {
         
         verify(mockLogger).error("Open Order with ID: 50 not found");
         verify(mockOrderEventQueue,never()).put(any(OrderEvent.class));
+        verify(mockConnectionInterface, never()).removeRequestRoute(IBMessageFamily.ORDER, 50);
+    }
+
+    @Test
+    public void testOrderStatus_FinalStatusRemovesRoute() throws Exception {
+        broker.orderStatus(50, "Inactive", 0, 0, 0, 0, 0, 0, 0, "");
+        broker.orderStatus(51, "ApiCancelled", 0, 0, 0, 0, 0, 0, 0, "");
+        broker.orderStatus(52, "Submitted", 0, 0, 0, 0, 0, 0, 0, "");
+
+        verify(mockConnectionInterface).removeRequestRoute(IBMessageFamily.ORDER, 50);
+        verify(mockConnectionInterface).removeRequestRoute(IBMessageFamily.ORDER, 51);
+        verify(mockConnectionInterface, never()).removeRequestRoute(IBMessageFamily.ORDER, 52);
     }
     
     @Test
@@ -168,4 +204,104 @@ public class InteractiveBrokersBrokerTest {
         
     }
 
+    @Test
+    public void testRequestContractDetails() throws Exception {
+        CompletableFuture<List<ContractDetails>> future = broker.requestContractDetails(new StockTicker("ABC"));
+        int requestId = InteractiveBrokersBroker.contractRequestId.get();
+        verify(mockConnectionInterface).addRequestRoute(IBMessageFamily.CONTRACT_DETAILS, requestId, broker);
+        verify(mockClientSocketInterface).reqContractDetails(eq(requestId), isA(Contract.class));
+
+        ContractDetails details1 = new ContractDetails();
+        ContractDetails details2 = new ContractDetails();
+        broker.contractDetails(requestId, details1);
+        broker.contractDetails(requestId + 1, new ContractDetails());
+        broker.contractDetails(requestId, details2);
+        broker.contractDetailsEnd(requestId);
+
+        assertEquals(Arrays.asList(details1, details2), future.get());
+        verify(mockConnectionInterface).removeRequestRoute(IBMessageFamily.CONTRACT_DETAILS, requestId);
+    }
+
+    @Test
+    public void testRequestContractDetails_Error() throws Exception {
+        CompletableFuture<List<ContractDetails>> future = broker.requestContractDetails(new StockTicker("ABC"));
+        int requestId = InteractiveBrokersBroker.contractRequestId.get();
+
+        broker.error(requestId, 200, "No security definition has been found for the request");
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException ex) {
+            IBRequestException cause = (IBRequestException) ex.getCause();
+            assertEquals(requestId, cause.getRequestId());
+            assertEquals(200, cause.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testRequestContractDetails_Timeout() throws Exception {
+        CompletableFuture<List<ContractDetails>> future = broker.requestContractDetails(new StockTicker("ABC"), 10, TimeUnit.MILLISECONDS);
+        int requestId = InteractiveBrokersBroker.contractRequestId.get();
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+        verify(mockConnectionInterface).removeRequestRoute(IBMessageFamily.CONTRACT_DETAILS, requestId);
+        assertEquals(0, broker.contractDetailsRequests.size());
+    }
+
+    @Test
+    public void testRequestContractDetails_TimeoutStartsWhenSent() throws Exception {
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        broker.requestScheduler = mock(RequestScheduler.class);
+        when(broker.requestScheduler.submit(eq(IBMessageFamily.CONTRACT_DETAILS), eq(RequestPriority.NORMAL), isA(Runnable.class)))
+                .thenReturn(sent);
+
+        CompletableFuture<List<ContractDetails>> future = broker.requestContractDetails(new StockTicker("ABC"), 10, TimeUnit.MILLISECONDS);
+        //still queued in the scheduler
+        Thread.sleep(50);
+        assertFalse(future.isDone());
+
+        sent.complete(null);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void testGetContractDetails_Cached() throws Exception {
+        StockTicker ticker = new StockTicker("ABC");
+        CompletableFuture<ContractDetails> future = broker.resolveContractDetails(ticker);
+        int requestId = InteractiveBrokersBroker.contractRequestId.get();
+
+        ContractDetails details = new ContractDetails();
+        broker.contractDetails(requestId, details);
+        broker.contractDetailsEnd(requestId);
+        assertSame(details, future.get());
+
+        assertSame(details, broker.getContractDetails(ticker));
+        verify(mockClientSocketInterface, times(1)).reqContractDetails(anyInt(), isA(Contract.class));
+    }
+
+    @Test
+    public void testRequestCurrentTime_SharesOutstandingRequest() throws Exception {
+        CompletableFuture<ZonedDateTime> first = broker.requestCurrentTime(5, TimeUnit.SECONDS);
+        CompletableFuture<ZonedDateTime> second = broker.requestCurrentTime(5, TimeUnit.SECONDS);
+        verify(mockClientSocketInterface, times(1)).reqCurrentTime();
+
+        broker.currentTime(1444066230);
+
+        Instant expected = Instant.ofEpochSecond(1444066230);
+        assertEquals(expected, first.get().toInstant());
+        assertEquals(expected, second.get().toInstant());
+
+        broker.requestCurrentTime(5, TimeUnit.SECONDS);
+        verify(mockClientSocketInterface, times(2)).reqCurrentTime();
+    }
+
 }
@@ -27,14 +27,19 @@ import com.sumzerotrading.data.BarData;
 import com.sumzerotrading.data.Ticker;
 import com.sumzerotrading.historicaldata.IHistoricalDataProvider;
 import com.sumzerotrading.ib.BaseIBConnectionDelegate;
-import com.sumzerotrading.ib.ContractBuilderFactory;
+import com.sumzerotrading.ib.ContractCache;
 import com.sumzerotrading.ib.IBConnectionInterface;
+import com.sumzerotrading.ib.IBMessageFamily;
 import com.sumzerotrading.ib.IBSocket;
 import com.sumzerotrading.ib.IbUtils;
+import com.sumzerotrading.ib.RequestPriority;
+import com.sumzerotrading.ib.RequestScheduler;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.SynchronousQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,9 +54,11 @@ public class IBHistoricalDataProvider extends BaseIBConnectionDelegate  implemen
     protected EClientSocket ibConnection;
     protected IBConnectionInterface callbackInterface;
     protected IBSocket ibSocket;
+    protected RequestScheduler requestScheduler;
     protected BlockingQueue<List<BarData>> dataQueue = new SynchronousQueue<List<BarData>>();
     protected static int requestId = 1;
     protected Map<Integer, IBHistoricalDataEventProcessor> historicalProcessorMap = new HashMap<Integer, IBHistoricalDataEventProcessor>();
+    protected ContractCache contractCache = ContractCache.getInstance();
     // protected Logger logger = Logger.getLogger(IBHistoricalDataProvider.class);
     protected SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyyMMdd HH:mm:ss");
 
@@ -59,6 +66,7 @@ public class IBHistoricalDataProvider extends BaseIBConnectionDelegate  implemen
         this.ibSocket = ibSocket;
         this.ibConnection = ibSocket.getClientSocket();
         this.callbackInterface = ibSocket.getConnection();
+        this.requestScheduler = ibSocket.getRequestScheduler();
         callbackInterface.addIbConnectionDelegate(this);
     }
 
@@ -87,15 +95,12 @@ public class IBHistoricalDataProvider extends BaseIBConnectionDelegate  implemen
     @Override
     public List<BarData> requestHistoricalData(Ticker ticker, Date endDateTime, int duration, BarData.LengthUnit durationLengthUnit, int barSize, BarData.LengthUnit barSizeUnit, ShowProperty whatToShow, boolean useRTH) {
         int id = requestId++;
-        Contract contract = ContractBuilderFactory.getContractBuilder(ticker).buildContract(ticker);
+        Contract contract = contractCache.getContract(ticker);
         String durationString = HistoricalDataUtils.buildDurationString(duration, durationLengthUnit);
         String barSizeString = HistoricalDataUtils.buildBarDataSizeString(barSize, barSizeUnit);
         String whatToShowString = HistoricalDataUtils.showPropertyToString(whatToShow);
         IBHistoricalDataEventProcessor processor = new IBHistoricalDataEventProcessor(requestId, barSizeUnit);
-        int rth = 1;
-        if( useRTH == false ) {
-            rth = 0;
-        }
+        int rth = useRTH ? 1 : 0;
         historicalProcessorMap.put(id, processor);
         if (endDateTime == null) {
             endDateTime = new Date();
@@ -103,8 +108,21 @@ public class IBHistoricalDataProvider extends BaseIBConnectionDelegate  implemen
         String endDate = dateFormatter.format(endDateTime);
 
         //ibConnection.reqHistoricalData(id, contract, new Date(), null, null, null, barSize, duration);
-        ibConnection.reqHistoricalData(id, contract, endDate, durationString, barSizeString, whatToShowString, rth, 1, IbUtils.getDefaultTagVector());
+        //IB's per contract pacing limit counts requests for the same contract, exchange and data type
+        String contractKey = RequestScheduler.contractKey(contract) + ":" + whatToShowString;
+        String requestKey = contractKey + ":" + endDate + ":" + durationString + ":" + barSizeString + ":" + rth;
+        callbackInterface.addRequestRoute(IBMessageFamily.HISTORICAL_DATA, id, this);
+        try {
+            requestScheduler.submit(IBMessageFamily.HISTORICAL_DATA, RequestPriority.LOW, contractKey, requestKey,
+                    () -> ibConnection.reqHistoricalData(id, contract, endDate, durationString, barSizeString,
+                            whatToShowString, rth, 1, IbUtils.getDefaultTagVector())).join();
+        } catch (CompletionException | CancellationException ex) {
+            callbackInterface.removeRequestRoute(IBMessageFamily.HISTORICAL_DATA, id);
+            historicalProcessorMap.remove(id);
+            throw new IllegalStateException("Historical data request " + id + " was not sent", ex);
+        }
         List<BarData> bars = processor.getHistoricalData();
+        callbackInterface.removeRequestRoute(IBMessageFamily.HISTORICAL_DATA, id);
         if(id == 1) {
             historicalProcessorMap.remove(id);
         }
@@ -48,6 +48,8 @@ public class BitmexLevel1QuoteEngine extends QuoteEngine implements IQuoteListen
 
     @Override
     public void stopEngine() {
+        quoteDispatcher.stop();
+        isStarted = false;
     }
 
     @Override
@@ -0,0 +1,229 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.ib;
+
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
+import com.sumzerotrading.marketdata.IQuoteEngine;
+import com.sumzerotrading.marketdata.PrimitiveLevel1Quote;
+import com.sumzerotrading.marketdata.QuoteType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Level1 quote processor which merges the individual tickPrice/tickSize callbacks
+ * from IB into a per-ticker top-of-book, and publishes one consolidated quote per
+ * ticker instead of one quote per field.
+ *
+ * With a publish interval of 0 the conflated quotes are published each time the
+ * processor has drained everything waiting on its queue, so quotes are only held
+ * back while there is a backlog. With a positive interval they are published at
+ * most once per interval.
+ *
+ * Each published quote contains the latest value of every field which changed
+ * since the previous quote for that ticker, so a listener that falls behind sees
+ * the current state rather than every intermediate tick. The full book for a
+ * ticker is available from getTopOfBook().
+ *
+ * @author Rob Terpilowski
+ */
+public class ConflatingLevel1QuoteProcessor extends IBLevel1QuoteProcessor {
+
+    protected static final QuoteType[] QUOTE_TYPES = QuoteType.values();
+    protected static final int MAX_DRAIN_SIZE = 1024;
+
+    protected final long publishIntervalNanos;
+    //indexed by the id the TickerRegistry assigned to each ticker, only accessed from the processor's thread.
+    protected TopOfBook[] topOfBooks = new TopOfBook[64];
+    protected final List<TopOfBook> dirtyBooks = new ArrayList<>();
+    protected long nextPublishTime;
+
+    /**
+     * Publishes conflated quotes each time the queue has been drained.
+     */
+    public ConflatingLevel1QuoteProcessor(BlockingQueue<Level1QuoteData> queue, IQuoteEngine quoteEngine) {
+        this(queue, quoteEngine, 0);
+    }
+
+    /**
+     * @param publishIntervalMillis How often to publish conflated quotes, or 0 to
+     * publish each time the queue has been drained.
+     */
+    public ConflatingLevel1QuoteProcessor(BlockingQueue<Level1QuoteData> queue, IQuoteEngine quoteEngine, long publishIntervalMillis) {
+        super(queue, quoteEngine);
+        this.publishIntervalNanos = toIntervalNanos(publishIntervalMillis);
+    }
+
+    /**
+     * Publishes conflated quotes each time the ring buffer has been drained.
+     */
+    public ConflatingLevel1QuoteProcessor(QuoteRingBuffer<Level1QuoteData> ringBuffer, IQuoteEngine quoteEngine) {
+        this(ringBuffer, quoteEngine, 0);
+    }
+
+    /**
+     * @param publishIntervalMillis How often to publish conflated quotes, or 0 to
+     * publish each time the ring buffer has been drained.
+     */
+    public ConflatingLevel1QuoteProcessor(QuoteRingBuffer<Level1QuoteData> ringBuffer, IQuoteEngine quoteEngine, long publishIntervalMillis) {
+        super(ringBuffer, quoteEngine);
+        this.publishIntervalNanos = toIntervalNanos(publishIntervalMillis);
+    }
+
+    @Override
+    public void run() {
+        nextPublishTime = System.nanoTime() + publishIntervalNanos;
+        while (shouldRun) {
+            try {
+                Level1QuoteData data;
+                if (publishIntervalNanos == 0) {
+                    data = takeData();
+                } else {
+                    data = pollData(Math.max(0, nextPublishTime - System.nanoTime()));
+                }
+
+                if (data != null) {
+                    try {
+                        processData(data);
+                    } finally {
+                        releaseData();
+                    }
+                    drainQueue();
+                }
+
+                if (publishIntervalNanos == 0) {
+                    publishConflatedQuotes();
+                } else if (System.nanoTime() - nextPublishTime >= 0) {
+                    publishConflatedQuotes();
+                    nextPublishTime = System.nanoTime() + publishIntervalNanos;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Merges the ticks which are already waiting, up to MAX_DRAIN_SIZE of them, so a
+     * constant stream of ticks can't hold back publishing indefinitely.
+     */
+    protected void drainQueue() {
+        processAvailable(MAX_DRAIN_SIZE);
+    }
+
+    @Override
+    protected void processQuote(int tickerId, Ticker ticker, QuoteType quoteType, double value) {
+        if (tickerId < 0) {
+            return;
+        }
+        if (tickerId >= topOfBooks.length) {
+            topOfBooks = Arrays.copyOf(topOfBooks, Math.max(topOfBooks.length * 2, tickerId + 1));
+        }
+        TopOfBook book = topOfBooks[tickerId];
+        if (book == null) {
+            book = new TopOfBook(tickerId, ticker);
+            topOfBooks[tickerId] = book;
+        }
+        if (book.dirtyMask == 0) {
+            dirtyBooks.add(book);
+        }
+        book.quote.setValue(quoteType, value);
+        book.dirtyMask |= (1L << quoteType.ordinal());
+    }
+
+    /**
+     * Publishes one quote for each ticker which has changed since it was last published.
+     */
+    protected void publishConflatedQuotes() {
+        for (int i = 0; i < dirtyBooks.size(); i++) {
+            TopOfBook book = dirtyBooks.get(i);
+            PrimitiveLevel1Quote quote;
+            if (quotePool == null) {
+                quote = new PrimitiveLevel1Quote(book.ticker, clock.epochNanos(), clock);
+            } else {
+                quote = quotePool.acquire(book.ticker, clock.epochNanos(), clock);
+            }
+
+            long mask = book.dirtyMask;
+            while (mask != 0) {
+                QuoteType type = QUOTE_TYPES[Long.numberOfTrailingZeros(mask)];
+                quote.setValue(type, book.quote.getDouble(type));
+                mask &= (mask - 1);
+            }
+            book.dirtyMask = 0;
+
+            publishQuote(book.tickerId, quote);
+            if (quotePool != null) {
+                quote.release();
+            }
+        }
+        dirtyBooks.clear();
+    }
+
+    protected void publishQuote(int tickerId, PrimitiveLevel1Quote quote) {
+        quoteEngine.fireLevel1Quote(tickerId, quote);
+    }
+
+    /**
+     * Gets the latest value of every field received for the ticker.  Should only be called
+     * from the processor's thread, or once the processor has been stopped.
+     *
+     * @param ticker The ticker to get the book for.
+     * @return The top of book, or null if nothing has been received for the ticker.
+     */
+    public PrimitiveLevel1Quote getTopOfBook(Ticker ticker) {
+        int tickerId = TickerRegistry.getInstance().getId(ticker);
+        TopOfBook[] books = topOfBooks;
+        TopOfBook book = tickerId >= 0 && tickerId < books.length ? books[tickerId] : null;
+        return book == null ? null : book.quote;
+    }
+
+    protected static long toIntervalNanos(long publishIntervalMillis) {
+        if (publishIntervalMillis < 0) {
+            throw new IllegalArgumentException("Publish interval can't be negative: " + publishIntervalMillis);
+        }
+        return TimeUnit.MILLISECONDS.toNanos(publishIntervalMillis);
+    }
+
+    public long getPublishIntervalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(publishIntervalNanos);
+    }
+
+    protected static class TopOfBook {
+
+        protected final int tickerId;
+        protected final Ticker ticker;
+        protected final PrimitiveLevel1Quote quote;
+        protected long dirtyMask = 0;
+
+        public TopOfBook(int tickerId, Ticker ticker) {
+            this.tickerId = tickerId;
+            this.ticker = ticker;
+            this.quote = new PrimitiveLevel1Quote(ticker, null);
+        }
+    }
+
+}
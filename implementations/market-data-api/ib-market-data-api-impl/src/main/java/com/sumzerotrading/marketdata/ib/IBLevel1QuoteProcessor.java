@@ -25,14 +25,10 @@ import com.sumzerotrading.data.StockTicker;
 import com.sumzerotrading.data.Ticker;
 import com.sumzerotrading.ib.IbUtils;
 import com.sumzerotrading.marketdata.IQuoteEngine;
-import com.sumzerotrading.marketdata.Level1Quote;
+import com.sumzerotrading.marketdata.PrimitiveLevel1Quote;
+import com.sumzerotrading.marketdata.PrimitiveLevel1QuotePool;
 import com.sumzerotrading.marketdata.QuoteType;
-import com.sumzerotrading.util.QuoteUtil;
-import java.math.BigDecimal;
 import java.time.ZonedDateTime;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 
 /**
@@ -41,12 +37,17 @@ import java.util.concurrent.BlockingQueue;
  */
 public class IBLevel1QuoteProcessor extends IBQuoteProcessor<Level1QuoteData> {
     
+    protected PrimitiveLevel1QuotePool quotePool;
 
 
     public IBLevel1QuoteProcessor(BlockingQueue<Level1QuoteData> queue, IQuoteEngine quoteEngine) {
         super(queue, quoteEngine);
     }
 
+    public IBLevel1QuoteProcessor(QuoteRingBuffer<Level1QuoteData> ringBuffer, IQuoteEngine quoteEngine) {
+        super(ringBuffer, quoteEngine);
+    }
+
     @Override
     protected void processData(Level1QuoteData data) {
         if (data.getSize() > 0) {
@@ -66,8 +67,7 @@ public class IBLevel1QuoteProcessor extends IBQuoteProcessor<Level1QuoteData> {
             return;
         }
 
-        BigDecimal formattedPrice = QuoteUtil.getBigDecimalValue(data.getTicker(), data.getPrice());
-        processQuote(data.getTicker(), quoteType, formattedPrice);
+        processQuote(data.getTickerId(), data.getTicker(), quoteType, data.getPrice());
 
     }
 
@@ -85,21 +85,50 @@ public class IBLevel1QuoteProcessor extends IBQuoteProcessor<Level1QuoteData> {
         if (ticker instanceof StockTicker) {
             size = size * 100;
         }
-        BigDecimal formattedValue = QuoteUtil.getBigDecimalValue(size);
-        processQuote(ticker, quoteType, formattedValue);
+        processQuote(data.getTickerId(), ticker, quoteType, size);
     }
 
 
-    protected void processQuote(Ticker ticker, QuoteType quoteType, BigDecimal formattedValue) {
-        Map<QuoteType, BigDecimal> quoteMap = new HashMap<>();
-        quoteMap.put(quoteType, formattedValue);
-        Level1Quote quote = new Level1Quote(ticker, getTime(), quoteMap);
+    /**
+     * @param tickerId The id the TickerRegistry assigned to the ticker.
+     * @param ticker The ticker the value is for.
+     * @param quoteType The type of value
+     * @param value The value
+     */
+    protected void processQuote(int tickerId, Ticker ticker, QuoteType quoteType, double value) {
+        PrimitiveLevel1Quote quote;
+        if (quotePool == null) {
+            quote = new PrimitiveLevel1Quote(ticker, clock.epochNanos(), clock);
+        } else {
+            quote = quotePool.acquire(ticker, clock.epochNanos(), clock);
+        }
+        quote.setValue(quoteType, value);
 
-        quoteEngine.fireLevel1Quote(quote);
+        quoteEngine.fireLevel1Quote(tickerId, quote);
+        
+        if (quotePool != null) {
+            quote.release();
+        }
+    }
+    
+    
+    /**
+     * Recycles quotes through the specified pool.  Each quote is released as soon as
+     * fireLevel1Quote() returns, so this should only be used when the quote engine
+     * delivers quotes synchronously to listeners which don't hold on to them.
+     * 
+     * @param quotePool The pool to recycle quotes through, or null to allocate a new quote for each tick.
+     */
+    public void setQuotePool(PrimitiveLevel1QuotePool quotePool) {
+        this.quotePool = quotePool;
+    }
+    
+    public PrimitiveLevel1QuotePool getQuotePool() {
+        return quotePool;
     }
     
     protected ZonedDateTime getTime() {
-        return ZonedDateTime.now();
+        return clock.now();
     }
 
 }
@@ -26,8 +26,10 @@ import com.sumzerotrading.marketdata.*;
 import com.sumzerotrading.util.QuoteUtil;
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -35,8 +37,14 @@ import java.util.concurrent.BlockingQueue;
  */
 public class IBLevel2QuoteProcessor extends IBQuoteProcessor<Level2QuoteData> {
 
-    protected HashMap<Ticker, IMarketDepthBook> bidBookMap = new HashMap<Ticker, IMarketDepthBook>();
-    protected HashMap<Ticker, IMarketDepthBook> askBookMap = new HashMap<Ticker, IMarketDepthBook>();
+    //the books are looked up from the subscribing thread to snapshot them for new delta listeners.
+    protected Map<Ticker, IMarketDepthBook> bidBookMap = new ConcurrentHashMap<Ticker, IMarketDepthBook>();
+    protected Map<Ticker, IMarketDepthBook> askBookMap = new ConcurrentHashMap<Ticker, IMarketDepthBook>();
+    protected Map<Ticker, MarketMakerDepthBook> bidMarketMakerBookMap = new ConcurrentHashMap<Ticker, MarketMakerDepthBook>();
+    protected Map<Ticker, MarketMakerDepthBook> askMarketMakerBookMap = new ConcurrentHashMap<Ticker, MarketMakerDepthBook>();
+    //the analytics are recalculated on this thread after each change to the book, once they've been asked for.
+    protected Map<Ticker, MarketDepthAnalytics> analyticsMap = new ConcurrentHashMap<Ticker, MarketDepthAnalytics>();
+    protected Set<Ticker> analyticsTickers = ConcurrentHashMap.newKeySet();
     protected int contractId = 0;
 
     protected int OP_INSERT = 0;
@@ -49,8 +57,16 @@ public class IBLevel2QuoteProcessor extends IBQuoteProcessor<Level2QuoteData> {
         super(queue, quoteEngine);
     }
 
+    public IBLevel2QuoteProcessor(QuoteRingBuffer<Level2QuoteData> ringBuffer, IQuoteEngine quoteEngine) {
+        super(ringBuffer, quoteEngine);
+    }
+
     @Override
     protected void processData(Level2QuoteData data) {
+        if (data.getMarketMaker() != null) {
+            processMarketMakerData(data);
+            return;
+        }
         double price = data.getPrice();
         Ticker ticker = data.getTicker();
         int operation = data.getOperation();
@@ -65,7 +81,7 @@ public class IBLevel2QuoteProcessor extends IBQuoteProcessor<Level2QuoteData> {
             book = bidBookMap.get(data.getTicker());
             depthSide = MarketDepthBook.Side.BID;
             if (book == null) {
-                book = MarketDepthBook.newInstance();
+                book = MarketDepthBook.newInstance(ticker.getMinimumTickSize());
                 book.setSide(MarketDepthBook.Side.BID);
                 bidBookMap.put(ticker, book);
             }
@@ -73,14 +89,26 @@ public class IBLevel2QuoteProcessor extends IBQuoteProcessor<Level2QuoteData> {
             book = askBookMap.get(data.getTicker());
             depthSide = MarketDepthBook.Side.ASK;
             if (book == null) {
-                book = MarketDepthBook.newInstance();
+                book = MarketDepthBook.newInstance(ticker.getMinimumTickSize());
                 book.setSide(MarketDepthBook.Side.ASK);
                 askBookMap.put(ticker, book);
             }
         }
 
+        if (book instanceof ArrayMarketDepthBook) {
+            ArrayMarketDepthBook arrayBook = (ArrayMarketDepthBook) book;
+            long version = arrayBook.getVersion();
+            updateBook(arrayBook, operation, position, price, size);
+            //updates outside the book are ignored, and don't produce a delta
+            if (arrayBook.getVersion() != version) {
+                fireDelta(ticker, arrayBook, operation, position);
+                updateAnalytics(ticker);
+            }
+            buildAndFireEvent(ticker, book);
+            return;
+        }
 
-         BigDecimal bdPrice = QuoteUtil.getBigDecimalValue(ticker, price);
+        BigDecimal bdPrice = QuoteUtil.getBigDecimalValue(ticker, price);
 
         MarketDepthLevel level = new MarketDepthLevel(depthSide, bdPrice, size);
         if( operation == OP_INSERT ) {
@@ -97,10 +125,188 @@ public class IBLevel2QuoteProcessor extends IBQuoteProcessor<Level2QuoteData> {
     }
     
     
+    /**
+     * Applies a market maker's quote to the ticker's market maker book.  The book's
+     * aggregated price levels are published like any other book, and stored as the
+     * ticker's book so they can be snapshotted and analysed.
+     */
+    protected void processMarketMakerData(Level2QuoteData data) {
+        Ticker ticker = data.getTicker();
+        MarketMakerDepthBook book;
+        if (data.getSide() == SIDE_BID) {
+            book = bidMarketMakerBookMap.get(ticker);
+            if (book == null) {
+                book = new MarketMakerDepthBook(ticker.getMinimumTickSize(), MarketDepthBook.Side.BID);
+                bidMarketMakerBookMap.put(ticker, book);
+                bidBookMap.put(ticker, book.getLevels());
+            }
+        } else {
+            book = askMarketMakerBookMap.get(ticker);
+            if (book == null) {
+                book = new MarketMakerDepthBook(ticker.getMinimumTickSize(), MarketDepthBook.Side.ASK);
+                askMarketMakerBookMap.put(ticker, book);
+                askBookMap.put(ticker, book.getLevels());
+            }
+        }
+
+        int operation = data.getOperation();
+        int position = data.getPosition();
+        long priceTicks = book.getLevels().toPriceTicks(data.getPrice());
+        if (operation == OP_INSERT) {
+            book.insertRow(position, data.getMarketMaker(), priceTicks, data.getSize());
+        } else if (operation == OP_UPDATE) {
+            book.updateRow(position, data.getMarketMaker(), priceTicks, data.getSize());
+        } else if (operation == OP_DELETE) {
+            book.deleteRow(position);
+        } else {
+            throw new IllegalStateException( "Unknown operation: " + operation );
+        }
+        fireMarketMakerDeltas(ticker, book);
+        if (book.getChangeCount() > 0) {
+            updateAnalytics(ticker);
+        }
+        buildAndFireEvent(ticker, book.getLevels());
+    }
+
+    /**
+     * Applies the update to the book in place, without creating a level.
+     */
+    protected void updateBook(ArrayMarketDepthBook book, int operation, int position, double price, int size) {
+        if( operation == OP_INSERT ) {
+            book.insertLevel(position, book.toPriceTicks(price), size);
+        } else if ( operation == OP_UPDATE ) {
+            book.updateLevel(position, book.toPriceTicks(price), size);
+        } else if( operation == OP_DELETE ) {
+            book.deleteLevel(position);
+        } else {
+            throw new IllegalStateException( "Unknown operation: " + operation );
+        }
+    }
+
+    /**
+     * Sends the change just applied to the book to the delta listeners, followed by a
+     * snapshot of the book if the quote engine's snapshot interval has been reached.
+     */
+    protected void fireDelta(Ticker ticker, ArrayMarketDepthBook book, int operation, int position) {
+        if (!quoteEngine.hasMarketDepthDeltaListeners(ticker)) {
+            return;
+        }
+        if (operation == OP_DELETE) {
+            publishDelta(ticker, book, MarketDepthDelta.Operation.DELETE, position, 0, 0, book.getVersion());
+        } else {
+            MarketDepthDelta.Operation deltaOperation = operation == OP_INSERT ? MarketDepthDelta.Operation.INSERT : MarketDepthDelta.Operation.UPDATE;
+            publishDelta(ticker, book, deltaOperation, position, book.getPriceTicks(position), book.getSize(position), book.getVersion());
+        }
+    }
+
+    /**
+     * Sends the changes the last row update made to the market maker book's
+     * aggregated levels to the delta listeners.
+     */
+    protected void fireMarketMakerDeltas(Ticker ticker, MarketMakerDepthBook book) {
+        if (book.getChangeCount() == 0 || !quoteEngine.hasMarketDepthDeltaListeners(ticker)) {
+            return;
+        }
+        for (int i = 0; i < book.getChangeCount(); i++) {
+            publishDelta(ticker, book.getLevels(), book.getChangeOperation(i), book.getChangePosition(i),
+                    book.getChangePriceTicks(i), book.getChangeSize(i), book.getChangeSequence(i));
+        }
+    }
+
+    protected void publishDelta(Ticker ticker, ArrayMarketDepthBook book, MarketDepthDelta.Operation operation, int position,
+            long priceTicks, long size, long sequence) {
+        quoteEngine.fireMarketDepthDelta(new MarketDepthDelta(ticker, book.getSide(), operation, position, priceTicks, size,
+                book.getTickSize(), sequence, getTime()));
+
+        int interval = quoteEngine.getMarketDepthSnapshotInterval();
+        if (interval > 0 && sequence % interval == 0) {
+            quoteEngine.fireMarketDepthSnapshot(ticker, book.snapshot());
+        }
+    }
+
+    /**
+     * Can be called from any thread.
+     *
+     * @return A consistent copy of the side of the ticker's book, or null if the side
+     * hasn't been quoted or the book isn't an ArrayMarketDepthBook.
+     */
+    public MarketDepthSnapshot getMarketDepthSnapshot(Ticker ticker, MarketDepthBook.Side side) {
+        IMarketDepthBook book = side == MarketDepthBook.Side.BID ? bidBookMap.get(ticker) : askBookMap.get(ticker);
+        return book instanceof ArrayMarketDepthBook ? ((ArrayMarketDepthBook) book).snapshot() : null;
+    }
+
+    /**
+     * Can be called from any thread.  The first call for a ticker calculates the
+     * analytics from a pair of snapshots, after which they are recalculated on the
+     * processor's thread each time the book changes.
+     *
+     * @return The analytics of both sides of the ticker's book, or null if a side
+     * hasn't been quoted or the book isn't an ArrayMarketDepthBook.
+     */
+    public MarketDepthAnalytics getMarketDepthAnalytics(Ticker ticker) {
+        MarketDepthAnalytics analytics = analyticsMap.get(ticker);
+        if (analytics != null) {
+            return analytics;
+        }
+        analyticsTickers.add(ticker);
+        IMarketDepthBook bidBook = bidBookMap.get(ticker);
+        IMarketDepthBook askBook = askBookMap.get(ticker);
+        if (!(bidBook instanceof ArrayMarketDepthBook) || !(askBook instanceof ArrayMarketDepthBook)) {
+            return null;
+        }
+        ArrayMarketDepthBook bids = (ArrayMarketDepthBook) bidBook;
+        ArrayMarketDepthBook asks = (ArrayMarketDepthBook) askBook;
+        MarketDepthSnapshot bidSnapshot;
+        MarketDepthSnapshot askSnapshot;
+        //if the bids haven't changed by the time the asks have been copied, both snapshots were current at the same moment.
+        do {
+            bidSnapshot = bids.snapshot();
+            askSnapshot = asks.snapshot();
+        } while (bids.readVersion() != bidSnapshot.getSequence());
+
+        //the processor's thread may already have published newer analytics, which are kept.
+        analytics = MarketDepthAnalytics.fromSnapshots(bidSnapshot, askSnapshot);
+        MarketDepthAnalytics published = analyticsMap.putIfAbsent(ticker, analytics);
+        return published == null ? analytics : published;
+    }
+
+    /**
+     * Recalculates the ticker's analytics after its book has changed, if they've
+     * been asked for.  Only the processor's thread changes the books, so both
+     * sides are consistent with each other here.
+     */
+    protected void updateAnalytics(Ticker ticker) {
+        if (!analyticsTickers.contains(ticker)) {
+            return;
+        }
+        IMarketDepthBook bidBook = bidBookMap.get(ticker);
+        IMarketDepthBook askBook = askBookMap.get(ticker);
+        if (bidBook instanceof ArrayMarketDepthBook && askBook instanceof ArrayMarketDepthBook) {
+            analyticsMap.put(ticker, MarketDepthAnalytics.fromSnapshots(((ArrayMarketDepthBook) bidBook).snapshot(),
+                    ((ArrayMarketDepthBook) askBook).snapshot()));
+        }
+    }
+
+    /**
+     * The market maker book is only consistent on the processor's thread, other
+     * threads should use getMarketDepthSnapshot().
+     *
+     * @return The ticker's market maker book, or null if no market maker depth has
+     * been received for the side.
+     */
+    public MarketMakerDepthBook getMarketMakerDepthBook(Ticker ticker, MarketDepthBook.Side side) {
+        return side == MarketDepthBook.Side.BID ? bidMarketMakerBookMap.get(ticker) : askMarketMakerBookMap.get(ticker);
+    }
+
     public void removeTicker( Ticker ticker ) {
         bidBookMap.remove(ticker);
         askBookMap.remove(ticker);
+        bidMarketMakerBookMap.remove(ticker);
+        askMarketMakerBookMap.remove(ticker);
+        analyticsTickers.remove(ticker);
+        analyticsMap.remove(ticker);
     }
+
     
     
     protected void buildAndFireEvent(Ticker ticker, IMarketDepthBook book) {
@@ -110,7 +316,18 @@ public class IBLevel2QuoteProcessor extends IBQuoteProcessor<Level2QuoteData> {
         } else {
             type = QuoteType.MARKET_DEPTH_BID;
         }
-        quoteEngine.fireMarketDepthQuote(new Level2Quote(ticker, type, getTime(), book));
+        long sequence = 0;
+        IMarketDepthBook publishedBook = book;
+        if (book instanceof ArrayMarketDepthBook) {
+            if (!quoteEngine.hasMarketDepthListeners(ticker)) {
+                return;
+            }
+            //listeners read the book on the dispatcher's threads, so they get a copy which won't change under them.
+            MarketDepthSnapshot snapshot = ((ArrayMarketDepthBook) book).snapshot();
+            sequence = snapshot.getSequence();
+            publishedBook = snapshot;
+        }
+        quoteEngine.fireMarketDepthQuote(new Level2Quote(ticker, type, getTime(), publishedBook, sequence));
     }    
     
     
@@ -119,7 +336,7 @@ public class IBLevel2QuoteProcessor extends IBQuoteProcessor<Level2QuoteData> {
      * @return 
      */
     protected ZonedDateTime getTime() {
-        return ZonedDateTime.now();
+        return clock.now();
     }
 
 
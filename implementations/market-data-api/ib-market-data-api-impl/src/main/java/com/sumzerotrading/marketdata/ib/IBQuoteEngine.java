@@ -25,13 +25,21 @@ import com.ib.client.Contract;
 import com.ib.client.EClientSocket;
 import com.ib.client.TagValue;
 import com.sumzerotrading.data.Ticker;
-import com.sumzerotrading.ib.ContractBuilderFactory;
+import com.sumzerotrading.data.TickerRegistry;
+import com.sumzerotrading.data.TickerTable;
+import com.sumzerotrading.ib.ContractCache;
 import com.sumzerotrading.ib.IBConnectionInterface;
 import com.sumzerotrading.ib.IBDataQueue;
+import com.sumzerotrading.ib.IBMessageFamily;
 import com.sumzerotrading.ib.IBSocket;
 import com.sumzerotrading.ib.MarketDepthListener;
+import com.sumzerotrading.ib.RequestPriority;
+import com.sumzerotrading.ib.RequestScheduler;
 import com.sumzerotrading.ib.TickListener;
 import com.sumzerotrading.marketdata.*;
+import com.sumzerotrading.marketdata.dispatch.BlockingWaitStrategy;
+import com.sumzerotrading.marketdata.dispatch.WaitStrategy;
+import com.sumzerotrading.time.IClock;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -39,8 +47,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Vector;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,17 +61,26 @@ public class IBQuoteEngine extends AbstractIBQuoteEngine {
     protected IBDataQueue dataQueue;
     protected IBSocket ibSocket;
     protected IBConnectionInterface callbackInterface;
-    protected BlockingQueue<Level1QuoteData> level1QuoteQueue = new LinkedBlockingQueue<Level1QuoteData>();
-    protected BlockingQueue<Level2QuoteData> level2QuoteQueue = new LinkedBlockingQueue<Level2QuoteData>();
-    protected Map<Ticker, ILevel1Quote> closeQuoteMap = new HashMap<>();
-    protected Map<Ticker, ILevel1Quote> openQuoteMap = new HashMap<>();
-    protected BlockingQueue<QuoteError> quoteErrorQueue = new LinkedBlockingQueue<QuoteError>();
+    protected RequestScheduler requestScheduler;
+    public static final int DEFAULT_RING_BUFFER_SIZE = 65536;
+    public static final int ERROR_RING_BUFFER_SIZE = 1024;
+    //request ids are derived from the TickerRegistry id, with level1 and level2 requests
+    //interleaved, so a tick is routed to its ticker with arithmetic and an array lookup.
+    public static final int REQUEST_ID_BASE = 100000;
+    //the depth books hold this many levels, rows past them would be dropped
+    public static final int MARKET_DEPTH_ROWS = ArrayMarketDepthBook.DEFAULT_CAPACITY;
+    protected static final int LEVEL1_REQUEST = 0;
+    protected static final int LEVEL2_REQUEST = 1;
+    
+    protected QuoteRingBuffer<Level1QuoteData> level1QuoteQueue;
+    protected QuoteRingBuffer<Level2QuoteData> level2QuoteQueue;
+    protected QuoteRingBuffer<QuoteError> quoteErrorQueue;
     protected EClientSocket ibConnection;
     protected Map<Ticker, Integer> tickerMap = new HashMap<Ticker, Integer>();
-    protected Map<Integer, Ticker> idToTickerMap = new HashMap<Integer, Ticker>();
+    protected TickerTable<Ticker> level1Tickers = new TickerTable<>();
     protected Map<Ticker, Integer> level2TickerMap = new HashMap<Ticker, Integer>();
-    protected Map<Integer, Ticker> level2IdToTickerMap = new HashMap<Integer, Ticker>();
-    protected int nextQuoteId = 100000;
+    protected TickerTable<Ticker> level2Tickers = new TickerTable<>();
+    protected ContractCache contractCache = ContractCache.getInstance();
     protected IBQuoteProcessor level1QuoteProcessor;
     protected IBQuoteProcessor level2QuoteProcessor;
     protected IBQuoteProcessor errorQuoteProcessor;
@@ -72,11 +88,24 @@ public class IBQuoteEngine extends AbstractIBQuoteEngine {
     protected String name = "";
 
     public IBQuoteEngine(IBSocket ibSocket) {
+        this(ibSocket, DEFAULT_RING_BUFFER_SIZE, BlockingWaitStrategy::new);
+    }
+
+    /**
+     * @param ibSocket The socket to request quotes over
+     * @param ringBufferSize The number of Level1 and Level2 updates which can be queued for the quote processors.
+     * @param waitStrategyFactory Creates the wait strategy for each of the quote processor ring buffers.
+     */
+    public IBQuoteEngine(IBSocket ibSocket, int ringBufferSize, Supplier<WaitStrategy> waitStrategyFactory) {
         this.ibSocket = ibSocket;
+        level1QuoteQueue = new QuoteRingBuffer<>(ringBufferSize, Level1QuoteData::new, waitStrategyFactory.get());
+        level2QuoteQueue = new QuoteRingBuffer<>(ringBufferSize, Level2QuoteData::new, waitStrategyFactory.get());
+        quoteErrorQueue = new QuoteRingBuffer<>(ERROR_RING_BUFFER_SIZE, null, waitStrategyFactory.get());
 
         callbackInterface = ibSocket.getConnection();
         callbackInterface.addIbConnectionDelegate(this);
         ibConnection = ibSocket.getClientSocket();
+        requestScheduler = ibSocket.getRequestScheduler();
         
         level1QuoteProcessor = new IBLevel1QuoteProcessor(level1QuoteQueue, this);
         level2QuoteProcessor = new IBLevel2QuoteProcessor(level2QuoteQueue, this);
@@ -96,37 +125,53 @@ public class IBQuoteEngine extends AbstractIBQuoteEngine {
         buildLevel1QuoteDataAndSend(tickerId, field, price, canAutoExecute, 0);
     }
 
-    protected void buildLevel1QuoteDataAndSend(int tickerId, int field, double price, int canAutoExecute, int size) {
-        Ticker ticker = idToTickerMap.get(tickerId);
+    protected void buildLevel1QuoteDataAndSend(int requestId, int field, double price, int canAutoExecute, int size) {
+        int tickerId = toTickerId(requestId, LEVEL1_REQUEST);
+        Ticker ticker = level1Tickers.get(tickerId);
 
         if (ticker != null) {
-            Level1QuoteData level1Data = new Level1QuoteData(ticker, field, price, canAutoExecute, size);
             try {
-                level1QuoteQueue.put(level1Data);
+                level1QuoteQueue.claim().set(tickerId, ticker, field, price, canAutoExecute, size);
+                level1QuoteQueue.publish();
             } catch (InterruptedException ex) {
                 logger.error(ex.getMessage(), ex);
             }
         } else {
-            logger.error("Ticker with id: " + tickerId + " not found");
+            logger.error("Ticker with id: " + requestId + " not found");
         }
     }
 
-    public void updateMktDepth(int tickerId, int position, int operation, int side, double price, int size) {
-        Ticker ticker = level2IdToTickerMap.get(tickerId);
+    public void updateMktDepth(int requestId, int position, int operation, int side, double price, int size) {
+        Ticker ticker = level2Tickers.get(toTickerId(requestId, LEVEL2_REQUEST));
         if (ticker != null) {
-            Level2QuoteData data = new Level2QuoteData(ticker, position, operation, side, price, size);
             try {
-                level2QuoteQueue.put(data);
+                level2QuoteQueue.claim().set(ticker, position, operation, side, price, size);
+                level2QuoteQueue.publish();
             } catch (InterruptedException ex) {
                 logger.error(ex.getMessage(), ex);
             }
         } else {
-            logger.error("Ticker with id: " + tickerId + " not found");
+            logger.error("Ticker with id: " + requestId + " not found");
         }
     }
 
-    public void updateMktDepth2(int tickerId, int position, String marketMaker, int operation, int side, double price, int size) {
+    @Override
+    public void updateMktDepthL2(int requestId, int position, String marketMaker, int operation, int side, double price, int size) {
+        Ticker ticker = level2Tickers.get(toTickerId(requestId, LEVEL2_REQUEST));
+        if (ticker != null) {
+            try {
+                level2QuoteQueue.claim().set(ticker, position, marketMaker, operation, side, price, size);
+                level2QuoteQueue.publish();
+            } catch (InterruptedException ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+        } else {
+            logger.error("Ticker with id: " + requestId + " not found");
+        }
+    }
 
+    public void updateMktDepth2(int tickerId, int position, String marketMaker, int operation, int side, double price, int size) {
+        updateMktDepthL2(tickerId, position, marketMaker, operation, side, price, size);
     }
 
     public void error(Exception e) {
@@ -141,7 +186,9 @@ public class IBQuoteEngine extends AbstractIBQuoteEngine {
         putOnErrorQueue(new QuoteError(id, errorCode, errorMsg));
     }
 
-    protected void putOnErrorQueue(QuoteError error) {
+    //errors can be reported from the caller's thread as well as the reader thread,
+    //the error ring buffer only supports a single producer at a time.
+    protected synchronized void putOnErrorQueue(QuoteError error) {
         try {
             quoteErrorQueue.put(error);
         } catch (Exception ex) {
@@ -152,29 +199,74 @@ public class IBQuoteEngine extends AbstractIBQuoteEngine {
     @Override
     public void subscribeMarketDepth(Ticker ticker, Level2QuoteListener listener) {
         super.subscribeMarketDepth(ticker, listener);
+        requestMarketDepth(ticker);
+    }
+
+    @Override
+    public void unsubscribeMarketDepth(Ticker ticker, Level2QuoteListener listener) {
+        super.unsubscribeMarketDepth(ticker, listener);
+        cancelMarketDepth(ticker);
+    }
+
+    @Override
+    public void subscribeMarketDepthDeltas(Ticker ticker, MarketDepthDeltaListener listener) {
+        super.subscribeMarketDepthDeltas(ticker, listener);
+        requestMarketDepth(ticker);
+    }
+
+    @Override
+    public void unsubscribeMarketDepthDeltas(Ticker ticker, MarketDepthDeltaListener listener) {
+        super.unsubscribeMarketDepthDeltas(ticker, listener);
+        cancelMarketDepth(ticker);
+    }
+
+    @Override
+    protected MarketDepthSnapshot getMarketDepthSnapshot(Ticker ticker, MarketDepthBook.Side side) {
+        if (level2QuoteProcessor instanceof IBLevel2QuoteProcessor) {
+            return ((IBLevel2QuoteProcessor) level2QuoteProcessor).getMarketDepthSnapshot(ticker, side);
+        }
+        return null;
+    }
+
+    @Override
+    public MarketDepthAnalytics getMarketDepthAnalytics(Ticker ticker) {
+        if (level2QuoteProcessor instanceof IBLevel2QuoteProcessor) {
+            return ((IBLevel2QuoteProcessor) level2QuoteProcessor).getMarketDepthAnalytics(ticker);
+        }
+        return null;
+    }
+
+    /**
+     * Requests market depth from IB, unless it has already been requested for the ticker.
+     */
+    protected synchronized void requestMarketDepth(Ticker ticker) {
         Integer quoteId = level2TickerMap.get(ticker);
         if (quoteId == null) {
-            quoteId = ++nextQuoteId;
+            int tickerId = tickerRegistry.register(ticker);
+            quoteId = toRequestId(tickerId, LEVEL2_REQUEST);
             level2TickerMap.put(ticker, quoteId);
-            level2IdToTickerMap.put(quoteId, ticker);
-            Contract contract = ContractBuilderFactory.getContractBuilder(ticker).buildContract(ticker);
+            level2Tickers.set(tickerId, tickerRegistry.getTicker(tickerId));
+            Contract contract = contractCache.getContract(ticker);
             Vector<TagValue> v = new Vector<>();
             v.add(new TagValue("XYZ", "XYZ"));
-            ibConnection.reqMktDepth(quoteId, contract, 100, v);
+            int requestId = quoteId;
+            callbackInterface.addRequestRoute(IBMessageFamily.MARKET_DEPTH, requestId, this);
+            schedule(IBMessageFamily.MARKET_DEPTH, () -> ibConnection.reqMktDepth(requestId, contract, MARKET_DEPTH_ROWS, v));
 
         }
     }
 
-    @Override
-    public void unsubscribeMarketDepth(Ticker ticker, Level2QuoteListener listener) {
-        super.unsubscribeMarketDepth(ticker, listener);
-        //if there are no more listeners cancel the subscription
-        List<Level2QuoteListener> listeners = level2ListenerMap.get(ticker);
-        if ((listeners == null) || (listeners.isEmpty())) {
+    /**
+     * Cancels the ticker's market depth once neither the level 2 nor the delta
+     * listeners are subscribed to it.
+     */
+    protected synchronized void cancelMarketDepth(Ticker ticker) {
+        if (!level2ListenerRegistry.hasListeners(ticker) && !depthDeltaListenerRegistry.hasListeners(ticker)) {
             Integer requestId = level2TickerMap.remove(ticker);
-            level2IdToTickerMap.remove(requestId);
             if (requestId != null) {
-                ibConnection.cancelMktDepth(requestId);
+                removeTicker(level2Tickers, requestId, LEVEL2_REQUEST);
+                schedule(IBMessageFamily.MARKET_DEPTH, () -> ibConnection.cancelMktDepth(requestId));
+                callbackInterface.removeRequestRoute(IBMessageFamily.MARKET_DEPTH, requestId);
             }
         }
     }
@@ -184,37 +276,68 @@ public class IBQuoteEngine extends AbstractIBQuoteEngine {
         super.subscribeLevel1(ticker, listener);
         Integer quoteId = tickerMap.get(ticker);
         if (quoteId == null) {
-            quoteId = ++nextQuoteId;
+            int tickerId = tickerRegistry.register(ticker);
+            quoteId = toRequestId(tickerId, LEVEL1_REQUEST);
             tickerMap.put(ticker, quoteId);
-            idToTickerMap.put(quoteId, ticker);
-            Contract contract = ContractBuilderFactory.getContractBuilder(ticker).buildContract(ticker);
+            level1Tickers.set(tickerId, tickerRegistry.getTicker(tickerId));
+            Contract contract = contractCache.getContract(ticker);
             List<TagValue> list = new ArrayList<>();
             list.add(new TagValue("XYZ","XYZ"));
-            ibConnection.reqMktData(nextQuoteId, contract, "", false, list);
-        }
-
-        if (closeQuoteMap.get(ticker) != null) {
-            listener.quoteRecieved(closeQuoteMap.get(ticker));
+            int requestId = quoteId;
+            callbackInterface.addRequestRoute(IBMessageFamily.MARKET_DATA, requestId, this);
+            schedule(IBMessageFamily.MARKET_DATA, () -> ibConnection.reqMktData(requestId, contract, "", false, list));
         }
-
-        if (openQuoteMap.get(ticker) != null) {
-            listener.quoteRecieved(openQuoteMap.get(ticker));
-        }
-
     }
 
     @Override
-    public void unsubscribeLevel1(Ticker ticker, Level1QuoteListener listener) {
+    public synchronized void unsubscribeLevel1(Ticker ticker, Level1QuoteListener listener) {
         super.unsubscribeLevel1(ticker, listener);
 
         //if there are no more listeners cancel the subscription
-        List<Level1QuoteListener> listeners = level1ListenerMap.get(ticker);
-        if ((listeners == null) || (listeners.isEmpty())) {
+        if (!level1ListenerRegistry.hasListeners(ticker)) {
             Integer requestId = tickerMap.remove(ticker);
-            idToTickerMap.remove(requestId);
             if (requestId != null) {
-                ibConnection.cancelMktData(requestId);
+                removeTicker(level1Tickers, requestId, LEVEL1_REQUEST);
+                schedule(IBMessageFamily.MARKET_DATA, () -> ibConnection.cancelMktData(requestId));
+                callbackInterface.removeRequestRoute(IBMessageFamily.MARKET_DATA, requestId);
+            }
+            //the cached values will go stale once the market data is cancelled.
+            lastValueCache.remove(ticker);
+        }
+    }
+
+    /**
+     * Sends the request once IB's pacing allows, subscriptions and cancels share a
+     * priority so they are sent in the order they were made.
+     */
+    protected void schedule(IBMessageFamily family, Runnable request) {
+        requestScheduler.submit(family, RequestPriority.NORMAL, request).whenComplete((sent, ex) -> {
+            if (ex != null) {
+                logger.error("Unable to send " + family + " request", ex);
             }
+        });
+    }
+
+    protected static int toRequestId(int tickerId, int requestType) {
+        return REQUEST_ID_BASE + (tickerId << 1) + requestType;
+    }
+
+    /**
+     * @return The TickerRegistry id of the ticker the request was made for, or
+     * TickerRegistry.UNKNOWN_ID if the request id isn't of the specified type.
+     */
+    protected static int toTickerId(int requestId, int requestType) {
+        int offset = requestId - REQUEST_ID_BASE;
+        if (offset < 0 || (offset & 1) != requestType) {
+            return TickerRegistry.UNKNOWN_ID;
+        }
+        return offset >> 1;
+    }
+
+    protected static void removeTicker(TickerTable<Ticker> tickers, int requestId, int requestType) {
+        int tickerId = toTickerId(requestId, requestType);
+        if (tickerId != TickerRegistry.UNKNOWN_ID) {
+            tickers.set(tickerId, null);
         }
     }
 
@@ -226,7 +349,15 @@ public class IBQuoteEngine extends AbstractIBQuoteEngine {
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    /**
+     * Stops the quote processors and the dispatcher, no further quotes are delivered
+     * to listeners.  The engine can't be restarted once it has been stopped.
+     */
     public void stopEngine() {
+        level1QuoteProcessor.stopProcessor();
+        level2QuoteProcessor.stopProcessor();
+        errorQuoteProcessor.stopProcessor();
+        quoteDispatcher.stop();
     }
 
     public void startEngine() {
@@ -243,6 +374,35 @@ public class IBQuoteEngine extends AbstractIBQuoteEngine {
         return ibSocket.isConnected();
     }
 
+    /**
+     * Merges the individual Level1 ticks received from IB into one quote per ticker
+     * before they are published to listeners.  Must be called before the engine is
+     * started.
+     *
+     * @param publishIntervalMillis How often the conflated quotes are published, or 0
+     * to publish them each time the pending ticks have been processed.
+     */
+    public void enableLevel1Conflation(long publishIntervalMillis) {
+        if (started) {
+            throw new IllegalStateException("Level1 conflation must be enabled before the engine is started");
+        }
+        IClock clock = level1QuoteProcessor.getClock();
+        level1QuoteProcessor = new ConflatingLevel1QuoteProcessor(level1QuoteQueue, this, publishIntervalMillis);
+        level1QuoteProcessor.setClock(clock);
+    }
+
+    /**
+     * Sets the clock used to timestamp quotes, for example a SimulatedClock when
+     * replaying recorded data.
+     * 
+     * @param clock The clock to use.
+     */
+    public void setClock(IClock clock) {
+        level1QuoteProcessor.setClock(clock);
+        level2QuoteProcessor.setClock(clock);
+        lastValueCache.setClock(clock);
+    }
+
     public IBSocket getIbSocket() {
         return ibSocket;
     }
@@ -255,23 +415,12 @@ public class IBQuoteEngine extends AbstractIBQuoteEngine {
         this.name = name;
     }
 
-    @Override
-    public void fireLevel1Quote(ILevel1Quote quote) {
-        super.fireLevel1Quote(quote); 
-        if (quote.containsType(QuoteType.CLOSE) ) {
-            closeQuoteMap.put(quote.getTicker(), quote);
-        }
-        if (quote.containsType(QuoteType.OPEN) ) {
-            openQuoteMap.put(quote.getTicker(), quote);
-        }
-    }
-
-    protected Map<Ticker, List<Level1QuoteListener>> getLevel1ListenerMap() {
-        return level1ListenerMap;
+    protected ListenerRegistry<Level1QuoteListener> getLevel1ListenerRegistry() {
+        return level1ListenerRegistry;
     }
 
-    protected void setLevel1ListenerMap(Map<Ticker, List<Level1QuoteListener>> map) {
-        this.level1ListenerMap = map;
+    protected void setLevel1ListenerRegistry(ListenerRegistry<Level1QuoteListener> registry) {
+        this.level1ListenerRegistry = registry;
     }
 
     @Override
@@ -35,6 +35,10 @@ public class IBQuoteErrorProcessor extends IBQuoteProcessor<QuoteError> {
     public IBQuoteErrorProcessor(BlockingQueue<QuoteError> queue, IQuoteEngine quoteEngine) {
         super(queue, quoteEngine);
     }
+
+    public IBQuoteErrorProcessor(QuoteRingBuffer<QuoteError> ringBuffer, IQuoteEngine quoteEngine) {
+        super(ringBuffer, quoteEngine);
+    }
     
 
     
@@ -23,7 +23,12 @@ package com.sumzerotrading.marketdata.ib;
 
 import com.sumzerotrading.marketdata.IQuoteEngine;
 import com.sumzerotrading.marketdata.QuoteEngine;
+import com.sumzerotrading.time.IClock;
+import com.sumzerotrading.time.MonotonicClock;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 //import org.apache.log4j.Logger;
 
 /**
@@ -34,6 +39,9 @@ public abstract class IBQuoteProcessor<T> implements Runnable {
     
     protected IQuoteEngine quoteEngine;
     protected BlockingQueue<T> quoteBlockingQueue;
+    protected QuoteRingBuffer<T> ringBuffer;
+    protected List<T> drainList;
+    protected IClock clock = MonotonicClock.getInstance();
     protected volatile boolean shouldRun = true;
     //protected Logger logger = Logger.getLogger( IBQuoteProcessor.class );
     protected Thread thread = new Thread( this, getClass().getName() + "-Thread" );
@@ -44,6 +52,12 @@ public abstract class IBQuoteProcessor<T> implements Runnable {
         this.quoteBlockingQueue = queue;
         this.quoteEngine = quoteEngine;
     }
+    
+    
+    public IBQuoteProcessor( QuoteRingBuffer<T> ringBuffer, IQuoteEngine quoteEngine ) {
+        this.ringBuffer = ringBuffer;
+        this.quoteEngine = quoteEngine;
+    }
 
     
     public void startProcessor() {
@@ -58,13 +72,20 @@ public abstract class IBQuoteProcessor<T> implements Runnable {
         if( started ) {
             started = false;
             shouldRun = false;
+            //wake the thread if it is waiting for data
+            thread.interrupt();
         }
     }
     
     public void run() {
         while( shouldRun ) {
             try {
-                processData( quoteBlockingQueue.take() );
+                T data = takeData();
+                try {
+                    processData( data );
+                } finally {
+                    releaseData();
+                }
             } catch( Exception ex ) {
                 //logger.error(ex, ex);
                 ex.printStackTrace();
@@ -72,10 +93,90 @@ public abstract class IBQuoteProcessor<T> implements Runnable {
         }
     }
     
+    
+    /**
+     * Waits for the next item from the queue or ring buffer.  releaseData() must be
+     * called once the item has been processed.
+     */
+    protected T takeData() throws InterruptedException {
+        if( ringBuffer != null ) {
+            return ringBuffer.take();
+        }
+        return quoteBlockingQueue.take();
+    }
+    
+    
+    /**
+     * Waits up to the specified time for the next item.  If an item is returned
+     * releaseData() must be called once it has been processed.
+     */
+    protected T pollData( long timeoutNanos ) throws InterruptedException {
+        if( ringBuffer != null ) {
+            return ringBuffer.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        return quoteBlockingQueue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+    
+    
+    /**
+     * Lets the ring buffer reuse the slot of the item most recently taken.
+     */
+    protected void releaseData() {
+        if( ringBuffer != null ) {
+            ringBuffer.release();
+        }
+    }
+    
+    
+    /**
+     * Processes items which are already waiting, without blocking.
+     * 
+     * @param maxItems The maximum number of items to process.
+     * @return The number of items processed.
+     */
+    protected int processAvailable( int maxItems ) {
+        int count = 0;
+        if( ringBuffer != null ) {
+            T data;
+            while( count < maxItems && (data = ringBuffer.poll()) != null ) {
+                try {
+                    processData( data );
+                } finally {
+                    ringBuffer.release();
+                }
+                count++;
+            }
+        } else {
+            if( drainList == null ) {
+                drainList = new ArrayList<>();
+            }
+            count = quoteBlockingQueue.drainTo(drainList, maxItems);
+            try {
+                for( int i = 0; i < drainList.size(); i++ ) {
+                    processData( drainList.get(i) );
+                }
+            } finally {
+                drainList.clear();
+            }
+        }
+        return count;
+    }
+    
     public boolean isRunning() {
         return started;
     }
     
+    public IClock getClock() {
+        return clock;
+    }
+    
+    /**
+     * @param clock The clock used to timestamp quotes, for example a SimulatedClock when replaying data.
+     */
+    public void setClock( IClock clock ) {
+        this.clock = clock;
+    }
+    
     
     protected abstract void processData( T data );
     
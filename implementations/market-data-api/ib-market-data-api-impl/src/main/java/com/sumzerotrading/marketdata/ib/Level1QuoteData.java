@@ -22,24 +22,46 @@ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 package com.sumzerotrading.marketdata.ib;
 
 import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
 
 /**
  *
  * @author Rob Terpilowski
  */
 public class Level1QuoteData {
+    protected int tickerId = TickerRegistry.UNKNOWN_ID;
     protected Ticker ticker;
     protected int field;
     protected double price = 0;
     protected int canAutoExecute = 0;
     protected int size = 0;
             
+    /**
+     * Builds an empty instance, used as a reusable slot in a QuoteRingBuffer.
+     */
+    public Level1QuoteData() {
+    }
+    
     public Level1QuoteData(Ticker ticker, int field, double price, int canAutoExecute, int size) {
+        set(ticker, field, price, canAutoExecute, size);
+    }
+    
+    public Level1QuoteData set(Ticker ticker, int field, double price, int canAutoExecute, int size) {
+        int id = ticker == null ? TickerRegistry.UNKNOWN_ID : TickerRegistry.getInstance().register(ticker);
+        return set(id, ticker, field, price, canAutoExecute, size);
+    }
+
+    /**
+     * @param tickerId The id the TickerRegistry assigned to the ticker.
+     */
+    public Level1QuoteData set(int tickerId, Ticker ticker, int field, double price, int canAutoExecute, int size) {
+        this.tickerId = tickerId;
         this.ticker = ticker;
         this.field = field;
         this.price = price;
         this.canAutoExecute = canAutoExecute;
         this.size = size;
+        return this;
     }
 
     public int getCanAutoExecute() {
@@ -58,6 +80,10 @@ public class Level1QuoteData {
         return ticker;
     }
 
+    public int getTickerId() {
+        return tickerId;
+    }
+
     public int getSize() {
         return size;
     }
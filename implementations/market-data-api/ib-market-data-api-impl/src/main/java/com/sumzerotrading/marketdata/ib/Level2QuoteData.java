@@ -35,14 +35,36 @@ public class Level2QuoteData {
     protected int side;
     protected double price;
     protected int size;
+    //only set for market maker depth
+    protected String marketMaker;
+
+    /**
+     * Builds an empty instance, used as a reusable slot in a QuoteRingBuffer.
+     */
+    public Level2QuoteData() {
+    }
 
     public Level2QuoteData(Ticker ticker, int position, int operation, int side, double price, int size) {
+        set(ticker, position, operation, side, price, size);
+    }
+
+    public Level2QuoteData(Ticker ticker, int position, String marketMaker, int operation, int side, double price, int size) {
+        set(ticker, position, marketMaker, operation, side, price, size);
+    }
+
+    public Level2QuoteData set(Ticker ticker, int position, int operation, int side, double price, int size) {
+        return set(ticker, position, null, operation, side, price, size);
+    }
+
+    public Level2QuoteData set(Ticker ticker, int position, String marketMaker, int operation, int side, double price, int size) {
         this.ticker = ticker;
+        this.marketMaker = marketMaker;
         this.position = position;
         this.operation = operation;
         this.side = side;
         this.price = price;
         this.size = size;
+        return this;
     }
 
     public int getOperation() {
@@ -69,6 +91,13 @@ public class Level2QuoteData {
         return ticker;
     }
 
+    /**
+     * @return The market maker quoting the row, or null if the depth isn't by market maker.
+     */
+    public String getMarketMaker() {
+        return marketMaker;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
@@ -96,6 +125,9 @@ public class Level2QuoteData {
         if (this.size != other.size) {
             return false;
         }
+        if (this.marketMaker != other.marketMaker && (this.marketMaker == null || !this.marketMaker.equals(other.marketMaker))) {
+            return false;
+        }
         return true;
     }
 
@@ -109,6 +141,7 @@ public class Level2QuoteData {
         hash = 61 * hash + this.side;
         hash = 61 * hash + (int) (Double.doubleToLongBits(this.price) ^ (Double.doubleToLongBits(this.price) >>> 32));
         hash = 61 * hash + this.size;
+        hash = 61 * hash + (this.marketMaker != null ? this.marketMaker.hashCode() : 0);
         return hash;
     }
     
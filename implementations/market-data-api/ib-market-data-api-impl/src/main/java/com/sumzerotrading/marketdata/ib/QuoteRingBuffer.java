@@ -0,0 +1,228 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.ib;
+
+import com.sumzerotrading.marketdata.dispatch.BlockingWaitStrategy;
+import com.sumzerotrading.marketdata.dispatch.WaitStrategy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A bounded single-producer/single-consumer ring buffer used to hand data from the
+ * IB callback thread to a quote processor thread.
+ *
+ * When built with a slot factory every slot is allocated up front and reused: the
+ * producer fills the slot returned by claim() and calls publish(), the consumer
+ * reads the slot returned by take() and calls release() once it is finished with
+ * it. Consumers must not keep a reference to a slot after releasing it.
+ *
+ * When built without a factory the buffer simply holds references passed to put(),
+ * which is useful for infrequent data such as errors.
+ *
+ * Only one thread may produce and only one thread may consume at a time.
+ *
+ * @author Rob Terpilowski
+ */
+public class QuoteRingBuffer<T> {
+
+    protected final Object[] entries;
+    protected final int mask;
+    protected final boolean preallocated;
+    protected final WaitStrategy waitStrategy;
+    protected final AtomicLong producerSequence = new AtomicLong(0);
+    protected final AtomicLong consumerSequence = new AtomicLong(0);
+
+    //Only read and written by the producer thread
+    protected long cachedConsumerSequence = 0;
+    //Only read and written by the consumer thread
+    protected long cachedProducerSequence = 0;
+
+    /**
+     * Builds a buffer which holds references, with a blocking wait strategy.
+     *
+     * @param capacity The capacity of the buffer, rounded up to the next power of 2.
+     */
+    public QuoteRingBuffer(int capacity) {
+        this(capacity, null, new BlockingWaitStrategy());
+    }
+
+    /**
+     * @param capacity The capacity of the buffer, rounded up to the next power of 2.
+     * @param slotFactory Creates the reusable slots, or null if the buffer holds references.
+     * @param waitStrategy How the producer and consumer wait when the buffer is full or empty.
+     */
+    public QuoteRingBuffer(int capacity, Supplier<T> slotFactory, WaitStrategy waitStrategy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.entries = new Object[size];
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+        this.preallocated = slotFactory != null;
+        if (preallocated) {
+            for (int i = 0; i < size; i++) {
+                entries[i] = slotFactory.get();
+            }
+        }
+    }
+
+    /**
+     * Gets the next slot for the producer to fill, waiting for the consumer if the
+     * buffer is full.  The slot becomes visible to the consumer when publish() is called.
+     *
+     * @return The slot to fill.
+     * @throws InterruptedException if interrupted while waiting for space.
+     */
+    @SuppressWarnings("unchecked")
+    public T claim() throws InterruptedException {
+        final long sequence = producerSequence.get();
+        final long wrapPoint = sequence - entries.length;
+        if (cachedConsumerSequence <= wrapPoint) {
+            cachedConsumerSequence = consumerSequence.get();
+            while (cachedConsumerSequence <= wrapPoint) {
+                waitStrategy.waitFor(() -> consumerSequence.get() > wrapPoint);
+                cachedConsumerSequence = consumerSequence.get();
+            }
+        }
+        return (T) entries[(int) sequence & mask];
+    }
+
+    /**
+     * Makes the slot returned by the last call to claim() available to the consumer.
+     */
+    public void publish() {
+        producerSequence.set(producerSequence.get() + 1);
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * Adds a reference to the buffer, waiting for the consumer if the buffer is full.
+     *
+     * @param value The value to add.
+     * @throws InterruptedException if interrupted while waiting for space.
+     */
+    public void put(T value) throws InterruptedException {
+        if (preallocated) {
+            throw new IllegalStateException("Slots are preallocated, use claim() and publish()");
+        }
+        claim();
+        entries[(int) producerSequence.get() & mask] = value;
+        publish();
+    }
+
+    /**
+     * Gets the next published slot, waiting for the producer if the buffer is empty.
+     * release() must be called once the slot has been processed.
+     *
+     * @return The next slot.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @SuppressWarnings("unchecked")
+    public T take() throws InterruptedException {
+        final long sequence = consumerSequence.get();
+        if (cachedProducerSequence <= sequence) {
+            cachedProducerSequence = producerSequence.get();
+            while (cachedProducerSequence <= sequence) {
+                waitStrategy.waitFor(() -> producerSequence.get() > sequence);
+                cachedProducerSequence = producerSequence.get();
+            }
+        }
+        return (T) entries[(int) sequence & mask];
+    }
+
+    /**
+     * Gets the next published slot without waiting.  If a slot is returned release()
+     * must be called once it has been processed.
+     *
+     * @return The next slot, or null if the buffer is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        final long sequence = consumerSequence.get();
+        if (cachedProducerSequence <= sequence) {
+            cachedProducerSequence = producerSequence.get();
+            if (cachedProducerSequence <= sequence) {
+                return null;
+            }
+        }
+        return (T) entries[(int) sequence & mask];
+    }
+
+    /**
+     * Gets the next published slot, waiting up to the specified time for one to be
+     * published. If a slot is returned release() must be called once it has been processed.
+     *
+     * @param timeout How long to wait
+     * @param unit The unit of the timeout
+     * @return The next slot, or null if nothing was published before the timeout.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        T value = poll();
+        if (value != null || timeout <= 0) {
+            return value;
+        }
+        final long sequence = consumerSequence.get();
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (value == null && System.nanoTime() - deadline < 0) {
+            waitStrategy.waitFor(() -> producerSequence.get() > sequence || System.nanoTime() - deadline >= 0);
+            value = poll();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the slot obtained from the last call to take() or poll() to the producer.
+     */
+    public void release() {
+        final long sequence = consumerSequence.get();
+        if (!preallocated) {
+            entries[(int) sequence & mask] = null;
+        }
+        consumerSequence.set(sequence + 1);
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * @return The number of published slots which have not been released.
+     */
+    public int size() {
+        long consumed = consumerSequence.get();
+        return (int) (producerSequence.get() - consumed);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.ib;
+
+import com.ib.client.TickType;
+import com.sumzerotrading.data.CurrencyTicker;
+import com.sumzerotrading.data.StockTicker;
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.marketdata.IQuoteEngine;
+import com.sumzerotrading.marketdata.PrimitiveLevel1Quote;
+import com.sumzerotrading.marketdata.QuoteType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class ConflatingLevel1QuoteProcessorTest {
+
+    protected Ticker ticker = new CurrencyTicker();
+    protected Ticker otherTicker = new StockTicker("QQQ");
+
+    public ConflatingLevel1QuoteProcessorTest() {
+    }
+
+    @Test
+    public void testPublishConflatedQuotes_MergesFields() {
+        MockConflatingProcessor processor = new MockConflatingProcessor(null);
+        processor.processData(new Level1QuoteData(ticker, TickType.BID, 1.25, 0, 0));
+        processor.processData(new Level1QuoteData(ticker, TickType.ASK, 1.27, 0, 0));
+        processor.processData(new Level1QuoteData(ticker, TickType.BID, 1.26, 0, 0));
+        processor.processData(new Level1QuoteData(ticker, TickType.BID_SIZE, 0, 0, 5));
+        processor.processData(new Level1QuoteData(otherTicker, TickType.LAST, 100.5, 0, 0));
+
+        assertTrue(processor.published.isEmpty());
+        processor.publishConflatedQuotes();
+
+        assertEquals(2, processor.published.size());
+        PrimitiveLevel1Quote quote = processor.published.get(0);
+        assertEquals(ticker, quote.getTicker());
+        assertEquals(3, quote.getTypes().length);
+        assertEquals(1.26, quote.getDouble(QuoteType.BID), 0);
+        assertEquals(1.27, quote.getDouble(QuoteType.ASK), 0);
+        assertEquals(5, quote.getLong(QuoteType.BID_SIZE));
+        assertEquals(100.5, processor.published.get(1).getDouble(QuoteType.LAST), 0);
+    }
+
+    @Test
+    public void testPublishConflatedQuotes_OnlyChangedFieldsRepublished() {
+        MockConflatingProcessor processor = new MockConflatingProcessor(null);
+        processor.processData(new Level1QuoteData(ticker, TickType.BID, 1.25, 0, 0));
+        processor.processData(new Level1QuoteData(ticker, TickType.ASK, 1.27, 0, 0));
+        processor.publishConflatedQuotes();
+
+        processor.processData(new Level1QuoteData(ticker, TickType.ASK, 1.28, 0, 0));
+        processor.publishConflatedQuotes();
+        processor.publishConflatedQuotes();
+
+        assertEquals(2, processor.published.size());
+        PrimitiveLevel1Quote quote = processor.published.get(1);
+        assertFalse(quote.containsType(QuoteType.BID));
+        assertEquals(1.28, quote.getDouble(QuoteType.ASK), 0);
+
+        PrimitiveLevel1Quote book = processor.getTopOfBook(ticker);
+        assertEquals(1.25, book.getDouble(QuoteType.BID), 0);
+        assertEquals(1.28, book.getDouble(QuoteType.ASK), 0);
+    }
+
+    @Test
+    public void testDrainQueue() {
+        LinkedBlockingQueue<Level1QuoteData> queue = new LinkedBlockingQueue<>();
+        queue.add(new Level1QuoteData(ticker, TickType.BID, 1.25, 0, 0));
+        queue.add(new Level1QuoteData(ticker, TickType.BID, 1.24, 0, 0));
+        MockConflatingProcessor processor = new MockConflatingProcessor(queue);
+
+        processor.drainQueue();
+        processor.publishConflatedQuotes();
+
+        assertTrue(queue.isEmpty());
+        assertEquals(1, processor.published.size());
+        assertEquals(1.24, processor.published.get(0).getDouble(QuoteType.BID), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeInterval() {
+        new ConflatingLevel1QuoteProcessor((QuoteRingBuffer<Level1QuoteData>) null, null, -1);
+    }
+
+    private static class MockConflatingProcessor extends ConflatingLevel1QuoteProcessor {
+
+        List<PrimitiveLevel1Quote> published = new ArrayList<>();
+
+        public MockConflatingProcessor(LinkedBlockingQueue<Level1QuoteData> queue) {
+            super(queue, (IQuoteEngine) null);
+        }
+
+        @Override
+        protected void publishQuote(int tickerId, PrimitiveLevel1Quote quote) {
+            published.add(quote);
+        }
+    }
+}
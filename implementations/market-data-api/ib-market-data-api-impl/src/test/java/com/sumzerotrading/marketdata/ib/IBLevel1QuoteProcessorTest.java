@@ -27,8 +27,6 @@ import com.sumzerotrading.data.Ticker;
 import com.sumzerotrading.marketdata.ILevel1Quote;
 import com.sumzerotrading.marketdata.IQuoteEngine;
 import com.sumzerotrading.marketdata.QuoteType;
-import com.sumzerotrading.util.QuoteUtil;
-import java.math.BigDecimal;
 import java.util.concurrent.BlockingQueue;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
@@ -104,8 +102,7 @@ public class IBLevel1QuoteProcessorTest {
         
         processor.processTickSize(data);
         
-        BigDecimal formattedValue = QuoteUtil.getBigDecimalValue(size * 100);
-        assertEquals(formattedValue, processor.formattedValue);
+        assertEquals(size * 100, processor.formattedValue, 0);
         
     }
     
@@ -117,8 +114,7 @@ public class IBLevel1QuoteProcessorTest {
         
         processor.processTickSize(data);
         
-        BigDecimal formattedValue = QuoteUtil.getBigDecimalValue(size);
-        assertEquals(formattedValue, processor.formattedValue);
+        assertEquals(size, processor.formattedValue, 0);
         
     }    
     
@@ -148,7 +144,7 @@ public class IBLevel1QuoteProcessorTest {
         boolean processTickSizeCalled = false;
         boolean processTickPriceCalled = false;
         boolean processQuoteCalled = false;
-        BigDecimal formattedValue = BigDecimal.ZERO;
+        double formattedValue = 0;
         boolean overrideProcessTickSize = false;
         boolean overrideProcessTickPrice = false;
         
@@ -184,7 +180,7 @@ public class IBLevel1QuoteProcessorTest {
         }
         
         @Override
-        protected void processQuote(Ticker ticker, QuoteType quoteType, BigDecimal value) {
+        protected void processQuote(int tickerId, Ticker ticker, QuoteType quoteType, double value) {
             processQuoteCalled = true;
             formattedValue = value;
         }
@@ -341,6 +341,225 @@ public class IBLevel2QuoteProcessorTest {
 
     }
 
+    @Test
+    public void testBuildAndFireEvent_PublishesSnapshot() {
+        final IQuoteEngine mockQuoteEngine = mockery.mock(IQuoteEngine.class, "new");
+        MockIBLevel2QuoteProcessor processor = buildQuoteProcessor(false);
+        processor.quoteEngine = mockQuoteEngine;
+        final CurrencyTicker ticker = getCurrencyTicker();
+        ArrayMarketDepthBook book = new ArrayMarketDepthBook(ticker.getMinimumTickSize(), 10);
+        book.setSide(MarketDepthBook.Side.BID);
+        book.insertLevel(0, 13553, 100);
+
+        //a snapshot only equals another snapshot, so the live book can't match
+        final Level2Quote quote = new Level2Quote(ticker, QuoteType.MARKET_DEPTH_BID, processor.date, book.snapshot(), 1);
+
+        mockery.checking(new Expectations() {
+
+            {
+                one(mockQuoteEngine).hasMarketDepthListeners(ticker);
+                will(returnValue(true));
+
+                one(mockQuoteEngine).fireMarketDepthQuote(quote);
+            }
+        });
+
+        processor.buildAndFireEvent(ticker, book);
+        mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testBuildAndFireEvent_NoListeners() {
+        final IQuoteEngine mockQuoteEngine = mockery.mock(IQuoteEngine.class, "new");
+        MockIBLevel2QuoteProcessor processor = buildQuoteProcessor(false);
+        processor.quoteEngine = mockQuoteEngine;
+        final CurrencyTicker ticker = getCurrencyTicker();
+        ArrayMarketDepthBook book = new ArrayMarketDepthBook(ticker.getMinimumTickSize(), 10);
+        book.setSide(MarketDepthBook.Side.BID);
+
+        mockery.checking(new Expectations() {
+
+            {
+                one(mockQuoteEngine).hasMarketDepthListeners(ticker);
+                will(returnValue(false));
+            }
+        });
+
+        processor.buildAndFireEvent(ticker, book);
+        mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testProcessData_FiresDelta() {
+        MockIBLevel2QuoteProcessor processor = buildQuoteProcessor();
+        Ticker ticker = getCurrencyTicker();
+
+        processor.processData(new Level2QuoteData(ticker, 0, processor.OP_INSERT, processor.SIDE_BID, 1.3553, 100));
+        assertEquals(1, processor.fireDeltaCount);
+        assertEquals(processor.OP_INSERT, processor.fireDeltaOperation);
+        assertEquals(0, processor.fireDeltaPosition);
+
+        processor.processData(new Level2QuoteData(ticker, 0, processor.OP_UPDATE, processor.SIDE_BID, 1.3554, 200));
+        assertEquals(2, processor.fireDeltaCount);
+        assertEquals(processor.OP_UPDATE, processor.fireDeltaOperation);
+
+        //updates outside the book don't change it, so there is no delta
+        processor.processData(new Level2QuoteData(ticker, 5, processor.OP_UPDATE, processor.SIDE_BID, 1.3550, 100));
+        assertEquals(2, processor.fireDeltaCount);
+    }
+
+    @Test
+    public void testFireDelta() {
+        final IQuoteEngine mockQuoteEngine = mockery.mock(IQuoteEngine.class, "new");
+        final MockIBLevel2QuoteProcessor processor = buildQuoteProcessor(false);
+        processor.quoteEngine = mockQuoteEngine;
+        final CurrencyTicker ticker = getCurrencyTicker();
+        final ArrayMarketDepthBook book = new ArrayMarketDepthBook(ticker.getMinimumTickSize(), 10);
+        book.setSide(MarketDepthBook.Side.BID);
+        book.insertLevel(0, 13553, 100);
+
+        mockery.checking(new Expectations() {
+
+            {
+                one(mockQuoteEngine).hasMarketDepthDeltaListeners(ticker);
+                will(returnValue(true));
+
+                one(mockQuoteEngine).fireMarketDepthDelta(new MarketDepthDelta(ticker, MarketDepthBook.Side.BID,
+                        MarketDepthDelta.Operation.INSERT, 0, 13553, 100, ticker.getMinimumTickSize(), 1, processor.date));
+
+                one(mockQuoteEngine).getMarketDepthSnapshotInterval();
+                will(returnValue(1));
+
+                one(mockQuoteEngine).fireMarketDepthSnapshot(ticker, book.snapshot());
+            }
+        });
+
+        processor.fireDelta(ticker, book, processor.OP_INSERT, 0);
+        mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testFireDelta_NoListeners() {
+        final IQuoteEngine mockQuoteEngine = mockery.mock(IQuoteEngine.class, "new");
+        MockIBLevel2QuoteProcessor processor = buildQuoteProcessor(false);
+        processor.quoteEngine = mockQuoteEngine;
+        final CurrencyTicker ticker = getCurrencyTicker();
+        ArrayMarketDepthBook book = new ArrayMarketDepthBook(ticker.getMinimumTickSize(), 10);
+        book.setSide(MarketDepthBook.Side.BID);
+        book.insertLevel(0, 13553, 100);
+
+        mockery.checking(new Expectations() {
+
+            {
+                one(mockQuoteEngine).hasMarketDepthDeltaListeners(ticker);
+                will(returnValue(false));
+            }
+        });
+
+        processor.fireDelta(ticker, book, processor.OP_INSERT, 0);
+        mockery.assertIsSatisfied();
+    }
+
+    @Test
+    public void testGetMarketDepthSnapshot() {
+        MockIBLevel2QuoteProcessor processor = buildQuoteProcessor();
+        Ticker ticker = getCurrencyTicker();
+        assertNull(processor.getMarketDepthSnapshot(ticker, MarketDepthBook.Side.BID));
+
+        processor.processData(new Level2QuoteData(ticker, 0, processor.OP_INSERT, processor.SIDE_BID, 1.3553, 100));
+
+        MarketDepthSnapshot snapshot = processor.getMarketDepthSnapshot(ticker, MarketDepthBook.Side.BID);
+        assertEquals(1, snapshot.getLevelCount());
+        assertEquals(1, snapshot.getSequence());
+        assertEquals(13553, snapshot.getPriceTicks(0));
+        assertNull(processor.getMarketDepthSnapshot(ticker, MarketDepthBook.Side.ASK));
+    }
+
+    @Test
+    public void testGetMarketDepthAnalytics() {
+        MockIBLevel2QuoteProcessor processor = buildQuoteProcessor();
+        Ticker ticker = getCurrencyTicker();
+        processor.processData(new Level2QuoteData(ticker, 0, processor.OP_INSERT, processor.SIDE_BID, 1.3553, 100));
+        assertNull(processor.getMarketDepthAnalytics(ticker));
+
+        processor.processData(new Level2QuoteData(ticker, 0, processor.OP_INSERT, processor.SIDE_ASK, 1.3554, 300));
+        MarketDepthAnalytics analytics = processor.getMarketDepthAnalytics(ticker);
+        assertEquals((1.3553 * 300 + 1.3554 * 100) / 400, analytics.getMicroprice(), 1e-9);
+        assertSame(analytics, processor.getMarketDepthAnalytics(ticker));
+
+        //the book changing publishes new analytics, and leaves the old ones as they were
+        processor.processData(new Level2QuoteData(ticker, 0, processor.OP_UPDATE, processor.SIDE_BID, 1.3553, 300));
+        MarketDepthAnalytics updated = processor.getMarketDepthAnalytics(ticker);
+        assertNotSame(analytics, updated);
+        assertEquals((1.3553 + 1.3554) / 2, updated.getMicroprice(), 1e-9);
+        assertEquals((1.3553 * 300 + 1.3554 * 100) / 400, analytics.getMicroprice(), 1e-9);
+        assertSame(updated, processor.getMarketDepthAnalytics(ticker));
+
+        processor.removeTicker(ticker);
+        assertTrue(processor.analyticsTickers.isEmpty());
+        assertNull(processor.getMarketDepthAnalytics(ticker));
+    }
+
+    @Test
+    public void testProcessData_MarketMaker() {
+        MockIBLevel2QuoteProcessor processor = buildQuoteProcessor();
+        Ticker ticker = getCurrencyTicker();
+
+        processor.processData(new Level2QuoteData(ticker, 0, "NSDQ", processor.OP_INSERT, processor.SIDE_BID, 1.3553, 100));
+        processor.processData(new Level2QuoteData(ticker, 1, "ARCA", processor.OP_INSERT, processor.SIDE_BID, 1.3553, 200));
+        processor.processData(new Level2QuoteData(ticker, 2, "EDGX", processor.OP_INSERT, processor.SIDE_BID, 1.3552, 300));
+
+        MarketMakerDepthBook book = processor.getMarketMakerDepthBook(ticker, MarketDepthBook.Side.BID);
+        assertEquals(3, book.getRowCount());
+        assertEquals(200, book.getVenueSize(book.getVenueId("ARCA")));
+        assertEquals(3, processor.fireMarketMakerDeltasCount);
+        assertNull(processor.getMarketMakerDepthBook(ticker, MarketDepthBook.Side.ASK));
+
+        //the aggregated levels are published, and are the ticker's book
+        IMarketDepthBook levels = processor.buildAndFireEventBook;
+        assertSame(book.getLevels(), levels);
+        assertSame(levels, processor.bidBookMap.get(ticker));
+        assertEquals(2, levels.getLevelCount());
+        assertEquals(300, levels.getLevelAt(0).getSize().intValue());
+        assertEquals(new BigDecimal("1.3553"), levels.getLevelAt(0).getPrice());
+
+        processor.processData(new Level2QuoteData(ticker, 0, "NSDQ", processor.OP_DELETE, processor.SIDE_BID, 0, 0));
+        assertEquals(200, levels.getLevelAt(0).getSize().intValue());
+
+        processor.removeTicker(ticker);
+        assertNull(processor.getMarketMakerDepthBook(ticker, MarketDepthBook.Side.BID));
+    }
+
+    @Test
+    public void testFireMarketMakerDeltas() {
+        final IQuoteEngine mockQuoteEngine = mockery.mock(IQuoteEngine.class, "new");
+        final MockIBLevel2QuoteProcessor processor = buildQuoteProcessor(false);
+        processor.quoteEngine = mockQuoteEngine;
+        final CurrencyTicker ticker = getCurrencyTicker();
+        MarketMakerDepthBook book = new MarketMakerDepthBook(ticker.getMinimumTickSize(), MarketDepthBook.Side.ASK);
+        book.insertRow(0, "NSDQ", 13553, 100);
+        book.updateRow(0, "NSDQ", 13554, 100);
+
+        mockery.checking(new Expectations() {
+
+            {
+                one(mockQuoteEngine).hasMarketDepthDeltaListeners(ticker);
+                will(returnValue(true));
+
+                one(mockQuoteEngine).fireMarketDepthDelta(new MarketDepthDelta(ticker, MarketDepthBook.Side.ASK,
+                        MarketDepthDelta.Operation.DELETE, 0, 0, 0, ticker.getMinimumTickSize(), 2, processor.date));
+                one(mockQuoteEngine).fireMarketDepthDelta(new MarketDepthDelta(ticker, MarketDepthBook.Side.ASK,
+                        MarketDepthDelta.Operation.INSERT, 0, 13554, 100, ticker.getMinimumTickSize(), 3, processor.date));
+
+                exactly(2).of(mockQuoteEngine).getMarketDepthSnapshotInterval();
+                will(returnValue(0));
+            }
+        });
+
+        processor.fireMarketMakerDeltas(ticker, book);
+        mockery.assertIsSatisfied();
+    }
+
     protected CurrencyTicker getCurrencyTicker() {
         CurrencyTicker ticker = new CurrencyTicker();
         ticker.setCurrency("EUR");
@@ -366,6 +585,10 @@ public class IBLevel2QuoteProcessorTest {
         IMarketDepthBook buildAndFireEventBook;
         ZonedDateTime date = ZonedDateTime.now();
         boolean overrideBuildAndFireEvent = true;
+        int fireDeltaCount = 0;
+        int fireDeltaOperation = -1;
+        int fireDeltaPosition = -1;
+        int fireMarketMakerDeltasCount = 0;
 
         public MockIBLevel2QuoteProcessor(BlockingQueue<Level2QuoteData> queue, IQuoteEngine quoteEngine) {
             this(queue, quoteEngine, true);
@@ -386,6 +609,26 @@ public class IBLevel2QuoteProcessorTest {
             }
         }
 
+        @Override
+        protected void fireDelta(Ticker ticker, ArrayMarketDepthBook book, int operation, int position) {
+            if (overrideBuildAndFireEvent) {
+                fireDeltaCount++;
+                fireDeltaOperation = operation;
+                fireDeltaPosition = position;
+            } else {
+                super.fireDelta(ticker, book, operation, position);
+            }
+        }
+
+        @Override
+        protected void fireMarketMakerDeltas(Ticker ticker, MarketMakerDepthBook book) {
+            if (overrideBuildAndFireEvent) {
+                fireMarketMakerDeltasCount++;
+            } else {
+                super.fireMarketMakerDeltas(ticker, book);
+            }
+        }
+
         @Override
         protected ZonedDateTime getTime() {
             return date;
@@ -24,15 +24,21 @@ package com.sumzerotrading.marketdata.ib;
 import com.ib.client.Contract;
 import com.ib.client.EClientSocket;
 import com.ib.client.TagValue;
+import com.ib.client.TickType;
 import com.sumzerotrading.ib.ContractBuilderFactory;
 import com.sumzerotrading.data.StockTicker;
 import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
 import com.sumzerotrading.ib.IBConnectionInterface;
 import com.sumzerotrading.ib.IBSocket;
+import com.sumzerotrading.ib.RequestScheduler;
 import com.sumzerotrading.marketdata.ILevel1Quote;
 import com.sumzerotrading.marketdata.Level1QuoteListener;
+import com.sumzerotrading.marketdata.PrimitiveLevel1Quote;
 import com.sumzerotrading.marketdata.QuoteError;
 import com.sumzerotrading.marketdata.QuoteType;
+import com.sumzerotrading.marketdata.dispatch.SynchronousQuoteDispatcher;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import org.jmock.Mockery;
@@ -80,8 +86,10 @@ public class IBQuoteEngineTest {
         mockIbConnection = mock(IBConnectionInterface.class);
         when(mockIbSocket.getClientSocket()).thenReturn(mockClientSocket);
         when(mockIbSocket.getConnection()).thenReturn(mockIbConnection);
+        when(mockIbSocket.getRequestScheduler()).thenReturn(new RequestScheduler());
 
         ibQuoteEngine = new IBQuoteEngine(mockIbSocket);
+        ibQuoteEngine.setQuoteDispatcher(new SynchronousQuoteDispatcher());
         verify(mockIbConnection).addIbConnectionDelegate(ibQuoteEngine);
     }
 
@@ -342,27 +350,25 @@ public class IBQuoteEngineTest {
     }
     
     @Test
-    public void testSubscribeLevel1_ClosePriceExists() {
+    public void testSubscribeLevel1_SnapshotReplayed() {
         Level1QuoteListener listener = Mockito.mock(Level1QuoteListener.class);
-        ILevel1Quote quote = Mockito.mock(ILevel1Quote.class);
         Ticker ticker = new StockTicker("abc");
-        ibQuoteEngine.closeQuoteMap.put(ticker, quote);
+        ibQuoteEngine.fireLevel1Quote(new PrimitiveLevel1Quote(ticker, ZonedDateTime.now()).setValue(QuoteType.CLOSE, 10.5));
+        ibQuoteEngine.fireLevel1Quote(new PrimitiveLevel1Quote(ticker, ZonedDateTime.now()).setValue(QuoteType.OPEN, 11.0));
         ibQuoteEngine.tickerMap.put(ticker, 1);
         
         ibQuoteEngine.subscribeLevel1(ticker, listener);
-        verify(listener).quoteRecieved(quote);
+        verify(listener).quoteRecieved(ibQuoteEngine.getSnapshot(ticker));
     }
     
     @Test
-    public void testSubscribeLevel1_OpenPriceExists() {
+    public void testSubscribeLevel1_NoSnapshot() {
         Level1QuoteListener listener = Mockito.mock(Level1QuoteListener.class);
-        ILevel1Quote quote = Mockito.mock(ILevel1Quote.class);
         Ticker ticker = new StockTicker("abc");
-        ibQuoteEngine.openQuoteMap.put(ticker, quote);
         ibQuoteEngine.tickerMap.put(ticker, 1);
         
         ibQuoteEngine.subscribeLevel1(ticker, listener);
-        verify(listener).quoteRecieved(quote);
+        verify(listener, Mockito.never()).quoteRecieved(Mockito.any(ILevel1Quote.class));
     }    
 
     @Test
@@ -555,31 +561,44 @@ public class IBQuoteEngineTest {
     }
 
     @Test
-    public void testFireLevel1Quote_Close() {
-        ILevel1Quote quote = Mockito.mock(ILevel1Quote.class);
-        Ticker ticker = new StockTicker("abc");
-
-        when(quote.containsType(QuoteType.CLOSE)).thenReturn(true);
-        when(quote.getTicker()).thenReturn(ticker);
+    public void testRequestIds() {
+        assertEquals(IBQuoteEngine.REQUEST_ID_BASE + 6, IBQuoteEngine.toRequestId(3, IBQuoteEngine.LEVEL1_REQUEST));
+        assertEquals(IBQuoteEngine.REQUEST_ID_BASE + 7, IBQuoteEngine.toRequestId(3, IBQuoteEngine.LEVEL2_REQUEST));
+        assertEquals(3, IBQuoteEngine.toTickerId(IBQuoteEngine.REQUEST_ID_BASE + 6, IBQuoteEngine.LEVEL1_REQUEST));
+        assertEquals(3, IBQuoteEngine.toTickerId(IBQuoteEngine.REQUEST_ID_BASE + 7, IBQuoteEngine.LEVEL2_REQUEST));
+        assertEquals(TickerRegistry.UNKNOWN_ID, IBQuoteEngine.toTickerId(IBQuoteEngine.REQUEST_ID_BASE + 7, IBQuoteEngine.LEVEL1_REQUEST));
+        assertEquals(TickerRegistry.UNKNOWN_ID, IBQuoteEngine.toTickerId(1, IBQuoteEngine.LEVEL1_REQUEST));
+    }
 
-        ibQuoteEngine.fireLevel1Quote(quote);
-        assertEquals(1, ibQuoteEngine.closeQuoteMap.size());
-        assertEquals(quote, ibQuoteEngine.closeQuoteMap.get(ticker));
-        assertTrue(ibQuoteEngine.openQuoteMap.isEmpty());
+    @Test
+    public void testTickPrice_RoutedByRequestId() throws Exception {
+        Ticker ticker = new StockTicker("abc");
+        int tickerId = ibQuoteEngine.getTickerRegistry().register(ticker);
+        ibQuoteEngine.level1Tickers.set(tickerId, ticker);
+
+        ibQuoteEngine.tickPrice(IBQuoteEngine.toRequestId(tickerId, IBQuoteEngine.LEVEL1_REQUEST), TickType.BID, 10.5, 0);
+        Level1QuoteData data = ibQuoteEngine.level1QuoteQueue.poll();
+        assertEquals(tickerId, data.getTickerId());
+        assertEquals(ticker, data.getTicker());
+        assertEquals(10.5, data.getPrice(), 0);
+        ibQuoteEngine.level1QuoteQueue.release();
+
+        ibQuoteEngine.tickPrice(IBQuoteEngine.toRequestId(tickerId, IBQuoteEngine.LEVEL2_REQUEST), TickType.BID, 10.5, 0);
+        assertTrue(ibQuoteEngine.level1QuoteQueue.isEmpty());
     }
 
     @Test
-    public void testFireLevel1Quote_Open() {
-        ILevel1Quote quote = Mockito.mock(ILevel1Quote.class);
+    public void testFireLevel1Quote_UpdatesSnapshot() {
         Ticker ticker = new StockTicker("abc");
+        assertNull(ibQuoteEngine.getSnapshot(ticker));
 
-        when(quote.containsType(QuoteType.OPEN)).thenReturn(true);
-        when(quote.getTicker()).thenReturn(ticker);
+        ibQuoteEngine.fireLevel1Quote(new PrimitiveLevel1Quote(ticker, ZonedDateTime.now()).setValue(QuoteType.CLOSE, 10.5));
+        ibQuoteEngine.fireLevel1Quote(new PrimitiveLevel1Quote(ticker, ZonedDateTime.now()).setValue(QuoteType.LAST, 11.25));
 
-        ibQuoteEngine.fireLevel1Quote(quote);
-        assertEquals(1, ibQuoteEngine.openQuoteMap.size());
-        assertEquals(quote, ibQuoteEngine.openQuoteMap.get(ticker));
-        assertTrue(ibQuoteEngine.closeQuoteMap.isEmpty());
+        ILevel1Quote snapshot = ibQuoteEngine.getSnapshot(ticker);
+        assertEquals(10.5, snapshot.getDouble(QuoteType.CLOSE), 0);
+        assertEquals(11.25, snapshot.getDouble(QuoteType.LAST), 0);
+        assertFalse(snapshot.containsType(QuoteType.OPEN));
     }
 
 }
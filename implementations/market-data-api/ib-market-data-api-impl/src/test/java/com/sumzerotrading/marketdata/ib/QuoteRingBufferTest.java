@@ -0,0 +1,117 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.ib;
+
+import com.sumzerotrading.marketdata.dispatch.BusySpinWaitStrategy;
+import com.sumzerotrading.marketdata.dispatch.YieldingWaitStrategy;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class QuoteRingBufferTest {
+
+    public QuoteRingBufferTest() {
+    }
+
+    @Test
+    public void testCapacityRoundedUp() {
+        assertEquals(8, new QuoteRingBuffer<>(5).capacity());
+        assertEquals(8, new QuoteRingBuffer<>(8).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new QuoteRingBuffer<>(0);
+    }
+
+    @Test
+    public void testSlotsAreReused() throws Exception {
+        QuoteRingBuffer<Level1QuoteData> ringBuffer = new QuoteRingBuffer<>(2, Level1QuoteData::new, new YieldingWaitStrategy());
+        Level1QuoteData first = ringBuffer.claim();
+        first.set(null, 1, 10.5, 0, 0);
+        ringBuffer.publish();
+        assertEquals(1, ringBuffer.size());
+
+        assertSame(first, ringBuffer.take());
+        assertEquals(10.5, first.getPrice(), 0);
+        ringBuffer.release();
+        assertTrue(ringBuffer.isEmpty());
+
+        ringBuffer.claim();
+        ringBuffer.publish();
+        assertSame(first, ringBuffer.claim());
+    }
+
+    @Test
+    public void testPollEmpty() throws Exception {
+        QuoteRingBuffer<String> ringBuffer = new QuoteRingBuffer<>(4, null, new YieldingWaitStrategy());
+        assertNull(ringBuffer.poll());
+        assertNull(ringBuffer.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testPutAndTakeReferences() throws Exception {
+        QuoteRingBuffer<String> ringBuffer = new QuoteRingBuffer<>(2);
+        ringBuffer.put("a");
+        ringBuffer.put("b");
+        assertEquals("a", ringBuffer.take());
+        ringBuffer.release();
+        ringBuffer.put("c");
+        assertEquals("b", ringBuffer.poll());
+        ringBuffer.release();
+        assertEquals("c", ringBuffer.poll(10, TimeUnit.MILLISECONDS));
+        ringBuffer.release();
+        assertTrue(ringBuffer.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPutPreallocated() throws Exception {
+        new QuoteRingBuffer<>(2, Level1QuoteData::new, new YieldingWaitStrategy()).put(new Level1QuoteData());
+    }
+
+    @Test
+    public void testProducerAndConsumerThreads() throws Exception {
+        final int count = 100000;
+        final QuoteRingBuffer<Level1QuoteData> ringBuffer = new QuoteRingBuffer<>(64, Level1QuoteData::new, new BusySpinWaitStrategy());
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    ringBuffer.claim().set(null, 0, 0, 0, i);
+                    ringBuffer.publish();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, ringBuffer.take().getSize());
+            ringBuffer.release();
+        }
+        producer.join(5000);
+        assertTrue(ringBuffer.isEmpty());
+    }
+
+}
@@ -21,6 +21,8 @@ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 package com.sumzerotrading.marketdata;
 
 import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.time.ClockUtil;
+import com.sumzerotrading.time.IClock;
 import java.time.ZonedDateTime;
 
 /**
@@ -34,6 +36,10 @@ public abstract class AbstractQuote implements IQuote {
 	
 	protected ZonedDateTime timeStamp;
         
+        protected long timeStampNanos;
+        
+        protected IClock clock;
+        
 	
         /**
          * Constructs a new Quote object. 
@@ -47,6 +53,21 @@ public abstract class AbstractQuote implements IQuote {
 		this.timeStamp = timeStamp;
 	}
         
+        
+        /**
+         * Constructs a new Quote object whose time is only converted to a ZonedDateTime
+         * if getTimeStamp() is called.
+         *
+         * @param ticker The ticker this quote is for.
+         * @param timeStampNanos The time of the quote, in nanoseconds since the epoch.
+         * @param clock The clock the time was read from.
+         */
+	public AbstractQuote( Ticker ticker, long timeStampNanos, IClock clock ) {
+		this.ticker = ticker;
+		this.timeStampNanos = timeStampNanos;
+		this.clock = clock;
+	}
+        
 
         /**
          * Gets the ticker for this quote
@@ -64,7 +85,25 @@ public abstract class AbstractQuote implements IQuote {
          */
         @Override
 	public ZonedDateTime getTimeStamp() {
-		return timeStamp;
+		ZonedDateTime time = timeStamp;
+		if( time == null && clock != null ) {
+			time = clock.toZonedDateTime(timeStampNanos);
+			timeStamp = time;
+		}
+		return time;
+	}
+        
+        
+        /**
+         * Gets the time of this quote in nanoseconds since the epoch
+         * @return The time of the quote
+         */
+        @Override
+	public long getTimeStampNanos() {
+		if( clock != null || timeStamp == null ) {
+			return timeStampNanos;
+		}
+		return ClockUtil.toEpochNanos(timeStamp);
 	}
 
 	@Override
@@ -72,7 +111,8 @@ public abstract class AbstractQuote implements IQuote {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + ((ticker == null) ? 0 : ticker.hashCode());
-		result = prime * result + ((timeStamp == null) ? 0 : timeStamp.hashCode());
+		ZonedDateTime time = getTimeStamp();
+		result = prime * result + ((time == null) ? 0 : time.hashCode());
 		return result;
 	}
 
@@ -90,10 +130,11 @@ public abstract class AbstractQuote implements IQuote {
 				return false;
 		} else if (!ticker.equals(other.ticker))
 			return false;
-		if (timeStamp == null) {
-			if (other.timeStamp != null)
+		ZonedDateTime time = getTimeStamp();
+		if (time == null) {
+			if (other.getTimeStamp() != null)
 				return false;
-		} else if (!timeStamp.equals(other.timeStamp))
+		} else if (!time.equals(other.getTimeStamp()))
 			return false;
 		return true;
 	}
@@ -0,0 +1,502 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.marketdata.MarketDepthBook.Side;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An order book held in parallel arrays of prices and sizes, so levels are
+ * inserted, updated and deleted in place without allocating.  Prices are held
+ * as a number of ticks of the book's tick size.  MarketDepthLevels are only
+ * created when they are asked for, and are copies, so changing one doesn't
+ * change the book.
+ *
+ * The cumulative size and notional value of the levels are kept up to date as
+ * the book changes, so total and cumulative sizes, average prices and the price
+ * needed to fill an order don't have to walk the book.  The version is
+ * incremented on every change, so values derived from the book can be cached
+ * until it next changes, see MarketDepthAnalytics.
+ *
+ * The book is changed on a single thread, and its getters must only be used on
+ * that thread.  Other threads read the book by taking a snapshot, which copies
+ * the levels without blocking the writer, retrying if the book changes while
+ * it is being copied.  Publishing the book to other threads is just passing the
+ * reference, only readers which want a consistent view of it pay for the copy.
+ *
+ * The book has a fixed capacity, levels pushed past the end of the book by an
+ * insert are dropped.  IB only sends the number of rows which were requested, so
+ * market depth should be requested with no more rows than the book's capacity.
+ *
+ * @author Rob Terpilowski
+ */
+public class ArrayMarketDepthBook implements IMarketDepthBook {
+
+    public static final int DEFAULT_CAPACITY = 64;
+    protected static final int MAX_OPTIMISTIC_READS = 8;
+
+    protected final BigDecimal tickSize;
+    protected final double tickSizeValue;
+    protected final long[] priceTicks;
+    protected final long[] sizes;
+    //running totals up to and including each level, notional is in price ticks
+    protected final long[] cumulativeSizes;
+    protected final long[] cumulativeNotional;
+    protected int levelCount = 0;
+    protected long version = 0;
+    protected final StampedLock lock = new StampedLock();
+    protected Side side;
+
+    public ArrayMarketDepthBook(BigDecimal tickSize) {
+        this(tickSize, DEFAULT_CAPACITY);
+    }
+
+    public ArrayMarketDepthBook(BigDecimal tickSize, int capacity) {
+        this.tickSize = tickSize;
+        this.tickSizeValue = tickSize.doubleValue();
+        priceTicks = new long[capacity];
+        sizes = new long[capacity];
+        cumulativeSizes = new long[capacity];
+        cumulativeNotional = new long[capacity];
+    }
+
+    @Override
+    public Side getSide() {
+        return side;
+    }
+
+    @Override
+    public void setSide(Side side) {
+        this.side = side;
+    }
+
+    public BigDecimal getTickSize() {
+        return tickSize;
+    }
+
+    public int getCapacity() {
+        return priceTicks.length;
+    }
+
+    /**
+     * @return The number of times the book has changed.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Can be called from any thread, unlike getVersion(), which is only current on
+     * the thread updating the book.
+     *
+     * @return The number of times the book has changed.
+     */
+    public long readVersion() {
+        long stamp = lock.tryOptimisticRead();
+        long currentVersion = version;
+        if (stamp != 0 && lock.validate(stamp)) {
+            return currentVersion;
+        }
+        stamp = lock.readLock();
+        try {
+            return version;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void clearLevels() {
+        long stamp = lock.writeLock();
+        try {
+            levelCount = 0;
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    @Override
+    public MarketDepthLevel[] getLevels() {
+        MarketDepthLevel[] levels = new MarketDepthLevel[levelCount];
+        for (int i = 0; i < levelCount; i++) {
+            levels[i] = getLevelAt(i);
+        }
+        return levels;
+    }
+
+    @Override
+    public MarketDepthLevel getLevelAt(int index) {
+        checkIndex(index);
+        return new MarketDepthLevel(side, getPrice(index), BigDecimal.valueOf(sizes[index]));
+    }
+
+    /**
+     * @return The price of the level as a number of ticks.
+     */
+    public long getPriceTicks(int index) {
+        checkIndex(index);
+        return priceTicks[index];
+    }
+
+    public BigDecimal getPrice(int index) {
+        return tickSize.multiply(BigDecimal.valueOf(getPriceTicks(index)));
+    }
+
+    public double getPriceValue(int index) {
+        return getPriceTicks(index) * tickSizeValue;
+    }
+
+    public long getSize(int index) {
+        checkIndex(index);
+        return sizes[index];
+    }
+
+    /**
+     * @return The price rounded to the nearest tick.
+     */
+    public long toPriceTicks(double price) {
+        return Math.round(price / tickSizeValue);
+    }
+
+    public long toPriceTicks(BigDecimal price) {
+        return price.divide(tickSize, 0, RoundingMode.HALF_UP).longValue();
+    }
+
+    @Override
+    public void addLevel(MarketDepthLevel level) {
+        insertLevel(levelCount, toPriceTicks(level.getPrice()), level.getSize().longValue());
+    }
+
+    @Override
+    public void insertLevel(int index, MarketDepthLevel level) {
+        insertLevel(index, toPriceTicks(level.getPrice()), level.getSize().longValue());
+    }
+
+    /**
+     * Inserts a level, shifting the levels at and after the index down the book.
+     * Indexes past the end of the book are ignored.
+     */
+    public void insertLevel(int index, long priceTicks, long size) {
+        if (index > levelCount || index >= this.priceTicks.length) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            int moved = Math.min(levelCount, this.priceTicks.length - 1) - index;
+            if (moved > 0) {
+                System.arraycopy(this.priceTicks, index, this.priceTicks, index + 1, moved);
+                System.arraycopy(sizes, index, sizes, index + 1, moved);
+            }
+            this.priceTicks[index] = priceTicks;
+            sizes[index] = size;
+            if (levelCount < this.priceTicks.length) {
+                levelCount++;
+            }
+            accumulateFrom(index);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void updateLevel(int index, MarketDepthLevel level) {
+        updateLevel(index, toPriceTicks(level.getPrice()), level.getSize().longValue());
+    }
+
+    /**
+     * Replaces the level at the index, indexes past the end of the book are ignored.
+     */
+    public void updateLevel(int index, long priceTicks, long size) {
+        if (index >= levelCount) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            this.priceTicks[index] = priceTicks;
+            sizes[index] = size;
+            accumulateFrom(index);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void deleteLevel(int index) {
+        if (index >= levelCount) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            int moved = levelCount - index - 1;
+            if (moved > 0) {
+                System.arraycopy(priceTicks, index + 1, priceTicks, index, moved);
+                System.arraycopy(sizes, index + 1, sizes, index, moved);
+            }
+            levelCount--;
+            accumulateFrom(index);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void setLevels(MarketDepthLevel[] levelArray) {
+        for (MarketDepthLevel level : levelArray) {
+            addLevel(level);
+        }
+    }
+
+    @Override
+    public BigDecimal getTotalSize() {
+        return BigDecimal.valueOf(getTotalSizeValue());
+    }
+
+    public long getTotalSizeValue() {
+        return levelCount == 0 ? 0 : cumulativeSizes[levelCount - 1];
+    }
+
+    @Override
+    public BigDecimal getCumulativeSize(int level) {
+        return BigDecimal.valueOf(getCumulativeSizeValue(level));
+    }
+
+    /**
+     * @return The total size of the levels up to and including the level.
+     */
+    public long getCumulativeSizeValue(int level) {
+        if (level < 0 || levelCount == 0) {
+            return 0;
+        }
+        return cumulativeSizes[Math.min(level, levelCount - 1)];
+    }
+
+    /**
+     * @return The size weighted average price of the levels up to and including
+     * the level, or NaN if there is no size.
+     */
+    public double getAveragePrice(int level) {
+        long size = getCumulativeSizeValue(level);
+        if (size == 0) {
+            return Double.NaN;
+        }
+        return (double) cumulativeNotional[Math.min(level, levelCount - 1)] / size * tickSizeValue;
+    }
+
+    /**
+     * @return The index of the deepest level an order of the size would fill at,
+     * or -1 if there isn't enough size in the book.
+     */
+    public int getLevelToFill(long size) {
+        if (levelCount == 0 || size > getTotalSizeValue()) {
+            return -1;
+        }
+        int low = 0;
+        int high = levelCount - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulativeSizes[middle] < size) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public BigDecimal getPriceToFill(BigDecimal size) {
+        int level = getLevelToFill(size.setScale(0, RoundingMode.CEILING).longValue());
+        return level < 0 ? null : getPrice(level);
+    }
+
+    /**
+     * @return The average price an order of the size would fill at, or NaN if there
+     * isn't enough size in the book.
+     */
+    public double getAveragePriceToFill(long size) {
+        int level = getLevelToFill(size);
+        if (level < 0 || size <= 0) {
+            return Double.NaN;
+        }
+        long filledSize = level == 0 ? 0 : cumulativeSizes[level - 1];
+        long notional = level == 0 ? 0 : cumulativeNotional[level - 1];
+        notional += (size - filledSize) * priceTicks[level];
+        return (double) notional / size * tickSizeValue;
+    }
+
+    /**
+     * Sorts the levels best price first, bids descending and asks ascending.
+     */
+    @Override
+    public void sort() {
+        long stamp = lock.writeLock();
+        try {
+            for (int i = 1; i < levelCount; i++) {
+                long price = priceTicks[i];
+                long size = sizes[i];
+                int j = i - 1;
+                while (j >= 0 && isBetter(price, priceTicks[j])) {
+                    priceTicks[j + 1] = priceTicks[j];
+                    sizes[j + 1] = sizes[j];
+                    j--;
+                }
+                priceTicks[j + 1] = price;
+                sizes[j + 1] = size;
+            }
+            accumulateFrom(0);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Takes a consistent copy of the book, can be called from any thread.
+     */
+    public MarketDepthSnapshot snapshot() {
+        return snapshot(new MarketDepthSnapshot(tickSize, priceTicks.length));
+    }
+
+    /**
+     * Copies the book into the snapshot, which can be reused for each of the
+     * book's quotes so taking a snapshot doesn't allocate.  The copy is taken
+     * without locking, and is retried if the book changes while it is being
+     * copied, falling back to blocking the writer if it keeps changing.
+     *
+     * @return The snapshot
+     */
+    public MarketDepthSnapshot snapshot(MarketDepthSnapshot snapshot) {
+        if (snapshot.getCapacity() < priceTicks.length || !snapshot.getTickSize().equals(tickSize)) {
+            throw new IllegalArgumentException("The snapshot doesn't match the book's capacity and tick size");
+        }
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC_READS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                copyTo(snapshot);
+                if (lock.validate(stamp)) {
+                    return snapshot;
+                }
+            }
+        }
+        long stamp = lock.readLock();
+        try {
+            copyTo(snapshot);
+            return snapshot;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Copies the levels, the copy may be torn if the book is being changed, which
+     * the caller checks for.
+     */
+    protected void copyTo(MarketDepthSnapshot snapshot) {
+        int count = Math.min(levelCount, priceTicks.length);
+        System.arraycopy(priceTicks, 0, snapshot.priceTicks, 0, count);
+        System.arraycopy(sizes, 0, snapshot.sizes, 0, count);
+        System.arraycopy(cumulativeSizes, 0, snapshot.cumulativeSizes, 0, count);
+        System.arraycopy(cumulativeNotional, 0, snapshot.cumulativeNotional, 0, count);
+        snapshot.levelCount = count;
+        snapshot.side = side;
+        snapshot.version = version;
+    }
+
+    /**
+     * Recalculates the running totals of the levels from the index down, after the
+     * level at the index has changed.
+     */
+    protected void accumulateFrom(int index) {
+        long size = index == 0 ? 0 : cumulativeSizes[index - 1];
+        long notional = index == 0 ? 0 : cumulativeNotional[index - 1];
+        for (int i = index; i < levelCount; i++) {
+            size += sizes[i];
+            notional += sizes[i] * priceTicks[i];
+            cumulativeSizes[i] = size;
+            cumulativeNotional[i] = notional;
+        }
+        version++;
+    }
+
+    protected boolean isBetter(long price, long otherPrice) {
+        return side == Side.ASK ? price < otherPrice : price > otherPrice;
+    }
+
+    protected void checkIndex(int index) {
+        if (index < 0 || index >= levelCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + levelCount);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        for (int i = 0; i < levelCount; i++) {
+            result = prime * result + Long.hashCode(priceTicks[i]);
+            result = prime * result + Long.hashCode(sizes[i]);
+        }
+        result = prime * result + tickSize.hashCode();
+        result = prime * result + ((side == null) ? 0 : side.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        ArrayMarketDepthBook other = (ArrayMarketDepthBook) obj;
+        if (levelCount != other.levelCount || side != other.side || !tickSize.equals(other.tickSize)) {
+            return false;
+        }
+        for (int i = 0; i < levelCount; i++) {
+            if (priceTicks[i] != other.priceTicks[i] || sizes[i] != other.sizes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder levels = new StringBuilder();
+        for (int i = 0; i < levelCount; i++) {
+            if (i > 0) {
+                levels.append(", ");
+            }
+            levels.append(getPrice(i)).append('x').append(sizes[i]);
+        }
+        return "ArrayMarketDepthBook [levels=[" + levels + "], side=" + side + "]";
+    }
+}
@@ -21,6 +21,7 @@ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 package com.sumzerotrading.marketdata;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 /**
  *  Level1 Quotes will implement this interface which provides a means to get the value of the quote.
@@ -37,4 +38,27 @@ public interface ILevel1Quote extends IQuote {
      */
     public BigDecimal getValue(QuoteType type);
     
+    
+    /**
+     * The value of this quote as a double, for callers that want to avoid
+     * BigDecimal arithmetic on the quote path.
+     * 
+     * @param type The type of quote value to get
+     * @return The quote value.
+     */
+    public default double getDouble(QuoteType type) {
+        return getValue(type).doubleValue();
+    }
+    
+    
+    /**
+     * The value of this quote as a long, typically used for sizes and volume.
+     * 
+     * @param type The type of quote value to get
+     * @return The quote value, rounded to the nearest whole number.
+     */
+    public default long getLong(QuoteType type) {
+        return getValue(type).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+    
 }
@@ -28,9 +28,41 @@ package com.sumzerotrading.marketdata;
 public interface ILevel2Quote extends IQuote {
     
     /**
-     * Gets the entire order book.
+     * Gets the entire order book.  Books published by a quote engine from another
+     * thread are MarketDepthSnapshots of the book as it was when the quote was
+     * published, so they can be read from any thread.
      * 
      * @return The entire order book.
      */
     public IMarketDepthBook getMarketDepthBook();
+
+    /**
+     * Gets the version of the order book when the quote was published, for books
+     * which keep one.
+     *
+     * @return The version of the book, or 0 if it isn't versioned.
+     */
+    public default long getSequence() {
+        return 0;
+    }
+
+    /**
+     * Gets a consistent copy of the order book, which can be read while the book
+     * is being updated.  If the quote holds a live book the copy is taken when this
+     * is called, so may include changes made after the quote was published, see
+     * MarketDepthSnapshot.getSequence().
+     *
+     * @return A snapshot of the book, or the book itself if it is already a snapshot
+     * or can't be snapshotted.
+     */
+    public default IMarketDepthBook getSnapshot() {
+        IMarketDepthBook book = getMarketDepthBook();
+        if (book instanceof MarketDepthSnapshot) {
+            return book;
+        }
+        if (book instanceof ArrayMarketDepthBook) {
+            return ((ArrayMarketDepthBook) book).snapshot();
+        }
+        return book;
+    }
 }
@@ -59,6 +59,26 @@ public interface IMarketDepthBook {
      */
     public BigDecimal getCumulativeSize(int level);
 
+    /**
+     * Gets the price of the deepest level an order of the specified size would
+     * fill at.
+     *
+     * @param size The size of the order
+     * @return The price the order would fill up to, or null if there isn't enough
+     * size in the book.
+     */
+    public default BigDecimal getPriceToFill(BigDecimal size) {
+        BigDecimal cumulativeSize = BigDecimal.ZERO;
+        for (int i = 0; i < getLevelCount(); i++) {
+            MarketDepthLevel level = getLevelAt(i);
+            cumulativeSize = cumulativeSize.add(level.getSize());
+            if (cumulativeSize.compareTo(size) >= 0) {
+                return level.getPrice();
+            }
+        }
+        return null;
+    }
+
     /**
      * Gets the level at the specified index
      * 
@@ -22,6 +22,7 @@ OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
 package com.sumzerotrading.marketdata;
 
 import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.time.ClockUtil;
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
 import java.util.List;
@@ -67,4 +68,16 @@ public interface IQuote {
          * @return The time of the quote.
          */
 	public ZonedDateTime getTimeStamp();
+        
+        
+        /**
+         * The time of the quote in nanoseconds since the epoch.  This is cheaper than
+         * getTimeStamp() for quotes which were stamped by an IClock.
+         * 
+         * @return The time of the quote, or 0 if the quote has no time.
+         */
+        public default long getTimeStampNanos() {
+            ZonedDateTime timeStamp = getTimeStamp();
+            return timeStamp == null ? 0 : ClockUtil.toEpochNanos(timeStamp);
+        }
 }
@@ -24,6 +24,7 @@ import java.util.Date;
 import java.util.Properties;
 
 import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.marketdata.dispatch.ListenerStats;
 
 /**
  * The QuoteEngine is used to subscribe to Level1 and Level2 quotes
@@ -139,6 +140,25 @@ public interface IQuoteEngine {
      */
     public void fireMarketDepthQuote( ILevel2Quote quote );
     
+    /**
+     * Fires the level 1 quote for a ticker identified by its TickerRegistry id, which
+     * lets the quote engine find the listeners without hashing the ticker.
+     * @param tickerId The id the TickerRegistry assigned to the quote's ticker.
+     * @param quote The level 1 quote to fire.
+     */
+    public default void fireLevel1Quote( int tickerId, ILevel1Quote quote ) {
+        fireLevel1Quote(quote);
+    }
+    
+    /**
+     * Fires a Level 2 quote for a ticker identified by its TickerRegistry id.
+     * @param tickerId The id the TickerRegistry assigned to the quote's ticker.
+     * @param quote The market depth quote to fire.
+     */
+    public default void fireMarketDepthQuote( int tickerId, ILevel2Quote quote ) {
+        fireMarketDepthQuote(quote);
+    }
+    
     /**
      * The error event to fire
      * @param error The quote error to fire.
@@ -151,4 +171,114 @@ public interface IQuoteEngine {
      * @param useDelayed true if ok to use delayed rather than real-time data
      */
     public void useDelayedData( boolean useDelayed );
+    
+    
+    /**
+     * Gets the latest value of every quote type received for the ticker.  Reading a
+     * snapshot never blocks the threads delivering quotes.
+     * 
+     * @param ticker The ticker to get the snapshot for.
+     * @return A quote holding the latest values, or null if no quotes have been received for the ticker.
+     */
+    public ILevel1Quote getSnapshot( Ticker ticker );
+    
+    
+    /**
+     * Gets the delivery statistics, such as queue depth and lag, for a level 1 listener.
+     * Lets a strategy check whether it is keeping up with the market.
+     * 
+     * @param listener The listener to get the statistics for.
+     * @return The listener's statistics, or null if they aren't available.
+     */
+    public default ListenerStats getLevel1ListenerStats( Level1QuoteListener listener ) {
+        return null;
+    }
+    
+    
+    /**
+     * Gets the delivery statistics, such as queue depth and lag, for a market depth listener.
+     * 
+     * @param listener The listener to get the statistics for.
+     * @return The listener's statistics, or null if they aren't available.
+     */
+    public default ListenerStats getMarketDepthListenerStats( Level2QuoteListener listener ) {
+        return null;
+    }
+    
+    
+    /**
+     * Gets metrics such as the microprice and imbalance of the ticker's market depth.
+     * They are calculated once per change to the book, from snapshots of both
+     * sides taken at the same moment, and don't change so can be read on any
+     * thread.
+     * 
+     * @param ticker The ticker to get the analytics for.
+     * @return The analytics, or null if a side of the book hasn't been quoted or the
+     * quote engine doesn't keep market depth books.
+     */
+    public default MarketDepthAnalytics getMarketDepthAnalytics( Ticker ticker ) {
+        return null;
+    }
+    
+    
+    /**
+     * Subscribe to market depth as individual changes to the book.  The listener is
+     * first sent a snapshot of each side of the book which has been quoted.
+     * @param ticker The ticker to subscribe to
+     * @param listener The listener which will receive the snapshots and deltas.
+     */
+    public default void subscribeMarketDepthDeltas( Ticker ticker, MarketDepthDeltaListener listener ) {
+        throw new UnsupportedOperationException("Market depth deltas aren't supported by this quote engine");
+    }
+    
+    /**
+     * Unsubscribe from market depth deltas
+     * @param ticker The ticker to unsubscribe from
+     * @param listener The listener that is holding the current subscription.
+     */
+    public default void unsubscribeMarketDepthDeltas( Ticker ticker, MarketDepthDeltaListener listener ) {
+        throw new UnsupportedOperationException("Market depth deltas aren't supported by this quote engine");
+    }
+    
+    /**
+     * @param ticker The ticker to check
+     * @return true if any listeners are subscribed to the ticker's market depth deltas,
+     * lets the source skip building deltas nobody will receive.
+     */
+    public default boolean hasMarketDepthDeltaListeners( Ticker ticker ) {
+        return false;
+    }
+    
+    /**
+     * @param ticker The ticker to check
+     * @return true if any level 2 listeners are subscribed to the ticker, lets the
+     * source skip copying books nobody will receive.
+     */
+    public default boolean hasMarketDepthListeners( Ticker ticker ) {
+        return true;
+    }
+    
+    /**
+     * Fires a change to a market depth book to the delta listeners.
+     * @param delta The change to fire.
+     */
+    public default void fireMarketDepthDelta( MarketDepthDelta delta ) {
+    }
+    
+    /**
+     * Fires a full snapshot of one side of a market depth book to the delta listeners,
+     * so they can resync.
+     * @param ticker The ticker the book is for
+     * @param snapshot The snapshot to fire.
+     */
+    public default void fireMarketDepthSnapshot( Ticker ticker, MarketDepthSnapshot snapshot ) {
+    }
+    
+    /**
+     * @return The number of changes to a side of a book between the snapshots sent
+     * to delta listeners, or 0 if snapshots are only sent on subscribing.
+     */
+    public default int getMarketDepthSnapshotInterval() {
+        return 0;
+    }
 }
@@ -0,0 +1,268 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
+import com.sumzerotrading.data.TickerTable;
+import com.sumzerotrading.time.IClock;
+import com.sumzerotrading.time.MonotonicClock;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Holds the latest value of every QuoteType received for each ticker.
+ *
+ * Each ticker's values are guarded by a sequence lock: a writer makes the sequence
+ * odd, stores the values and makes it even again, and a reader retries if the
+ * sequence was odd or changed while it was copying the values.  Readers never
+ * block and never see a partially applied quote; updating the cache doesn't
+ * allocate or lock once a ticker has been seen.  The sequence also tells which
+ * quotes a snapshot already includes, see getSnapshot(int, Consumer).
+ *
+ * Entries are indexed by the id the TickerRegistry assigned to each ticker; the
+ * methods taking a Ticker look the id up first.
+ *
+ * @author Rob Terpilowski
+ */
+public class LastValueCache {
+
+    protected static final QuoteType[] QUOTE_TYPES = QuoteType.values();
+    protected static final int MASK_INDEX = QUOTE_TYPES.length;
+    protected static final int TIMESTAMP_INDEX = QUOTE_TYPES.length + 1;
+
+    protected final TickerTable<Entry> entries = new TickerTable<>();
+    protected final TickerRegistry tickerRegistry;
+    protected volatile IClock clock = MonotonicClock.getInstance();
+
+    public LastValueCache() {
+        this(TickerRegistry.getInstance());
+    }
+
+    /**
+     * @param tickerRegistry Assigns the ids the cached values are indexed by.
+     */
+    public LastValueCache(TickerRegistry tickerRegistry) {
+        this.tickerRegistry = tickerRegistry;
+    }
+
+    /**
+     * Merges the values in the quote into the cached values for its ticker.
+     *
+     * @param quote The quote to add to the cache.
+     */
+    public void update(ILevel1Quote quote) {
+        Ticker ticker = quote.getTicker();
+        if (ticker == null) {
+            return;
+        }
+        update(tickerRegistry.register(ticker), quote);
+    }
+
+    /**
+     * Merges the values in the quote into the cached values for the ticker with the specified id.
+     *
+     * @param tickerId The id the TickerRegistry assigned to the quote's ticker.
+     * @param quote The quote to add to the cache.
+     * @return The ticker's sequence once the quote has been added, it increases with every quote.
+     */
+    public long update(int tickerId, ILevel1Quote quote) {
+        Entry entry = entries.get(tickerId);
+        if (entry == null) {
+            entry = createEntry(tickerId);
+        }
+        return entry.update(quote);
+    }
+
+    /**
+     * Builds a quote containing the latest value of every type received for the ticker.
+     * The returned quote is a copy and won't change as further quotes arrive.
+     *
+     * @param ticker The ticker to get the snapshot for
+     * @return The snapshot, or null if no quotes have been received for the ticker.
+     */
+    public ILevel1Quote getSnapshot(Ticker ticker) {
+        return getSnapshot(tickerRegistry.getId(ticker));
+    }
+
+    /**
+     * @param tickerId The id the TickerRegistry assigned to the ticker.
+     * @return The snapshot, or null if no quotes have been received for the ticker.
+     */
+    public ILevel1Quote getSnapshot(int tickerId) {
+        Entry entry = entries.get(tickerId);
+        return entry == null ? null : entry.snapshot(tickerRegistry.getTicker(tickerId), clock, null);
+    }
+
+    /**
+     * Builds a snapshot and passes it to the consumer, returning the sequence the
+     * snapshot was taken at.  A quote whose update() returned a sequence at or
+     * below it is included in the snapshot.
+     *
+     * @param tickerId The id the TickerRegistry assigned to the ticker.
+     * @param consumer Receives the snapshot, it isn't called if no quotes have been received for the ticker.
+     * @return The sequence of the snapshot, or 0 if no quotes have been received.
+     */
+    public long getSnapshot(int tickerId, Consumer<? super ILevel1Quote> consumer) {
+        Entry entry = entries.get(tickerId);
+        if (entry == null) {
+            return 0;
+        }
+        long[] sequence = new long[1];
+        consumer.accept(entry.snapshot(tickerRegistry.getTicker(tickerId), clock, sequence));
+        return sequence[0];
+    }
+
+    /**
+     * Gets the latest value of a single quote type without building a snapshot.
+     *
+     * @param ticker The ticker to get the value for
+     * @param type The type of value to get
+     * @return The value, or Double.NaN if it hasn't been received.
+     */
+    public double getDouble(Ticker ticker, QuoteType type) {
+        return getDouble(tickerRegistry.getId(ticker), type);
+    }
+
+    /**
+     * @param tickerId The id the TickerRegistry assigned to the ticker.
+     * @param type The type of value to get
+     * @return The value, or Double.NaN if it hasn't been received.
+     */
+    public double getDouble(int tickerId, QuoteType type) {
+        Entry entry = entries.get(tickerId);
+        return entry == null ? Double.NaN : entry.getDouble(type);
+    }
+
+    /**
+     * Removes the cached values for the ticker.
+     *
+     * @param ticker The ticker to remove.
+     */
+    public void remove(Ticker ticker) {
+        int tickerId = tickerRegistry.getId(ticker);
+        if (tickerId != TickerRegistry.UNKNOWN_ID) {
+            entries.set(tickerId, null);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    protected Entry createEntry(int tickerId) {
+        synchronized (entries) {
+            Entry entry = entries.get(tickerId);
+            if (entry == null) {
+                entry = new Entry();
+                entries.set(tickerId, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * @param clock The clock used to build the timestamps of snapshots.
+     */
+    public void setClock(IClock clock) {
+        this.clock = clock;
+    }
+
+    protected static class Entry {
+
+        protected final AtomicLong sequence = new AtomicLong();
+        //the values are stored as raw double bits, followed by the type mask and the timestamp.
+        protected final AtomicLongArray values = new AtomicLongArray(QUOTE_TYPES.length + 2);
+
+        protected long update(ILevel1Quote quote) {
+            //claim the entry by making the sequence odd, a ticker's quotes usually come from one thread so this rarely spins.
+            long currentSequence = sequence.get();
+            while ((currentSequence & 1) != 0 || !sequence.compareAndSet(currentSequence, currentSequence + 1)) {
+                Thread.yield();
+                currentSequence = sequence.get();
+            }
+            long mask = values.get(MASK_INDEX);
+            if (quote instanceof PrimitiveLevel1Quote) {
+                PrimitiveLevel1Quote primitiveQuote = (PrimitiveLevel1Quote) quote;
+                long quoteMask = primitiveQuote.getTypeMask();
+                mask |= quoteMask;
+                while (quoteMask != 0) {
+                    int index = Long.numberOfTrailingZeros(quoteMask);
+                    values.lazySet(index, Double.doubleToRawLongBits(primitiveQuote.getDouble(QUOTE_TYPES[index])));
+                    quoteMask &= (quoteMask - 1);
+                }
+            } else {
+                QuoteType[] types = quote.getTypes();
+                if (types != null) {
+                    for (QuoteType type : types) {
+                        int index = type.ordinal();
+                        values.lazySet(index, Double.doubleToRawLongBits(quote.getDouble(type)));
+                        mask |= (1L << index);
+                    }
+                }
+            }
+            values.lazySet(MASK_INDEX, mask);
+            values.lazySet(TIMESTAMP_INDEX, quote.getTimeStampNanos());
+            sequence.set(currentSequence + 2);
+            return currentSequence + 2;
+        }
+
+        protected ILevel1Quote snapshot(Ticker ticker, IClock clock, long[] snapshotSequence) {
+            while (true) {
+                long startSequence = sequence.get();
+                if ((startSequence & 1) != 0) {
+                    Thread.yield();
+                    continue;
+                }
+                long mask = values.get(MASK_INDEX);
+                PrimitiveLevel1Quote quote = new PrimitiveLevel1Quote(ticker, values.get(TIMESTAMP_INDEX), clock);
+                while (mask != 0) {
+                    int index = Long.numberOfTrailingZeros(mask);
+                    quote.setValue(QUOTE_TYPES[index], Double.longBitsToDouble(values.get(index)));
+                    mask &= (mask - 1);
+                }
+                if (sequence.get() == startSequence) {
+                    if (snapshotSequence != null) {
+                        snapshotSequence[0] = startSequence;
+                    }
+                    return quote;
+                }
+            }
+        }
+
+        protected double getDouble(QuoteType type) {
+            int index = type.ordinal();
+            while (true) {
+                long startSequence = sequence.get();
+                if ((startSequence & 1) != 0) {
+                    Thread.yield();
+                    continue;
+                }
+                boolean present = (values.get(MASK_INDEX) & (1L << index)) != 0;
+                double value = Double.longBitsToDouble(values.get(index));
+                if (sequence.get() == startSequence) {
+                    return present ? value : Double.NaN;
+                }
+            }
+        }
+    }
+
+}
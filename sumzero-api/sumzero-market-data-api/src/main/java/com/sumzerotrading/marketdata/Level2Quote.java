@@ -28,16 +28,30 @@ import java.util.Objects;
 public class Level2Quote extends AbstractQuote implements ILevel2Quote {
 
 	protected IMarketDepthBook book;
+	protected long sequence;
 	
 	public Level2Quote( Ticker ticker, QuoteType type, ZonedDateTime timeStamp, IMarketDepthBook book ) {
+		this( ticker, type, timeStamp, book, 0 );
+	}
+
+	/**
+	 * @param sequence The version of the book when the quote is published.
+	 */
+	public Level2Quote( Ticker ticker, QuoteType type, ZonedDateTime timeStamp, IMarketDepthBook book, long sequence ) {
 		super( ticker, timeStamp );
 		this.book = book;
+		this.sequence = sequence;
 	}
 	
 	public IMarketDepthBook getMarketDepthBook() {
 		return book;
 	}
 
+	@Override
+	public long getSequence() {
+		return sequence;
+	}
+
     @Override
     public QuoteType[] getTypes() {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
@@ -0,0 +1,200 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
+import com.sumzerotrading.data.TickerTable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * Holds the listeners subscribed to each ticker as an immutable array. Subscribing
+ * or unsubscribing builds a new array and swaps it in atomically, so reading the
+ * listeners for a ticker on the quote path never takes a lock, and always sees a
+ * consistent set of listeners.
+ *
+ * The listener arrays are also indexed by the id the TickerRegistry assigned to
+ * each ticker, so the quote path can look them up without hashing the ticker.
+ *
+ * @author Rob Terpilowski
+ * @param <L> The type of listener held in the registry
+ */
+public class ListenerRegistry<L> {
+
+    protected final Map<Ticker, L[]> listenerMap = new ConcurrentHashMap<>();
+    protected final IntFunction<L[]> arrayFactory;
+    protected final L[] noListeners;
+    protected final TickerRegistry tickerRegistry;
+    protected final TickerTable<L[]> listenersById = new TickerTable<>();
+
+    /**
+     * @param arrayFactory Creates listener arrays of the specified size, ie Level1QuoteListener[]::new
+     */
+    public ListenerRegistry(IntFunction<L[]> arrayFactory) {
+        this(arrayFactory, TickerRegistry.getInstance());
+    }
+
+    /**
+     * @param arrayFactory Creates listener arrays of the specified size, ie Level1QuoteListener[]::new
+     * @param tickerRegistry Assigns the ids the listeners are indexed by.
+     */
+    public ListenerRegistry(IntFunction<L[]> arrayFactory, TickerRegistry tickerRegistry) {
+        this.arrayFactory = arrayFactory;
+        this.noListeners = arrayFactory.apply(0);
+        this.tickerRegistry = tickerRegistry;
+    }
+
+    /**
+     * Adds the listener to the specified ticker.
+     *
+     * @param ticker The ticker to subscribe the listener to
+     * @param listener The listener to add
+     */
+    public void addListener(Ticker ticker, L listener) {
+        int tickerId = tickerRegistry.register(ticker);
+        //the id table is updated inside compute() so it stays in step with the map.
+        listenerMap.compute(ticker, (key, current) -> {
+            L[] listeners;
+            if (current == null) {
+                listeners = arrayFactory.apply(1);
+                listeners[0] = listener;
+            } else {
+                listeners = Arrays.copyOf(current, current.length + 1);
+                listeners[current.length] = listener;
+            }
+            listenersById.set(tickerId, listeners);
+            return listeners;
+        });
+    }
+
+    /**
+     * Removes the listener from the specified ticker. The ticker is removed from
+     * the registry once its last listener is removed.
+     *
+     * @param ticker The ticker to unsubscribe the listener from
+     * @param listener The listener to remove
+     */
+    public void removeListener(Ticker ticker, L listener) {
+        listenerMap.computeIfPresent(ticker, (key, current) -> {
+            int index = indexOf(current, listener);
+            if (index < 0) {
+                return current;
+            }
+            int tickerId = tickerRegistry.getId(key);
+            if (current.length == 1) {
+                listenersById.set(tickerId, null);
+                return null;
+            }
+            L[] listeners = arrayFactory.apply(current.length - 1);
+            System.arraycopy(current, 0, listeners, 0, index);
+            System.arraycopy(current, index + 1, listeners, index, current.length - index - 1);
+            listenersById.set(tickerId, listeners);
+            return listeners;
+        });
+    }
+
+    /**
+     * Gets the listeners currently subscribed to the ticker.  The returned array
+     * must not be modified.
+     *
+     * @param ticker The ticker to get the listeners for.
+     * @return The listeners for the ticker, or an empty array if there are none.
+     */
+    public L[] getListeners(Ticker ticker) {
+        L[] listeners = listenerMap.get(ticker);
+        return listeners == null ? noListeners : listeners;
+    }
+
+    /**
+     * Gets the listeners currently subscribed to the ticker with the specified id.
+     * The returned array must not be modified.
+     *
+     * @param tickerId The id the TickerRegistry assigned to the ticker.
+     * @return The listeners for the ticker, or an empty array if there are none.
+     */
+    public L[] getListeners(int tickerId) {
+        L[] listeners = listenersById.get(tickerId);
+        return listeners == null ? noListeners : listeners;
+    }
+
+    /**
+     * @return The registry which assigns the ids listeners are indexed by.
+     */
+    public TickerRegistry getTickerRegistry() {
+        return tickerRegistry;
+    }
+
+    /**
+     * @param ticker The ticker to check
+     * @return true if the ticker has at least one listener
+     */
+    public boolean hasListeners(Ticker ticker) {
+        return listenerMap.containsKey(ticker);
+    }
+
+    /**
+     * @param listener The listener to check
+     * @return true if the listener is subscribed to any ticker.
+     */
+    public boolean isSubscribed(L listener) {
+        for (L[] listeners : listenerMap.values()) {
+            if (indexOf(listeners, listener) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param listener The listener to look up
+     * @return The tickers the listener is subscribed to.
+     */
+    public List<Ticker> getTickers(L listener) {
+        List<Ticker> tickers = new ArrayList<>();
+        for (Map.Entry<Ticker, L[]> entry : listenerMap.entrySet()) {
+            if (indexOf(entry.getValue(), listener) >= 0) {
+                tickers.add(entry.getKey());
+            }
+        }
+        return tickers;
+    }
+
+    /**
+     * @return The number of tickers with at least one listener.
+     */
+    public int getTickerCount() {
+        return listenerMap.size();
+    }
+
+    protected int indexOf(L[] listeners, L listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(listener)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,162 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+/**
+ * Metrics derived from both sides of a ticker's order book.  They are
+ * calculated the first time one is read after either book changes, and the
+ * cached values are returned until the books change again.  Prices are returned
+ * as doubles, and are NaN when a side of the book is empty.
+ *
+ * Like the books, the analytics must only be used from the thread the books are
+ * updated on, unless they are built with fromSnapshots().  Other threads should
+ * use IQuoteEngine.getMarketDepthAnalytics(), which returns analytics built that
+ * way.
+ *
+ * @author Rob Terpilowski
+ */
+public class MarketDepthAnalytics {
+
+    public static final int DEFAULT_DEPTH = 5;
+
+    protected final ArrayMarketDepthBook bidBook;
+    protected final ArrayMarketDepthBook askBook;
+    protected final int depth;
+    protected long bidVersion = -1;
+    protected long askVersion = -1;
+    protected double microprice;
+    protected double imbalance;
+    protected double depthWeightedMid;
+
+    public MarketDepthAnalytics(ArrayMarketDepthBook bidBook, ArrayMarketDepthBook askBook) {
+        this(bidBook, askBook, DEFAULT_DEPTH);
+    }
+
+    /**
+     * @param depth The number of levels of each side used for the imbalance and
+     * depth weighted mid.
+     */
+    public MarketDepthAnalytics(ArrayMarketDepthBook bidBook, ArrayMarketDepthBook askBook, int depth) {
+        this.bidBook = bidBook;
+        this.askBook = askBook;
+        this.depth = depth;
+    }
+
+    /**
+     * Calculates the analytics of the snapshots up front.  As the snapshots never
+     * change, neither do the analytics, so once published they can be read from
+     * any thread.
+     */
+    public static MarketDepthAnalytics fromSnapshots(MarketDepthSnapshot bidBook, MarketDepthSnapshot askBook) {
+        MarketDepthAnalytics analytics = new MarketDepthAnalytics(bidBook, askBook);
+        analytics.update();
+        return analytics;
+    }
+
+    /**
+     * @return The mid price weighted towards the side with less size at the top
+     * of the book, where the next trade is more likely to happen.
+     */
+    public double getMicroprice() {
+        update();
+        return microprice;
+    }
+
+    /**
+     * @return The bid size less the ask size over their total for the top levels
+     * of the book, from -1 when there are only offers to 1 when there are only bids.
+     */
+    public double getImbalance() {
+        update();
+        return imbalance;
+    }
+
+    /**
+     * @return The microprice of the top levels of the book, using the average
+     * price and total size of the levels on each side.
+     */
+    public double getDepthWeightedMid() {
+        update();
+        return depthWeightedMid;
+    }
+
+    /**
+     * @return The average price a buy order of the size would fill at, or NaN if
+     * there isn't enough size offered.
+     */
+    public double getAveragePriceToBuy(long size) {
+        return askBook.getAveragePriceToFill(size);
+    }
+
+    /**
+     * @return The average price a sell order of the size would fill at, or NaN if
+     * there isn't enough size bid.
+     */
+    public double getAveragePriceToSell(long size) {
+        return bidBook.getAveragePriceToFill(size);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public ArrayMarketDepthBook getBidBook() {
+        return bidBook;
+    }
+
+    public ArrayMarketDepthBook getAskBook() {
+        return askBook;
+    }
+
+    protected void update() {
+        if (bidBook.getVersion() == bidVersion && askBook.getVersion() == askVersion) {
+            return;
+        }
+        bidVersion = bidBook.getVersion();
+        askVersion = askBook.getVersion();
+
+        if (bidBook.getLevelCount() == 0 || askBook.getLevelCount() == 0) {
+            microprice = Double.NaN;
+            depthWeightedMid = Double.NaN;
+        } else {
+            microprice = weightedMid(bidBook.getPriceValue(0), bidBook.getSize(0),
+                    askBook.getPriceValue(0), askBook.getSize(0));
+            long bidDepth = bidBook.getCumulativeSizeValue(depth - 1);
+            long askDepth = askBook.getCumulativeSizeValue(depth - 1);
+            depthWeightedMid = bidDepth == 0 || askDepth == 0 ? microprice
+                    : weightedMid(bidBook.getAveragePrice(depth - 1), bidDepth, askBook.getAveragePrice(depth - 1), askDepth);
+        }
+
+        long bidSize = bidBook.getCumulativeSizeValue(depth - 1);
+        long askSize = askBook.getCumulativeSizeValue(depth - 1);
+        imbalance = bidSize + askSize == 0 ? Double.NaN : (double) (bidSize - askSize) / (bidSize + askSize);
+    }
+
+    /**
+     * Weights each side's price by the size on the other side, falling back to the
+     * plain mid when there is no size.
+     */
+    protected static double weightedMid(double bidPrice, long bidSize, double askPrice, long askSize) {
+        if (bidSize + askSize == 0) {
+            return (bidPrice + askPrice) / 2;
+        }
+        return (bidPrice * askSize + askPrice * bidSize) / (bidSize + askSize);
+    }
+}
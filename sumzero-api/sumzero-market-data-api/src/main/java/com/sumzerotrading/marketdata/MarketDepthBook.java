@@ -41,6 +41,18 @@ public class MarketDepthBook implements IMarketDepthBook {
             return new MarketDepthBook();
         }
     }
+
+    /**
+     * @param tickSize The tick size of the ticker the book is for.
+     * @return An ArrayMarketDepthBook, or the test instance if one has been set.
+     */
+    public static IMarketDepthBook newInstance(BigDecimal tickSize) {
+        if( testBook != null ) {
+            return testBook;
+        } else {
+            return new ArrayMarketDepthBook(tickSize);
+        }
+    }
     
     
     public static void setTestInstance( IMarketDepthBook book ) {
@@ -0,0 +1,174 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.marketdata.MarketDepthBook.Side;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.Objects;
+
+/**
+ * A single change to one side of a market depth book.  Applying the deltas in
+ * sequence order to a snapshot of the side, with the same insert, update and
+ * delete semantics as ArrayMarketDepthBook, reproduces the live book.
+ *
+ * The sequence is the version of the book after the change was applied, so
+ * deltas for a side are numbered consecutively.
+ *
+ * @author Rob Terpilowski
+ */
+public class MarketDepthDelta {
+
+    public static enum Operation {
+        INSERT, UPDATE, DELETE
+    };
+
+    protected final Ticker ticker;
+    protected final Side side;
+    protected final Operation operation;
+    protected final int position;
+    protected final long priceTicks;
+    protected final long size;
+    protected final BigDecimal tickSize;
+    protected final long sequence;
+    protected final ZonedDateTime timeStamp;
+
+    /**
+     * @param priceTicks The price of the level as a number of ticks, ignored for deletes.
+     * @param size The size of the level, ignored for deletes.
+     * @param tickSize The tick size of the book the delta was applied to.
+     * @param sequence The version of the book after the delta was applied.
+     */
+    public MarketDepthDelta(Ticker ticker, Side side, Operation operation, int position, long priceTicks, long size,
+            BigDecimal tickSize, long sequence, ZonedDateTime timeStamp) {
+        this.ticker = ticker;
+        this.side = side;
+        this.operation = operation;
+        this.position = position;
+        this.priceTicks = priceTicks;
+        this.size = size;
+        this.tickSize = tickSize;
+        this.sequence = sequence;
+        this.timeStamp = timeStamp;
+    }
+
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    public Side getSide() {
+        return side;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public long getPriceTicks() {
+        return priceTicks;
+    }
+
+    public BigDecimal getPrice() {
+        return tickSize.multiply(BigDecimal.valueOf(priceTicks));
+    }
+
+    public double getPriceValue() {
+        return priceTicks * tickSize.doubleValue();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public BigDecimal getTickSize() {
+        return tickSize;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public ZonedDateTime getTimeStamp() {
+        return timeStamp;
+    }
+
+    /**
+     * Applies the delta to the book, which should be a copy of the same side
+     * taken before the delta's sequence.
+     *
+     * @param book The book to apply the delta to.
+     */
+    public void applyTo(ArrayMarketDepthBook book) {
+        if (operation == Operation.INSERT) {
+            book.insertLevel(position, priceTicks, size);
+        } else if (operation == Operation.UPDATE) {
+            book.updateLevel(position, priceTicks, size);
+        } else {
+            book.deleteLevel(position);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 29 * hash + Objects.hashCode(this.ticker);
+        hash = 29 * hash + Objects.hashCode(this.side);
+        hash = 29 * hash + Objects.hashCode(this.operation);
+        hash = 29 * hash + this.position;
+        hash = 29 * hash + (int) (this.priceTicks ^ (this.priceTicks >>> 32));
+        hash = 29 * hash + (int) (this.size ^ (this.size >>> 32));
+        hash = 29 * hash + (int) (this.sequence ^ (this.sequence >>> 32));
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final MarketDepthDelta other = (MarketDepthDelta) obj;
+        return this.position == other.position
+                && this.priceTicks == other.priceTicks
+                && this.size == other.size
+                && this.sequence == other.sequence
+                && this.side == other.side
+                && this.operation == other.operation
+                && Objects.equals(this.ticker, other.ticker)
+                && Objects.equals(this.tickSize, other.tickSize)
+                && Objects.equals(this.timeStamp, other.timeStamp);
+    }
+
+    @Override
+    public String toString() {
+        return "MarketDepthDelta{" + "ticker=" + ticker + ", side=" + side + ", operation=" + operation + ", position=" + position
+                + ", priceTicks=" + priceTicks + ", size=" + size + ", sequence=" + sequence + ", timeStamp=" + timeStamp + '}';
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.data.Ticker;
+
+/**
+ * Receives market depth as individual changes to the book rather than the whole
+ * side of the book on every update, so a listener which only tracks the top few
+ * levels does a constant amount of work per update.
+ *
+ * On subscribing the listener is sent a snapshot of each side of the book which
+ * has been quoted, followed by the deltas.  Deltas with a sequence at or below the
+ * sequence of the last snapshot for their side are already reflected in the
+ * snapshot and should be ignored.  Otherwise each delta's sequence is one greater
+ * than the previous one for the side, a larger gap means the listener should
+ * resync from the next snapshot.  If periodic snapshots are enabled on the quote
+ * engine they are delivered the same way.
+ *
+ * Deltas and snapshots are delivered one at a time, in order, through the quote
+ * engine's IQuoteDispatcher.  They are never dropped or merged, so a listener
+ * which falls behind holds up the thread processing the ticker's market depth.
+ *
+ * @author Rob Terpilowski
+ */
+public interface MarketDepthDeltaListener {
+
+    public void marketDepthSnapshotReceived(Ticker ticker, MarketDepthSnapshot snapshot);
+
+    public void marketDepthDeltaReceived(MarketDepthDelta delta);
+}
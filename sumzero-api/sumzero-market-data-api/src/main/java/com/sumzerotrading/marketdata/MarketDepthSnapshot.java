@@ -0,0 +1,79 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.marketdata.MarketDepthBook.Side;
+import java.math.BigDecimal;
+
+/**
+ * A consistent copy of an ArrayMarketDepthBook, taken with
+ * ArrayMarketDepthBook.snapshot().  The snapshot can't be changed, other than by
+ * copying the book into it again, so it can be read from any thread.
+ *
+ * @author Rob Terpilowski
+ */
+public class MarketDepthSnapshot extends ArrayMarketDepthBook {
+
+    public MarketDepthSnapshot(BigDecimal tickSize, int capacity) {
+        super(tickSize, capacity);
+    }
+
+    /**
+     * @return The version of the book the snapshot was taken at.
+     */
+    public long getSequence() {
+        return version;
+    }
+
+    @Override
+    public void setSide(Side side) {
+        throw new UnsupportedOperationException("Market depth snapshots can't be modified");
+    }
+
+    @Override
+    public void clearLevels() {
+        throw new UnsupportedOperationException("Market depth snapshots can't be modified");
+    }
+
+    @Override
+    public void insertLevel(int index, long priceTicks, long size) {
+        throw new UnsupportedOperationException("Market depth snapshots can't be modified");
+    }
+
+    @Override
+    public void updateLevel(int index, long priceTicks, long size) {
+        throw new UnsupportedOperationException("Market depth snapshots can't be modified");
+    }
+
+    @Override
+    public void deleteLevel(int index) {
+        throw new UnsupportedOperationException("Market depth snapshots can't be modified");
+    }
+
+    @Override
+    public void sort() {
+        throw new UnsupportedOperationException("Market depth snapshots can't be modified");
+    }
+
+    @Override
+    public String toString() {
+        return "MarketDepthSnapshot [sequence=" + version + ", " + super.toString() + "]";
+    }
+}
@@ -0,0 +1,460 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.marketdata.MarketDepthBook.Side;
+import com.sumzerotrading.marketdata.MarketDepthDelta.Operation;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One side of a market by market maker book, as sent by IB's updateMktDepthL2
+ * for exchanges such as NASDAQ.  Each row is a single venue's quote, rows are
+ * inserted, updated and deleted by position in the same way as the levels of an
+ * ArrayMarketDepthBook, and are held in parallel primitive arrays.
+ *
+ * The rows are aggregated into price levels as they change, by moving the size of
+ * the changed row between levels of an ArrayMarketDepthBook, so the aggregated
+ * book never has to be rebuilt.  A row change moves size between at most two
+ * levels, the level changes made by the last row change are available from
+ * getChangeCount() and the getChange methods, so they can be published as
+ * MarketDepthDeltas.
+ *
+ * The current size, number of rows and quoting statistics of each venue are kept
+ * as the rows change.  Venues are numbered in the order they are first seen.
+ *
+ * As with ArrayMarketDepthBook the book is changed on a single thread, and only
+ * read on that thread, other threads should take a snapshot of getLevels().
+ *
+ * @author Rob Terpilowski
+ */
+public class MarketMakerDepthBook {
+
+    public static final int DEFAULT_CAPACITY = 128;
+    public static final int UNKNOWN_VENUE = -1;
+    protected static final int MAX_CHANGES = 2;
+    protected static final int INITIAL_VENUE_CAPACITY = 16;
+
+    protected final long[] rowPriceTicks;
+    protected final long[] rowSizes;
+    protected final int[] rowVenues;
+    protected int rowCount = 0;
+    //every row's price fits in the aggregated book, so levels are never dropped
+    protected final ArrayMarketDepthBook levels;
+
+    protected final Map<String, Integer> venueIds = new HashMap<>();
+    protected String[] venueNames = new String[INITIAL_VENUE_CAPACITY];
+    protected long[] venueSizes = new long[INITIAL_VENUE_CAPACITY];
+    protected int[] venueRowCounts = new int[INITIAL_VENUE_CAPACITY];
+    protected long[] venueQuoteCounts = new long[INITIAL_VENUE_CAPACITY];
+    protected long[] venueQuotedSizes = new long[INITIAL_VENUE_CAPACITY];
+    protected int venueCount = 0;
+
+    protected final Operation[] changeOperations = new Operation[MAX_CHANGES];
+    protected final int[] changePositions = new int[MAX_CHANGES];
+    protected final long[] changePriceTicks = new long[MAX_CHANGES];
+    protected final long[] changeSizes = new long[MAX_CHANGES];
+    protected final long[] changeSequences = new long[MAX_CHANGES];
+    protected int changeCount = 0;
+
+    public MarketMakerDepthBook(BigDecimal tickSize, Side side) {
+        this(tickSize, side, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity The maximum number of rows, more rows than were requested from IB are never sent.
+     */
+    public MarketMakerDepthBook(BigDecimal tickSize, Side side, int capacity) {
+        rowPriceTicks = new long[capacity];
+        rowSizes = new long[capacity];
+        rowVenues = new int[capacity];
+        levels = new ArrayMarketDepthBook(tickSize, capacity);
+        levels.setSide(side);
+    }
+
+    /**
+     * @return The rows aggregated into price levels.
+     */
+    public ArrayMarketDepthBook getLevels() {
+        return levels;
+    }
+
+    public Side getSide() {
+        return levels.getSide();
+    }
+
+    public int getCapacity() {
+        return rowPriceTicks.length;
+    }
+
+    /**
+     * Inserts a row, shifting the rows at and after the position down the book.
+     * Positions past the end of the book are ignored.
+     */
+    public void insertRow(int position, String venue, long priceTicks, long size) {
+        changeCount = 0;
+        if (position > rowCount || position >= rowPriceTicks.length) {
+            return;
+        }
+        if (rowCount == rowPriceTicks.length) {
+            //the last row is pushed out of the book
+            removeRow(rowCount - 1);
+            rowCount--;
+        }
+        int moved = rowCount - position;
+        if (moved > 0) {
+            System.arraycopy(rowPriceTicks, position, rowPriceTicks, position + 1, moved);
+            System.arraycopy(rowSizes, position, rowSizes, position + 1, moved);
+            System.arraycopy(rowVenues, position, rowVenues, position + 1, moved);
+        }
+        rowCount++;
+        setRow(position, registerVenue(venue), priceTicks, size);
+        addRow(position);
+    }
+
+    /**
+     * Replaces the row at the position, positions past the end of the book are ignored.
+     */
+    public void updateRow(int position, String venue, long priceTicks, long size) {
+        changeCount = 0;
+        if (position >= rowCount) {
+            return;
+        }
+        int venueId = registerVenue(venue);
+        long oldPriceTicks = rowPriceTicks[position];
+        long oldSize = rowSizes[position];
+        if (rowVenues[position] == venueId && oldPriceTicks == priceTicks) {
+            //the quote has only changed size, so only its level changes
+            venueSizes[venueId] += size - oldSize;
+            countQuote(venueId, size);
+            rowSizes[position] = size;
+            adjustLevel(priceTicks, size - oldSize);
+            return;
+        }
+        removeRow(position);
+        setRow(position, venueId, priceTicks, size);
+        addRow(position);
+    }
+
+    /**
+     * Deletes the row at the position, positions past the end of the book are ignored.
+     */
+    public void deleteRow(int position) {
+        changeCount = 0;
+        if (position >= rowCount) {
+            return;
+        }
+        removeRow(position);
+        int moved = rowCount - position - 1;
+        if (moved > 0) {
+            System.arraycopy(rowPriceTicks, position + 1, rowPriceTicks, position, moved);
+            System.arraycopy(rowSizes, position + 1, rowSizes, position, moved);
+            System.arraycopy(rowVenues, position + 1, rowVenues, position, moved);
+        }
+        rowCount--;
+    }
+
+    /**
+     * Removes all the rows and levels, the venues and their quoting statistics are kept.
+     */
+    public void clear() {
+        changeCount = 0;
+        rowCount = 0;
+        levels.clearLevels();
+        Arrays.fill(venueSizes, 0, venueCount, 0);
+        Arrays.fill(venueRowCounts, 0, venueCount, 0);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public long getRowPriceTicks(int row) {
+        checkRow(row);
+        return rowPriceTicks[row];
+    }
+
+    public long getRowSize(int row) {
+        checkRow(row);
+        return rowSizes[row];
+    }
+
+    public int getRowVenueId(int row) {
+        checkRow(row);
+        return rowVenues[row];
+    }
+
+    public String getRowVenue(int row) {
+        return venueNames[getRowVenueId(row)];
+    }
+
+    /**
+     * @return The number of venues which have quoted in the book.
+     */
+    public int getVenueCount() {
+        return venueCount;
+    }
+
+    /**
+     * @return The venue's id, or UNKNOWN_VENUE if it hasn't quoted in the book.
+     */
+    public int getVenueId(String venue) {
+        Integer id = venueIds.get(venue);
+        return id == null ? UNKNOWN_VENUE : id;
+    }
+
+    public String getVenueName(int venueId) {
+        checkVenue(venueId);
+        return venueNames[venueId];
+    }
+
+    /**
+     * @return The total size of the venue's rows.
+     */
+    public long getVenueSize(int venueId) {
+        checkVenue(venueId);
+        return venueSizes[venueId];
+    }
+
+    /**
+     * @return The number of rows the venue currently has in the book.
+     */
+    public int getVenueRowCount(int venueId) {
+        checkVenue(venueId);
+        return venueRowCounts[venueId];
+    }
+
+    /**
+     * @return The number of quotes the venue has inserted or updated.
+     */
+    public long getVenueQuoteCount(int venueId) {
+        checkVenue(venueId);
+        return venueQuoteCounts[venueId];
+    }
+
+    /**
+     * @return The average size of the quotes the venue has inserted or updated, or
+     * NaN if it hasn't quoted.
+     */
+    public double getVenueAverageQuoteSize(int venueId) {
+        checkVenue(venueId);
+        return venueQuoteCounts[venueId] == 0 ? Double.NaN : (double) venueQuotedSizes[venueId] / venueQuoteCounts[venueId];
+    }
+
+    /**
+     * @return The fraction of the size in the book quoted by the venue, or NaN if the
+     * book is empty.
+     */
+    public double getVenueShare(int venueId) {
+        checkVenue(venueId);
+        long total = levels.getTotalSizeValue();
+        return total == 0 ? Double.NaN : (double) venueSizes[venueId] / total;
+    }
+
+    /**
+     * @return The size the venue is quoting at the price.
+     */
+    public long getVenueSizeAt(int venueId, long priceTicks) {
+        long size = 0;
+        for (int i = 0; i < rowCount; i++) {
+            if (rowVenues[i] == venueId && rowPriceTicks[i] == priceTicks) {
+                size += rowSizes[i];
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return The number of level changes made by the last row change.
+     */
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    public Operation getChangeOperation(int change) {
+        checkChange(change);
+        return changeOperations[change];
+    }
+
+    public int getChangePosition(int change) {
+        checkChange(change);
+        return changePositions[change];
+    }
+
+    /**
+     * @return The price of the changed level, or 0 if it was deleted.
+     */
+    public long getChangePriceTicks(int change) {
+        checkChange(change);
+        return changePriceTicks[change];
+    }
+
+    /**
+     * @return The size of the changed level, or 0 if it was deleted.
+     */
+    public long getChangeSize(int change) {
+        checkChange(change);
+        return changeSizes[change];
+    }
+
+    /**
+     * @return The version of the aggregated book after the change.
+     */
+    public long getChangeSequence(int change) {
+        checkChange(change);
+        return changeSequences[change];
+    }
+
+    protected void setRow(int row, int venueId, long priceTicks, long size) {
+        rowVenues[row] = venueId;
+        rowPriceTicks[row] = priceTicks;
+        rowSizes[row] = size;
+        countQuote(venueId, size);
+    }
+
+    protected void addRow(int row) {
+        int venueId = rowVenues[row];
+        venueSizes[venueId] += rowSizes[row];
+        venueRowCounts[venueId]++;
+        adjustLevel(rowPriceTicks[row], rowSizes[row]);
+    }
+
+    protected void removeRow(int row) {
+        int venueId = rowVenues[row];
+        venueSizes[venueId] -= rowSizes[row];
+        venueRowCounts[venueId]--;
+        adjustLevel(rowPriceTicks[row], -rowSizes[row]);
+    }
+
+    protected void countQuote(int venueId, long size) {
+        venueQuoteCounts[venueId]++;
+        venueQuotedSizes[venueId] += size;
+    }
+
+    /**
+     * Adds the size to the level at the price, creating the level if there isn't one
+     * and deleting it if it has no size left.
+     */
+    protected void adjustLevel(long priceTicks, long size) {
+        if (size == 0) {
+            return;
+        }
+        int index = findLevel(priceTicks);
+        if (index >= 0) {
+            long levelSize = levels.getSize(index) + size;
+            if (levelSize > 0) {
+                levels.updateLevel(index, priceTicks, levelSize);
+                recordChange(Operation.UPDATE, index, priceTicks, levelSize);
+            } else {
+                levels.deleteLevel(index);
+                recordChange(Operation.DELETE, index, 0, 0);
+            }
+        } else if (size > 0) {
+            int insertAt = -index - 1;
+            levels.insertLevel(insertAt, priceTicks, size);
+            recordChange(Operation.INSERT, insertAt, priceTicks, size);
+        }
+    }
+
+    /**
+     * Binary searches the levels, best price first.
+     *
+     * @return The index of the level at the price, or (-(insertion point) - 1) if
+     * there isn't one.
+     */
+    protected int findLevel(long priceTicks) {
+        //bids are searched on their negated price so both sides are in ascending order
+        long key = levels.getSide() == Side.BID ? -priceTicks : priceTicks;
+        int low = 0;
+        int high = levels.getLevelCount() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = levels.getSide() == Side.BID ? -levels.getPriceTicks(mid) : levels.getPriceTicks(mid);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    protected void recordChange(Operation operation, int position, long priceTicks, long size) {
+        changeOperations[changeCount] = operation;
+        changePositions[changeCount] = position;
+        changePriceTicks[changeCount] = priceTicks;
+        changeSizes[changeCount] = size;
+        changeSequences[changeCount] = levels.getVersion();
+        changeCount++;
+    }
+
+    protected int registerVenue(String venue) {
+        Integer id = venueIds.get(venue);
+        if (id != null) {
+            return id;
+        }
+        if (venueCount == venueNames.length) {
+            int capacity = venueCount * 2;
+            venueNames = Arrays.copyOf(venueNames, capacity);
+            venueSizes = Arrays.copyOf(venueSizes, capacity);
+            venueRowCounts = Arrays.copyOf(venueRowCounts, capacity);
+            venueQuoteCounts = Arrays.copyOf(venueQuoteCounts, capacity);
+            venueQuotedSizes = Arrays.copyOf(venueQuotedSizes, capacity);
+        }
+        venueNames[venueCount] = venue;
+        venueIds.put(venue, venueCount);
+        return venueCount++;
+    }
+
+    protected void checkRow(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row: " + row + " Rows: " + rowCount);
+        }
+    }
+
+    protected void checkVenue(int venueId) {
+        if (venueId < 0 || venueId >= venueCount) {
+            throw new IndexOutOfBoundsException("Venue: " + venueId + " Venues: " + venueCount);
+        }
+    }
+
+    protected void checkChange(int change) {
+        if (change < 0 || change >= changeCount) {
+            throw new IndexOutOfBoundsException("Change: " + change + " Changes: " + changeCount);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < rowCount; i++) {
+            if (i > 0) {
+                rows.append(", ");
+            }
+            rows.append(venueNames[rowVenues[i]]).append(':').append(levels.getTickSize().multiply(BigDecimal.valueOf(rowPriceTicks[i])))
+                    .append('x').append(rowSizes[i]);
+        }
+        return "MarketMakerDepthBook [rows=[" + rows + "], side=" + getSide() + "]";
+    }
+}
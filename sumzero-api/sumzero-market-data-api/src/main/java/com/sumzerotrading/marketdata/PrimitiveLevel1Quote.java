@@ -0,0 +1,297 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.data.SumZeroException;
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.time.IClock;
+import com.sumzerotrading.util.QuoteUtil;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * A Level1 quote which holds its values in a primitive array indexed by QuoteType,
+ * with a bitmask recording which types are present. Building one allocates no maps
+ * or BigDecimals. The BigDecimal values returned by getValue() are created the first
+ * time they are asked for, so strategies which only use getDouble()/getLong() never
+ * pay for them.
+ *
+ * Quotes obtained from a PrimitiveLevel1QuotePool must be released back to the pool
+ * by their owner once no listener can still be using them.
+ *
+ * @author Rob Terpilowski
+ */
+public class PrimitiveLevel1Quote extends AbstractQuote implements ILevel1Quote {
+
+    protected static final QuoteType[] QUOTE_TYPES = QuoteType.values();
+
+    protected final double[] values = new double[QUOTE_TYPES.length];
+    protected long presenceMask = 0;
+    protected BigDecimal[] bigDecimalValues;
+    protected QuoteType[] types;
+    protected PrimitiveLevel1QuotePool pool;
+
+    /**
+     * Builds a new, empty quote.
+     *
+     * @param ticker The ticker this quote is for
+     * @param timestamp The time of the quote
+     */
+    public PrimitiveLevel1Quote(Ticker ticker, ZonedDateTime timestamp) {
+        super(ticker, timestamp);
+    }
+
+    /**
+     * Builds a new, empty quote whose timestamp is materialized on demand.
+     *
+     * @param ticker The ticker this quote is for
+     * @param timestampNanos The time of the quote, in nanoseconds since the epoch
+     * @param clock The clock the time was read from
+     */
+    public PrimitiveLevel1Quote(Ticker ticker, long timestampNanos, IClock clock) {
+        super(ticker, timestampNanos, clock);
+    }
+
+    protected PrimitiveLevel1Quote(PrimitiveLevel1QuotePool pool) {
+        super(null, null);
+        this.pool = pool;
+    }
+
+    /**
+     * Sets the value for the specified quote type.
+     *
+     * @param type The type of value to set
+     * @param value The price or size
+     * @return this quote
+     */
+    public PrimitiveLevel1Quote setValue(QuoteType type, double value) {
+        int index = type.ordinal();
+        values[index] = value;
+        presenceMask |= (1L << index);
+        if (bigDecimalValues != null) {
+            bigDecimalValues[index] = null;
+        }
+        types = null;
+        return this;
+    }
+
+    /**
+     * Copies every value present in the other quote into this one, overwriting
+     * values already present for the same types.
+     *
+     * @param other The quote to merge into this one.
+     * @return this quote
+     */
+    public PrimitiveLevel1Quote merge(ILevel1Quote other) {
+        if (other instanceof PrimitiveLevel1Quote) {
+            PrimitiveLevel1Quote primitive = (PrimitiveLevel1Quote) other;
+            long mask = primitive.presenceMask;
+            while (mask != 0) {
+                int index = Long.numberOfTrailingZeros(mask);
+                setValue(QUOTE_TYPES[index], primitive.values[index]);
+                mask &= (mask - 1);
+            }
+        } else {
+            for (QuoteType type : other.getTypes()) {
+                setValue(type, other.getDouble(type));
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public boolean containsType(QuoteType type) {
+        return (presenceMask & (1L << type.ordinal())) != 0;
+    }
+
+    /**
+     * The types present in this quote as a bitmask, bit n is set if the QuoteType
+     * with ordinal n is present.
+     *
+     * @return The type mask.
+     */
+    public long getTypeMask() {
+        return presenceMask;
+    }
+
+    @Override
+    public double getDouble(QuoteType type) {
+        checkContainsType(type);
+        return values[type.ordinal()];
+    }
+
+    @Override
+    public long getLong(QuoteType type) {
+        checkContainsType(type);
+        return Math.round(values[type.ordinal()]);
+    }
+
+    @Override
+    public BigDecimal getValue(QuoteType type) {
+        checkContainsType(type);
+        BigDecimal[] cache = bigDecimalValues;
+        if (cache == null) {
+            cache = new BigDecimal[QUOTE_TYPES.length];
+            bigDecimalValues = cache;
+        }
+        int index = type.ordinal();
+        BigDecimal value = cache[index];
+        if (value == null) {
+            value = toBigDecimal(type, values[index]);
+            cache[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * The array is built once and shared by every call until the quote changes, so
+     * callers must treat it as read-only.  Code on the hot path should prefer
+     * containsType() or getTypeMask(), which allocate nothing.
+     *
+     * @return The types present in this quote, in QuoteType order.
+     */
+    @Override
+    public QuoteType[] getTypes() {
+        QuoteType[] currentTypes = types;
+        if (currentTypes == null) {
+            currentTypes = new QuoteType[Long.bitCount(presenceMask)];
+            long mask = presenceMask;
+            int i = 0;
+            while (mask != 0) {
+                currentTypes[i++] = QUOTE_TYPES[Long.numberOfTrailingZeros(mask)];
+                mask &= (mask - 1);
+            }
+            types = currentTypes;
+        }
+        return currentTypes;
+    }
+
+    /**
+     * Returns this quote to the pool it was acquired from.  Has no effect on quotes
+     * which were not obtained from a pool.
+     */
+    public void release() {
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
+
+    protected void reset(Ticker ticker, ZonedDateTime timestamp) {
+        reset(ticker, timestamp, 0, null);
+    }
+
+    protected void reset(Ticker ticker, ZonedDateTime timestamp, long timestampNanos, IClock clock) {
+        this.ticker = ticker;
+        this.timeStamp = timestamp;
+        this.timeStampNanos = timestampNanos;
+        this.clock = clock;
+        presenceMask = 0;
+        types = null;
+        if (bigDecimalValues != null) {
+            Arrays.fill(bigDecimalValues, null);
+        }
+    }
+
+    protected BigDecimal toBigDecimal(QuoteType type, double value) {
+        switch (type) {
+            case BID_SIZE:
+            case ASK_SIZE:
+            case LAST_SIZE:
+            case VOLUME:
+                return BigDecimal.valueOf(Math.round(value)).setScale(0, RoundingMode.HALF_UP);
+            case BID:
+            case ASK:
+            case LAST:
+            case OPEN:
+            case CLOSE:
+            case MIDPOINT:
+                if (ticker != null && ticker.getMinimumTickSize() != null) {
+                    return QuoteUtil.getBigDecimalValue(ticker, value);
+                }
+            default:
+                return BigDecimal.valueOf(value);
+        }
+    }
+
+    protected void checkContainsType(QuoteType type) {
+        if (!containsType(type)) {
+            throw new SumZeroException("Quote does not contain type: " + type);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 29 * hash + (int) (presenceMask ^ (presenceMask >>> 32));
+        long mask = presenceMask;
+        while (mask != 0) {
+            int index = Long.numberOfTrailingZeros(mask);
+            long bits = Double.doubleToLongBits(values[index]);
+            hash = 29 * hash + (int) (bits ^ (bits >>> 32));
+            mask &= (mask - 1);
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final PrimitiveLevel1Quote other = (PrimitiveLevel1Quote) obj;
+        if (presenceMask != other.presenceMask) {
+            return false;
+        }
+        long mask = presenceMask;
+        while (mask != 0) {
+            int index = Long.numberOfTrailingZeros(mask);
+            if (Double.doubleToLongBits(values[index]) != Double.doubleToLongBits(other.values[index])) {
+                return false;
+            }
+            mask &= (mask - 1);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("PrimitiveLevel1Quote{ticker=");
+        sb.append(ticker == null ? null : ticker.getSymbol()).append(", values={");
+        long mask = presenceMask;
+        while (mask != 0) {
+            int index = Long.numberOfTrailingZeros(mask);
+            sb.append(QUOTE_TYPES[index]).append('=').append(values[index]);
+            mask &= (mask - 1);
+            if (mask != 0) {
+                sb.append(", ");
+            }
+        }
+        return sb.append("}, timestamp=").append(getTimeStamp()).append('}').toString();
+    }
+
+}
@@ -0,0 +1,96 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.marketdata.dispatch.BoundedQueue;
+import com.sumzerotrading.time.IClock;
+import java.time.ZonedDateTime;
+
+/**
+ * A pool of reusable PrimitiveLevel1Quote objects. Recycling is only safe when the
+ * owner of a quote knows that no listener will use it after it has been released,
+ * for example when quotes are delivered with a SynchronousQuoteDispatcher to
+ * listeners that don't keep a reference to the quote.
+ *
+ * @author Rob Terpilowski
+ */
+public class PrimitiveLevel1QuotePool {
+
+    protected final BoundedQueue<PrimitiveLevel1Quote> freeQuotes;
+
+    /**
+     * @param maxPooledQuotes The maximum number of released quotes kept for reuse.
+     */
+    public PrimitiveLevel1QuotePool(int maxPooledQuotes) {
+        freeQuotes = new BoundedQueue<>(maxPooledQuotes);
+    }
+
+    /**
+     * Gets an empty quote from the pool, creating a new one if the pool is empty.
+     *
+     * @param ticker The ticker the quote is for
+     * @param timestamp The time of the quote
+     * @return An empty quote for the specified ticker.
+     */
+    public PrimitiveLevel1Quote acquire(Ticker ticker, ZonedDateTime timestamp) {
+        PrimitiveLevel1Quote quote = freeQuotes.poll();
+        if (quote == null) {
+            quote = new PrimitiveLevel1Quote(this);
+        }
+        quote.reset(ticker, timestamp);
+        return quote;
+    }
+
+    /**
+     * Gets an empty quote from the pool, creating a new one if the pool is empty.
+     *
+     * @param ticker The ticker the quote is for
+     * @param timestampNanos The time of the quote, in nanoseconds since the epoch
+     * @param clock The clock the time was read from
+     * @return An empty quote for the specified ticker.
+     */
+    public PrimitiveLevel1Quote acquire(Ticker ticker, long timestampNanos, IClock clock) {
+        PrimitiveLevel1Quote quote = freeQuotes.poll();
+        if (quote == null) {
+            quote = new PrimitiveLevel1Quote(this);
+        }
+        quote.reset(ticker, null, timestampNanos, clock);
+        return quote;
+    }
+
+    /**
+     * Returns the quote to the pool.  If the pool is full the quote is left for
+     * the garbage collector.
+     *
+     * @param quote The quote to return.
+     */
+    public void release(PrimitiveLevel1Quote quote) {
+        freeQuotes.offer(quote);
+    }
+
+    /**
+     * @return The number of quotes available for reuse.
+     */
+    public int getAvailableCount() {
+        return freeQuotes.size();
+    }
+
+}
@@ -22,6 +22,13 @@ package com.sumzerotrading.marketdata;
 import java.util.*;
 
 import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
+import com.sumzerotrading.data.TickerTable;
+import com.sumzerotrading.marketdata.dispatch.IQuoteDispatcher;
+import com.sumzerotrading.marketdata.dispatch.ListenerStats;
+import com.sumzerotrading.marketdata.dispatch.PooledQuoteDispatcher;
+import com.sumzerotrading.marketdata.dispatch.SlowConsumerHandler;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Logger;
 
 /**
@@ -32,13 +39,28 @@ import org.apache.log4j.Logger;
  */
 public abstract class QuoteEngine implements IQuoteEngine {
 
+    protected static final int DEPTH_DELTA_LOCK_COUNT = 64;
+
     protected List<ErrorListener> errorListeners;
-    protected Map<Ticker, List<Level1QuoteListener>> level1ListenerMap = Collections.synchronizedMap(new HashMap<Ticker, List<Level1QuoteListener>>());
-    protected Map<Ticker, List<Level2QuoteListener>> level2ListenerMap = Collections.synchronizedMap(new HashMap<Ticker, List<Level2QuoteListener>>());
+    protected TickerRegistry tickerRegistry = TickerRegistry.getInstance();
+    protected ListenerRegistry<Level1QuoteListener> level1ListenerRegistry = new ListenerRegistry<>(Level1QuoteListener[]::new, tickerRegistry);
+    protected ListenerRegistry<Level2QuoteListener> level2ListenerRegistry = new ListenerRegistry<>(Level2QuoteListener[]::new, tickerRegistry);
     protected Logger logger = Logger.getLogger( QuoteEngine.class );
+    protected IQuoteDispatcher quoteDispatcher = new PooledQuoteDispatcher();
+    protected LastValueCache lastValueCache = new LastValueCache(tickerRegistry);
+    //the gates of listeners still being sent their first snapshot, indexed by ticker id, null once there are none.
+    protected final TickerTable<Level1SnapshotGate[]> level1SnapshotGates = new TickerTable<>();
+    protected ListenerRegistry<MarketDepthDeltaListener> depthDeltaListenerRegistry = new ListenerRegistry<>(MarketDepthDeltaListener[]::new, tickerRegistry);
+    //deltas and snapshots for a ticker are queued to the listeners' mailboxes under one of these locks, so a new listener's snapshot is queued in order with them.
+    protected final Object[] depthDeltaLocks = new Object[DEPTH_DELTA_LOCK_COUNT];
+    protected volatile int marketDepthSnapshotInterval = 0;
 
     public QuoteEngine() {
         errorListeners = new ArrayList<ErrorListener>();
+        for (int i = 0; i < depthDeltaLocks.length; i++) {
+            depthDeltaLocks[i] = new Object();
+        }
+        quoteDispatcher.setSlowConsumerHandler(new DisconnectHandler());
     }
 
     public void addErrorListener(ErrorListener listener) {
@@ -62,92 +84,333 @@ public abstract class QuoteEngine implements IQuoteEngine {
     }
 
     public void subscribeLevel1(Ticker ticker, Level1QuoteListener listener) {
-        synchronized (level1ListenerMap) {
-            List<Level1QuoteListener> listeners = level1ListenerMap.get(ticker);
-            if (listeners == null) {
-                listeners = Collections.synchronizedList(new ArrayList<Level1QuoteListener>());
-                level1ListenerMap.put(ticker, listeners);
-            }
-            synchronized (listeners) {
-                listeners.add(listener);
+        int tickerId = tickerRegistry.register(ticker);
+        //the gate is added before the listener, so any thread firing a quote to the listener finds it.
+        Level1SnapshotGate gate = new Level1SnapshotGate(listener);
+        addSnapshotGate(tickerId, gate);
+        level1ListenerRegistry.addListener(ticker, listener);
+        //bring the new listener up to date, unless a quote fired since it was added already has.
+        gate.getSnapshotSequence(tickerId);
+    }
+
+    public void unsubscribeLevel1(Ticker ticker, Level1QuoteListener listener) {
+        int tickerId = tickerRegistry.getId(ticker);
+        if (tickerId != TickerRegistry.UNKNOWN_ID) {
+            removeSnapshotGate(tickerId, listener);
+        }
+        level1ListenerRegistry.removeListener(ticker, listener);
+        if (!level1ListenerRegistry.isSubscribed(listener)) {
+            quoteDispatcher.removeLevel1Listener(listener);
+        }
+    }
+
+    @Override
+    public void fireLevel1Quote(final ILevel1Quote quote) {
+        Ticker ticker = quote.getTicker();
+        if (ticker == null) {
+            return;
+        }
+        fireLevel1Quote(tickerRegistry.register(ticker), quote);
+    }
+
+    @Override
+    public void fireLevel1Quote(int tickerId, ILevel1Quote quote) {
+        long sequence = lastValueCache.update(tickerId, quote);
+        //the listener array is never modified once published, so it can be iterated without copying.
+        Level1QuoteListener[] listeners = level1ListenerRegistry.getListeners(tickerId);
+        //read after the listeners, so the gate of a listener which is still subscribing is seen.
+        Level1SnapshotGate[] gates = level1SnapshotGates.get(tickerId);
+        for (Level1QuoteListener listener : listeners) {
+            if (gates == null || isAdmitted(tickerId, gates, listener, sequence)) {
+                quoteDispatcher.dispatchLevel1Quote(tickerId, listener, quote);
             }
         }
     }
 
-    public void unsubscribeLevel1(Ticker ticker, Level1QuoteListener listener) {
-        synchronized (level1ListenerMap) {
-            List<Level1QuoteListener> listeners = level1ListenerMap.get(ticker);
-            if (listeners != null) {
-                synchronized (listeners) {
-                    listeners.remove(listener);
-                }
+    @Override
+    public void fireMarketDepthQuote(ILevel2Quote quote) {
+        fireMarketDepthQuote(tickerRegistry.getId(quote.getTicker()), quote);
+    }
+
+    @Override
+    public void fireMarketDepthQuote(int tickerId, ILevel2Quote quote) {
+        Level2QuoteListener[] listeners = level2ListenerRegistry.getListeners(tickerId);
+        for (Level2QuoteListener listener : listeners) {
+            quoteDispatcher.dispatchMarketDepthQuote(tickerId, listener, quote);
+        }
+    }
+
+    /**
+     * Sets the dispatcher used to deliver quotes to listeners.  Should be called
+     * before any subscriptions are made.
+     *
+     * @param quoteDispatcher The dispatcher to deliver quotes with.
+     */
+    public void setQuoteDispatcher(IQuoteDispatcher quoteDispatcher) {
+        this.quoteDispatcher.stop();
+        this.quoteDispatcher = quoteDispatcher;
+        quoteDispatcher.setSlowConsumerHandler(new DisconnectHandler());
+    }
+
+    public IQuoteDispatcher getQuoteDispatcher() {
+        return quoteDispatcher;
+    }
+
+    @Override
+    public ILevel1Quote getSnapshot(Ticker ticker) {
+        return lastValueCache.getSnapshot(ticker);
+    }
+
+    public LastValueCache getLastValueCache() {
+        return lastValueCache;
+    }
+
+    public TickerRegistry getTickerRegistry() {
+        return tickerRegistry;
+    }
+
+    @Override
+    public ListenerStats getLevel1ListenerStats(Level1QuoteListener listener) {
+        return quoteDispatcher.getLevel1ListenerStats(listener);
+    }
+
+    @Override
+    public ListenerStats getMarketDepthListenerStats(Level2QuoteListener listener) {
+        return quoteDispatcher.getMarketDepthListenerStats(listener);
+    }
+
+    public void subscribeMarketDepth(Ticker ticker, Level2QuoteListener listener) {
+        level2ListenerRegistry.addListener(ticker, listener);
+    }
+
+    public void unsubscribeMarketDepth(Ticker ticker, Level2QuoteListener listener) {
+        level2ListenerRegistry.removeListener(ticker, listener);
+        if (!level2ListenerRegistry.isSubscribed(listener)) {
+            quoteDispatcher.removeMarketDepthListener(listener);
+        }
+    }
+
+    @Override
+    public void subscribeMarketDepthDeltas(Ticker ticker, MarketDepthDeltaListener listener) {
+        int tickerId = tickerRegistry.register(ticker);
+        synchronized (getDepthDeltaLock(tickerId)) {
+            //the listener is added before the snapshot is taken, so any change missing from the snapshot is delivered as a delta.
+            depthDeltaListenerRegistry.addListener(ticker, listener);
+            sendMarketDepthSnapshots(ticker, listener);
+        }
+    }
+
+    @Override
+    public void unsubscribeMarketDepthDeltas(Ticker ticker, MarketDepthDeltaListener listener) {
+        depthDeltaListenerRegistry.removeListener(ticker, listener);
+        if (!depthDeltaListenerRegistry.isSubscribed(listener)) {
+            quoteDispatcher.removeMarketDepthDeltaListener(listener);
+        }
+    }
+
+    /**
+     * Sends the listener a fresh snapshot of each side of the ticker's book, for a
+     * listener which has missed deltas and doesn't want to wait for the next
+     * periodic snapshot.
+     *
+     * @param ticker The ticker the listener is subscribed to
+     * @param listener The listener to resync
+     */
+    public void resyncMarketDepthDeltas(Ticker ticker, MarketDepthDeltaListener listener) {
+        synchronized (getDepthDeltaLock(tickerRegistry.register(ticker))) {
+            sendMarketDepthSnapshots(ticker, listener);
+        }
+    }
+
+    @Override
+    public boolean hasMarketDepthListeners(Ticker ticker) {
+        return level2ListenerRegistry.hasListeners(ticker);
+    }
+
+    @Override
+    public boolean hasMarketDepthDeltaListeners(Ticker ticker) {
+        return depthDeltaListenerRegistry.hasListeners(ticker);
+    }
+
+    @Override
+    public void fireMarketDepthDelta(MarketDepthDelta delta) {
+        int tickerId = tickerRegistry.getId(delta.getTicker());
+        if (depthDeltaListenerRegistry.getListeners(tickerId).length == 0) {
+            return;
+        }
+        synchronized (getDepthDeltaLock(tickerId)) {
+            for (MarketDepthDeltaListener listener : depthDeltaListenerRegistry.getListeners(tickerId)) {
+                quoteDispatcher.dispatchMarketDepthDelta(tickerId, listener, delta);
             }
         }
     }
 
     @Override
-    public void fireLevel1Quote(final ILevel1Quote quote) {
-        synchronized (level1ListenerMap) {
-            List<Level1QuoteListener> listeners = level1ListenerMap.get(quote.getTicker());
-            if (listeners == null) {
-                return;
+    public void fireMarketDepthSnapshot(Ticker ticker, MarketDepthSnapshot snapshot) {
+        int tickerId = tickerRegistry.getId(ticker);
+        if (depthDeltaListenerRegistry.getListeners(tickerId).length == 0) {
+            return;
+        }
+        synchronized (getDepthDeltaLock(tickerId)) {
+            for (MarketDepthDeltaListener listener : depthDeltaListenerRegistry.getListeners(tickerId)) {
+                quoteDispatcher.dispatchMarketDepthSnapshot(tickerId, listener, ticker, snapshot);
             }
-            for (final Level1QuoteListener listener : listeners) {
-                try {
-                    synchronized (listeners) {
-                        Thread thread = new Thread(new Runnable() {
-                            public void run() {
-                                listener.quoteRecieved(quote);
-                            }
-                        });
-                        thread.start();
-                    }
-                } catch (Exception ex) {
-                    //don't let 1 listener blowing up prevent other listeners from getting the quote.
-                    //     logger.error(ex, ex);
+        }
+    }
+
+    /**
+     * Sets how many changes to a side of a book are delivered to delta listeners
+     * between full snapshots of the side.
+     *
+     * @param marketDepthSnapshotInterval The number of changes, or 0 to only send a snapshot on subscribing.
+     */
+    public void setMarketDepthSnapshotInterval(int marketDepthSnapshotInterval) {
+        if (marketDepthSnapshotInterval < 0) {
+            throw new IllegalArgumentException("Snapshot interval can't be negative: " + marketDepthSnapshotInterval);
+        }
+        this.marketDepthSnapshotInterval = marketDepthSnapshotInterval;
+    }
+
+    @Override
+    public int getMarketDepthSnapshotInterval() {
+        return marketDepthSnapshotInterval;
+    }
+
+    /**
+     * Gets a consistent copy of one side of the ticker's live market depth book.
+     * Overridden by quote engines which keep ArrayMarketDepthBooks.
+     *
+     * @return The snapshot, or null if the side hasn't been quoted.
+     */
+    protected MarketDepthSnapshot getMarketDepthSnapshot(Ticker ticker, MarketDepthBook.Side side) {
+        return null;
+    }
+
+    protected void sendMarketDepthSnapshots(Ticker ticker, MarketDepthDeltaListener listener) {
+        int tickerId = tickerRegistry.register(ticker);
+        MarketDepthSnapshot bids = getMarketDepthSnapshot(ticker, MarketDepthBook.Side.BID);
+        if (bids != null) {
+            quoteDispatcher.dispatchMarketDepthSnapshot(tickerId, listener, ticker, bids);
+        }
+        MarketDepthSnapshot asks = getMarketDepthSnapshot(ticker, MarketDepthBook.Side.ASK);
+        if (asks != null) {
+            quoteDispatcher.dispatchMarketDepthSnapshot(tickerId, listener, ticker, asks);
+        }
+    }
+
+    /**
+     * Checks a live quote against the listener's gate, if it is still subscribing.
+     * The gate is removed once a quote newer than its snapshot has passed it.
+     *
+     * @return false if the listener's snapshot already includes the quote.
+     */
+    protected boolean isAdmitted(int tickerId, Level1SnapshotGate[] gates, Level1QuoteListener listener, long sequence) {
+        for (Level1SnapshotGate gate : gates) {
+            if (gate.listener.equals(listener)) {
+                if (sequence <= gate.getSnapshotSequence(tickerId)) {
+                    return false;
                 }
+                removeSnapshotGate(tickerId, listener);
+                return true;
             }
         }
+        return true;
     }
 
-    @Override
-    public void fireMarketDepthQuote(ILevel2Quote quote) {
-        synchronized (level2ListenerMap) {
-            List<Level2QuoteListener> listeners = level2ListenerMap.get(quote.getTicker());
-            if (listeners == null) {
+    protected void addSnapshotGate(int tickerId, Level1SnapshotGate gate) {
+        synchronized (level1SnapshotGates) {
+            Level1SnapshotGate[] gates = level1SnapshotGates.get(tickerId);
+            if (gates == null) {
+                gates = new Level1SnapshotGate[]{gate};
+            } else {
+                gates = Arrays.copyOf(gates, gates.length + 1);
+                gates[gates.length - 1] = gate;
+            }
+            level1SnapshotGates.set(tickerId, gates);
+        }
+    }
+
+    protected void removeSnapshotGate(int tickerId, Level1QuoteListener listener) {
+        synchronized (level1SnapshotGates) {
+            Level1SnapshotGate[] gates = level1SnapshotGates.get(tickerId);
+            if (gates == null) {
                 return;
             }
-            for (Level2QuoteListener listener : listeners) {
-                try {
-                    synchronized (listeners) {
-                        Thread thread = new Thread(() -> {
-                            listener.level2QuoteReceived(quote);
-                        });
-                        thread.start();
-                    }
-                } catch (Exception ex) {
-                    //   logger.error(ex, ex);
+            List<Level1SnapshotGate> remaining = new ArrayList<>();
+            for (Level1SnapshotGate gate : gates) {
+                if (!gate.listener.equals(listener)) {
+                    remaining.add(gate);
                 }
             }
+            if (remaining.size() != gates.length) {
+                level1SnapshotGates.set(tickerId, remaining.isEmpty() ? null : remaining.toArray(new Level1SnapshotGate[remaining.size()]));
+            }
         }
     }
 
-    public void subscribeMarketDepth(Ticker ticker, Level2QuoteListener listener) {
-        synchronized (ticker) {
-            List<Level2QuoteListener> listeners = level2ListenerMap.get(ticker);
-            if (listeners == null) {
-                listeners = Collections.synchronizedList(new ArrayList<Level2QuoteListener>());
-                level2ListenerMap.put(ticker, listeners);
+    protected Object getDepthDeltaLock(int tickerId) {
+        return depthDeltaLocks[tickerId & (DEPTH_DELTA_LOCK_COUNT - 1)];
+    }
+
+    /**
+     * Holds back live quotes from a listener which is subscribing to a ticker until
+     * its snapshot has been queued, so the snapshot never follows a newer quote, and
+     * drops the quotes the snapshot already includes.  The snapshot is sent by the
+     * subscribing thread, or by a thread firing a quote to the listener if it gets
+     * there first, the other waits for it.
+     */
+    protected class Level1SnapshotGate {
+
+        protected static final long PENDING = -1;
+        protected static final long SENDING = -2;
+
+        protected final Level1QuoteListener listener;
+        protected final AtomicLong snapshotSequence = new AtomicLong(PENDING);
+
+        protected Level1SnapshotGate(Level1QuoteListener listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * Sends the snapshot if no other thread has started to.
+         *
+         * @return The last value cache sequence of the snapshot, quotes at or below it are already included.
+         */
+        protected long getSnapshotSequence(int tickerId) {
+            long sequence = snapshotSequence.get();
+            while (sequence < 0) {
+                if (sequence == PENDING && snapshotSequence.compareAndSet(PENDING, SENDING)) {
+                    sequence = 0;
+                    try {
+                        sequence = lastValueCache.getSnapshot(tickerId, snapshot -> quoteDispatcher.dispatchLevel1Quote(tickerId, listener, snapshot));
+                    } finally {
+                        snapshotSequence.set(sequence);
+                    }
+                } else {
+                    Thread.yield();
+                    sequence = snapshotSequence.get();
+                }
             }
-            listeners.add(listener);
+            return sequence;
         }
     }
 
-    public void unsubscribeMarketDepth(Ticker ticker, Level2QuoteListener listener) {
-        synchronized (ticker) {
-            List<Level2QuoteListener> listeners = level2ListenerMap.get(ticker);
-            if (listeners != null) {
-                listeners.remove(listener);
+    /**
+     * Unsubscribes listeners which the dispatcher has disconnected for falling behind.
+     */
+    protected class DisconnectHandler implements SlowConsumerHandler {
+
+        @Override
+        public void level1ListenerDisconnected(Level1QuoteListener listener) {
+            for (Ticker ticker : level1ListenerRegistry.getTickers(listener)) {
+                unsubscribeLevel1(ticker, listener);
+            }
+        }
+
+        @Override
+        public void marketDepthListenerDisconnected(Level2QuoteListener listener) {
+            for (Ticker ticker : level2ListenerRegistry.getTickers(listener)) {
+                unsubscribeMarketDepth(ticker, listener);
             }
         }
     }
@@ -0,0 +1,73 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Parks idle threads on a condition variable. Uses no CPU while idle at the cost
+ * of a wake-up on the producer side. Producers only take the lock when a thread
+ * is actually waiting.
+ *
+ * @author Rob Terpilowski
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+    protected final ReentrantLock lock = new ReentrantLock();
+    protected final Condition workAvailableCondition = lock.newCondition();
+    protected final AtomicInteger waiters = new AtomicInteger();
+
+    @Override
+    public void waitFor(BooleanSupplier workAvailable) throws InterruptedException {
+        if (workAvailable.getAsBoolean()) {
+            return;
+        }
+        lock.lock();
+        try {
+            waiters.incrementAndGet();
+            try {
+                while (!workAvailable.getAsBoolean()) {
+                    workAvailableCondition.await(100, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                waiters.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signalAll() {
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                workAvailableCondition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed capacity, lock free queue backed by an array. Each slot carries a sequence
+ * number which tells producers and consumers whether the slot is free or holds a
+ * published element, so neither side needs a lock and nothing is allocated per
+ * element. Safe for multiple producers and multiple consumers.
+ *
+ * Each element can carry an int tag, such as the id of its ticker, which is
+ * returned with it by poll(int[]).
+ *
+ * @author Rob Terpilowski
+ * @param <E> The type of element held in the queue
+ */
+public class BoundedQueue<E> {
+
+    protected final Object[] buffer;
+    protected final int[] tags;
+    protected final AtomicLongArray sequences;
+    protected final int mask;
+    protected final AtomicLong tail = new AtomicLong();
+    protected final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param requestedCapacity The minimum capacity of the queue, rounded up to
+     * the next power of 2.
+     */
+    public BoundedQueue(int requestedCapacity) {
+        if (requestedCapacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + requestedCapacity);
+        }
+        int capacity = Integer.highestOneBit(requestedCapacity);
+        if (capacity < requestedCapacity) {
+            capacity <<= 1;
+        }
+        buffer = new Object[capacity];
+        tags = new int[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * Adds the element to the tail of the queue.
+     *
+     * @param element The element to add.
+     * @return false if the queue is full.
+     */
+    public boolean offer(E element) {
+        return offer(element, 0);
+    }
+
+    /**
+     * Adds the element to the tail of the queue.
+     *
+     * @param element The element to add.
+     * @param tag The tag returned with the element by poll(int[]).
+     * @return false if the queue is full.
+     */
+    public boolean offer(E element, int tag) {
+        long position = tail.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        buffer[index] = element;
+        tags[index] = tag;
+        sequences.set(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Removes the element at the head of the queue.
+     *
+     * @return The head of the queue, or null if the queue is empty.
+     */
+    public E poll() {
+        return poll(null);
+    }
+
+    /**
+     * Removes the element at the head of the queue.
+     *
+     * @param tag If not null, the first element is set to the tag the element was
+     * offered with.
+     * @return The head of the queue, or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll(int[] tag) {
+        long position = head.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+        E element = (E) buffer[index];
+        if (tag != null) {
+            tag[0] = tags[index];
+        }
+        buffer[index] = null;
+        sequences.set(index, position + mask + 1);
+        return element;
+    }
+
+    /**
+     * @return The approximate number of elements in the queue.
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, buffer.length);
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Removes all elements from the queue.
+     */
+    public void clear() {
+        while (poll() != null) {
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.marketdata.ILevel1Quote;
+import com.sumzerotrading.marketdata.ILevel2Quote;
+import com.sumzerotrading.marketdata.Level1QuoteListener;
+import com.sumzerotrading.marketdata.Level2QuoteListener;
+import com.sumzerotrading.marketdata.MarketDepthDelta;
+import com.sumzerotrading.marketdata.MarketDepthDeltaListener;
+import com.sumzerotrading.marketdata.MarketDepthSnapshot;
+
+/**
+ * Delivers quotes from a quote engine to its listeners. Implementations decide
+ * which thread a listener is invoked on, but must deliver quotes to any single
+ * listener in the order they were dispatched.
+ *
+ * The quote engine passes the TickerRegistry id of the quote's ticker with each
+ * quote, so dispatchers can keep their per ticker state in arrays indexed by the
+ * id rather than hashing the ticker for every quote.
+ *
+ * @author Rob Terpilowski
+ */
+public interface IQuoteDispatcher {
+
+    /**
+     * Queues the level 1 quote for delivery to the specified listener.
+     *
+     * @param listener The listener to deliver the quote to
+     * @param quote The quote to deliver
+     */
+    public void dispatchLevel1Quote(Level1QuoteListener listener, ILevel1Quote quote);
+
+    /**
+     * Queues the level 1 quote for delivery to the specified listener.
+     *
+     * @param tickerId The TickerRegistry id of the quote's ticker
+     * @param listener The listener to deliver the quote to
+     * @param quote The quote to deliver
+     */
+    public default void dispatchLevel1Quote(int tickerId, Level1QuoteListener listener, ILevel1Quote quote) {
+        dispatchLevel1Quote(listener, quote);
+    }
+
+    /**
+     * Queues the market depth quote for delivery to the specified listener.
+     *
+     * @param listener The listener to deliver the quote to
+     * @param quote The quote to deliver
+     */
+    public void dispatchMarketDepthQuote(Level2QuoteListener listener, ILevel2Quote quote);
+
+    /**
+     * Queues the market depth quote for delivery to the specified listener.
+     *
+     * @param tickerId The TickerRegistry id of the quote's ticker
+     * @param listener The listener to deliver the quote to
+     * @param quote The quote to deliver
+     */
+    public default void dispatchMarketDepthQuote(int tickerId, Level2QuoteListener listener, ILevel2Quote quote) {
+        dispatchMarketDepthQuote(listener, quote);
+    }
+
+    /**
+     * Queues the market depth delta for delivery to the specified listener.  Deltas
+     * and snapshots dispatched to a listener are delivered in the order they were
+     * dispatched, and are never dropped or merged, as the listener's copy of the
+     * book would no longer match the live book.
+     *
+     * @param listener The listener to deliver the delta to
+     * @param delta The delta to deliver
+     */
+    public void dispatchMarketDepthDelta(MarketDepthDeltaListener listener, MarketDepthDelta delta);
+
+    /**
+     * Queues the market depth delta for delivery to the specified listener.
+     *
+     * @param tickerId The TickerRegistry id of the delta's ticker
+     * @param listener The listener to deliver the delta to
+     * @param delta The delta to deliver
+     */
+    public default void dispatchMarketDepthDelta(int tickerId, MarketDepthDeltaListener listener, MarketDepthDelta delta) {
+        dispatchMarketDepthDelta(listener, delta);
+    }
+
+    /**
+     * Queues a snapshot of one side of the ticker's book for delivery to the specified
+     * listener, in order with the deltas dispatched to it.
+     *
+     * @param listener The listener to deliver the snapshot to
+     * @param ticker The ticker the snapshot is of
+     * @param snapshot The snapshot to deliver
+     */
+    public void dispatchMarketDepthSnapshot(MarketDepthDeltaListener listener, Ticker ticker, MarketDepthSnapshot snapshot);
+
+    /**
+     * Queues a snapshot of one side of the ticker's book for delivery to the specified
+     * listener, in order with the deltas dispatched to it.
+     *
+     * @param tickerId The TickerRegistry id of the ticker
+     * @param listener The listener to deliver the snapshot to
+     * @param ticker The ticker the snapshot is of
+     * @param snapshot The snapshot to deliver
+     */
+    public default void dispatchMarketDepthSnapshot(int tickerId, MarketDepthDeltaListener listener, Ticker ticker, MarketDepthSnapshot snapshot) {
+        dispatchMarketDepthSnapshot(listener, ticker, snapshot);
+    }
+
+    /**
+     * Releases any resources held on behalf of a level 1 listener that no
+     * longer has any subscriptions. Undelivered quotes may be discarded.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeLevel1Listener(Level1QuoteListener listener);
+
+    /**
+     * Releases any resources held on behalf of a market depth listener that
+     * no longer has any subscriptions. Undelivered quotes may be discarded.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeMarketDepthListener(Level2QuoteListener listener);
+
+    /**
+     * Releases any resources held on behalf of a market depth delta listener that
+     * no longer has any subscriptions. Undelivered deltas may be discarded.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeMarketDepthDeltaListener(MarketDepthDeltaListener listener);
+
+    /**
+     * Gets the delivery statistics for a level 1 listener.
+     *
+     * @param listener The listener to get the statistics for
+     * @return The listener's statistics, or null if the dispatcher doesn't track them
+     * or no quotes have been dispatched to the listener.
+     */
+    public default ListenerStats getLevel1ListenerStats(Level1QuoteListener listener) {
+        return null;
+    }
+
+    /**
+     * Gets the delivery statistics for a market depth listener.
+     *
+     * @param listener The listener to get the statistics for
+     * @return The listener's statistics, or null if the dispatcher doesn't track them
+     * or no quotes have been dispatched to the listener.
+     */
+    public default ListenerStats getMarketDepthListenerStats(Level2QuoteListener listener) {
+        return null;
+    }
+
+    /**
+     * Sets the handler notified when a listener is disconnected for falling behind.
+     * Dispatchers which never disconnect listeners can ignore this.
+     *
+     * @param handler The handler to notify.
+     */
+    public default void setSlowConsumerHandler(SlowConsumerHandler handler) {
+    }
+
+    /**
+     * Starts the dispatcher. Calling start on a running dispatcher has no effect.
+     */
+    public void start();
+
+    /**
+     * Stops the dispatcher and any threads it owns.  Quotes dispatched after the
+     * dispatcher has been stopped are discarded until it is started again.
+     */
+    public void stop();
+
+}
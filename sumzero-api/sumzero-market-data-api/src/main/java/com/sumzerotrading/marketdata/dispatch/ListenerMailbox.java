@@ -0,0 +1,280 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+import com.sumzerotrading.marketdata.IQuote;
+import com.sumzerotrading.time.IClock;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import org.apache.log4j.Logger;
+
+/**
+ * Bounded queue of quotes waiting to be delivered to a single listener. A
+ * mailbox is drained by at most one dispatcher thread at a time, which is what
+ * guarantees in-order delivery to its listener.  Each quote is queued with the
+ * TickerRegistry id of its ticker, which indexes the listener's lag per ticker
+ * and the slots quotes are conflated into.
+ *
+ * @author Rob Terpilowski
+ */
+class ListenerMailbox<L, Q extends IQuote> {
+
+    protected static final Logger logger = Logger.getLogger(ListenerMailbox.class);
+
+    protected final L listener;
+    protected final BiConsumer<L, Q> deliverer;
+    protected final BoundedQueue<Q> queue;
+    protected final AtomicBoolean scheduled = new AtomicBoolean(false);
+    protected final ListenerStats stats;
+    protected final IClock clock;
+    protected final ConflationSlot<Q> conflationSlot;
+    protected final BinaryOperator<Q> conflater;
+    //guarded by this, only used once the mailbox has overflowed under CONFLATE_TO_LATEST.  The quotes are
+    //indexed by their slot, and delivered in the order the slots were first used.
+    protected Object[] conflatedQuotes;
+    protected int[] conflatedTickerIds;
+    protected int[] conflatedOrder;
+    protected int conflatedCount = 0;
+    //only used by the thread draining the mailbox
+    protected final int[] polledTickerId = new int[1];
+    protected Object[] takenQuotes;
+    protected int[] takenTickerIds;
+    protected volatile boolean conflating = false;
+    protected volatile boolean closed = false;
+
+    ListenerMailbox(L listener, BiConsumer<L, Q> deliverer, int capacity, OverflowPolicy overflowPolicy,
+            IClock clock, ConflationSlot<Q> conflationSlot, BinaryOperator<Q> conflater) {
+        this.listener = listener;
+        this.deliverer = deliverer;
+        this.queue = new BoundedQueue<>(capacity);
+        this.stats = new ListenerStats(queue::size, queue.capacity(), overflowPolicy);
+        this.clock = clock;
+        this.conflationSlot = conflationSlot;
+        this.conflater = conflater;
+    }
+
+    /**
+     * Queues the quote.  Once the mailbox has started conflating, quotes are merged
+     * into the pending conflated quotes until the listener has caught up, so that a
+     * ticker's quotes are never delivered out of order.
+     *
+     * @return false if the mailbox is full.
+     */
+    boolean offer(Q quote, int tickerId) {
+        if (closed) {
+            return false;
+        }
+        if (conflating && conflate(quote, tickerId, false)) {
+            return true;
+        }
+        return queue.offer(quote, tickerId);
+    }
+
+    /**
+     * Merges the quote into the latest pending quote for its ticker.
+     *
+     * @param overflowed true if the quote didn't fit in the queue, which starts conflation.
+     * @return false if the mailbox has caught up and the quote should be queued normally.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized boolean conflate(Q quote, int tickerId, boolean overflowed) {
+        if (closed) {
+            return true;
+        }
+        if (!conflating) {
+            if (!overflowed) {
+                return false;
+            }
+            conflating = true;
+        }
+        int slot = conflationSlot.get(tickerId, quote);
+        if (conflatedQuotes == null || slot >= conflatedQuotes.length) {
+            growConflatedQuotes(slot);
+        }
+        Q existing = (Q) conflatedQuotes[slot];
+        if (existing == null) {
+            conflatedQuotes[slot] = quote;
+            conflatedTickerIds[slot] = tickerId;
+            conflatedOrder[conflatedCount++] = slot;
+        } else {
+            conflatedQuotes[slot] = conflater.apply(existing, quote);
+            stats.conflatedCount.incrementAndGet();
+        }
+        return true;
+    }
+
+    //guarded by this
+    protected void growConflatedQuotes(int slot) {
+        int length = conflatedQuotes == null ? 0 : conflatedQuotes.length;
+        length = Math.max(Math.max(16, slot + 1), length * 2);
+        if (conflatedQuotes == null) {
+            conflatedQuotes = new Object[length];
+            conflatedTickerIds = new int[length];
+            conflatedOrder = new int[length];
+        } else {
+            conflatedQuotes = Arrays.copyOf(conflatedQuotes, length);
+            conflatedTickerIds = Arrays.copyOf(conflatedTickerIds, length);
+            conflatedOrder = Arrays.copyOf(conflatedOrder, length);
+        }
+    }
+
+    /**
+     * Discards the oldest queued quote to make room for a new one.
+     */
+    void dropOldest() {
+        if (queue.poll() != null) {
+            stats.droppedCount.incrementAndGet();
+        }
+    }
+
+    void quoteDropped() {
+        stats.droppedCount.incrementAndGet();
+    }
+
+    /**
+     * Delivers up to maxQuotes queued quotes to the listener, followed by any
+     * conflated quotes once the queue is empty.
+     *
+     * @return the number of quotes delivered.
+     */
+    @SuppressWarnings("unchecked")
+    int drain(int maxQuotes) {
+        int delivered = 0;
+        while (delivered < maxQuotes && !closed) {
+            Q quote = queue.poll(polledTickerId);
+            if (quote == null) {
+                break;
+            }
+            delivered++;
+            deliver(quote, polledTickerId[0]);
+        }
+        if (conflating && delivered < maxQuotes && !closed && queue.isEmpty()) {
+            int count = takeConflatedQuotes();
+            for (int i = 0; i < count; i++) {
+                Q quote = (Q) takenQuotes[i];
+                takenQuotes[i] = null;
+                delivered++;
+                deliver(quote, takenTickerIds[i]);
+            }
+        }
+        return delivered;
+    }
+
+    protected void deliver(Q quote, int tickerId) {
+        try {
+            deliverer.accept(listener, quote);
+        } catch (Exception ex) {
+            //don't let 1 listener blowing up prevent it from getting the next quote.
+            logger.error(ex.getMessage(), ex);
+        }
+        long timeStamp = quote.getTimeStampNanos();
+        stats.quoteDelivered(tickerId, timeStamp == 0 ? 0 : clock.epochNanos() - timeStamp);
+    }
+
+    /**
+     * Moves the conflated quotes into takenQuotes and takenTickerIds, so they can be
+     * delivered without holding the lock.
+     *
+     * @return The number of quotes taken.
+     */
+    protected synchronized int takeConflatedQuotes() {
+        int count = conflatedCount;
+        if (takenQuotes == null || takenQuotes.length < count) {
+            takenQuotes = new Object[conflatedQuotes.length];
+            takenTickerIds = new int[conflatedQuotes.length];
+        }
+        for (int i = 0; i < count; i++) {
+            int slot = conflatedOrder[i];
+            takenQuotes[i] = conflatedQuotes[slot];
+            takenTickerIds[i] = conflatedTickerIds[slot];
+            conflatedQuotes[slot] = null;
+        }
+        conflatedCount = 0;
+        if (count == 0 && queue.isEmpty()) {
+            conflating = false;
+        }
+        return count;
+    }
+
+    boolean trySchedule() {
+        return !closed && scheduled.compareAndSet(false, true);
+    }
+
+    void unschedule() {
+        scheduled.set(false);
+    }
+
+    boolean isEmpty() {
+        return queue.isEmpty() && !conflating;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+        queue.clear();
+        synchronized (this) {
+            if (conflatedQuotes != null) {
+                Arrays.fill(conflatedQuotes, null);
+            }
+            conflatedCount = 0;
+            conflating = false;
+        }
+    }
+
+    void disconnect() {
+        stats.disconnected = true;
+        close();
+    }
+
+    OverflowPolicy getOverflowPolicy() {
+        return stats.overflowPolicy;
+    }
+
+    void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        stats.overflowPolicy = overflowPolicy;
+    }
+
+    ListenerStats getStats() {
+        return stats;
+    }
+
+    L getListener() {
+        return listener;
+    }
+
+    /**
+     * Picks the slot a quote is conflated into, so quotes which should be merged
+     * share a slot.
+     */
+    interface ConflationSlot<Q> {
+
+        /**
+         * @param tickerId The TickerRegistry id of the quote's ticker, or
+         * TickerRegistry.UNKNOWN_ID
+         * @return The slot, which must not be negative.
+         */
+        int get(int tickerId, Q quote);
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntSupplier;
+
+/**
+ * Delivery statistics for a single listener, used to spot listeners which are
+ * falling behind the market. Lag is the time between a quote being stamped and
+ * it being delivered to the listener.
+ *
+ * The values are updated by the dispatcher threads without locking, so reads
+ * from other threads may be momentarily out of date.  The lag of each ticker is
+ * kept in an array indexed by the ticker's TickerRegistry id.
+ *
+ * @author Rob Terpilowski
+ */
+public class ListenerStats {
+
+    protected final IntSupplier queueDepth;
+    protected final int queueCapacity;
+    protected static final int INITIAL_TICKER_CAPACITY = 64;
+
+    protected volatile AtomicLongArray tickerLagNanos = new AtomicLongArray(INITIAL_TICKER_CAPACITY);
+    protected final AtomicLong droppedCount = new AtomicLong();
+    protected final AtomicLong conflatedCount = new AtomicLong();
+    protected volatile OverflowPolicy overflowPolicy;
+    protected volatile long deliveredCount;
+    protected volatile long lastLagNanos;
+    protected volatile long maxLagNanos;
+    protected volatile boolean disconnected = false;
+
+    public ListenerStats(IntSupplier queueDepth, int queueCapacity, OverflowPolicy overflowPolicy) {
+        this.queueDepth = queueDepth;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * @return The number of quotes waiting to be delivered to the listener.
+     */
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    /**
+     * @return The number of quotes that can wait for the listener before the overflow policy applies.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * @return The number of quotes discarded because the listener fell behind.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return The number of quotes merged into a later quote because the listener fell behind.
+     */
+    public long getConflatedCount() {
+        return conflatedCount.get();
+    }
+
+    /**
+     * @return The lag of the most recently delivered quote, in nanoseconds.
+     */
+    public long getLagNanos() {
+        return lastLagNanos;
+    }
+
+    /**
+     * @return The largest lag seen, in nanoseconds.
+     */
+    public long getMaxLagNanos() {
+        return maxLagNanos;
+    }
+
+    /**
+     * @param ticker The ticker to get the lag for
+     * @return The lag of the most recently delivered quote for the ticker, in nanoseconds, or 0 if none have been delivered.
+     */
+    public long getLagNanos(Ticker ticker) {
+        return getLagNanos(TickerRegistry.getInstance().getId(ticker));
+    }
+
+    /**
+     * @param tickerId The TickerRegistry id of the ticker to get the lag for
+     * @return The lag of the most recently delivered quote for the ticker, in nanoseconds, or 0 if none have been delivered.
+     */
+    public long getLagNanos(int tickerId) {
+        AtomicLongArray lags = tickerLagNanos;
+        return tickerId >= 0 && tickerId < lags.length() ? lags.get(tickerId) : 0;
+    }
+
+    /**
+     * @return true if the listener was disconnected for falling behind.
+     */
+    public boolean isDisconnected() {
+        return disconnected;
+    }
+
+    //Only called by the thread currently draining the listener's mailbox.
+    protected void quoteDelivered(int tickerId, long lagNanos) {
+        deliveredCount++;
+        lastLagNanos = lagNanos;
+        if (lagNanos > maxLagNanos) {
+            maxLagNanos = lagNanos;
+        }
+        if (tickerId >= 0) {
+            AtomicLongArray lags = tickerLagNanos;
+            if (tickerId >= lags.length()) {
+                lags = growTickerLags(tickerId);
+            }
+            lags.lazySet(tickerId, lagNanos);
+        }
+    }
+
+    //Only called by the thread currently draining the listener's mailbox, so the lags can't change while they're copied.
+    protected AtomicLongArray growTickerLags(int tickerId) {
+        AtomicLongArray current = tickerLagNanos;
+        AtomicLongArray grown = new AtomicLongArray(Math.max(current.length() * 2, tickerId + 1));
+        for (int i = 0; i < current.length(); i++) {
+            grown.lazySet(i, current.get(i));
+        }
+        tickerLagNanos = grown;
+        return grown;
+    }
+
+    @Override
+    public String toString() {
+        return "ListenerStats{" + "queueDepth=" + getQueueDepth() + ", queueCapacity=" + queueCapacity
+                + ", overflowPolicy=" + overflowPolicy + ", deliveredCount=" + deliveredCount
+                + ", droppedCount=" + droppedCount + ", conflatedCount=" + conflatedCount
+                + ", lagNanos=" + lastLagNanos + ", maxLagNanos=" + maxLagNanos
+                + ", disconnected=" + disconnected + '}';
+    }
+
+}
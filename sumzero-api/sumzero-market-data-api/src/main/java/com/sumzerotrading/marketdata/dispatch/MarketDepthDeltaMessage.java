@@ -0,0 +1,83 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.marketdata.IQuote;
+import com.sumzerotrading.marketdata.MarketDepthDelta;
+import com.sumzerotrading.marketdata.MarketDepthDeltaListener;
+import com.sumzerotrading.marketdata.MarketDepthSnapshot;
+import com.sumzerotrading.marketdata.QuoteType;
+import java.time.ZonedDateTime;
+
+/**
+ * A delta or a snapshot queued for a MarketDepthDeltaListener, so both are
+ * delivered through the same queue, in the order they were dispatched.
+ *
+ * @author Rob Terpilowski
+ */
+class MarketDepthDeltaMessage implements IQuote {
+
+    protected static final QuoteType[] NO_TYPES = new QuoteType[0];
+
+    protected final Ticker ticker;
+    protected final MarketDepthDelta delta;
+    protected final MarketDepthSnapshot snapshot;
+
+    MarketDepthDeltaMessage(MarketDepthDelta delta) {
+        this.ticker = delta.getTicker();
+        this.delta = delta;
+        this.snapshot = null;
+    }
+
+    MarketDepthDeltaMessage(Ticker ticker, MarketDepthSnapshot snapshot) {
+        this.ticker = ticker;
+        this.delta = null;
+        this.snapshot = snapshot;
+    }
+
+    void deliverTo(MarketDepthDeltaListener listener) {
+        if (delta != null) {
+            listener.marketDepthDeltaReceived(delta);
+        } else {
+            listener.marketDepthSnapshotReceived(ticker, snapshot);
+        }
+    }
+
+    @Override
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    @Override
+    public QuoteType[] getTypes() {
+        return NO_TYPES;
+    }
+
+    @Override
+    public boolean containsType(QuoteType type) {
+        return false;
+    }
+
+    @Override
+    public ZonedDateTime getTimeStamp() {
+        return delta == null ? null : delta.getTimeStamp();
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+/**
+ * What a dispatcher does with a new quote when a listener's mailbox is full
+ * because the listener isn't keeping up with the market.
+ *
+ * @author Rob Terpilowski
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The dispatching thread waits until the listener has made room.  No quotes are
+     * lost, but a slow listener holds up quotes for every other listener.
+     */
+    BLOCK,
+
+    /**
+     * The oldest undelivered quote is discarded to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Quotes which don't fit are merged into the latest quote for their ticker, and
+     * delivered once the backlog has been worked off, so the listener always catches
+     * up to the current state of the market.
+     */
+    CONFLATE_TO_LATEST,
+
+    /**
+     * The listener is unsubscribed from all its tickers and its undelivered quotes
+     * are discarded.
+     */
+    DISCONNECT
+
+}
@@ -0,0 +1,434 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
+import com.sumzerotrading.marketdata.ILevel1Quote;
+import com.sumzerotrading.marketdata.ILevel2Quote;
+import com.sumzerotrading.marketdata.IQuote;
+import com.sumzerotrading.marketdata.Level1QuoteListener;
+import com.sumzerotrading.marketdata.Level2QuoteListener;
+import com.sumzerotrading.marketdata.MarketDepthBook;
+import com.sumzerotrading.marketdata.MarketDepthDelta;
+import com.sumzerotrading.marketdata.MarketDepthDeltaListener;
+import com.sumzerotrading.marketdata.MarketDepthSnapshot;
+import com.sumzerotrading.marketdata.PrimitiveLevel1Quote;
+import com.sumzerotrading.time.IClock;
+import com.sumzerotrading.time.MonotonicClock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.BooleanSupplier;
+import org.apache.log4j.Logger;
+
+/**
+ * Delivers quotes through a bounded mailbox per listener, drained by a fixed pool
+ * of worker threads. A mailbox is only ever drained by one worker at a time, so
+ * each listener sees its quotes in order, while different listeners are served
+ * in parallel. What happens when a listener falls far enough behind to fill its
+ * mailbox is determined by its OverflowPolicy, by default the dispatching thread
+ * backs off until the listener catches up.  Market depth deltas can't be dropped
+ * or merged without breaking the listener's copy of the book, so a delta
+ * listener's mailbox always backs off.
+ *
+ * Each listener's queue depth, dropped quotes and lag are available from
+ * getLevel1ListenerStats() and getMarketDepthListenerStats().  The lag per ticker
+ * and the conflated quotes are indexed by the TickerRegistry id of the ticker.
+ *
+ * The worker threads are started on the first dispatch, or explicitly with start().
+ * Once stop() has been called quotes are dropped until start() is called again.
+ *
+ * @author Rob Terpilowski
+ */
+public class PooledQuoteDispatcher implements IQuoteDispatcher {
+
+    public static final int DEFAULT_MAILBOX_CAPACITY = 4096;
+    protected static final int DRAIN_BATCH_SIZE = 64;
+    protected static final BiConsumer<Level1QuoteListener, ILevel1Quote> LEVEL1_DELIVERER = (listener, quote) -> listener.quoteRecieved(quote);
+    protected static final BiConsumer<Level2QuoteListener, ILevel2Quote> LEVEL2_DELIVERER = (listener, quote) -> listener.level2QuoteReceived(quote);
+    protected static final BiConsumer<MarketDepthDeltaListener, MarketDepthDeltaMessage> DEPTH_DELTA_DELIVERER = (listener, message) -> message.deliverTo(listener);
+    //the slots are offset by 1 so quotes for unregistered tickers share slot 0, and each side of the book has its own slot.
+    protected static final ListenerMailbox.ConflationSlot<ILevel1Quote> LEVEL1_CONFLATION_SLOT = (tickerId, quote) -> tickerId + 1;
+    protected static final ListenerMailbox.ConflationSlot<ILevel2Quote> LEVEL2_CONFLATION_SLOT = (tickerId, quote) ->
+            (tickerId + 1) * 2 + (quote.getMarketDepthBook().getSide() == MarketDepthBook.Side.ASK ? 1 : 0);
+    protected static final BinaryOperator<ILevel2Quote> LEVEL2_CONFLATER = (older, newer) -> newer;
+
+    protected Logger logger = Logger.getLogger(PooledQuoteDispatcher.class);
+    protected final int threadCount;
+    protected final int mailboxCapacity;
+    protected final WaitStrategy waitStrategy;
+    protected final Map<Level1QuoteListener, ListenerMailbox<Level1QuoteListener, ILevel1Quote>> level1Mailboxes = new ConcurrentHashMap<>();
+    protected final Map<Level2QuoteListener, ListenerMailbox<Level2QuoteListener, ILevel2Quote>> level2Mailboxes = new ConcurrentHashMap<>();
+    protected final Map<MarketDepthDeltaListener, ListenerMailbox<MarketDepthDeltaListener, MarketDepthDeltaMessage>> depthDeltaMailboxes = new ConcurrentHashMap<>();
+    protected final Map<Object, OverflowPolicy> level1Policies = new ConcurrentHashMap<>();
+    protected final Map<Object, OverflowPolicy> level2Policies = new ConcurrentHashMap<>();
+    protected final Queue<ListenerMailbox<?, ?>> runQueue = new ConcurrentLinkedQueue<>();
+    protected final List<Thread> workers = new ArrayList<>();
+    protected volatile boolean running = false;
+    protected volatile boolean stopped = false;
+    protected String name = "QuoteDispatcher";
+    protected volatile OverflowPolicy defaultOverflowPolicy = OverflowPolicy.BLOCK;
+    protected volatile SlowConsumerHandler slowConsumerHandler;
+    protected IClock clock = MonotonicClock.getInstance();
+    protected TickerRegistry tickerRegistry = TickerRegistry.getInstance();
+    protected final BinaryOperator<ILevel1Quote> level1Conflater = this::conflateLevel1;
+
+    public PooledQuoteDispatcher() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAILBOX_CAPACITY, new BlockingWaitStrategy());
+    }
+
+    /**
+     * @param threadCount The number of worker threads delivering quotes
+     * @param mailboxCapacity The maximum number of undelivered quotes per listener
+     * @param waitStrategy How idle workers wait for new quotes
+     */
+    public PooledQuoteDispatcher(int threadCount, int mailboxCapacity, WaitStrategy waitStrategy) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        this.threadCount = threadCount;
+        this.mailboxCapacity = mailboxCapacity;
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public void dispatchLevel1Quote(Level1QuoteListener listener, ILevel1Quote quote) {
+        dispatchLevel1Quote(getTickerId(quote.getTicker()), listener, quote);
+    }
+
+    @Override
+    public void dispatchLevel1Quote(int tickerId, Level1QuoteListener listener, ILevel1Quote quote) {
+        ListenerMailbox<Level1QuoteListener, ILevel1Quote> mailbox = level1Mailboxes.get(listener);
+        if (mailbox == null) {
+            mailbox = level1Mailboxes.computeIfAbsent(listener, key -> new ListenerMailbox<>(key, LEVEL1_DELIVERER, mailboxCapacity,
+                    level1Policies.getOrDefault(key, defaultOverflowPolicy), clock, LEVEL1_CONFLATION_SLOT, level1Conflater));
+        }
+        post(mailbox, tickerId, quote);
+    }
+
+    @Override
+    public void dispatchMarketDepthQuote(Level2QuoteListener listener, ILevel2Quote quote) {
+        dispatchMarketDepthQuote(getTickerId(quote.getTicker()), listener, quote);
+    }
+
+    @Override
+    public void dispatchMarketDepthQuote(int tickerId, Level2QuoteListener listener, ILevel2Quote quote) {
+        ListenerMailbox<Level2QuoteListener, ILevel2Quote> mailbox = level2Mailboxes.get(listener);
+        if (mailbox == null) {
+            mailbox = level2Mailboxes.computeIfAbsent(listener, key -> new ListenerMailbox<>(key, LEVEL2_DELIVERER, mailboxCapacity,
+                    level2Policies.getOrDefault(key, defaultOverflowPolicy), clock, LEVEL2_CONFLATION_SLOT, LEVEL2_CONFLATER));
+        }
+        post(mailbox, tickerId, quote);
+    }
+
+    @Override
+    public void dispatchMarketDepthDelta(MarketDepthDeltaListener listener, MarketDepthDelta delta) {
+        dispatchMarketDepthDelta(getTickerId(delta.getTicker()), listener, delta);
+    }
+
+    @Override
+    public void dispatchMarketDepthDelta(int tickerId, MarketDepthDeltaListener listener, MarketDepthDelta delta) {
+        post(getDepthDeltaMailbox(listener), tickerId, new MarketDepthDeltaMessage(delta));
+    }
+
+    @Override
+    public void dispatchMarketDepthSnapshot(MarketDepthDeltaListener listener, Ticker ticker, MarketDepthSnapshot snapshot) {
+        dispatchMarketDepthSnapshot(getTickerId(ticker), listener, ticker, snapshot);
+    }
+
+    @Override
+    public void dispatchMarketDepthSnapshot(int tickerId, MarketDepthDeltaListener listener, Ticker ticker, MarketDepthSnapshot snapshot) {
+        post(getDepthDeltaMailbox(listener), tickerId, new MarketDepthDeltaMessage(ticker, snapshot));
+    }
+
+    @Override
+    public void removeLevel1Listener(Level1QuoteListener listener) {
+        ListenerMailbox<?, ?> mailbox = level1Mailboxes.remove(listener);
+        if (mailbox != null) {
+            mailbox.close();
+        }
+    }
+
+    @Override
+    public void removeMarketDepthListener(Level2QuoteListener listener) {
+        ListenerMailbox<?, ?> mailbox = level2Mailboxes.remove(listener);
+        if (mailbox != null) {
+            mailbox.close();
+        }
+    }
+
+    @Override
+    public void removeMarketDepthDeltaListener(MarketDepthDeltaListener listener) {
+        ListenerMailbox<?, ?> mailbox = depthDeltaMailboxes.remove(listener);
+        if (mailbox != null) {
+            mailbox.close();
+        }
+    }
+
+    @Override
+    public ListenerStats getLevel1ListenerStats(Level1QuoteListener listener) {
+        ListenerMailbox<?, ?> mailbox = level1Mailboxes.get(listener);
+        return mailbox == null ? null : mailbox.getStats();
+    }
+
+    @Override
+    public ListenerStats getMarketDepthListenerStats(Level2QuoteListener listener) {
+        ListenerMailbox<?, ?> mailbox = level2Mailboxes.get(listener);
+        return mailbox == null ? null : mailbox.getStats();
+    }
+
+    @Override
+    public void setSlowConsumerHandler(SlowConsumerHandler handler) {
+        this.slowConsumerHandler = handler;
+    }
+
+    /**
+     * Sets the policy applied to listeners which haven't been given their own policy.
+     *
+     * @param overflowPolicy The policy to use.
+     */
+    public void setDefaultOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.defaultOverflowPolicy = overflowPolicy;
+    }
+
+    public OverflowPolicy getDefaultOverflowPolicy() {
+        return defaultOverflowPolicy;
+    }
+
+    /**
+     * Sets what happens when the listener falls far enough behind to fill its mailbox.
+     *
+     * @param listener The listener to set the policy for
+     * @param overflowPolicy The policy to use.
+     */
+    public void setLevel1OverflowPolicy(Level1QuoteListener listener, OverflowPolicy overflowPolicy) {
+        level1Policies.put(listener, overflowPolicy);
+        ListenerMailbox<?, ?> mailbox = level1Mailboxes.get(listener);
+        if (mailbox != null) {
+            mailbox.setOverflowPolicy(overflowPolicy);
+        }
+    }
+
+    /**
+     * Sets what happens when the listener falls far enough behind to fill its mailbox.
+     *
+     * @param listener The listener to set the policy for
+     * @param overflowPolicy The policy to use.
+     */
+    public void setMarketDepthOverflowPolicy(Level2QuoteListener listener, OverflowPolicy overflowPolicy) {
+        level2Policies.put(listener, overflowPolicy);
+        ListenerMailbox<?, ?> mailbox = level2Mailboxes.get(listener);
+        if (mailbox != null) {
+            mailbox.setOverflowPolicy(overflowPolicy);
+        }
+    }
+
+    /**
+     * Sets the clock used to measure listener lag.  This should be the clock the quotes
+     * are stamped with.
+     *
+     * @param clock The clock to use.
+     */
+    public void setClock(IClock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        stopped = false;
+        running = true;
+        for (int i = 0; i < threadCount; i++) {
+            Thread worker = new Thread(this::runWorker, name + "-Worker-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+        if (!running) {
+            return;
+        }
+        running = false;
+        waitStrategy.signalAll();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        workers.clear();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    protected synchronized boolean startIfNotStopped() {
+        if (!stopped) {
+            start();
+        }
+        return running;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Merges the newer quote into the older one.  The dispatched quotes may be shared
+     * with other listeners, so the first merge for a ticker copies them into a quote
+     * owned by the mailbox, which later merges update in place until it is delivered.
+     * The merged quote keeps the time of the newer quote, in nanoseconds.
+     */
+    protected ILevel1Quote conflateLevel1(ILevel1Quote older, ILevel1Quote newer) {
+        ConflatedLevel1Quote conflated;
+        if (older instanceof ConflatedLevel1Quote) {
+            conflated = (ConflatedLevel1Quote) older;
+            conflated.setTimeStampNanos(newer.getTimeStampNanos());
+        } else {
+            conflated = new ConflatedLevel1Quote(newer.getTicker(), newer.getTimeStampNanos(), clock);
+            conflated.merge(older);
+        }
+        conflated.merge(newer);
+        return conflated;
+    }
+
+    /**
+     * Used when a quote is dispatched without its ticker's id.
+     */
+    protected int getTickerId(Ticker ticker) {
+        return ticker == null ? TickerRegistry.UNKNOWN_ID : tickerRegistry.register(ticker);
+    }
+
+    protected ListenerMailbox<MarketDepthDeltaListener, MarketDepthDeltaMessage> getDepthDeltaMailbox(MarketDepthDeltaListener listener) {
+        ListenerMailbox<MarketDepthDeltaListener, MarketDepthDeltaMessage> mailbox = depthDeltaMailboxes.get(listener);
+        if (mailbox == null) {
+            //always BLOCK, so the deltas are never conflated
+            mailbox = depthDeltaMailboxes.computeIfAbsent(listener, key -> new ListenerMailbox<>(key, DEPTH_DELTA_DELIVERER, mailboxCapacity,
+                    OverflowPolicy.BLOCK, clock, null, null));
+        }
+        return mailbox;
+    }
+
+    protected <L, Q extends IQuote> void post(ListenerMailbox<L, Q> mailbox, int tickerId, Q quote) {
+        if (!running) {
+            //only start lazily if the dispatcher hasn't been stopped.
+            if (stopped || !startIfNotStopped()) {
+                mailbox.quoteDropped();
+                return;
+            }
+        }
+        while (!mailbox.offer(quote, tickerId)) {
+            if (mailbox.isClosed() || !running) {
+                mailbox.quoteDropped();
+                return;
+            }
+            switch (mailbox.getOverflowPolicy()) {
+                case DROP_OLDEST:
+                    mailbox.dropOldest();
+                    break;
+                case CONFLATE_TO_LATEST:
+                    mailbox.conflate(quote, tickerId, true);
+                    schedule(mailbox);
+                    return;
+                case DISCONNECT:
+                    disconnect(mailbox);
+                    return;
+                default:
+                    //mailbox is full, make sure it is being drained and give the listener a chance to catch up.
+                    schedule(mailbox);
+                    Thread.yield();
+            }
+        }
+        schedule(mailbox);
+    }
+
+    protected void disconnect(ListenerMailbox<?, ?> mailbox) {
+        mailbox.disconnect();
+        mailbox.quoteDropped();
+        Object listener = mailbox.getListener();
+        logger.warn("Disconnecting slow quote listener " + listener + ": " + mailbox.getStats());
+        SlowConsumerHandler handler = slowConsumerHandler;
+        if (handler == null) {
+            return;
+        }
+        if (level1Mailboxes.get(listener) == mailbox) {
+            handler.level1ListenerDisconnected((Level1QuoteListener) listener);
+        } else if (level2Mailboxes.get(listener) == mailbox) {
+            handler.marketDepthListenerDisconnected((Level2QuoteListener) listener);
+        }
+    }
+
+    protected void schedule(ListenerMailbox<?, ?> mailbox) {
+        if (mailbox.trySchedule()) {
+            runQueue.offer(mailbox);
+            waitStrategy.signalAll();
+        }
+    }
+
+    protected void runWorker() {
+        BooleanSupplier workAvailable = () -> !runQueue.isEmpty() || !running;
+        while (running) {
+            ListenerMailbox<?, ?> mailbox = runQueue.poll();
+            if (mailbox == null) {
+                try {
+                    waitStrategy.waitFor(workAvailable);
+                } catch (InterruptedException ex) {
+                    if (!running) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            mailbox.drain(DRAIN_BATCH_SIZE);
+            mailbox.unschedule();
+            //quotes may have arrived after the drain finished but before the mailbox was unscheduled.
+            if (!mailbox.isEmpty()) {
+                schedule(mailbox);
+            }
+        }
+    }
+
+    /**
+     * A quote created by conflation, which is only referenced by the mailbox until it
+     * has been delivered, so it can be merged into in place.
+     */
+    protected static class ConflatedLevel1Quote extends PrimitiveLevel1Quote {
+
+        protected ConflatedLevel1Quote(Ticker ticker, long timestampNanos, IClock clock) {
+            super(ticker, timestampNanos, clock);
+        }
+
+        protected void setTimeStampNanos(long timestampNanos) {
+            this.timeStampNanos = timestampNanos;
+            this.timeStamp = null;
+        }
+    }
+
+}
@@ -0,0 +1,389 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
+import com.sumzerotrading.marketdata.ILevel1Quote;
+import com.sumzerotrading.marketdata.ILevel2Quote;
+import com.sumzerotrading.marketdata.IQuote;
+import com.sumzerotrading.marketdata.Level1QuoteListener;
+import com.sumzerotrading.marketdata.Level2QuoteListener;
+import com.sumzerotrading.marketdata.MarketDepthDelta;
+import com.sumzerotrading.marketdata.MarketDepthDeltaListener;
+import com.sumzerotrading.marketdata.MarketDepthSnapshot;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import org.apache.log4j.Logger;
+
+/**
+ * Delivers quotes on a fixed set of shards, each a single consumer thread with its
+ * own ring buffer. Every quote for a given ticker goes to the same shard, picked
+ * from the ticker's TickerRegistry id, so
+ * all listeners of a ticker see its quotes (level 1, level 2 and depth deltas) in exactly the
+ * order they were dispatched. Quotes for different tickers are delivered in
+ * parallel across the shards.
+ *
+ * A slow listener holds up the other tickers on its shard, so listeners should
+ * not block.  The shards are started on the first dispatch, or explicitly with
+ * start(); once stop() has been called quotes are dropped until start() is called again.
+ * Quotes already queued for a listener when it is removed are discarded.
+ *
+ * @author Rob Terpilowski
+ */
+public class ShardedQuoteDispatcher implements IQuoteDispatcher {
+
+    public static final int DEFAULT_SHARD_CAPACITY = 16384;
+    protected static final byte LEVEL1 = 1;
+    protected static final byte LEVEL2 = 2;
+    protected static final byte DEPTH_DELTA = 3;
+
+    protected Logger logger = Logger.getLogger(ShardedQuoteDispatcher.class);
+    protected final Shard[] shards;
+    protected volatile boolean running = false;
+    protected volatile boolean stopped = false;
+    protected String name = "ShardedQuoteDispatcher";
+    protected TickerRegistry tickerRegistry = TickerRegistry.getInstance();
+
+    public ShardedQuoteDispatcher() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_SHARD_CAPACITY, BlockingWaitStrategy::new);
+    }
+
+    /**
+     * @param shardCount The number of shards, each shard runs on its own thread
+     * @param shardCapacity The maximum number of undelivered quotes per shard
+     * @param waitStrategyFactory Creates the wait strategy for each shard's thread
+     */
+    public ShardedQuoteDispatcher(int shardCount, int shardCapacity, Supplier<WaitStrategy> waitStrategyFactory) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(shardCapacity, waitStrategyFactory.get());
+        }
+    }
+
+    @Override
+    public void dispatchLevel1Quote(Level1QuoteListener listener, ILevel1Quote quote) {
+        dispatchLevel1Quote(getTickerId(quote.getTicker()), listener, quote);
+    }
+
+    @Override
+    public void dispatchLevel1Quote(int tickerId, Level1QuoteListener listener, ILevel1Quote quote) {
+        publish(tickerId, LEVEL1, listener, quote);
+    }
+
+    @Override
+    public void dispatchMarketDepthQuote(Level2QuoteListener listener, ILevel2Quote quote) {
+        dispatchMarketDepthQuote(getTickerId(quote.getTicker()), listener, quote);
+    }
+
+    @Override
+    public void dispatchMarketDepthQuote(int tickerId, Level2QuoteListener listener, ILevel2Quote quote) {
+        publish(tickerId, LEVEL2, listener, quote);
+    }
+
+    @Override
+    public void dispatchMarketDepthDelta(MarketDepthDeltaListener listener, MarketDepthDelta delta) {
+        dispatchMarketDepthDelta(getTickerId(delta.getTicker()), listener, delta);
+    }
+
+    @Override
+    public void dispatchMarketDepthDelta(int tickerId, MarketDepthDeltaListener listener, MarketDepthDelta delta) {
+        publish(tickerId, DEPTH_DELTA, listener, new MarketDepthDeltaMessage(delta));
+    }
+
+    @Override
+    public void dispatchMarketDepthSnapshot(MarketDepthDeltaListener listener, Ticker ticker, MarketDepthSnapshot snapshot) {
+        dispatchMarketDepthSnapshot(getTickerId(ticker), listener, ticker, snapshot);
+    }
+
+    @Override
+    public void dispatchMarketDepthSnapshot(int tickerId, MarketDepthDeltaListener listener, Ticker ticker, MarketDepthSnapshot snapshot) {
+        publish(tickerId, DEPTH_DELTA, listener, new MarketDepthDeltaMessage(ticker, snapshot));
+    }
+
+    @Override
+    public void removeLevel1Listener(Level1QuoteListener listener) {
+        removeListener(listener);
+    }
+
+    @Override
+    public void removeMarketDepthListener(Level2QuoteListener listener) {
+        removeListener(listener);
+    }
+
+    @Override
+    public void removeMarketDepthDeltaListener(MarketDepthDeltaListener listener) {
+        removeListener(listener);
+    }
+
+    protected void removeListener(Object listener) {
+        for (Shard shard : shards) {
+            shard.removeListener(listener);
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        stopped = false;
+        running = true;
+        for (int i = 0; i < shards.length; i++) {
+            shards[i].start(name + "-Shard-" + i);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopped = true;
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Shard shard : shards) {
+            shard.stop();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    protected synchronized boolean startIfNotStopped() {
+        if (!stopped) {
+            start();
+        }
+        return running;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the shard that all quotes for the specified ticker are delivered on.
+     *
+     * @param ticker The ticker to find the shard for
+     * @return The index of the shard
+     */
+    public int getShardIndex(Ticker ticker) {
+        return getShardIndex(getTickerId(ticker));
+    }
+
+    /**
+     * Gets the shard that all quotes for the ticker with the specified id are delivered on.
+     * The ids are dense, so the tickers are spread evenly across the shards.
+     *
+     * @param tickerId The TickerRegistry id of the ticker
+     * @return The index of the shard
+     */
+    public int getShardIndex(int tickerId) {
+        return tickerId < 0 ? 0 : tickerId % shards.length;
+    }
+
+    /**
+     * Used when a quote is dispatched without its ticker's id.
+     */
+    protected int getTickerId(Ticker ticker) {
+        return ticker == null ? TickerRegistry.UNKNOWN_ID : tickerRegistry.register(ticker);
+    }
+
+    protected void publish(int tickerId, byte type, Object listener, IQuote quote) {
+        if (!running) {
+            //only start lazily if the dispatcher hasn't been stopped.
+            if (stopped || !startIfNotStopped()) {
+                return;
+            }
+        }
+        Shard shard = shards[getShardIndex(tickerId)];
+        while (!shard.offer(type, listener, quote)) {
+            if (!running) {
+                return;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * A single consumer ring of (type, listener, quote) entries. The entries are
+     * held in parallel arrays so publishing a quote allocates nothing.
+     */
+    protected class Shard {
+
+        protected final Object[] listeners;
+        protected final Object[] quotes;
+        protected final byte[] types;
+        protected final AtomicLongArray sequences;
+        protected final int mask;
+        protected final AtomicLong tail = new AtomicLong();
+        protected final AtomicLong head = new AtomicLong();
+        protected final WaitStrategy waitStrategy;
+        protected final BooleanSupplier workAvailable = () -> !isEmpty() || !running;
+        //listeners removed while quotes for them may still be queued, with the tail at the time they were removed.
+        protected final Map<Object, Long> removedListeners = new ConcurrentHashMap<>();
+        protected Thread thread;
+
+        protected Shard(int requestedCapacity, WaitStrategy waitStrategy) {
+            int capacity = Integer.highestOneBit(Math.max(1, requestedCapacity));
+            if (capacity < requestedCapacity) {
+                capacity <<= 1;
+            }
+            listeners = new Object[capacity];
+            quotes = new Object[capacity];
+            types = new byte[capacity];
+            sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+            mask = capacity - 1;
+            this.waitStrategy = waitStrategy;
+        }
+
+        protected boolean offer(byte type, Object listener, IQuote quote) {
+            long position = tail.get();
+            int index;
+            while (true) {
+                index = (int) (position & mask);
+                long difference = sequences.get(index) - position;
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        break;
+                    }
+                    position = tail.get();
+                } else if (difference < 0) {
+                    return false;
+                } else {
+                    position = tail.get();
+                }
+            }
+            listeners[index] = listener;
+            quotes[index] = quote;
+            types[index] = type;
+            sequences.set(index, position + 1);
+            waitStrategy.signalAll();
+            return true;
+        }
+
+        protected boolean isEmpty() {
+            return tail.get() == head.get();
+        }
+
+        /**
+         * Quotes for the listener which were queued before it was removed are skipped.
+         * Quotes queued after, if it subscribes again, are delivered.
+         */
+        protected void removeListener(Object listener) {
+            long removedAt = tail.get();
+            if (removedAt != head.get()) {
+                removedListeners.put(listener, removedAt);
+            }
+        }
+
+        /**
+         * Only called from the shard's thread.
+         *
+         * @return true if the listener was removed after the quote at the position was queued.
+         */
+        protected boolean isRemoved(Object listener, long position) {
+            Long removedAt = removedListeners.get(listener);
+            if (removedAt == null) {
+                return false;
+            }
+            if (position < removedAt) {
+                return true;
+            }
+            removedListeners.remove(listener, removedAt);
+            return false;
+        }
+
+        protected void start(String threadName) {
+            thread = new Thread(this::run, threadName);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        protected void stop() {
+            waitStrategy.signalAll();
+            if (thread != null) {
+                thread.interrupt();
+            }
+        }
+
+        protected void run() {
+            while (running) {
+                long position = head.get();
+                int index = (int) (position & mask);
+                if (sequences.get(index) != position + 1) {
+                    if (!removedListeners.isEmpty()) {
+                        //the shard has caught up, so there's nothing left to skip for listeners removed before now.
+                        removedListeners.values().removeIf(removedAt -> removedAt <= position);
+                    }
+                    try {
+                        waitStrategy.waitFor(workAvailable);
+                    } catch (InterruptedException ex) {
+                        if (!running) {
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                Object listener = listeners[index];
+                Object quote = quotes[index];
+                byte type = types[index];
+                listeners[index] = null;
+                quotes[index] = null;
+                //only one thread consumes from a shard, so the head can be moved without a CAS.
+                head.set(position + 1);
+                sequences.set(index, position + mask + 1);
+                if (removedListeners.isEmpty() || !isRemoved(listener, position)) {
+                    deliver(type, listener, quote);
+                }
+            }
+        }
+
+        protected void deliver(byte type, Object listener, Object quote) {
+            try {
+                if (type == LEVEL1) {
+                    ((Level1QuoteListener) listener).quoteRecieved((ILevel1Quote) quote);
+                } else if (type == LEVEL2) {
+                    ((Level2QuoteListener) listener).level2QuoteReceived((ILevel2Quote) quote);
+                } else {
+                    ((MarketDepthDeltaMessage) quote).deliverTo((MarketDepthDeltaListener) listener);
+                }
+            } catch (Exception ex) {
+                //don't let 1 listener blowing up prevent other listeners from getting the quote.
+                logger.error(ex.getMessage(), ex);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.marketdata.ILevel1Quote;
+import com.sumzerotrading.marketdata.ILevel2Quote;
+import com.sumzerotrading.marketdata.Level1QuoteListener;
+import com.sumzerotrading.marketdata.Level2QuoteListener;
+import com.sumzerotrading.marketdata.MarketDepthDelta;
+import com.sumzerotrading.marketdata.MarketDepthDeltaListener;
+import com.sumzerotrading.marketdata.MarketDepthSnapshot;
+import org.apache.log4j.Logger;
+
+/**
+ * Delivers quotes on the thread that dispatches them. Useful for backtesting and
+ * unit tests, or for listeners that do very little work per quote.
+ *
+ * @author Rob Terpilowski
+ */
+public class SynchronousQuoteDispatcher implements IQuoteDispatcher {
+
+    protected Logger logger = Logger.getLogger(SynchronousQuoteDispatcher.class);
+
+    @Override
+    public void dispatchLevel1Quote(Level1QuoteListener listener, ILevel1Quote quote) {
+        try {
+            listener.quoteRecieved(quote);
+        } catch (Exception ex) {
+            //don't let 1 listener blowing up prevent other listeners from getting the quote.
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void dispatchMarketDepthQuote(Level2QuoteListener listener, ILevel2Quote quote) {
+        try {
+            listener.level2QuoteReceived(quote);
+        } catch (Exception ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void dispatchMarketDepthDelta(MarketDepthDeltaListener listener, MarketDepthDelta delta) {
+        try {
+            listener.marketDepthDeltaReceived(delta);
+        } catch (Exception ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void dispatchMarketDepthSnapshot(MarketDepthDeltaListener listener, Ticker ticker, MarketDepthSnapshot snapshot) {
+        try {
+            listener.marketDepthSnapshotReceived(ticker, snapshot);
+        } catch (Exception ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void removeLevel1Listener(Level1QuoteListener listener) {
+    }
+
+    @Override
+    public void removeMarketDepthListener(Level2QuoteListener listener) {
+    }
+
+    @Override
+    public void removeMarketDepthDeltaListener(MarketDepthDeltaListener listener) {
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+}
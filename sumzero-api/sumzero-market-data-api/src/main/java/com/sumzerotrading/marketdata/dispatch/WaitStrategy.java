@@ -0,0 +1,47 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Determines how an idle dispatcher thread waits for more work to arrive, trading
+ * CPU usage against wake-up latency.
+ *
+ * @author Rob Terpilowski
+ */
+public interface WaitStrategy {
+
+    /**
+     * Waits until the condition reports that work is available. Implementations
+     * may return early, callers are expected to re-check for work in a loop.
+     *
+     * @param workAvailable Returns true once there is work for the waiting thread.
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    public void waitFor(BooleanSupplier workAvailable) throws InterruptedException;
+
+    /**
+     * Called by producers after publishing new work, so that threads blocked in
+     * waitFor() can be woken up.
+     */
+    public void signalAll();
+
+}
@@ -0,0 +1,242 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.marketdata.MarketDepthBook.Side;
+import java.math.BigDecimal;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class ArrayMarketDepthBookTest {
+
+    protected ArrayMarketDepthBook book;
+
+    @Before
+    public void setUp() {
+        book = new ArrayMarketDepthBook(new BigDecimal("0.01"), 4);
+        book.setSide(Side.ASK);
+    }
+
+    @Test
+    public void testInsertUpdateDelete() {
+        book.insertLevel(0, book.toPriceTicks(3.02), 200);
+        book.insertLevel(0, book.toPriceTicks(3.00), 400);
+        book.insertLevel(1, book.toPriceTicks(3.01), 1000);
+        assertLevels("3.00", 400, "3.01", 1000, "3.02", 200);
+
+        book.updateLevel(1, book.toPriceTicks(3.01), 1500);
+        assertLevels("3.00", 400, "3.01", 1500, "3.02", 200);
+
+        book.deleteLevel(0);
+        assertLevels("3.01", 1500, "3.02", 200);
+
+        //out of range operations are ignored
+        book.insertLevel(5, 1, 1);
+        book.updateLevel(2, 1, 1);
+        book.deleteLevel(2);
+        assertLevels("3.01", 1500, "3.02", 200);
+    }
+
+    @Test
+    public void testInsert_FullBookDropsDeepestLevel() {
+        for (int i = 0; i < 4; i++) {
+            book.addLevel(new MarketDepthLevel(Side.ASK, new BigDecimal("3.0" + i), 100 * (i + 1)));
+        }
+        book.insertLevel(0, book.toPriceTicks(2.99), 50);
+        assertLevels("2.99", 50, "3.00", 100, "3.01", 200, "3.02", 300);
+
+        book.insertLevel(3, book.toPriceTicks(3.02), 10);
+        assertEquals(4, book.getLevelCount());
+        assertEquals(new BigDecimal("3.02"), book.getPrice(3));
+        assertEquals(10, book.getSize(3));
+    }
+
+    @Test
+    public void testDelete_FullBook() {
+        for (int i = 0; i < 4; i++) {
+            book.addLevel(new MarketDepthLevel(Side.ASK, new BigDecimal("3.0" + i), 100 * (i + 1)));
+        }
+        book.insertLevel(0, book.toPriceTicks(2.99), 50);
+
+        book.deleteLevel(0);
+        assertLevels("3.00", 100, "3.01", 200, "3.02", 300);
+        assertCumulativeSizes(100, 300, 600);
+
+        book.deleteLevel(2);
+        assertLevels("3.00", 100, "3.01", 200);
+
+        //IB refills the bottom of the book with an insert once a level is deleted
+        book.insertLevel(2, book.toPriceTicks(3.03), 400);
+        book.insertLevel(3, book.toPriceTicks(3.04), 500);
+        assertLevels("3.00", 100, "3.01", 200, "3.03", 400, "3.04", 500);
+        assertCumulativeSizes(100, 300, 700, 1200);
+
+        book.deleteLevel(3);
+        book.deleteLevel(4);
+        assertLevels("3.00", 100, "3.01", 200, "3.03", 400);
+    }
+
+    @Test
+    public void testLevelsMatchMarketDepthBook() {
+        MarketDepthBook listBook = new MarketDepthBook();
+        listBook.setSide(Side.ASK);
+        MarketDepthLevel[] levels = {
+            new MarketDepthLevel(Side.ASK, new BigDecimal("3.00"), 400),
+            new MarketDepthLevel(Side.ASK, new BigDecimal("3.01"), 1000),
+            new MarketDepthLevel(Side.ASK, new BigDecimal("3.02"), 200)};
+        listBook.setLevels(levels);
+        book.setLevels(levels);
+
+        assertArrayEquals(listBook.getLevels(), book.getLevels());
+        assertEquals(listBook.getLevelAt(1), book.getLevelAt(1));
+        assertEquals(listBook.getTotalSize(), book.getTotalSize());
+        assertEquals(listBook.getCumulativeSize(1), book.getCumulativeSize(1));
+        assertEquals(1600, book.getCumulativeSizeValue(5));
+    }
+
+    @Test
+    public void testLevelsAreCopies() {
+        book.addLevel(new MarketDepthLevel(Side.ASK, new BigDecimal("3.00"), 400));
+        book.getLevelAt(0).setSize(new BigDecimal(1));
+
+        assertEquals(400, book.getSize(0));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetLevelAt_OutOfRange() {
+        book.getLevelAt(0);
+    }
+
+    @Test
+    public void testSort() {
+        book.addLevel(new MarketDepthLevel(Side.ASK, new BigDecimal("3.01"), 1));
+        book.addLevel(new MarketDepthLevel(Side.ASK, new BigDecimal("3.00"), 2));
+        book.addLevel(new MarketDepthLevel(Side.ASK, new BigDecimal("3.02"), 3));
+        book.sort();
+        assertLevels("3.00", 2, "3.01", 1, "3.02", 3);
+
+        book.setSide(Side.BID);
+        book.sort();
+        assertLevels("3.02", 3, "3.01", 1, "3.00", 2);
+    }
+
+    @Test
+    public void testCumulativeSizesFollowChanges() {
+        book.insertLevel(0, 300, 400);
+        book.insertLevel(1, 302, 200);
+        book.insertLevel(1, 301, 1000);
+        assertCumulativeSizes(400, 1400, 1600);
+
+        book.updateLevel(1, 301, 500);
+        assertCumulativeSizes(400, 900, 1100);
+
+        book.deleteLevel(0);
+        assertCumulativeSizes(500, 700);
+        assertEquals(700, book.getTotalSizeValue());
+        assertEquals(0, book.getCumulativeSizeValue(-1));
+
+        book.clearLevels();
+        assertEquals(0, book.getTotalSizeValue());
+    }
+
+    @Test
+    public void testVersion() {
+        long version = book.getVersion();
+        book.insertLevel(0, 300, 400);
+        assertTrue(book.getVersion() > version);
+
+        version = book.getVersion();
+        book.updateLevel(0, 300, 500);
+        assertTrue(book.getVersion() > version);
+
+        version = book.getVersion();
+        book.deleteLevel(0);
+        assertTrue(book.getVersion() > version);
+    }
+
+    @Test
+    public void testPriceToFill() {
+        book.insertLevel(0, 300, 400);
+        book.insertLevel(1, 301, 1000);
+        book.insertLevel(2, 302, 200);
+
+        assertEquals(0, book.getLevelToFill(400));
+        assertEquals(1, book.getLevelToFill(401));
+        assertEquals(2, book.getLevelToFill(1600));
+        assertEquals(-1, book.getLevelToFill(1601));
+
+        assertEquals(new BigDecimal("3.01"), book.getPriceToFill(new BigDecimal(1400)));
+        assertNull(book.getPriceToFill(new BigDecimal(2000)));
+        assertEquals(3.00, book.getAveragePriceToFill(400), 1e-9);
+        assertEquals((400 * 3.00 + 600 * 3.01) / 1000, book.getAveragePriceToFill(1000), 1e-9);
+        assertTrue(Double.isNaN(book.getAveragePriceToFill(1601)));
+        assertEquals((400 * 3.00 + 1000 * 3.01) / 1400, book.getAveragePrice(1), 1e-9);
+    }
+
+    @Test
+    public void testPriceToFill_MatchesMarketDepthBook() {
+        MarketDepthBook listBook = new MarketDepthBook();
+        MarketDepthLevel[] levels = {
+            new MarketDepthLevel(Side.ASK, new BigDecimal("3.00"), 400),
+            new MarketDepthLevel(Side.ASK, new BigDecimal("3.01"), 1000)};
+        listBook.setLevels(levels);
+        book.setLevels(levels);
+
+        for (int size : new int[]{1, 400, 401, 1400, 1401}) {
+            assertEquals(listBook.getPriceToFill(new BigDecimal(size)), book.getPriceToFill(new BigDecimal(size)));
+        }
+    }
+
+    @Test
+    public void testEquals() {
+        ArrayMarketDepthBook other = new ArrayMarketDepthBook(new BigDecimal("0.01"), 8);
+        other.setSide(Side.ASK);
+        book.insertLevel(0, 300, 10);
+        other.insertLevel(0, 300, 10);
+        assertEquals(book, other);
+        assertEquals(book.hashCode(), other.hashCode());
+
+        other.updateLevel(0, 300, 11);
+        assertFalse(book.equals(other));
+    }
+
+    protected void assertCumulativeSizes(long... cumulativeSizes) {
+        assertEquals(cumulativeSizes.length, book.getLevelCount());
+        for (int i = 0; i < cumulativeSizes.length; i++) {
+            assertEquals(cumulativeSizes[i], book.getCumulativeSizeValue(i));
+            assertEquals(cumulativeSizes[i], book.getCumulativeSize(i).longValue());
+        }
+    }
+
+        protected void assertLevels(Object... pricesAndSizes) {
+        assertEquals(pricesAndSizes.length / 2, book.getLevelCount());
+        for (int i = 0; i < pricesAndSizes.length / 2; i++) {
+            MarketDepthLevel level = book.getLevelAt(i);
+            assertEquals(new BigDecimal((String) pricesAndSizes[i * 2]), level.getPrice());
+            assertEquals(((Integer) pricesAndSizes[i * 2 + 1]).intValue(), level.getSize().intValue());
+            assertEquals(book.getSide(), level.getSide());
+        }
+    }
+}
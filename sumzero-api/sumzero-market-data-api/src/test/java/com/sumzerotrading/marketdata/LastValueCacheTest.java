@@ -0,0 +1,149 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.data.StockTicker;
+import com.sumzerotrading.data.Ticker;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class LastValueCacheTest {
+
+    protected Ticker ticker = new StockTicker("ABC");
+
+    public LastValueCacheTest() {
+    }
+
+    @Test
+    public void testNoQuotes() {
+        LastValueCache cache = new LastValueCache();
+        assertNull(cache.getSnapshot(ticker));
+        assertTrue(Double.isNaN(cache.getDouble(ticker, QuoteType.BID)));
+    }
+
+    @Test
+    public void testUpdateMergesValues() {
+        LastValueCache cache = new LastValueCache();
+        ZonedDateTime time = ZonedDateTime.now();
+        cache.update(new PrimitiveLevel1Quote(ticker, time).setValue(QuoteType.BID, 10).setValue(QuoteType.ASK, 10.5));
+        Map<QuoteType, BigDecimal> values = new HashMap<>();
+        values.put(QuoteType.BID, new BigDecimal("10.25"));
+        cache.update(new Level1Quote(ticker, time, values));
+
+        ILevel1Quote snapshot = cache.getSnapshot(ticker);
+        assertArrayEquals(new QuoteType[]{QuoteType.BID, QuoteType.ASK}, snapshot.getTypes());
+        assertEquals(10.25, snapshot.getDouble(QuoteType.BID), 0);
+        assertEquals(10.5, snapshot.getDouble(QuoteType.ASK), 0);
+        assertEquals(time.toInstant(), snapshot.getTimeStamp().toInstant());
+        assertEquals(10.5, cache.getDouble(ticker, QuoteType.ASK), 0);
+        assertTrue(Double.isNaN(cache.getDouble(ticker, QuoteType.LAST)));
+    }
+
+    @Test
+    public void testSnapshotIsACopy() {
+        LastValueCache cache = new LastValueCache();
+        cache.update(new PrimitiveLevel1Quote(ticker, ZonedDateTime.now()).setValue(QuoteType.LAST, 1));
+        ILevel1Quote snapshot = cache.getSnapshot(ticker);
+        cache.update(new PrimitiveLevel1Quote(ticker, ZonedDateTime.now()).setValue(QuoteType.LAST, 2));
+
+        assertEquals(1, snapshot.getDouble(QuoteType.LAST), 0);
+        assertEquals(2, cache.getSnapshot(ticker).getDouble(QuoteType.LAST), 0);
+
+        cache.remove(ticker);
+        assertNull(cache.getSnapshot(ticker));
+    }
+
+    @Test
+    public void testSnapshotSequence() {
+        LastValueCache cache = new LastValueCache();
+        int tickerId = cache.tickerRegistry.register(ticker);
+        List<ILevel1Quote> snapshots = new ArrayList<>();
+        assertEquals(0, cache.getSnapshot(tickerId, snapshots::add));
+        assertTrue(snapshots.isEmpty());
+
+        long first = cache.update(tickerId, new PrimitiveLevel1Quote(ticker, ZonedDateTime.now()).setValue(QuoteType.LAST, 1));
+        long second = cache.update(tickerId, new PrimitiveLevel1Quote(ticker, ZonedDateTime.now()).setValue(QuoteType.LAST, 2));
+        assertTrue(second > first);
+
+        assertEquals(second, cache.getSnapshot(tickerId, snapshots::add));
+        assertEquals(1, snapshots.size());
+        assertEquals(2, snapshots.get(0).getDouble(QuoteType.LAST), 0);
+    }
+
+    @Test
+    public void testConcurrentWritersToOneTicker() throws Exception {
+        LastValueCache cache = new LastValueCache();
+        int tickerId = cache.tickerRegistry.register(ticker);
+        int updates = 20000;
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 2; w++) {
+            Thread writer = new Thread(() -> {
+                PrimitiveLevel1Quote quote = new PrimitiveLevel1Quote(ticker, ZonedDateTime.now());
+                for (int i = 0; i < updates; i++) {
+                    cache.update(tickerId, quote.setValue(QuoteType.BID, i).setValue(QuoteType.ASK, i));
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        //every update is counted, and none of them were interleaved
+        assertEquals(4L * updates, cache.getSnapshot(tickerId, snapshot -> assertEquals(snapshot.getDouble(QuoteType.BID), snapshot.getDouble(QuoteType.ASK), 0)));
+    }
+
+    @Test
+    public void testReadersNeverSeePartialUpdates() throws Exception {
+        LastValueCache cache = new LastValueCache();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            PrimitiveLevel1Quote quote = new PrimitiveLevel1Quote(ticker, ZonedDateTime.now());
+            for (int i = 0; running.get(); i++) {
+                cache.update(quote.setValue(QuoteType.BID, i).setValue(QuoteType.ASK, i));
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 100000; i++) {
+                ILevel1Quote snapshot = cache.getSnapshot(ticker);
+                if (snapshot != null) {
+                    assertEquals(snapshot.getDouble(QuoteType.BID), snapshot.getDouble(QuoteType.ASK), 0);
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+}
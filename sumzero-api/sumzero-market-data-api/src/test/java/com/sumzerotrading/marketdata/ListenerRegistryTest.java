@@ -0,0 +1,124 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.data.StockTicker;
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class ListenerRegistryTest {
+
+    protected Level1QuoteListener listener1 = quote -> {};
+    protected Level1QuoteListener listener2 = quote -> {};
+    protected Ticker ticker = new StockTicker("ABC");
+
+    public ListenerRegistryTest() {
+    }
+
+    @Test
+    public void testNoListeners() {
+        ListenerRegistry<Level1QuoteListener> registry = new ListenerRegistry<>(Level1QuoteListener[]::new);
+        assertEquals(0, registry.getListeners(ticker).length);
+        assertFalse(registry.hasListeners(ticker));
+        assertFalse(registry.isSubscribed(listener1));
+        assertEquals(0, registry.getTickerCount());
+    }
+
+    @Test
+    public void testAddAndRemoveListeners() {
+        ListenerRegistry<Level1QuoteListener> registry = new ListenerRegistry<>(Level1QuoteListener[]::new);
+        registry.addListener(ticker, listener1);
+        registry.addListener(ticker, listener2);
+
+        assertArrayEquals(new Level1QuoteListener[]{listener1, listener2}, registry.getListeners(ticker));
+        assertTrue(registry.hasListeners(ticker));
+        assertTrue(registry.isSubscribed(listener2));
+
+        registry.removeListener(ticker, listener1);
+        assertArrayEquals(new Level1QuoteListener[]{listener2}, registry.getListeners(ticker));
+        assertFalse(registry.isSubscribed(listener1));
+
+        registry.removeListener(ticker, listener2);
+        assertFalse(registry.hasListeners(ticker));
+        assertEquals(0, registry.getTickerCount());
+    }
+
+    @Test
+    public void testGetListenersById() {
+        TickerRegistry tickerRegistry = new TickerRegistry();
+        ListenerRegistry<Level1QuoteListener> registry = new ListenerRegistry<>(Level1QuoteListener[]::new, tickerRegistry);
+        registry.addListener(ticker, listener1);
+        registry.addListener(ticker, listener2);
+        int tickerId = tickerRegistry.getId(ticker);
+
+        assertArrayEquals(new Level1QuoteListener[]{listener1, listener2}, registry.getListeners(tickerId));
+        assertEquals(0, registry.getListeners(tickerId + 1).length);
+        assertEquals(0, registry.getListeners(TickerRegistry.UNKNOWN_ID).length);
+
+        registry.removeListener(ticker, listener1);
+        assertArrayEquals(new Level1QuoteListener[]{listener2}, registry.getListeners(tickerId));
+        registry.removeListener(ticker, listener2);
+        assertEquals(0, registry.getListeners(tickerId).length);
+    }
+
+    @Test
+    public void testGetTickers() {
+        ListenerRegistry<Level1QuoteListener> registry = new ListenerRegistry<>(Level1QuoteListener[]::new);
+        Ticker otherTicker = new StockTicker("XYZ");
+        registry.addListener(ticker, listener1);
+        registry.addListener(otherTicker, listener1);
+        registry.addListener(otherTicker, listener2);
+
+        assertEquals(2, registry.getTickers(listener1).size());
+        assertTrue(registry.getTickers(listener1).contains(ticker));
+        assertEquals(Collections.singletonList(otherTicker), registry.getTickers(listener2));
+    }
+
+    @Test
+    public void testRemoveUnknownListener() {
+        ListenerRegistry<Level1QuoteListener> registry = new ListenerRegistry<>(Level1QuoteListener[]::new);
+        registry.removeListener(ticker, listener1);
+        registry.addListener(ticker, listener1);
+        registry.removeListener(ticker, listener2);
+        assertArrayEquals(new Level1QuoteListener[]{listener1}, registry.getListeners(ticker));
+    }
+
+    @Test
+    public void testPublishedArrayIsNotModified() {
+        ListenerRegistry<Level1QuoteListener> registry = new ListenerRegistry<>(Level1QuoteListener[]::new);
+        registry.addListener(ticker, listener1);
+        Level1QuoteListener[] snapshot = registry.getListeners(ticker);
+
+        registry.addListener(ticker, listener2);
+        registry.removeListener(ticker, listener1);
+
+        //a reader iterating the old array must not see the changes
+        assertArrayEquals(new Level1QuoteListener[]{listener1}, snapshot);
+        assertArrayEquals(new Level1QuoteListener[]{listener2}, registry.getListeners(ticker));
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.marketdata.MarketDepthBook.Side;
+import java.math.BigDecimal;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class MarketDepthAnalyticsTest {
+
+    protected ArrayMarketDepthBook bidBook;
+    protected ArrayMarketDepthBook askBook;
+    protected MarketDepthAnalytics analytics;
+
+    @Before
+    public void setUp() {
+        bidBook = new ArrayMarketDepthBook(new BigDecimal("0.01"));
+        bidBook.setSide(Side.BID);
+        askBook = new ArrayMarketDepthBook(new BigDecimal("0.01"));
+        askBook.setSide(Side.ASK);
+        analytics = new MarketDepthAnalytics(bidBook, askBook, 2);
+
+        bidBook.insertLevel(0, 1000, 300);
+        bidBook.insertLevel(1, 999, 500);
+        bidBook.insertLevel(2, 998, 1000);
+        askBook.insertLevel(0, 1001, 100);
+        askBook.insertLevel(1, 1002, 100);
+    }
+
+    @Test
+    public void testMicroprice() {
+        //more size bid, so the price is pulled towards the offer
+        assertEquals((10.00 * 100 + 10.01 * 300) / 400, analytics.getMicroprice(), 1e-9);
+    }
+
+    @Test
+    public void testImbalance() {
+        //the third bid level is deeper than the analytics look
+        assertEquals((800 - 200) / 1000.0, analytics.getImbalance(), 1e-9);
+    }
+
+    @Test
+    public void testDepthWeightedMid() {
+        double bidAverage = (10.00 * 300 + 9.99 * 500) / 800;
+        double askAverage = (10.01 * 100 + 10.02 * 100) / 200;
+        assertEquals((bidAverage * 200 + askAverage * 800) / 1000, analytics.getDepthWeightedMid(), 1e-9);
+    }
+
+    @Test
+    public void testRecalculatedWhenBookChanges() {
+        double microprice = analytics.getMicroprice();
+        assertEquals(microprice, analytics.getMicroprice(), 0);
+
+        askBook.updateLevel(0, 1001, 300);
+        assertEquals(10.005, analytics.getMicroprice(), 1e-9);
+        assertEquals((800 - 400) / 1200.0, analytics.getImbalance(), 1e-9);
+
+        askBook.clearLevels();
+        assertTrue(Double.isNaN(analytics.getMicroprice()));
+        assertTrue(Double.isNaN(analytics.getDepthWeightedMid()));
+        assertEquals(1.0, analytics.getImbalance(), 0);
+    }
+
+    @Test
+    public void testAveragePriceToFill() {
+        assertEquals(10.015, analytics.getAveragePriceToBuy(200), 1e-9);
+        assertTrue(Double.isNaN(analytics.getAveragePriceToBuy(201)));
+        assertEquals((10.00 * 300 + 9.99 * 100) / 400, analytics.getAveragePriceToSell(400), 1e-9);
+    }
+}
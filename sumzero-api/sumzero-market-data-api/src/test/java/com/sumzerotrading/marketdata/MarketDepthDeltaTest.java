@@ -0,0 +1,126 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.data.StockTicker;
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.marketdata.MarketDepthBook.Side;
+import com.sumzerotrading.marketdata.MarketDepthDelta.Operation;
+import java.math.BigDecimal;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class MarketDepthDeltaTest {
+
+    protected Ticker ticker = new StockTicker("ABC");
+    protected BigDecimal tickSize = new BigDecimal("0.01");
+    protected ArrayMarketDepthBook book;
+
+    @Before
+    public void setUp() {
+        book = new ArrayMarketDepthBook(tickSize, 8);
+        book.setSide(Side.ASK);
+    }
+
+    @Test
+    public void testGetPrice() {
+        MarketDepthDelta delta = new MarketDepthDelta(ticker, Side.ASK, Operation.INSERT, 0, 10025, 300, tickSize, 1, null);
+
+        assertEquals(new BigDecimal("100.25"), delta.getPrice());
+        assertEquals(100.25, delta.getPriceValue(), 0.000001);
+    }
+
+    @Test
+    public void testApplyTo() {
+        new MarketDepthDelta(ticker, Side.ASK, Operation.INSERT, 0, 1001, 100, tickSize, 1, null).applyTo(book);
+        new MarketDepthDelta(ticker, Side.ASK, Operation.INSERT, 0, 1000, 200, tickSize, 2, null).applyTo(book);
+        new MarketDepthDelta(ticker, Side.ASK, Operation.UPDATE, 1, 1001, 50, tickSize, 3, null).applyTo(book);
+
+        assertEquals(2, book.getLevelCount());
+        assertEquals(1000, book.getPriceTicks(0));
+        assertEquals(50, book.getSize(1));
+
+        new MarketDepthDelta(ticker, Side.ASK, Operation.DELETE, 0, 0, 0, tickSize, 4, null).applyTo(book);
+
+        assertEquals(1, book.getLevelCount());
+        assertEquals(1001, book.getPriceTicks(0));
+    }
+
+    @Test
+    public void testDeltasReproduceBook() {
+        Random random = new Random(7);
+        for (int i = 0; i < 5; i++) {
+            book.insertLevel(i, 1000 + i, 100);
+        }
+        MarketDepthSnapshot snapshot = book.snapshot();
+        ArrayMarketDepthBook replica = new ArrayMarketDepthBook(tickSize, 8);
+        replica.setSide(Side.ASK);
+        for (int i = 0; i < snapshot.getLevelCount(); i++) {
+            replica.insertLevel(i, snapshot.getPriceTicks(i), snapshot.getSize(i));
+        }
+
+        long lastSequence = snapshot.getSequence();
+        for (int i = 0; i < 1000; i++) {
+            Operation operation = book.getLevelCount() == 0 ? Operation.INSERT : Operation.values()[random.nextInt(3)];
+            //inserts can go after the last level, as long as the book has room for them
+            int levels = operation == Operation.INSERT ? Math.min(book.getLevelCount() + 1, book.getCapacity()) : book.getLevelCount();
+            int position = random.nextInt(levels);
+            long priceTicks = 1000 + random.nextInt(20);
+            long size = 1 + random.nextInt(500);
+            if (operation == Operation.INSERT) {
+                book.insertLevel(position, priceTicks, size);
+            } else if (operation == Operation.UPDATE) {
+                book.updateLevel(position, priceTicks, size);
+            } else {
+                book.deleteLevel(position);
+            }
+            MarketDepthDelta delta;
+            if (operation == Operation.DELETE) {
+                delta = new MarketDepthDelta(ticker, Side.ASK, operation, position, 0, 0, tickSize, book.getVersion(), null);
+            } else {
+                delta = new MarketDepthDelta(ticker, Side.ASK, operation, position, book.getPriceTicks(position),
+                        book.getSize(position), tickSize, book.getVersion(), null);
+            }
+
+            assertEquals(lastSequence + 1, delta.getSequence());
+            lastSequence = delta.getSequence();
+            delta.applyTo(replica);
+        }
+
+        assertEquals(book, replica);
+        assertEquals(book.getTotalSizeValue(), replica.getTotalSizeValue());
+    }
+
+    @Test
+    public void testEquals() {
+        MarketDepthDelta delta = new MarketDepthDelta(ticker, Side.ASK, Operation.UPDATE, 2, 1000, 100, tickSize, 5, null);
+
+        assertEquals(delta, new MarketDepthDelta(ticker, Side.ASK, Operation.UPDATE, 2, 1000, 100, tickSize, 5, null));
+        assertEquals(delta.hashCode(), new MarketDepthDelta(ticker, Side.ASK, Operation.UPDATE, 2, 1000, 100, tickSize, 5, null).hashCode());
+        assertFalse(delta.equals(new MarketDepthDelta(ticker, Side.ASK, Operation.UPDATE, 2, 1000, 100, tickSize, 6, null)));
+        assertFalse(delta.equals(new MarketDepthDelta(ticker, Side.BID, Operation.UPDATE, 2, 1000, 100, tickSize, 5, null)));
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.data.StockTicker;
+import com.sumzerotrading.marketdata.MarketDepthBook.Side;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class MarketDepthSnapshotTest {
+
+    protected ArrayMarketDepthBook book;
+
+    @Before
+    public void setUp() {
+        book = new ArrayMarketDepthBook(new BigDecimal("0.01"), 16);
+        book.setSide(Side.BID);
+        book.insertLevel(0, 1000, 300);
+        book.insertLevel(1, 999, 500);
+    }
+
+    @Test
+    public void testSnapshot() {
+        MarketDepthSnapshot snapshot = book.snapshot();
+        long sequence = book.getVersion();
+
+        book.updateLevel(0, 1000, 100);
+        book.deleteLevel(1);
+
+        assertEquals(sequence, snapshot.getSequence());
+        assertEquals(Side.BID, snapshot.getSide());
+        assertEquals(2, snapshot.getLevelCount());
+        assertEquals(300, snapshot.getSize(0));
+        assertEquals(800, snapshot.getTotalSizeValue());
+        assertEquals(new BigDecimal("9.99"), snapshot.getLevelAt(1).getPrice());
+
+        book.snapshot(snapshot);
+        assertEquals(book.getVersion(), snapshot.getSequence());
+        assertEquals(1, snapshot.getLevelCount());
+        assertEquals(100, snapshot.getTotalSizeValue());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotCantBeModified() {
+        book.snapshot().addLevel(new MarketDepthLevel(Side.BID, new BigDecimal("9.98"), 100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSnapshot_WrongCapacity() {
+        book.snapshot(new MarketDepthSnapshot(new BigDecimal("0.01"), 4));
+    }
+
+    @Test
+    public void testLevel2Quote() {
+        Level2Quote quote = new Level2Quote(new StockTicker("ABC"), QuoteType.MARKET_DEPTH_BID, ZonedDateTime.now(), book, book.getVersion());
+
+        assertEquals(book.getVersion(), quote.getSequence());
+        MarketDepthSnapshot snapshot = (MarketDepthSnapshot) quote.getSnapshot();
+        assertEquals(quote.getSequence(), snapshot.getSequence());
+        assertEquals(book.getLevels().length, snapshot.getLevels().length);
+
+        //a quote already holding a snapshot doesn't copy it again
+        assertSame(snapshot, new Level2Quote(new StockTicker("ABC"), QuoteType.MARKET_DEPTH_BID, ZonedDateTime.now(), snapshot, snapshot.getSequence()).getSnapshot());
+
+        MarketDepthBook listBook = new MarketDepthBook();
+        assertSame(listBook, new Level2Quote(new StockTicker("ABC"), QuoteType.MARKET_DEPTH_BID, ZonedDateTime.now(), listBook).getSnapshot());
+    }
+
+    @Test
+    public void testSnapshotsAreNeverTorn() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> torn = new AtomicReference<>();
+
+        //shifts the whole book down and back up, changing sizes as it goes
+        Thread writer = new Thread(() -> {
+            long size = 1;
+            while (running.get()) {
+                book.insertLevel(0, book.getPriceTicks(0) + 1, ++size);
+                book.updateLevel(1, book.getPriceTicks(1), ++size);
+                book.deleteLevel(0);
+            }
+        });
+        writer.start();
+
+        MarketDepthSnapshot snapshot = new MarketDepthSnapshot(new BigDecimal("0.01"), 16);
+        long deadline = System.currentTimeMillis() + 200;
+        while (System.currentTimeMillis() < deadline && torn.get() == null) {
+            book.snapshot(snapshot);
+            long cumulativeSize = 0;
+            for (int i = 0; i < snapshot.getLevelCount(); i++) {
+                cumulativeSize += snapshot.getSize(i);
+                boolean pricesDescend = i == 0 || snapshot.getPriceTicks(i) < snapshot.getPriceTicks(i - 1);
+                if (!pricesDescend || snapshot.getCumulativeSizeValue(i) != cumulativeSize) {
+                    torn.set(snapshot.toString());
+                }
+            }
+        }
+        running.set(false);
+        writer.join();
+        assertNull(torn.get());
+    }
+}
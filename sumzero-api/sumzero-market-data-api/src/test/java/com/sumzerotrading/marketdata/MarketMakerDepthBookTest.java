@@ -0,0 +1,222 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.marketdata.MarketDepthBook.Side;
+import com.sumzerotrading.marketdata.MarketDepthDelta.Operation;
+import java.math.BigDecimal;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class MarketMakerDepthBookTest {
+
+    protected MarketMakerDepthBook book;
+
+    @Before
+    public void setUp() {
+        book = new MarketMakerDepthBook(new BigDecimal("0.01"), Side.BID, 8);
+    }
+
+    @Test
+    public void testInsertRow_AggregatesLevels() {
+        book.insertRow(0, "NSDQ", 1000, 100);
+        book.insertRow(1, "ARCA", 1000, 200);
+        book.insertRow(2, "EDGX", 999, 300);
+        book.insertRow(0, "BATS", 1001, 50);
+
+        ArrayMarketDepthBook levels = book.getLevels();
+        assertEquals(4, book.getRowCount());
+        assertEquals("BATS", book.getRowVenue(0));
+        assertEquals(3, levels.getLevelCount());
+        assertEquals(1001, levels.getPriceTicks(0));
+        assertEquals(50, levels.getSize(0));
+        assertEquals(1000, levels.getPriceTicks(1));
+        assertEquals(300, levels.getSize(1));
+        assertEquals(999, levels.getPriceTicks(2));
+        assertEquals(650, levels.getTotalSizeValue());
+    }
+
+    @Test
+    public void testAskLevels() {
+        book = new MarketMakerDepthBook(new BigDecimal("0.01"), Side.ASK, 8);
+        book.insertRow(0, "NSDQ", 1002, 100);
+        book.insertRow(0, "ARCA", 1001, 200);
+        book.insertRow(2, "EDGX", 1003, 300);
+
+        assertEquals(1001, book.getLevels().getPriceTicks(0));
+        assertEquals(1003, book.getLevels().getPriceTicks(2));
+    }
+
+    @Test
+    public void testUpdateRow() {
+        book.insertRow(0, "NSDQ", 1000, 100);
+        book.insertRow(1, "ARCA", 1000, 200);
+
+        //same venue and price, only the size of the level changes
+        book.updateRow(0, "NSDQ", 1000, 150);
+        assertEquals(1, book.getChangeCount());
+        assertEquals(Operation.UPDATE, book.getChangeOperation(0));
+        assertEquals(350, book.getChangeSize(0));
+        assertEquals(350, book.getLevels().getSize(0));
+
+        //moving to a new price takes the size from one level and adds it to another
+        book.updateRow(0, "NSDQ", 999, 150);
+        assertEquals(2, book.getChangeCount());
+        assertEquals(Operation.UPDATE, book.getChangeOperation(0));
+        assertEquals(200, book.getChangeSize(0));
+        assertEquals(Operation.INSERT, book.getChangeOperation(1));
+        assertEquals(1, book.getChangePosition(1));
+        assertEquals(999, book.getChangePriceTicks(1));
+        assertEquals(2, book.getLevels().getLevelCount());
+        assertEquals(150, book.getVenueSize(book.getVenueId("NSDQ")));
+    }
+
+    @Test
+    public void testDeleteRow() {
+        book.insertRow(0, "NSDQ", 1000, 100);
+        book.insertRow(1, "ARCA", 999, 200);
+
+        book.deleteRow(0);
+
+        assertEquals(1, book.getRowCount());
+        assertEquals("ARCA", book.getRowVenue(0));
+        assertEquals(1, book.getChangeCount());
+        assertEquals(Operation.DELETE, book.getChangeOperation(0));
+        assertEquals(0, book.getChangePosition(0));
+        assertEquals(1, book.getLevels().getLevelCount());
+        assertEquals(999, book.getLevels().getPriceTicks(0));
+        assertEquals(0, book.getVenueRowCount(book.getVenueId("NSDQ")));
+    }
+
+    @Test
+    public void testOutOfRangeRowsIgnored() {
+        book.insertRow(1, "NSDQ", 1000, 100);
+        book.updateRow(0, "NSDQ", 1000, 100);
+        book.deleteRow(0);
+
+        assertEquals(0, book.getRowCount());
+        assertEquals(0, book.getChangeCount());
+        assertEquals(0, book.getLevels().getVersion());
+    }
+
+    @Test
+    public void testInsertRow_FullBookDropsLastRow() {
+        for (int i = 0; i < 8; i++) {
+            book.insertRow(i, "MM" + i, 1000 - i, 100);
+        }
+
+        book.insertRow(0, "NSDQ", 1001, 100);
+
+        assertEquals(8, book.getRowCount());
+        assertEquals(2, book.getChangeCount());
+        assertEquals(Operation.DELETE, book.getChangeOperation(0));
+        assertEquals(7, book.getChangePosition(0));
+        assertEquals(Operation.INSERT, book.getChangeOperation(1));
+        assertEquals(0, book.getChangePosition(1));
+        assertEquals(800, book.getLevels().getTotalSizeValue());
+        assertEquals(0, book.getVenueSize(book.getVenueId("MM7")));
+    }
+
+    @Test
+    public void testVenueStatistics() {
+        book.insertRow(0, "NSDQ", 1000, 100);
+        book.insertRow(1, "ARCA", 1000, 300);
+        book.updateRow(0, "NSDQ", 1000, 200);
+
+        int nsdq = book.getVenueId("NSDQ");
+        assertEquals(2, book.getVenueCount());
+        assertEquals(MarketMakerDepthBook.UNKNOWN_VENUE, book.getVenueId("EDGX"));
+        assertEquals("NSDQ", book.getVenueName(nsdq));
+        assertEquals(200, book.getVenueSize(nsdq));
+        assertEquals(1, book.getVenueRowCount(nsdq));
+        assertEquals(2, book.getVenueQuoteCount(nsdq));
+        assertEquals(150, book.getVenueAverageQuoteSize(nsdq), 0.000001);
+        assertEquals(0.4, book.getVenueShare(nsdq), 0.000001);
+        assertEquals(200, book.getVenueSizeAt(nsdq, 1000));
+        assertEquals(0, book.getVenueSizeAt(nsdq, 999));
+
+        book.clear();
+        assertEquals(0, book.getVenueSize(nsdq));
+        assertTrue(Double.isNaN(book.getVenueShare(nsdq)));
+        assertEquals(2, book.getVenueQuoteCount(nsdq));
+    }
+
+    @Test
+    public void testChangesReproduceLevels() {
+        Random random = new Random(11);
+        String[] venues = {"NSDQ", "ARCA", "EDGX", "BATS", "IEX"};
+        ArrayMarketDepthBook replica = new ArrayMarketDepthBook(new BigDecimal("0.01"), 8);
+        replica.setSide(Side.BID);
+        long lastSequence = 0;
+
+        for (int i = 0; i < 2000; i++) {
+            int operation = book.getRowCount() == 0 ? 0 : random.nextInt(3);
+            String venue = venues[random.nextInt(venues.length)];
+            long priceTicks = 1000 - random.nextInt(6);
+            long size = random.nextInt(5) * 100;
+            if (operation == 0) {
+                book.insertRow(random.nextInt(book.getRowCount() + 1), venue, priceTicks, size);
+            } else if (operation == 1) {
+                book.updateRow(random.nextInt(book.getRowCount()), venue, priceTicks, size);
+            } else {
+                book.deleteRow(random.nextInt(book.getRowCount()));
+            }
+
+            for (int j = 0; j < book.getChangeCount(); j++) {
+                assertEquals(lastSequence + 1, book.getChangeSequence(j));
+                lastSequence = book.getChangeSequence(j);
+                new MarketDepthDelta(null, Side.BID, book.getChangeOperation(j), book.getChangePosition(j), book.getChangePriceTicks(j),
+                        book.getChangeSize(j), new BigDecimal("0.01"), lastSequence, null).applyTo(replica);
+            }
+            assertEquals(book.getLevels(), replica);
+            assertLevelsMatchRows();
+        }
+    }
+
+    protected void assertLevelsMatchRows() {
+        ArrayMarketDepthBook levels = book.getLevels();
+        long total = 0;
+        for (int i = 0; i < levels.getLevelCount(); i++) {
+            long size = 0;
+            for (int row = 0; row < book.getRowCount(); row++) {
+                if (book.getRowPriceTicks(row) == levels.getPriceTicks(i)) {
+                    size += book.getRowSize(row);
+                }
+            }
+            assertEquals(size, levels.getSize(i));
+            assertTrue(size > 0);
+            if (i > 0) {
+                assertTrue(levels.getPriceTicks(i) < levels.getPriceTicks(i - 1));
+            }
+            total += size;
+        }
+        long venueTotal = 0;
+        for (int venue = 0; venue < book.getVenueCount(); venue++) {
+            venueTotal += book.getVenueSize(venue);
+        }
+        assertEquals(total, venueTotal);
+    }
+}
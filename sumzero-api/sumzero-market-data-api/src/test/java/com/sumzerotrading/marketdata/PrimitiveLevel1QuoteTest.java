@@ -0,0 +1,125 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata;
+
+import com.sumzerotrading.data.StockTicker;
+import com.sumzerotrading.data.SumZeroException;
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.time.ClockUtil;
+import com.sumzerotrading.time.SimulatedClock;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class PrimitiveLevel1QuoteTest {
+
+    protected Ticker ticker = new StockTicker("ABC");
+    protected ZonedDateTime timestamp = ZonedDateTime.now();
+
+    public PrimitiveLevel1QuoteTest() {
+    }
+
+    @Test
+    public void testSetAndGetValues() {
+        PrimitiveLevel1Quote quote = new PrimitiveLevel1Quote(ticker, timestamp);
+        quote.setValue(QuoteType.BID, 10.25).setValue(QuoteType.BID_SIZE, 300);
+
+        assertTrue(quote.containsType(QuoteType.BID));
+        assertTrue(quote.containsType(QuoteType.BID_SIZE));
+        assertFalse(quote.containsType(QuoteType.ASK));
+        assertEquals(10.25, quote.getDouble(QuoteType.BID), 0);
+        assertEquals(300, quote.getLong(QuoteType.BID_SIZE));
+        assertArrayEquals(new QuoteType[]{QuoteType.BID, QuoteType.BID_SIZE}, quote.getTypes());
+        assertEquals(ticker, quote.getTicker());
+        assertEquals(timestamp, quote.getTimeStamp());
+    }
+
+    @Test
+    public void testGetTypes_SharedUntilQuoteChanges() {
+        PrimitiveLevel1Quote quote = new PrimitiveLevel1Quote(ticker, timestamp);
+        quote.setValue(QuoteType.BID, 10.25);
+
+        QuoteType[] types = quote.getTypes();
+        assertSame(types, quote.getTypes());
+
+        quote.setValue(QuoteType.ASK, 10.26);
+        assertArrayEquals(new QuoteType[]{QuoteType.BID, QuoteType.ASK}, quote.getTypes());
+        assertArrayEquals(new QuoteType[]{QuoteType.BID}, types);
+    }
+
+    @Test
+    public void testGetValue_RoundsPricesToTickSize() {
+        PrimitiveLevel1Quote quote = new PrimitiveLevel1Quote(ticker, timestamp);
+        quote.setValue(QuoteType.LAST, 10.251).setValue(QuoteType.VOLUME, 1500);
+
+        assertEquals(new BigDecimal("10.25"), quote.getValue(QuoteType.LAST));
+        assertEquals(new BigDecimal("1500"), quote.getValue(QuoteType.VOLUME));
+        assertSame(quote.getValue(QuoteType.LAST), quote.getValue(QuoteType.LAST));
+
+        quote.setValue(QuoteType.LAST, 11.5);
+        assertEquals(new BigDecimal("11.50"), quote.getValue(QuoteType.LAST));
+    }
+
+    @Test(expected = SumZeroException.class)
+    public void testGetValue_MissingType() {
+        new PrimitiveLevel1Quote(ticker, timestamp).getValue(QuoteType.ASK);
+    }
+
+    @Test
+    public void testMerge() {
+        PrimitiveLevel1Quote quote = new PrimitiveLevel1Quote(ticker, timestamp).setValue(QuoteType.BID, 10);
+        PrimitiveLevel1Quote other = new PrimitiveLevel1Quote(ticker, timestamp).setValue(QuoteType.BID, 11).setValue(QuoteType.ASK, 12);
+
+        quote.merge(other);
+        assertEquals(11, quote.getDouble(QuoteType.BID), 0);
+        assertEquals(12, quote.getDouble(QuoteType.ASK), 0);
+        assertEquals(other, quote);
+    }
+
+    @Test
+    public void testTimestampFromClock() {
+        SimulatedClock clock = new SimulatedClock(timestamp);
+        PrimitiveLevel1Quote quote = new PrimitiveLevel1Quote(ticker, clock.epochNanos(), clock);
+
+        assertEquals(ClockUtil.toEpochNanos(timestamp), quote.getTimeStampNanos());
+        assertEquals(timestamp.toInstant(), quote.getTimeStamp().toInstant());
+    }
+
+    @Test
+    public void testPoolReusesQuotes() {
+        PrimitiveLevel1QuotePool pool = new PrimitiveLevel1QuotePool(4);
+        PrimitiveLevel1Quote quote = pool.acquire(ticker, timestamp).setValue(QuoteType.ASK, 5);
+        quote.release();
+        assertEquals(1, pool.getAvailableCount());
+
+        Ticker otherTicker = new StockTicker("XYZ");
+        PrimitiveLevel1Quote reused = pool.acquire(otherTicker, timestamp);
+        assertSame(quote, reused);
+        assertEquals(otherTicker, reused.getTicker());
+        assertFalse(reused.containsType(QuoteType.ASK));
+        assertEquals(0, reused.getTypes().length);
+    }
+
+}
@@ -25,10 +25,18 @@ import java.util.List;
 import java.util.Map;
 import com.sumzerotrading.data.Ticker;
 import com.sumzerotrading.data.StockTicker;
+import com.sumzerotrading.marketdata.dispatch.IQuoteDispatcher;
+import com.sumzerotrading.marketdata.dispatch.SynchronousQuoteDispatcher;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.jmock.Expectations;
 import static org.jmock.Expectations.returnValue;
 import static org.jmock.Expectations.throwException;
@@ -42,6 +50,7 @@ import static org.junit.Assert.*;
 import org.junit.Ignore;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -52,6 +61,7 @@ import static org.mockito.Mockito.when;
 public class QuoteEngineTest {
     
     Mockery mockery;
+    ArrayMarketDepthBook bidBook;
     
     public QuoteEngineTest() {
     }
@@ -132,23 +142,24 @@ public class QuoteEngineTest {
         
         Ticker ticker = new StockTicker( "ABC" );
         
-        assertEquals( 0, engine.level1ListenerMap.size() );
+        assertEquals( 0, engine.level1ListenerRegistry.getTickerCount() );
         
         engine.subscribeLevel1(ticker, listener1);
-        assertEquals( 1, engine.level1ListenerMap.size() );
-        assertEquals( 1, engine.level1ListenerMap.get(ticker).size() );
+        assertEquals( 1, engine.level1ListenerRegistry.getTickerCount() );
+        assertEquals( 1, engine.level1ListenerRegistry.getListeners(ticker).length );
         
         engine.subscribeLevel1(ticker, listener2);
-        assertEquals( 1, engine.level1ListenerMap.size() );
-        assertEquals( 2, engine.level1ListenerMap.get(ticker).size() );
+        assertEquals( 1, engine.level1ListenerRegistry.getTickerCount() );
+        assertEquals( 2, engine.level1ListenerRegistry.getListeners(ticker).length );
         
         engine.unsubscribeLevel1(ticker, listener2);
-        assertEquals( 1, engine.level1ListenerMap.size() );
-        assertEquals( 1, engine.level1ListenerMap.get(ticker).size() );        
+        assertEquals( 1, engine.level1ListenerRegistry.getTickerCount() );
+        assertEquals( 1, engine.level1ListenerRegistry.getListeners(ticker).length );        
+        assertSame( listener1, engine.level1ListenerRegistry.getListeners(ticker)[0] );
         
         engine.unsubscribeLevel1(ticker, listener1);
-        assertEquals( 1, engine.level1ListenerMap.size() );
-        assertEquals( 0, engine.level1ListenerMap.get(ticker).size() );                
+        assertEquals( 0, engine.level1ListenerRegistry.getTickerCount() );
+        assertEquals( 0, engine.level1ListenerRegistry.getListeners(ticker).length );                
         
     }
     
@@ -174,23 +185,43 @@ public class QuoteEngineTest {
         
         Ticker ticker = new StockTicker( "ABC" );
         
-        assertEquals( 0, engine.level1ListenerMap.size() );
+        assertEquals( 0, engine.level2ListenerRegistry.getTickerCount() );
         
         engine.subscribeMarketDepth(ticker, listener1);
-        assertEquals( 1, engine.level2ListenerMap.size() );
-        assertEquals( 1, engine.level2ListenerMap.get(ticker).size() );
+        assertEquals( 1, engine.level2ListenerRegistry.getTickerCount() );
+        assertEquals( 1, engine.level2ListenerRegistry.getListeners(ticker).length );
         
         engine.subscribeMarketDepth(ticker, listener2);
-        assertEquals( 1, engine.level2ListenerMap.size() );
-        assertEquals( 2, engine.level2ListenerMap.get(ticker).size() );
+        assertEquals( 1, engine.level2ListenerRegistry.getTickerCount() );
+        assertEquals( 2, engine.level2ListenerRegistry.getListeners(ticker).length );
         
         engine.unsubscribeMarketDepth(ticker, listener2);
-        assertEquals( 1, engine.level2ListenerMap.size() );
-        assertEquals( 1, engine.level2ListenerMap.get(ticker).size() );        
+        assertEquals( 1, engine.level2ListenerRegistry.getTickerCount() );
+        assertEquals( 1, engine.level2ListenerRegistry.getListeners(ticker).length );        
         
         engine.unsubscribeMarketDepth(ticker, listener1);
-        assertEquals( 1, engine.level2ListenerMap.size() );
-        assertEquals( 0, engine.level2ListenerMap.get(ticker).size() );               
+        assertEquals( 0, engine.level2ListenerRegistry.getTickerCount() );
+        assertEquals( 0, engine.level2ListenerRegistry.getListeners(ticker).length );               
+    }
+    
+    
+    @Test
+    public void testUnsubscribeLevel1_RemovesListenerFromDispatcher() {
+        QuoteEngine engine = createNewQuoteEngine();
+        IQuoteDispatcher mockDispatcher = mock(IQuoteDispatcher.class);
+        engine.setQuoteDispatcher(mockDispatcher);
+        Level1QuoteListener mockListener = mock(Level1QuoteListener.class);
+        Ticker abc = new StockTicker("ABC");
+        Ticker def = new StockTicker("DEF");
+        
+        engine.subscribeLevel1(abc, mockListener);
+        engine.subscribeLevel1(def, mockListener);
+        
+        engine.unsubscribeLevel1(abc, mockListener);
+        verify(mockDispatcher, never()).removeLevel1Listener(mockListener);
+        
+        engine.unsubscribeLevel1(def, mockListener);
+        verify(mockDispatcher).removeLevel1Listener(mockListener);
     }
     
     
@@ -200,20 +231,16 @@ public class QuoteEngineTest {
         
         QuoteEngine quoteEngine = createNewQuoteEngine();
         final ILevel1Quote mockQuote = mock( ILevel1Quote.class );
-        final Map<Ticker, List<Level1QuoteListener>> listenerMap = new HashMap<>();
         final Ticker ticker = new StockTicker( "ABC" );
         final Level1QuoteListener mockListener = mock( Level1QuoteListener.class );
-        final List<Level1QuoteListener> listenerList = new ArrayList<>();
-        listenerList.add( mockListener );
-        listenerMap.put(ticker, listenerList);
-        quoteEngine.level1ListenerMap = listenerMap;
+        quoteEngine.subscribeLevel1(ticker, mockListener);
         
         
         when(mockQuote.getTicker()).thenReturn(ticker);
         
         quoteEngine.fireLevel1Quote(mockQuote);
         
-        //Quote engine fires on a new thread, so pause while it has a chance to do so.
+        //Quote engine fires on a dispatcher thread, so pause while it has a chance to do so.
         Thread.sleep(1000);
         
         verify(mockListener).quoteRecieved(mockQuote);
@@ -221,19 +248,52 @@ public class QuoteEngineTest {
     }    
        
     
+    @Test
+    public void testSubscribeLevel1_SnapshotNeverFollowsNewerQuote() throws Exception {
+        QuoteEngine engine = createNewQuoteEngine();
+        engine.setQuoteDispatcher(new SynchronousQuoteDispatcher());
+        Ticker ticker = new StockTicker( "ABC" );
+        engine.fireLevel1Quote(new PrimitiveLevel1Quote(ticker, ZonedDateTime.now()).setValue(QuoteType.LAST, 0));
+        List<List<Double>> received = new ArrayList<>();
+        AtomicBoolean done = new AtomicBoolean(false);
+        Thread firingThread = new Thread(() -> {
+            for (int i = 1; !done.get(); i++) {
+                engine.fireLevel1Quote(new PrimitiveLevel1Quote(ticker, ZonedDateTime.now()).setValue(QuoteType.LAST, i));
+            }
+        });
+        firingThread.start();
+        
+        //subscribe while quotes are being fired, each listener must see the prices in the order they were fired
+        for (int i = 0; i < 200; i++) {
+            List<Double> prices = Collections.synchronizedList(new ArrayList<>());
+            received.add(prices);
+            engine.subscribeLevel1(ticker, quote -> prices.add(quote.getDouble(QuoteType.LAST)));
+            Thread.yield();
+        }
+        done.set(true);
+        firingThread.join(5000);
+        
+        //after the snapshot each listener gets every quote, once
+        for (List<Double> prices : received) {
+            for (int i = 1; i < prices.size(); i++) {
+                assertEquals( prices.get(i - 1) + 1, prices.get(i), 0 );
+            }
+        }
+    }
+    
+    
     @Test
     public void testFireLevel1Quote_ThrowsException() {
         QuoteEngine quoteEngine = createNewQuoteEngine();
+        quoteEngine.setQuoteDispatcher(new SynchronousQuoteDispatcher());
         final ILevel1Quote mockQuote = mock( ILevel1Quote.class );
-        final Map mockLevel1ListenerMap = mock( Map.class );
         final Ticker ticker = new StockTicker( "ABC" );
         final Level1QuoteListener mockListener = mock( Level1QuoteListener.class );
-        final List<Level1QuoteListener> mockListenerList = new ArrayList<Level1QuoteListener>();
-        mockListenerList.add( mockListener );
-        quoteEngine.level1ListenerMap = mockLevel1ListenerMap;
+        final Level1QuoteListener mockListener2 = mock( Level1QuoteListener.class );
+        quoteEngine.subscribeLevel1(ticker, mockListener);
+        quoteEngine.subscribeLevel1(ticker, mockListener2);
         
         when(mockQuote.getTicker()).thenReturn(ticker);
-        when(mockLevel1ListenerMap.get(ticker)).thenReturn(mockListenerList);
         doThrow(new IllegalStateException("bogus")).when(mockListener).quoteRecieved(mockQuote);
         
         try {
@@ -241,6 +301,7 @@ public class QuoteEngineTest {
         } catch( Exception ex ) {
             fail();
         }
+        verify(mockListener2).quoteRecieved(mockQuote);
         
     }        
     
@@ -248,18 +309,18 @@ public class QuoteEngineTest {
     public void testFireLevel1Quote_NoListeners() {
         QuoteEngine quoteEngine = createNewQuoteEngine();
         final ILevel1Quote mockQuote = mockery.mock( ILevel1Quote.class );
-        final Map mockLevel1ListenerMap = mockery.mock( Map.class );
+        final IQuoteDispatcher mockDispatcher = mockery.mock( IQuoteDispatcher.class );
         final Ticker ticker = new StockTicker( "ABC" );
-        quoteEngine.level1ListenerMap = mockLevel1ListenerMap;
+        quoteEngine.quoteDispatcher = mockDispatcher;
         
         
         mockery.checking( new Expectations() {{
-            one(mockQuote).getTicker();
+            allowing(mockQuote).getTicker();
             will(returnValue(ticker));
-            
-            one(mockLevel1ListenerMap).get(ticker);
-            will(returnValue(null));
-            
+            allowing(mockQuote).getTypes();
+            will(returnValue(new QuoteType[0]));
+            allowing(mockQuote).getTimeStampNanos();
+            will(returnValue(0L));
         }});
         
         quoteEngine.fireLevel1Quote(mockQuote);
@@ -273,21 +334,15 @@ public class QuoteEngineTest {
     public void testFireMarketDepthQuote() throws Exception {
         QuoteEngine quoteEngine = createNewQuoteEngine();
         final ILevel2Quote mockQuote = mockery.mock( ILevel2Quote.class );
-        final Map mockLevel2ListenerMap = mockery.mock( Map.class );
         final Ticker ticker = new StockTicker( "ABC" );
         final Level2QuoteListener mockListener = mockery.mock( Level2QuoteListener.class );
-        final List<Level2QuoteListener> mockListenerList = new ArrayList<Level2QuoteListener>();
-        mockListenerList.add( mockListener );
-        quoteEngine.level2ListenerMap = mockLevel2ListenerMap;
+        quoteEngine.subscribeMarketDepth(ticker, mockListener);
         
         
         mockery.checking( new Expectations() {{
             one(mockQuote).getTicker();
             will(returnValue(ticker));
             
-            one(mockLevel2ListenerMap).get(ticker);
-            will(returnValue(mockListenerList));
-            
             one(mockListener).level2QuoteReceived(mockQuote);
             
         }});
@@ -310,18 +365,14 @@ public class QuoteEngineTest {
     public void testFireLevelMarketDepthQuote_NoListeners() {
         QuoteEngine quoteEngine = createNewQuoteEngine();
         final ILevel2Quote mockQuote = mockery.mock( ILevel2Quote.class );
-        final Map mockLevel2ListenerMap = mockery.mock( Map.class );
+        final IQuoteDispatcher mockDispatcher = mockery.mock( IQuoteDispatcher.class );
         final Ticker ticker = new StockTicker( "ABC" );
-        quoteEngine.level2ListenerMap = mockLevel2ListenerMap;
+        quoteEngine.quoteDispatcher = mockDispatcher;
         
         
         mockery.checking( new Expectations() {{
             one(mockQuote).getTicker();
             will(returnValue(ticker));
-            
-            one(mockLevel2ListenerMap).get(ticker);
-            will(returnValue(null));
-            
         }});
         
         quoteEngine.fireMarketDepthQuote(mockQuote);
@@ -332,9 +383,165 @@ public class QuoteEngineTest {
     
     
     
+    @Test
+    public void testSubscribeMarketDepthDeltas_SendsSnapshot() {
+        QuoteEngine engine = createNewQuoteEngine();
+        engine.setQuoteDispatcher(new SynchronousQuoteDispatcher());
+        Ticker ticker = new StockTicker( "ABC" );
+        bidBook = new ArrayMarketDepthBook(new BigDecimal("0.01"), 10);
+        bidBook.setSide(MarketDepthBook.Side.BID);
+        bidBook.insertLevel(0, 1000, 100);
+        bidBook.insertLevel(1, 999, 200);
+        RecordingDeltaListener listener = new RecordingDeltaListener();
+        
+        engine.subscribeMarketDepthDeltas(ticker, listener);
+        
+        //the ask side hasn't been quoted, so there is only a bid snapshot
+        assertEquals( 1, listener.snapshots.size() );
+        assertEquals( bidBook.snapshot(), listener.snapshots.get(0) );
+        assertEquals( 2, listener.snapshots.get(0).getSequence() );
+        assertTrue( engine.hasMarketDepthDeltaListeners(ticker) );
+        
+        engine.resyncMarketDepthDeltas(ticker, listener);
+        assertEquals( 2, listener.snapshots.size() );
+    }
+    
+    
+    @Test
+    public void testFireMarketDepthDelta() {
+        QuoteEngine engine = createNewQuoteEngine();
+        engine.setQuoteDispatcher(new SynchronousQuoteDispatcher());
+        Ticker abc = new StockTicker( "ABC" );
+        Ticker def = new StockTicker( "DEF" );
+        RecordingDeltaListener listener1 = new RecordingDeltaListener();
+        RecordingDeltaListener listener2 = new RecordingDeltaListener();
+        engine.subscribeMarketDepthDeltas(abc, listener1);
+        engine.subscribeMarketDepthDeltas(def, listener2);
+        MarketDepthDelta delta = new MarketDepthDelta(abc, MarketDepthBook.Side.BID, MarketDepthDelta.Operation.INSERT, 
+                0, 1000, 100, new BigDecimal("0.01"), 1, null);
+        
+        engine.fireMarketDepthDelta(delta);
+        
+        assertEquals( 1, listener1.deltas.size() );
+        assertSame( delta, listener1.deltas.get(0) );
+        assertTrue( listener2.deltas.isEmpty() );
+        
+        engine.unsubscribeMarketDepthDeltas(abc, listener1);
+        engine.fireMarketDepthDelta(delta);
+        assertEquals( 1, listener1.deltas.size() );
+        assertFalse( engine.hasMarketDepthDeltaListeners(abc) );
+    }
+    
+    
+    @Test
+    public void testFireMarketDepthDelta_ListenerThrowsException() {
+        QuoteEngine engine = createNewQuoteEngine();
+        engine.setQuoteDispatcher(new SynchronousQuoteDispatcher());
+        Ticker ticker = new StockTicker( "ABC" );
+        RecordingDeltaListener listener = new RecordingDeltaListener();
+        engine.subscribeMarketDepthDeltas(ticker, new RecordingDeltaListener() {
+            @Override
+            public void marketDepthDeltaReceived(MarketDepthDelta delta) {
+                throw new IllegalStateException("bogus");
+            }
+        });
+        engine.subscribeMarketDepthDeltas(ticker, listener);
+        
+        engine.fireMarketDepthDelta(new MarketDepthDelta(ticker, MarketDepthBook.Side.ASK, MarketDepthDelta.Operation.DELETE, 
+                0, 0, 0, new BigDecimal("0.01"), 1, null));
+        
+        assertEquals( 1, listener.deltas.size() );
+    }
+    
+    
+    @Test
+    public void testFireMarketDepthSnapshot() {
+        QuoteEngine engine = createNewQuoteEngine();
+        engine.setQuoteDispatcher(new SynchronousQuoteDispatcher());
+        Ticker ticker = new StockTicker( "ABC" );
+        RecordingDeltaListener listener = new RecordingDeltaListener();
+        engine.subscribeMarketDepthDeltas(ticker, listener);
+        ArrayMarketDepthBook book = new ArrayMarketDepthBook(new BigDecimal("0.01"), 10);
+        book.setSide(MarketDepthBook.Side.ASK);
+        MarketDepthSnapshot snapshot = book.snapshot();
+        
+        engine.fireMarketDepthSnapshot(ticker, snapshot);
+        
+        assertEquals( 1, listener.snapshots.size() );
+        assertSame( snapshot, listener.snapshots.get(0) );
+    }
+    
+    
+    @Test
+    public void testMarketDepthDeltas_DeliveredThroughDispatcher() throws Exception {
+        QuoteEngine engine = createNewQuoteEngine();
+        Ticker ticker = new StockTicker( "ABC" );
+        bidBook = new ArrayMarketDepthBook(new BigDecimal("0.01"), 10);
+        bidBook.setSide(MarketDepthBook.Side.BID);
+        bidBook.insertLevel(0, 1000, 100);
+        Thread firingThread = Thread.currentThread();
+        List<Thread> deliveryThreads = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(101);
+        RecordingDeltaListener listener = new RecordingDeltaListener() {
+            @Override
+            public void marketDepthSnapshotReceived(Ticker ticker, MarketDepthSnapshot snapshot) {
+                super.marketDepthSnapshotReceived(ticker, snapshot);
+                deliveryThreads.add(Thread.currentThread());
+                latch.countDown();
+            }
+
+            @Override
+            public void marketDepthDeltaReceived(MarketDepthDelta delta) {
+                super.marketDepthDeltaReceived(delta);
+                deliveryThreads.add(Thread.currentThread());
+                latch.countDown();
+            }
+        };
+        
+        engine.subscribeMarketDepthDeltas(ticker, listener);
+        for (int i = 0; i < 100; i++) {
+            engine.fireMarketDepthDelta(new MarketDepthDelta(ticker, MarketDepthBook.Side.BID, MarketDepthDelta.Operation.UPDATE, 
+                    0, 1000, i, new BigDecimal("0.01"), i + 2, null));
+        }
+        
+        assertTrue( latch.await(5, TimeUnit.SECONDS) );
+        //the snapshot taken on subscribing is queued ahead of the deltas
+        assertEquals( 1, listener.snapshots.size() );
+        for (int i = 0; i < 100; i++) {
+            assertEquals( i + 2, listener.deltas.get(i).getSequence() );
+        }
+        assertFalse( deliveryThreads.contains(firingThread) );
+        engine.getQuoteDispatcher().stop();
+    }
+    
+    
+    @Test
+    public void testSetMarketDepthSnapshotInterval() {
+        QuoteEngine engine = createNewQuoteEngine();
+        assertEquals( 0, engine.getMarketDepthSnapshotInterval() );
+        
+        engine.setMarketDepthSnapshotInterval(100);
+        assertEquals( 100, engine.getMarketDepthSnapshotInterval() );
+        
+        try {
+            engine.setMarketDepthSnapshotInterval(-1);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            //this should happen
+        }
+    }
+        
+    
+    
+    
     protected QuoteEngine createNewQuoteEngine() {
         return new QuoteEngine() {
 
+            @Override
+            protected MarketDepthSnapshot getMarketDepthSnapshot(Ticker ticker, MarketDepthBook.Side side) {
+                return side == MarketDepthBook.Side.BID && bidBook != null ? bidBook.snapshot() : null;
+            }
+
             @Override
             public boolean isConnected() {
                 throw new UnsupportedOperationException("Not supported yet.");
@@ -373,6 +580,21 @@ public class QuoteEngineTest {
             
         };
     }
+    
+    
+    protected static class RecordingDeltaListener implements MarketDepthDeltaListener {
+        
+        List<MarketDepthSnapshot> snapshots = new ArrayList<>();
+        List<MarketDepthDelta> deltas = new ArrayList<>();
 
+        @Override
+        public void marketDepthSnapshotReceived(Ticker ticker, MarketDepthSnapshot snapshot) {
+            snapshots.add(snapshot);
+        }
 
+        @Override
+        public void marketDepthDeltaReceived(MarketDepthDelta delta) {
+            deltas.add(delta);
+        }
+    }
 }
@@ -0,0 +1,133 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class BoundedQueueTest {
+
+    public BoundedQueueTest() {
+    }
+
+    @Test
+    public void testCapacityRoundedUp() {
+        assertEquals(8, new BoundedQueue<String>(5).capacity());
+        assertEquals(8, new BoundedQueue<String>(8).capacity());
+        assertEquals(1, new BoundedQueue<String>(1).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new BoundedQueue<String>(0);
+    }
+
+    @Test
+    public void testOfferAndPoll() {
+        BoundedQueue<String> queue = new BoundedQueue<>(4);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b"));
+        assertTrue(queue.offer("c"));
+        assertTrue(queue.offer("d"));
+        assertFalse(queue.offer("e"));
+        assertEquals(4, queue.size());
+
+        assertEquals("a", queue.poll());
+        assertTrue(queue.offer("e"));
+        assertEquals("b", queue.poll());
+        assertEquals("c", queue.poll());
+        assertEquals("d", queue.poll());
+        assertEquals("e", queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testTags() {
+        BoundedQueue<String> queue = new BoundedQueue<>(4);
+        int[] tag = new int[1];
+        queue.offer("a", 7);
+        queue.offer("b");
+        queue.offer("c", 9);
+
+        assertEquals("a", queue.poll(tag));
+        assertEquals(7, tag[0]);
+        assertEquals("b", queue.poll(tag));
+        assertEquals(0, tag[0]);
+        assertEquals("c", queue.poll());
+        assertNull(queue.poll(tag));
+    }
+
+    @Test
+    public void testClear() {
+        BoundedQueue<String> queue = new BoundedQueue<>(4);
+        queue.offer("a");
+        queue.offer("b");
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testMultipleProducers() throws Exception {
+        final BoundedQueue<Integer> queue = new BoundedQueue<>(64);
+        final int perProducer = 10000;
+        Thread[] producers = new Thread[4];
+        for (int p = 0; p < producers.length; p++) {
+            final int producerId = p;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!queue.offer(producerId * perProducer + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producers[p].start();
+        }
+
+        int[] lastSeen = new int[producers.length];
+        java.util.Arrays.fill(lastSeen, -1);
+        int received = 0;
+        while (received < perProducer * producers.length) {
+            Integer value = queue.poll();
+            if (value == null) {
+                continue;
+            }
+            int producerId = value / perProducer;
+            int sequence = value % perProducer;
+            //each producer's values must come out in the order they went in
+            assertTrue(sequence > lastSeen[producerId]);
+            lastSeen[producerId] = sequence;
+            received++;
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+}
@@ -0,0 +1,374 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+import com.sumzerotrading.data.StockTicker;
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
+import com.sumzerotrading.marketdata.ILevel1Quote;
+import com.sumzerotrading.marketdata.Level1Quote;
+import com.sumzerotrading.marketdata.Level1QuoteListener;
+import com.sumzerotrading.marketdata.Level2QuoteListener;
+import com.sumzerotrading.marketdata.MarketDepthBook;
+import com.sumzerotrading.marketdata.MarketDepthDelta;
+import com.sumzerotrading.marketdata.MarketDepthDeltaListener;
+import com.sumzerotrading.marketdata.MarketDepthSnapshot;
+import com.sumzerotrading.marketdata.PrimitiveLevel1Quote;
+import com.sumzerotrading.marketdata.QuoteType;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class PooledQuoteDispatcherTest {
+
+    protected PooledQuoteDispatcher dispatcher;
+
+    public PooledQuoteDispatcherTest() {
+    }
+
+    @Before
+    public void setUp() {
+        dispatcher = new PooledQuoteDispatcher(4, 16, new BlockingWaitStrategy());
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Test
+    public void testStartedOnFirstDispatch() throws Exception {
+        assertFalse(dispatcher.isRunning());
+        CountDownLatch latch = new CountDownLatch(1);
+        dispatcher.dispatchLevel1Quote(quote -> latch.countDown(), buildQuote(1));
+
+        assertTrue(dispatcher.isRunning());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        dispatcher.stop();
+        assertFalse(dispatcher.isRunning());
+    }
+
+    @Test
+    public void testNotRestartedByDispatchAfterStop() throws Exception {
+        dispatcher.start();
+        dispatcher.stop();
+
+        RecordingListener listener = new RecordingListener(1);
+        dispatcher.dispatchLevel1Quote(listener, buildQuote(1));
+        assertFalse(dispatcher.isRunning());
+        assertFalse(listener.latch.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, dispatcher.getLevel1ListenerStats(listener).getDroppedCount());
+
+        dispatcher.start();
+        dispatcher.dispatchLevel1Quote(listener, buildQuote(2));
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(2), listener.received);
+    }
+
+    @Test
+    public void testQuotesDeliveredInOrderPerListener() throws Exception {
+        int quoteCount = 5000;
+        List<RecordingListener> listeners = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            listeners.add(new RecordingListener(quoteCount));
+        }
+
+        //the mailboxes are much smaller than the number of quotes, so this also exercises back-pressure.
+        for (int i = 0; i < quoteCount; i++) {
+            ILevel1Quote quote = buildQuote(i);
+            for (RecordingListener listener : listeners) {
+                dispatcher.dispatchLevel1Quote(listener, quote);
+            }
+        }
+
+        for (RecordingListener listener : listeners) {
+            assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+            assertEquals(quoteCount, listener.received.size());
+            for (int i = 0; i < quoteCount; i++) {
+                assertEquals(i, listener.received.get(i).intValue());
+            }
+        }
+    }
+
+    @Test
+    public void testListenerExceptionDoesNotStopDelivery() throws Exception {
+        CountDownLatch latch = new CountDownLatch(2);
+        Level1QuoteListener listener = quote -> {
+            latch.countDown();
+            throw new IllegalStateException("bogus");
+        };
+
+        dispatcher.dispatchLevel1Quote(listener, buildQuote(1));
+        dispatcher.dispatchLevel1Quote(listener, buildQuote(2));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRemoveListener() throws Exception {
+        RecordingListener listener = new RecordingListener(1);
+        dispatcher.dispatchLevel1Quote(listener, buildQuote(1));
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, dispatcher.level1Mailboxes.size());
+
+        dispatcher.removeLevel1Listener(listener);
+        assertTrue(dispatcher.level1Mailboxes.isEmpty());
+    }
+
+    @Test
+    public void testMarketDepthDeltasDeliveredInOrder() throws Exception {
+        int deltaCount = 5000;
+        StockTicker ticker = new StockTicker("ABC");
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(deltaCount + 1);
+        MarketDepthDeltaListener listener = new MarketDepthDeltaListener() {
+            @Override
+            public void marketDepthSnapshotReceived(Ticker ticker, MarketDepthSnapshot snapshot) {
+                received.add(snapshot.getSequence());
+                latch.countDown();
+            }
+
+            @Override
+            public void marketDepthDeltaReceived(MarketDepthDelta delta) {
+                received.add(delta.getSequence());
+                latch.countDown();
+            }
+        };
+
+        MarketDepthSnapshot snapshot = new MarketDepthSnapshot(new BigDecimal("0.01"), 10);
+        dispatcher.dispatchMarketDepthSnapshot(listener, ticker, snapshot);
+        //the mailbox is much smaller than the number of deltas, none may be dropped.
+        for (int i = 1; i <= deltaCount; i++) {
+            dispatcher.dispatchMarketDepthDelta(listener, new MarketDepthDelta(ticker, MarketDepthBook.Side.BID,
+                    MarketDepthDelta.Operation.UPDATE, 0, 100, i, new BigDecimal("0.01"), i, null));
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i <= deltaCount; i++) {
+            assertEquals(i, received.get(i).longValue());
+        }
+
+        dispatcher.removeMarketDepthDeltaListener(listener);
+        assertTrue(dispatcher.depthDeltaMailboxes.isEmpty());
+    }
+
+    @Test
+    public void testListenerStats() throws Exception {
+        RecordingListener listener = new RecordingListener(2);
+        assertNull(dispatcher.getLevel1ListenerStats(listener));
+
+        dispatcher.dispatchLevel1Quote(listener, buildQuote(1));
+        dispatcher.dispatchLevel1Quote(listener, buildQuote(2));
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+
+        ListenerStats stats = dispatcher.getLevel1ListenerStats(listener);
+        waitForDelivered(stats, 2);
+        assertEquals(0, stats.getQueueDepth());
+        assertEquals(16, stats.getQueueCapacity());
+        assertEquals(OverflowPolicy.BLOCK, stats.getOverflowPolicy());
+        assertEquals(0, stats.getDroppedCount());
+        //the lag is kept per ticker id
+        int tickerId = TickerRegistry.getInstance().getId(new StockTicker("ABC"));
+        assertTrue(tickerId >= 0);
+        assertEquals(stats.getLagNanos(tickerId), stats.getLagNanos(new StockTicker("ABC")));
+        assertEquals(0, stats.getLagNanos(TickerRegistry.UNKNOWN_ID));
+        assertTrue(stats.getMaxLagNanos() >= stats.getLagNanos());
+        assertEquals(0, stats.getLagNanos(new StockTicker("XYZ")));
+    }
+
+    @Test
+    public void testOverflow_DropOldest() throws Exception {
+        GatedListener listener = new GatedListener();
+        dispatcher.setLevel1OverflowPolicy(listener, OverflowPolicy.DROP_OLDEST);
+        fillMailbox(listener, 40);
+        listener.gate.countDown();
+
+        ListenerStats stats = dispatcher.getLevel1ListenerStats(listener);
+        waitForDelivered(stats, 17);
+        assertEquals(23, stats.getDroppedCount());
+        assertEquals(Integer.valueOf(1), listener.received.get(0));
+        assertEquals(Integer.valueOf(25), listener.received.get(1));
+        assertEquals(Integer.valueOf(40), listener.received.get(16));
+    }
+
+    @Test
+    public void testOverflow_ConflateToLatest() throws Exception {
+        GatedListener listener = new GatedListener();
+        dispatcher.setDefaultOverflowPolicy(OverflowPolicy.CONFLATE_TO_LATEST);
+        fillMailbox(listener, 40);
+        listener.gate.countDown();
+
+        ListenerStats stats = dispatcher.getLevel1ListenerStats(listener);
+        waitForDelivered(stats, 18);
+        assertEquals(22, stats.getConflatedCount());
+        assertEquals(18, listener.received.size());
+        for (int i = 0; i < 17; i++) {
+            assertEquals(Integer.valueOf(i + 1), listener.received.get(i));
+        }
+        assertEquals(Integer.valueOf(40), listener.received.get(17));
+
+        //once caught up quotes are queued normally again.
+        dispatcher.dispatchLevel1Quote(listener, buildQuote(41));
+        waitForDelivered(stats, 19);
+        assertEquals(Integer.valueOf(41), listener.received.get(18));
+    }
+
+    @Test
+    public void testOverflow_ConflateToLatest_PerTicker() throws Exception {
+        GatedListener listener = new GatedListener();
+        dispatcher.setDefaultOverflowPolicy(OverflowPolicy.CONFLATE_TO_LATEST);
+        fillMailbox(listener, 17);
+        for (int i = 18; i <= 40; i++) {
+            dispatcher.dispatchLevel1Quote(listener, buildQuote(new StockTicker(i % 2 == 0 ? "ABC" : "XYZ"), i));
+        }
+        listener.gate.countDown();
+
+        //each ticker's latest quote is delivered, in the order the tickers were first conflated
+        ListenerStats stats = dispatcher.getLevel1ListenerStats(listener);
+        waitForDelivered(stats, 19);
+        assertEquals(21, stats.getConflatedCount());
+        assertEquals(Integer.valueOf(17), listener.received.get(16));
+        assertEquals(Integer.valueOf(40), listener.received.get(17));
+        assertEquals(Integer.valueOf(39), listener.received.get(18));
+    }
+
+    @Test
+    public void testConflateLevel1_MergesInPlace() {
+        Ticker ticker = new StockTicker("ABC");
+        ILevel1Quote first = new PrimitiveLevel1Quote(ticker, 1000, dispatcher.clock).setValue(QuoteType.BID, 10);
+        ILevel1Quote second = new PrimitiveLevel1Quote(ticker, 2000, dispatcher.clock).setValue(QuoteType.ASK, 11);
+        ILevel1Quote third = new PrimitiveLevel1Quote(ticker, 3000, dispatcher.clock).setValue(QuoteType.BID, 12);
+
+        //the dispatched quotes may be shared, so aren't changed
+        ILevel1Quote merged = dispatcher.conflateLevel1(first, second);
+        assertNotSame(first, merged);
+        assertFalse(first.containsType(QuoteType.ASK));
+        assertEquals(2000, merged.getTimeStampNanos());
+
+        assertSame(merged, dispatcher.conflateLevel1(merged, third));
+        assertEquals(3000, merged.getTimeStampNanos());
+        assertEquals(12, merged.getDouble(QuoteType.BID), 0);
+        assertEquals(11, merged.getDouble(QuoteType.ASK), 0);
+        assertFalse(second.containsType(QuoteType.BID));
+    }
+
+    @Test
+    public void testOverflow_Disconnect() throws Exception {
+        GatedListener listener = new GatedListener();
+        List<Level1QuoteListener> disconnected = new ArrayList<>();
+        dispatcher.setLevel1OverflowPolicy(listener, OverflowPolicy.DISCONNECT);
+        dispatcher.setSlowConsumerHandler(new SlowConsumerHandler() {
+            @Override
+            public void level1ListenerDisconnected(Level1QuoteListener listener) {
+                disconnected.add(listener);
+            }
+
+            @Override
+            public void marketDepthListenerDisconnected(Level2QuoteListener listener) {
+            }
+        });
+        fillMailbox(listener, 20);
+
+        ListenerStats stats = dispatcher.getLevel1ListenerStats(listener);
+        assertTrue(stats.isDisconnected());
+        assertEquals(Collections.singletonList(listener), disconnected);
+        assertEquals(0, stats.getQueueDepth());
+        assertEquals(3, stats.getDroppedCount());
+        listener.gate.countDown();
+    }
+
+    /**
+     * Delivers the first quote, which blocks in the listener, then dispatches the rest.
+     */
+    protected void fillMailbox(GatedListener listener, int quoteCount) throws Exception {
+        dispatcher.dispatchLevel1Quote(listener, buildQuote(1));
+        assertTrue(listener.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 2; i <= quoteCount; i++) {
+            dispatcher.dispatchLevel1Quote(listener, buildQuote(i));
+        }
+    }
+
+    protected void waitForDelivered(ListenerStats stats, long count) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (stats.getDeliveredCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, stats.getDeliveredCount());
+    }
+
+    protected ILevel1Quote buildQuote(int sequence) {
+        return buildQuote(new StockTicker("ABC"), sequence);
+    }
+
+    protected ILevel1Quote buildQuote(Ticker ticker, int sequence) {
+        Map<QuoteType, BigDecimal> values = new HashMap<>();
+        values.put(QuoteType.LAST, new BigDecimal(sequence));
+        return new Level1Quote(ticker, ZonedDateTime.now(), values);
+    }
+
+    protected static class GatedListener implements Level1QuoteListener {
+
+        protected final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        protected final CountDownLatch entered = new CountDownLatch(1);
+        protected final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public void quoteRecieved(ILevel1Quote quote) {
+            received.add(quote.getValue(QuoteType.LAST).intValue());
+            entered.countDown();
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    protected static class RecordingListener implements Level1QuoteListener {
+
+        protected final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        protected final CountDownLatch latch;
+
+        public RecordingListener(int expected) {
+            latch = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void quoteRecieved(ILevel1Quote quote) {
+            received.add(quote.getValue(QuoteType.LAST).intValue());
+            latch.countDown();
+        }
+    }
+
+}
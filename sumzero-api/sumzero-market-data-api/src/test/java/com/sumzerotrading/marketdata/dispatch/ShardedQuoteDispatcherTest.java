@@ -0,0 +1,195 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2015  Rob Terpilowski
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software
+ * and associated documentation files (the "Software"), to deal in the Software without restriction,
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING
+ * BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE
+ * OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ *
+ */
+package com.sumzerotrading.marketdata.dispatch;
+
+import com.sumzerotrading.data.StockTicker;
+import com.sumzerotrading.data.Ticker;
+import com.sumzerotrading.data.TickerRegistry;
+import com.sumzerotrading.marketdata.ILevel1Quote;
+import com.sumzerotrading.marketdata.Level1Quote;
+import com.sumzerotrading.marketdata.Level1QuoteListener;
+import com.sumzerotrading.marketdata.QuoteType;
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Rob Terpilowski
+ */
+public class ShardedQuoteDispatcherTest {
+
+    protected ShardedQuoteDispatcher dispatcher;
+
+    public ShardedQuoteDispatcherTest() {
+    }
+
+    @Before
+    public void setUp() {
+        dispatcher = new ShardedQuoteDispatcher(4, 64, YieldingWaitStrategy::new);
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Test
+    public void testShardIndexIsStablePerTicker() {
+        Ticker ticker = new StockTicker("ABC");
+        int shard = dispatcher.getShardIndex(ticker);
+        assertEquals(shard, dispatcher.getShardIndex(new StockTicker("ABC")));
+        assertTrue(shard >= 0 && shard < dispatcher.getShardCount());
+        assertEquals(shard, dispatcher.getShardIndex(TickerRegistry.getInstance().getId(ticker)));
+    }
+
+    @Test
+    public void testShardIndexSpreadsTickerIds() {
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i % 4, dispatcher.getShardIndex(i));
+        }
+        assertEquals(0, dispatcher.getShardIndex(TickerRegistry.UNKNOWN_ID));
+    }
+
+    @Test
+    public void testNotRestartedByDispatchAfterStop() throws Exception {
+        dispatcher.start();
+        dispatcher.stop();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        dispatcher.dispatchLevel1Quote(quote -> latch.countDown(), buildQuote(new StockTicker("ABC"), 1));
+        assertFalse(dispatcher.isRunning());
+        assertFalse(latch.await(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRemovedListenerSkipsQueuedQuotes() throws Exception {
+        Ticker ticker = new StockTicker("ABC");
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        //holds up the shard, so the next quotes stay queued
+        dispatcher.dispatchLevel1Quote(quote -> {
+            entered.countDown();
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }, buildQuote(ticker, 0));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(1);
+        Level1QuoteListener listener = quote -> {
+            received.add(quote.getValue(QuoteType.LAST).intValue());
+            latch.countDown();
+        };
+        for (int i = 1; i <= 5; i++) {
+            dispatcher.dispatchLevel1Quote(listener, buildQuote(ticker, i));
+        }
+        dispatcher.removeLevel1Listener(listener);
+        //quotes dispatched once it has subscribed again are delivered
+        dispatcher.dispatchLevel1Quote(listener, buildQuote(ticker, 6));
+        gate.countDown();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(6), received);
+    }
+
+    @Test
+    public void testQuotesDeliveredInOrderPerTicker() throws Exception {
+        String[] symbols = {"ABC", "DEF", "GHI", "JKL", "MNO", "PQR"};
+        int quotesPerTicker = 2000;
+        int listenerCount = 3;
+        CountDownLatch latch = new CountDownLatch(symbols.length * quotesPerTicker * listenerCount);
+        List<OrderCheckingListener> listeners = new ArrayList<>();
+        for (int i = 0; i < listenerCount; i++) {
+            listeners.add(new OrderCheckingListener(latch));
+        }
+
+        //one producer per ticker, so quotes for the same ticker are dispatched concurrently with other tickers.
+        List<Thread> producers = new ArrayList<>();
+        for (String symbol : symbols) {
+            Thread producer = new Thread(() -> {
+                Ticker ticker = new StockTicker(symbol);
+                for (int i = 0; i < quotesPerTicker; i++) {
+                    ILevel1Quote quote = buildQuote(ticker, i);
+                    for (OrderCheckingListener listener : listeners) {
+                        dispatcher.dispatchLevel1Quote(listener, quote);
+                    }
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (OrderCheckingListener listener : listeners) {
+            assertFalse(listener.outOfOrder);
+            for (String symbol : symbols) {
+                assertEquals(quotesPerTicker - 1, listener.lastSequence.get(symbol).intValue());
+            }
+        }
+    }
+
+    protected ILevel1Quote buildQuote(Ticker ticker, int sequence) {
+        Map<QuoteType, BigDecimal> values = new HashMap<>();
+        values.put(QuoteType.LAST, new BigDecimal(sequence));
+        return new Level1Quote(ticker, ZonedDateTime.now(), values);
+    }
+
+    protected static class OrderCheckingListener implements Level1QuoteListener {
+
+        protected final Map<String, Integer> lastSequence = new ConcurrentHashMap<>();
+        protected final CountDownLatch latch;
+        protected volatile boolean outOfOrder = false;
+
+        public OrderCheckingListener(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void quoteRecieved(ILevel1Quote quote) {
+            String symbol = quote.getTicker().getSymbol();
+            int sequence = quote.getValue(QuoteType.LAST).intValue();
+            Integer last = lastSequence.get(symbol);
+            if (last != null && sequence != last + 1) {
+                outOfOrder = true;
+            }
+            lastSequence.put(symbol, sequence);
+            latch.countDown();
+        }
+    }
+
+}